@@ -48,9 +48,14 @@ import com.microsoft.windowsazure.mobileservices.authentication.MobileServiceAut
 import com.microsoft.windowsazure.mobileservices.authentication.MobileServiceUser;
 import com.microsoft.windowsazure.mobileservices.http.AndroidHttpClientFactory;
 import com.microsoft.windowsazure.mobileservices.http.AndroidHttpClientFactoryImpl;
+import com.microsoft.windowsazure.mobileservices.http.AndroidHttpClientTransport;
+import com.microsoft.windowsazure.mobileservices.http.HttpTransport;
 import com.microsoft.windowsazure.mobileservices.http.MobileServiceConnection;
 import com.microsoft.windowsazure.mobileservices.http.MobileServiceHttpClient;
 import com.microsoft.windowsazure.mobileservices.http.NextServiceFilterCallback;
+import com.microsoft.windowsazure.mobileservices.http.RequestCoalescer;
+import com.microsoft.windowsazure.mobileservices.http.RequestCompressionPolicy;
+import com.microsoft.windowsazure.mobileservices.http.RequestScheduler;
 import com.microsoft.windowsazure.mobileservices.http.ServiceFilter;
 import com.microsoft.windowsazure.mobileservices.http.ServiceFilterRequest;
 import com.microsoft.windowsazure.mobileservices.http.ServiceFilterResponse;
@@ -101,9 +106,9 @@ public class MobileServiceClient {
      */
     private static final String CUSTOM_API_URL = "api/";
     /**
-     * LoginManager used for login methods
+     * LoginManager used for login methods, created on first use
      */
-    private LoginManager mLoginManager;
+    private volatile LoginManager mLoginManager;
     /**
      * Mobile Service application key
      */
@@ -137,14 +142,36 @@ public class MobileServiceClient {
      */
     private AndroidHttpClientFactory mAndroidHttpClientFactory;
     /**
-     * MobileServicePush used for push notifications
+     * HttpTransport used for request execution, or null to use an
+     * AndroidHttpClientTransport
      */
-    private MobileServicePush mPush;
+    private HttpTransport mHttpTransport;
+    /**
+     * MobileServicePush used for push notifications, created on first use
+     */
+    private volatile MobileServicePush mPush;
     /**
      * MobileServiceSyncContext used for synchronization between local and
-     * remote databases.
+     * remote databases, created on first use
+     */
+    private volatile MobileServiceSyncContext mSyncContext;
+    /**
+     * Lock guarding the creation of the subsystems created on first use
+     */
+    private Object mSubsystemsLock;
+    /**
+     * RequestCoalescer used to share the responses of identical GET requests
+     */
+    private RequestCoalescer mRequestCoalescer;
+    /**
+     * RequestCompressionPolicy used to compress request bodies, or null
+     */
+    private RequestCompressionPolicy mRequestCompressionPolicy;
+    /**
+     * RequestScheduler used to schedule the requests sent to the Mobile
+     * Service, or null
      */
-    private MobileServiceSyncContext mSyncContext;
+    private RequestScheduler mRequestScheduler;
 
     /**
      * Constructor for the MobileServiceClient
@@ -166,6 +193,16 @@ public class MobileServiceClient {
     public MobileServiceClient(MobileServiceClient client) {
         initialize(client.getAppUrl(), client.getAppKey(), client.getCurrentUser(), client.getGsonBuilder(), client.getContext(),
                 client.getAndroidHttpClientFactory());
+
+        mRequestCompressionPolicy = client.getRequestCompressionPolicy();
+
+        // Clients created with withFilter share the transport and its
+        // connections
+        mHttpTransport = client.mHttpTransport;
+
+        // Clients created with withFilter share the scheduler, so that their
+        // requests are scheduled together
+        mRequestScheduler = client.getRequestScheduler();
     }
 
     /**
@@ -271,7 +308,7 @@ public class MobileServiceClient {
 
         final SettableFuture<MobileServiceUser> resultFuture = SettableFuture.create();
 
-        ListenableFuture<MobileServiceUser> future = mLoginManager.authenticate(provider, mContext, parameters);
+        ListenableFuture<MobileServiceUser> future = getLoginManager().authenticate(provider, mContext, parameters);
 
         Futures.addCallback(future, new FutureCallback<MobileServiceUser>() {
             @Override
@@ -539,7 +576,7 @@ public class MobileServiceClient {
 
         mLoginInProgress = true;
 
-        ListenableFuture<MobileServiceUser> future = mLoginManager.authenticate(provider, oAuthToken, parameters);
+        ListenableFuture<MobileServiceUser> future = getLoginManager().authenticate(provider, oAuthToken, parameters);
 
         Futures.addCallback(future, new FutureCallback<MobileServiceUser>() {
             @Override
@@ -848,7 +885,20 @@ public class MobileServiceClient {
      * @return the MobileServiceSyncContext instance
      */
     public MobileServiceSyncContext getSyncContext() {
-        return this.mSyncContext;
+        MobileServiceSyncContext syncContext = this.mSyncContext;
+
+        if (syncContext == null) {
+            synchronized (this.mSubsystemsLock) {
+                syncContext = this.mSyncContext;
+
+                if (syncContext == null) {
+                    syncContext = new MobileServiceSyncContext(this);
+                    this.mSyncContext = syncContext;
+                }
+            }
+        }
+
+        return syncContext;
     }
 
     /**
@@ -1048,6 +1098,8 @@ public class MobileServiceClient {
             }
         });
 
+        MobileServiceFutures.propagateCancellation(future, internalFuture);
+
         return future;
     }
 
@@ -1220,6 +1272,8 @@ public class MobileServiceClient {
             }
         });
 
+        MobileServiceFutures.propagateCancellation(future, internalFuture);
+
         return future;
     }
 
@@ -1463,15 +1517,17 @@ public class MobileServiceClient {
 
         mAppUrl = normalizedAppURL;
         mAppKey = appKey;
-        mLoginManager = new LoginManager(this);
         mServiceFilter = null;
         mLoginInProgress = false;
         mCurrentUser = currentUser;
         mContext = context;
         mGsonBuilder = gsonBuiler;
         mAndroidHttpClientFactory = androidHttpClientFactory;
-        mPush = new MobileServicePush(this, context);
-        mSyncContext = new MobileServiceSyncContext(this);
+        // LoginManager, MobileServicePush and MobileServiceSyncContext are
+        // created on first use. They are bound to this client and its
+        // filters, so clients created with withFilter get their own.
+        mSubsystemsLock = new Object();
+        mRequestCoalescer = new RequestCoalescer(this);
     }
 
     /**
@@ -1533,6 +1589,79 @@ public class MobileServiceClient {
         return mAndroidHttpClientFactory;
     }
 
+    /**
+     * Gets the RequestCoalescer used to execute the requests of this client
+     *
+     * @return
+     */
+    public RequestCoalescer getRequestCoalescer() {
+        return mRequestCoalescer;
+    }
+
+    /**
+     * Gets the RequestCompressionPolicy used to compress request bodies
+     *
+     * @return The policy, or null if request bodies are not compressed
+     */
+    public RequestCompressionPolicy getRequestCompressionPolicy() {
+        return mRequestCompressionPolicy;
+    }
+
+    /**
+     * Sets the RequestCompressionPolicy used to compress request bodies.
+     * Request bodies are not compressed by default.
+     *
+     * @param requestCompressionPolicy The policy, or null to send request
+     *                                 bodies uncompressed
+     */
+    public void setRequestCompressionPolicy(RequestCompressionPolicy requestCompressionPolicy) {
+        mRequestCompressionPolicy = requestCompressionPolicy;
+    }
+
+    /**
+     * Gets the RequestScheduler used to schedule the requests sent to the
+     * Mobile Service, or null if requests are sent as soon as they are made
+     */
+    public RequestScheduler getRequestScheduler() {
+        return mRequestScheduler;
+    }
+
+    /**
+     * Sets the RequestScheduler used to schedule the requests sent to the
+     * Mobile Service. No scheduler is set by default.
+     * <p/>
+     * The scheduler limits the number of background requests in flight,
+     * which also bounds the parallelism of offline sync operations, such as
+     * partitioned pulls.
+     *
+     * @param requestScheduler The scheduler to use, or null to send requests
+     *                         as soon as they are made
+     */
+    public void setRequestScheduler(RequestScheduler requestScheduler) {
+        mRequestScheduler = requestScheduler;
+    }
+
+    /**
+     * Gets the HttpTransport used for request execution. Unless another one is
+     * set, requests are sent with an AndroidHttpClientTransport using the
+     * AndroidHttpClientFactory.
+     */
+    public HttpTransport getHttpTransport() {
+        HttpTransport transport = mHttpTransport;
+
+        return transport != null ? transport : new AndroidHttpClientTransport(mAndroidHttpClientFactory);
+    }
+
+    /**
+     * Sets the HttpTransport used for request execution
+     *
+     * @param httpTransport The transport, or null to use the
+     *                      AndroidHttpClientFactory
+     */
+    public void setHttpTransport(HttpTransport httpTransport) {
+        mHttpTransport = httpTransport;
+    }
+
     /**
      * Sets the AndroidHttpClientFactory
      */
@@ -1544,6 +1673,37 @@ public class MobileServiceClient {
      * Gets the MobileServicePush used for push notifications
      */
     public MobileServicePush getPush() {
-        return mPush;
+        MobileServicePush push = mPush;
+
+        if (push == null) {
+            synchronized (mSubsystemsLock) {
+                push = mPush;
+
+                if (push == null) {
+                    // Opens the SharedPreferences storing the registrations
+                    push = new MobileServicePush(this, mContext);
+                    mPush = push;
+                }
+            }
+        }
+
+        return push;
+    }
+
+    private LoginManager getLoginManager() {
+        LoginManager loginManager = mLoginManager;
+
+        if (loginManager == null) {
+            synchronized (mSubsystemsLock) {
+                loginManager = mLoginManager;
+
+                if (loginManager == null) {
+                    loginManager = new LoginManager(this);
+                    mLoginManager = loginManager;
+                }
+            }
+        }
+
+        return loginManager;
     }
 }
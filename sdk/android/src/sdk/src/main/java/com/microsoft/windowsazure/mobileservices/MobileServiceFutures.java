@@ -0,0 +1,185 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+
+/**
+ * MobileServiceFutures.java
+ */
+package com.microsoft.windowsazure.mobileservices;
+
+import android.os.Build;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.util.Locale;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Cancellation helpers for the futures returned by the SDK. Cancelling the
+ * future of a table query, a lookup, a GET custom API call or a pull aborts
+ * its HTTP request. Other requests run to completion.
+ */
+public final class MobileServiceFutures {
+
+    /**
+     * Executor failing the futures whose deadline expired, created on first
+     * use
+     */
+    private static ScheduledThreadPoolExecutor sDeadlineExecutor;
+
+    /**
+     * API level of ScheduledThreadPoolExecutor.setRemoveOnCancelPolicy
+     * (Build.VERSION_CODES.LOLLIPOP)
+     */
+    private static final int REMOVE_ON_CANCEL_API_LEVEL = 21;
+
+    /**
+     * Number of cancelled timers after which the deadline executor is purged,
+     * on API levels without setRemoveOnCancelPolicy
+     */
+    private static final int PURGE_INTERVAL = 64;
+
+    /**
+     * Indicates if the deadline executor removes the cancelled timers itself
+     */
+    private static boolean sRemovesOnCancel;
+
+    /**
+     * Number of timers cancelled since the deadline executor was last purged
+     */
+    private static final AtomicInteger sCancelledTimers = new AtomicInteger();
+
+    private MobileServiceFutures() {
+    }
+
+    /**
+     * Returns a future completing like the given one, or failing with a
+     * TimeoutException if it is not done before the deadline. The given
+     * future is then cancelled, aborting its request.
+     *
+     * @param future  The future to limit
+     * @param timeout The time allowed to complete the future
+     * @param unit    The unit of the timeout
+     * @return The future limited by the deadline. Cancelling it cancels the
+     * given future.
+     */
+    public static <V> ListenableFuture<V> withDeadline(final ListenableFuture<V> future, final long timeout, final TimeUnit unit) {
+        if (future == null) {
+            throw new IllegalArgumentException("future cannot be null");
+        }
+
+        if (unit == null) {
+            throw new IllegalArgumentException("unit cannot be null");
+        }
+
+        final SettableFuture<V> result = SettableFuture.create();
+
+        final ScheduledFuture<?> timer = getDeadlineExecutor().schedule(new Runnable() {
+            @Override
+            public void run() {
+                String message = String.format("The operation did not complete within %d %s.", timeout, unit.name().toLowerCase(Locale.getDefault()));
+
+                if (result.setException(new TimeoutException(message))) {
+                    future.cancel(true);
+                }
+            }
+        }, timeout, unit);
+
+        Futures.addCallback(future, new FutureCallback<V>() {
+            @Override
+            public void onFailure(Throwable exception) {
+                cancelTimer(timer);
+
+                if (future.isCancelled()) {
+                    result.cancel(false);
+                } else {
+                    result.setException(exception);
+                }
+            }
+
+            @Override
+            public void onSuccess(V value) {
+                cancelTimer(timer);
+                result.set(value);
+            }
+        });
+
+        propagateCancellation(result, future);
+
+        return result;
+    }
+
+    /**
+     * Cancels a future when another one is cancelled, e.g. the future of the
+     * request a future returned to the caller depends on
+     *
+     * @param from The future whose cancellation is propagated
+     * @param to   The future cancelled with it
+     */
+    public static void propagateCancellation(final ListenableFuture<?> from, final Future<?> to) {
+        from.addListener(new Runnable() {
+            @Override
+            public void run() {
+                if (from.isCancelled()) {
+                    to.cancel(true);
+                }
+            }
+        }, MoreExecutors.directExecutor());
+    }
+
+    /**
+     * Cancels the timer of a future completed before its deadline. Below API
+     * level 21 the executor keeps the cancelled timers, and the futures they
+     * reference, until their deadline, so it is purged every PURGE_INTERVAL
+     * cancellations instead.
+     *
+     * @param timer The timer to cancel
+     */
+    private static void cancelTimer(ScheduledFuture<?> timer) {
+        ScheduledThreadPoolExecutor executor = getDeadlineExecutor();
+
+        if (timer.cancel(false) && !sRemovesOnCancel && sCancelledTimers.incrementAndGet() >= PURGE_INTERVAL) {
+            sCancelledTimers.set(0);
+            executor.purge();
+        }
+    }
+
+    private static synchronized ScheduledThreadPoolExecutor getDeadlineExecutor() {
+        if (sDeadlineExecutor == null) {
+            sDeadlineExecutor = new ScheduledThreadPoolExecutor(1, new ThreadFactoryBuilder().setDaemon(true).setNameFormat("MobileServiceDeadlines").build());
+
+            if (Build.VERSION.SDK_INT >= REMOVE_ON_CANCEL_API_LEVEL) {
+                sDeadlineExecutor.setRemoveOnCancelPolicy(true);
+                sRemovesOnCancel = true;
+            }
+        }
+
+        return sDeadlineExecutor;
+    }
+}
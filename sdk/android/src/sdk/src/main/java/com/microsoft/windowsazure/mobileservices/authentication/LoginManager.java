@@ -547,7 +547,7 @@ public class LoginManager {
         }
 
         // Create a request
-        final ServiceFilterRequest request = new ServiceFilterRequestImpl(new HttpPost(url), mClient.getAndroidHttpClientFactory());
+        final ServiceFilterRequest request = new ServiceFilterRequestImpl(new HttpPost(url), mClient.getHttpTransport());
         request.addHeader(HTTP.CONTENT_TYPE, MobileServiceConnection.JSON_CONTENTTYPE);
 
         try {
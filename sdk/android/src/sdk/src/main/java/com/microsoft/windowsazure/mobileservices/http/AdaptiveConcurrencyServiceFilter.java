@@ -0,0 +1,378 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+ 
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+ 
+     http://www.apache.org/licenses/LICENSE-2.0
+ 
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ 
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+
+/**
+ * AdaptiveConcurrencyServiceFilter.java
+ */
+package com.microsoft.windowsazure.mobileservices.http;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.microsoft.windowsazure.mobileservices.MobileServiceException;
+
+import org.apache.http.HttpStatus;
+
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * ServiceFilter that limits the number of requests in flight, adjusting the
+ * limit with AIMD: the limit grows by one after a window of fast, successful
+ * requests, and is halved when a request is throttled (429, 503), times out
+ * (504 or socket timeout) or is slower than the latency threshold.
+ * <p/>
+ * Requests over the limit are queued, interactive requests before background
+ * ones, and in arrival order within a priority. No thread waits for a free
+ * slot: a queued request is sent on the filter's executor once a request in
+ * flight completes.
+ */
+public class AdaptiveConcurrencyServiceFilter implements ServiceFilter {
+
+    /**
+     * Default initial limit
+     */
+    public static final int DEFAULT_INITIAL_LIMIT = 4;
+
+    /**
+     * Default minimum limit
+     */
+    public static final int DEFAULT_MIN_LIMIT = 1;
+
+    /**
+     * Default maximum limit
+     */
+    public static final int DEFAULT_MAX_LIMIT = 16;
+
+    /**
+     * Default latency, in milliseconds, above which a request decreases the
+     * limit
+     */
+    public static final long DEFAULT_LATENCY_THRESHOLD = 3000;
+
+    private static final double BACKOFF_RATIO = 0.5;
+
+    private static final int SC_TOO_MANY_REQUESTS = 429;
+
+    private int mMinLimit;
+
+    private int mMaxLimit;
+
+    private long mLatencyThreshold;
+
+    /**
+     * Current limit. Fractional, so that it grows by one over a window of
+     * requests.
+     */
+    private double mLimit;
+
+    private int mInFlight;
+
+    /**
+     * Number of decreases of the limit. Only requests started after the last
+     * decrease can decrease the limit again, so that a burst of failures
+     * halves it once.
+     */
+    private long mEpoch;
+
+    private long mSequence;
+
+    private PriorityQueue<PendingRequest> mWaiters;
+
+    private ReentrantLock mLock;
+
+    private Executor mExecutor;
+
+    /**
+     * Constructor for AdaptiveConcurrencyServiceFilter, using the default
+     * limits
+     */
+    public AdaptiveConcurrencyServiceFilter() {
+        this(DEFAULT_INITIAL_LIMIT, DEFAULT_MIN_LIMIT, DEFAULT_MAX_LIMIT, DEFAULT_LATENCY_THRESHOLD);
+    }
+
+    /**
+     * Constructor for AdaptiveConcurrencyServiceFilter
+     *
+     * @param initialLimit     the initial number of requests in flight
+     * @param minLimit         the minimum number of requests in flight
+     * @param maxLimit         the maximum number of requests in flight
+     * @param latencyThreshold the latency, in milliseconds, above which a
+     *                         request decreases the limit
+     */
+    public AdaptiveConcurrencyServiceFilter(int initialLimit, int minLimit, int maxLimit, long latencyThreshold) {
+        this(initialLimit, minLimit, maxLimit, latencyThreshold, Executors.newCachedThreadPool(new ThreadFactoryBuilder().setDaemon(true)
+                .setNameFormat("AdaptiveConcurrency-%d").build()));
+    }
+
+    /**
+     * Constructor for AdaptiveConcurrencyServiceFilter
+     *
+     * @param initialLimit     the initial number of requests in flight
+     * @param minLimit         the minimum number of requests in flight
+     * @param maxLimit         the maximum number of requests in flight
+     * @param latencyThreshold the latency, in milliseconds, above which a
+     *                         request decreases the limit
+     * @param executor         the executor sending the queued requests once
+     *                         a slot is free. It must not run them on the
+     *                         thread completing the previous request.
+     */
+    public AdaptiveConcurrencyServiceFilter(int initialLimit, int minLimit, int maxLimit, long latencyThreshold, Executor executor) {
+        if (minLimit < 1 || maxLimit < minLimit || initialLimit < minLimit || initialLimit > maxLimit) {
+            throw new IllegalArgumentException("Limits must satisfy 1 <= minLimit <= initialLimit <= maxLimit.");
+        }
+
+        if (latencyThreshold <= 0) {
+            throw new IllegalArgumentException("latencyThreshold must be greater than zero.");
+        }
+
+        if (executor == null) {
+            throw new IllegalArgumentException("executor cannot be null.");
+        }
+
+        this.mMinLimit = minLimit;
+        this.mMaxLimit = maxLimit;
+        this.mLatencyThreshold = TimeUnit.MILLISECONDS.toNanos(latencyThreshold);
+        this.mLimit = initialLimit;
+        this.mWaiters = new PriorityQueue<PendingRequest>();
+        this.mLock = new ReentrantLock();
+        this.mExecutor = executor;
+    }
+
+    @Override
+    public ListenableFuture<ServiceFilterResponse> handleRequest(ServiceFilterRequest request, NextServiceFilterCallback nextServiceFilterCallback) {
+        final PendingRequest pendingRequest;
+        boolean granted = false;
+
+        this.mLock.lock();
+
+        try {
+            pendingRequest = new PendingRequest(getPriority(request), this.mSequence++, request, nextServiceFilterCallback);
+
+            if (this.mWaiters.isEmpty() && this.mInFlight < (int) this.mLimit) {
+                this.mInFlight++;
+                pendingRequest.mEpoch = this.mEpoch;
+                granted = true;
+            } else {
+                this.mWaiters.add(pendingRequest);
+            }
+        } finally {
+            this.mLock.unlock();
+        }
+
+        // A request cancelled while queued gives up its place
+        pendingRequest.mFuture.addListener(new Runnable() {
+            @Override
+            public void run() {
+                if (pendingRequest.mFuture.isCancelled()) {
+                    dequeue(pendingRequest);
+                }
+            }
+        }, MoreExecutors.directExecutor());
+
+        if (granted) {
+            send(pendingRequest);
+        }
+
+        return pendingRequest.mFuture;
+    }
+
+    /**
+     * Returns the current number of requests allowed in flight
+     */
+    public int getLimit() {
+        this.mLock.lock();
+
+        try {
+            return (int) this.mLimit;
+        } finally {
+            this.mLock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of requests in flight
+     */
+    public int getInFlight() {
+        this.mLock.lock();
+
+        try {
+            return this.mInFlight;
+        } finally {
+            this.mLock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of requests waiting for a free slot
+     */
+    public int getQueueLength() {
+        this.mLock.lock();
+
+        try {
+            return this.mWaiters.size();
+        } finally {
+            this.mLock.unlock();
+        }
+    }
+
+    /**
+     * Returns the priority of a request
+     *
+     * @param request the request
+     */
+    protected RequestPriority getPriority(ServiceFilterRequest request) {
+        return RequestScheduler.getPriority(request);
+    }
+
+    private static boolean isTimeout(Throwable exception) {
+        while (exception != null) {
+            if (exception instanceof SocketTimeoutException) {
+                return true;
+            }
+
+            exception = exception.getCause();
+        }
+
+        return false;
+    }
+
+    private void send(PendingRequest pendingRequest) {
+        final long epoch = pendingRequest.mEpoch;
+        final SettableFuture<ServiceFilterResponse> future = pendingRequest.mFuture;
+
+        if (future.isCancelled()) {
+            release(epoch, false, false);
+            return;
+        }
+
+        final long startTime = System.nanoTime();
+
+        ListenableFuture<ServiceFilterResponse> nextFuture;
+
+        try {
+            nextFuture = pendingRequest.mNextServiceFilterCallback.onNext(pendingRequest.mRequest);
+        } catch (RuntimeException e) {
+            release(epoch, false, false);
+            future.setException(e);
+            return;
+        }
+
+        Futures.addCallback(nextFuture, new FutureCallback<ServiceFilterResponse>() {
+            @Override
+            public void onFailure(Throwable exception) {
+                ServiceFilterResponse response = MobileServiceException.getServiceResponse(exception);
+                boolean overloaded = isTimeout(exception);
+
+                if (response != null && response.getStatus() != null) {
+                    int statusCode = response.getStatus().getStatusCode();
+
+                    overloaded |= statusCode == SC_TOO_MANY_REQUESTS || statusCode == HttpStatus.SC_SERVICE_UNAVAILABLE
+                            || statusCode == HttpStatus.SC_GATEWAY_TIMEOUT;
+                }
+
+                release(epoch, false, overloaded);
+                future.setException(exception);
+            }
+
+            @Override
+            public void onSuccess(ServiceFilterResponse response) {
+                boolean slow = System.nanoTime() - startTime > mLatencyThreshold;
+
+                release(epoch, !slow, slow);
+                future.set(response);
+            }
+        });
+    }
+
+    private void dequeue(PendingRequest pendingRequest) {
+        this.mLock.lock();
+
+        try {
+            this.mWaiters.remove(pendingRequest);
+        } finally {
+            this.mLock.unlock();
+        }
+    }
+
+    private void release(long epoch, boolean succeeded, boolean overloaded) {
+        List<PendingRequest> ready = new ArrayList<PendingRequest>();
+
+        this.mLock.lock();
+
+        try {
+            if (overloaded) {
+                if (epoch == this.mEpoch) {
+                    this.mLimit = Math.max(this.mMinLimit, this.mLimit * BACKOFF_RATIO);
+                    this.mEpoch++;
+                }
+            } else if (succeeded && this.mInFlight >= (int) this.mLimit) {
+                // Only grow while the limit is actually reached
+                this.mLimit = Math.min(this.mMaxLimit, this.mLimit + 1 / this.mLimit);
+            }
+
+            this.mInFlight--;
+
+            // The limit may have grown, so more than one request may fit
+            while (!this.mWaiters.isEmpty() && this.mInFlight < (int) this.mLimit) {
+                PendingRequest pendingRequest = this.mWaiters.poll();
+                pendingRequest.mEpoch = this.mEpoch;
+                this.mInFlight++;
+                ready.add(pendingRequest);
+            }
+        } finally {
+            this.mLock.unlock();
+        }
+
+        for (final PendingRequest pendingRequest : ready) {
+            this.mExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    send(pendingRequest);
+                }
+            });
+        }
+    }
+
+    /**
+     * A request waiting for a free slot, completed once sent
+     */
+    private static class PendingRequest extends RequestWaiter {
+        private final SettableFuture<ServiceFilterResponse> mFuture = SettableFuture.create();
+        private ServiceFilterRequest mRequest;
+        private NextServiceFilterCallback mNextServiceFilterCallback;
+        private long mEpoch;
+
+        PendingRequest(RequestPriority priority, long sequence, ServiceFilterRequest request, NextServiceFilterCallback nextServiceFilterCallback) {
+            super(priority, sequence);
+            this.mRequest = request;
+            this.mNextServiceFilterCallback = nextServiceFilterCallback;
+        }
+    }
+}
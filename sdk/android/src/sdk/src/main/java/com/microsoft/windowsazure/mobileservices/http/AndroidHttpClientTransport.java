@@ -0,0 +1,69 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+
+
+/**
+ * AndroidHttpClientTransport.java
+ */
+package com.microsoft.windowsazure.mobileservices.http;
+
+import android.net.http.AndroidHttpClient;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.protocol.HTTP;
+
+/**
+ * Default HttpTransport, sending each request with a new AndroidHttpClient
+ */
+public class AndroidHttpClientTransport implements HttpTransport {
+
+    /**
+     * The factory of the AndroidHttpClient instances
+     */
+    private AndroidHttpClientFactory mAndroidHttpClientFactory;
+
+    /**
+     * Constructor for AndroidHttpClientTransport
+     *
+     * @param factory The AndroidHttpClientFactory instance used to create
+     *                AndroidHttpClient objects
+     */
+    public AndroidHttpClientTransport(AndroidHttpClientFactory factory) {
+        if (factory == null) {
+            throw new IllegalArgumentException("factory cannot be null");
+        }
+
+        mAndroidHttpClientFactory = factory;
+    }
+
+    @Override
+    public ServiceFilterResponse execute(HttpRequestBase request) throws Exception {
+        AndroidHttpClient client = mAndroidHttpClientFactory.createAndroidHttpClient();
+        client.getParams().setParameter(HTTP.USER_AGENT, MobileServiceConnection.getUserAgent());
+
+        try {
+            final HttpResponse response = client.execute(request);
+            return new ServiceFilterResponseImpl(response);
+        } finally {
+            client.close();
+        }
+    }
+}
@@ -0,0 +1,263 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+ 
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+ 
+     http://www.apache.org/licenses/LICENSE-2.0
+ 
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ 
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+
+/**
+ * EndpointMetricsSnapshot.java
+ */
+package com.microsoft.windowsazure.mobileservices.http;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * Point-in-time copy of the metrics recorded by a MetricsServiceFilter for a
+ * single endpoint and HTTP method
+ */
+public final class EndpointMetricsSnapshot {
+
+    private EndpointKind mKind;
+    private String mName;
+    private String mMethod;
+    private long mRequestCount;
+    private long mFailureCount;
+    private int mInFlight;
+    private long mRequestBytes;
+    private long mResponseBytes;
+    private long mTotalLatency;
+    private long mMaxLatency;
+    private long[] mLatencyBuckets;
+    private Map<Integer, Long> mStatusCodes;
+
+    /**
+     * Constructor for EndpointMetricsSnapshot
+     */
+    EndpointMetricsSnapshot(EndpointKind kind, String name, String method, long requestCount, long failureCount, int inFlight, long requestBytes,
+                            long responseBytes, long totalLatency, long maxLatency, long[] latencyBuckets, Map<Integer, Long> statusCodes) {
+        this.mKind = kind;
+        this.mName = name;
+        this.mMethod = method;
+        this.mRequestCount = requestCount;
+        this.mFailureCount = failureCount;
+        this.mInFlight = inFlight;
+        this.mRequestBytes = requestBytes;
+        this.mResponseBytes = responseBytes;
+        this.mTotalLatency = totalLatency;
+        this.mMaxLatency = maxLatency;
+        this.mLatencyBuckets = latencyBuckets;
+        this.mStatusCodes = Collections.unmodifiableMap(statusCodes);
+    }
+
+    /**
+     * Returns the upper bounds, in milliseconds, of the latency histogram
+     * buckets. The histogram has one more bucket for slower requests.
+     */
+    public static long[] getLatencyBucketBounds() {
+        return MetricsServiceFilter.LATENCY_BUCKET_BOUNDS.clone();
+    }
+
+    /**
+     * Returns the kind of endpoint
+     */
+    public EndpointKind getKind() {
+        return this.mKind;
+    }
+
+    /**
+     * Returns the table or custom API name, or null for other endpoints
+     */
+    public String getName() {
+        return this.mName;
+    }
+
+    /**
+     * Returns the HTTP method
+     */
+    public String getMethod() {
+        return this.mMethod;
+    }
+
+    /**
+     * Returns the number of completed requests
+     */
+    public long getRequestCount() {
+        return this.mRequestCount;
+    }
+
+    /**
+     * Returns the number of requests that completed without an HTTP response
+     */
+    public long getFailureCount() {
+        return this.mFailureCount;
+    }
+
+    /**
+     * Returns the number of requests in flight when the snapshot was taken
+     */
+    public int getInFlight() {
+        return this.mInFlight;
+    }
+
+    /**
+     * Returns the total number of request content bytes
+     */
+    public long getRequestBytes() {
+        return this.mRequestBytes;
+    }
+
+    /**
+     * Returns the total number of response content bytes
+     */
+    public long getResponseBytes() {
+        return this.mResponseBytes;
+    }
+
+    /**
+     * Returns the mean latency in milliseconds
+     */
+    public double getMeanLatency() {
+        return this.mRequestCount > 0 ? (double) this.mTotalLatency / this.mRequestCount : 0;
+    }
+
+    /**
+     * Returns the highest latency in milliseconds
+     */
+    public long getMaxLatency() {
+        return this.mMaxLatency;
+    }
+
+    /**
+     * Returns the number of requests in each latency bucket
+     */
+    public long[] getLatencyBuckets() {
+        return this.mLatencyBuckets.clone();
+    }
+
+    /**
+     * Returns the latency, in milliseconds, below which the given fraction of
+     * the requests completed. The value is the upper bound of the histogram
+     * bucket holding the percentile.
+     *
+     * @param percentile the percentile, between 0 and 1, e.g. 0.99
+     */
+    public long getLatencyPercentile(double percentile) {
+        if (percentile < 0 || percentile > 1) {
+            throw new IllegalArgumentException("percentile must be between 0 and 1.");
+        }
+
+        long total = 0;
+
+        for (long count : this.mLatencyBuckets) {
+            total += count;
+        }
+
+        if (total == 0) {
+            return 0;
+        }
+
+        long threshold = (long) Math.ceil(total * percentile);
+        long accumulated = 0;
+
+        for (int i = 0; i < MetricsServiceFilter.LATENCY_BUCKET_BOUNDS.length; i++) {
+            accumulated += this.mLatencyBuckets[i];
+
+            if (accumulated >= threshold) {
+                return Math.min(MetricsServiceFilter.LATENCY_BUCKET_BOUNDS[i], this.mMaxLatency);
+            }
+        }
+
+        return this.mMaxLatency;
+    }
+
+    /**
+     * Returns the number of responses for each HTTP status code
+     */
+    public Map<Integer, Long> getStatusCodeCounts() {
+        return this.mStatusCodes;
+    }
+
+    /**
+     * Returns the snapshot as a JsonObject
+     */
+    public JsonObject toJson() {
+        JsonObject result = new JsonObject();
+
+        result.addProperty("kind", this.mKind.toString());
+        result.addProperty("name", this.mName);
+        result.addProperty("method", this.mMethod);
+        result.addProperty("requestCount", this.mRequestCount);
+        result.addProperty("failureCount", this.mFailureCount);
+        result.addProperty("inFlight", this.mInFlight);
+        result.addProperty("requestBytes", this.mRequestBytes);
+        result.addProperty("responseBytes", this.mResponseBytes);
+        result.addProperty("meanLatency", getMeanLatency());
+        result.addProperty("maxLatency", this.mMaxLatency);
+        result.addProperty("p50Latency", getLatencyPercentile(0.5));
+        result.addProperty("p99Latency", getLatencyPercentile(0.99));
+
+        JsonArray buckets = new JsonArray();
+
+        for (int i = 0; i < this.mLatencyBuckets.length; i++) {
+            JsonObject bucket = new JsonObject();
+
+            if (i < MetricsServiceFilter.LATENCY_BUCKET_BOUNDS.length) {
+                bucket.addProperty("le", MetricsServiceFilter.LATENCY_BUCKET_BOUNDS[i]);
+            }
+
+            bucket.addProperty("count", this.mLatencyBuckets[i]);
+            buckets.add(bucket);
+        }
+
+        result.add("latencyBuckets", buckets);
+
+        JsonObject statusCodes = new JsonObject();
+
+        for (Entry<Integer, Long> statusCode : this.mStatusCodes.entrySet()) {
+            statusCodes.addProperty(String.valueOf(statusCode.getKey()), statusCode.getValue());
+        }
+
+        result.add("statusCodes", statusCodes);
+
+        return result;
+    }
+
+    /**
+     * The kind of Mobile Service endpoint
+     */
+    public enum EndpointKind {
+        /**
+         * A table endpoint, under tables/
+         */
+        Table,
+
+        /**
+         * A custom API endpoint, under api/
+         */
+        Api,
+
+        /**
+         * Any other endpoint, e.g. login or push registrations
+         */
+        Other
+    }
+}
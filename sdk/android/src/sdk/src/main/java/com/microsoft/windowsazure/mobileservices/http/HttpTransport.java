@@ -0,0 +1,45 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+
+
+/**
+ * HttpTransport.java
+ */
+package com.microsoft.windowsazure.mobileservices.http;
+
+import org.apache.http.client.methods.HttpRequestBase;
+
+/**
+ * Sends the HTTP requests of a MobileServiceClient, after the service filters.
+ * The default transport uses a new AndroidHttpClient for every request. Set
+ * another one with MobileServiceClient.setHttpTransport, e.g. an
+ * OkHttpTransport sharing HTTP/2 connections between concurrent requests.
+ */
+public interface HttpTransport {
+
+    /**
+     * Sends a request and reads its response
+     *
+     * @param request The request, with its headers and content
+     * @return The response, with its content fully read
+     * @throws Exception
+     */
+    ServiceFilterResponse execute(HttpRequestBase request) throws Exception;
+}
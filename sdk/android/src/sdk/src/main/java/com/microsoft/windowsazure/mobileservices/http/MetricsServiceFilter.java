@@ -0,0 +1,290 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+ 
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+ 
+     http://www.apache.org/licenses/LICENSE-2.0
+ 
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ 
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+
+/**
+ * MetricsServiceFilter.java
+ */
+package com.microsoft.windowsazure.mobileservices.http;
+
+import android.net.Uri;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.gson.JsonArray;
+import com.microsoft.windowsazure.mobileservices.MobileServiceException;
+import com.microsoft.windowsazure.mobileservices.http.EndpointMetricsSnapshot.EndpointKind;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * ServiceFilter that records latency histograms, byte counts, status code
+ * counts and in-flight requests for every table, custom API and HTTP method.
+ * Recording is lock-free, so the filter can stay enabled in production builds.
+ * <p/>
+ * Add it to the client with MobileServiceClient.withFilter and read the
+ * collected values with getSnapshot.
+ */
+public class MetricsServiceFilter implements ServiceFilter {
+
+    /**
+     * Upper bounds, in milliseconds, of the latency histogram buckets. An
+     * additional bucket counts the requests slower than the last bound.
+     */
+    static final long[] LATENCY_BUCKET_BOUNDS = {1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000, 30000};
+
+    private static final String TABLES_PATH = "tables";
+
+    private static final String API_PATH = "api";
+
+    private ConcurrentHashMap<String, EndpointMetrics> mEndpoints;
+
+    /**
+     * Constructor for MetricsServiceFilter
+     */
+    public MetricsServiceFilter() {
+        this.mEndpoints = new ConcurrentHashMap<String, EndpointMetrics>();
+    }
+
+    @Override
+    public ListenableFuture<ServiceFilterResponse> handleRequest(ServiceFilterRequest request, NextServiceFilterCallback nextServiceFilterCallback) {
+        final EndpointMetrics metrics = getEndpointMetrics(request);
+
+        byte[] content = request.getRawContent();
+        final long startTime = metrics.onRequestStarted(content != null ? content.length : 0);
+
+        ListenableFuture<ServiceFilterResponse> future;
+
+        try {
+            future = nextServiceFilterCallback.onNext(request);
+        } catch (RuntimeException e) {
+            metrics.onRequestCompleted(startTime, null);
+            throw e;
+        }
+
+        Futures.addCallback(future, new FutureCallback<ServiceFilterResponse>() {
+            @Override
+            public void onFailure(Throwable exception) {
+                metrics.onRequestCompleted(startTime, MobileServiceException.getServiceResponse(exception));
+            }
+
+            @Override
+            public void onSuccess(ServiceFilterResponse response) {
+                metrics.onRequestCompleted(startTime, response);
+            }
+        });
+
+        return future;
+    }
+
+    /**
+     * Returns a point-in-time copy of the metrics of every endpoint seen so
+     * far
+     */
+    public List<EndpointMetricsSnapshot> getSnapshot() {
+        List<EndpointMetricsSnapshot> result = new ArrayList<EndpointMetricsSnapshot>();
+
+        for (EndpointMetrics metrics : this.mEndpoints.values()) {
+            result.add(metrics.snapshot());
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns the current metrics of every endpoint as a JSON array, ready to
+     * be logged or uploaded
+     */
+    public JsonArray exportSnapshot() {
+        JsonArray result = new JsonArray();
+
+        for (EndpointMetricsSnapshot snapshot : getSnapshot()) {
+            result.add(snapshot.toJson());
+        }
+
+        return result;
+    }
+
+    /**
+     * Discards the recorded metrics
+     */
+    public void reset() {
+        this.mEndpoints.clear();
+    }
+
+    private EndpointMetrics getEndpointMetrics(ServiceFilterRequest request) {
+        EndpointKind kind = EndpointKind.Other;
+        String name = null;
+
+        String url = request.getUrl();
+
+        if (url != null) {
+            List<String> segments = Uri.parse(url).getPathSegments();
+
+            for (int i = 0; i < segments.size() - 1; i++) {
+                if (segments.get(i).equalsIgnoreCase(TABLES_PATH)) {
+                    kind = EndpointKind.Table;
+                } else if (segments.get(i).equalsIgnoreCase(API_PATH)) {
+                    kind = EndpointKind.Api;
+                } else {
+                    continue;
+                }
+
+                name = segments.get(i + 1);
+                break;
+            }
+        }
+
+        String method = request.getMethod() != null ? request.getMethod().toUpperCase(Locale.getDefault()) : null;
+
+        String key = kind + "/" + (name != null ? name.toLowerCase(Locale.getDefault()) : "") + "/" + method;
+
+        EndpointMetrics metrics = this.mEndpoints.get(key);
+
+        if (metrics == null) {
+            EndpointMetrics newMetrics = new EndpointMetrics(kind, name, method);
+            metrics = this.mEndpoints.putIfAbsent(key, newMetrics);
+
+            if (metrics == null) {
+                metrics = newMetrics;
+            }
+        }
+
+        return metrics;
+    }
+
+    /**
+     * Metrics recorded for a single endpoint and HTTP method
+     */
+    private static class EndpointMetrics {
+        private EndpointKind mKind;
+        private String mName;
+        private String mMethod;
+
+        private AtomicLong mRequestCount;
+        private AtomicLong mFailureCount;
+        private AtomicInteger mInFlight;
+        private AtomicLong mRequestBytes;
+        private AtomicLong mResponseBytes;
+        private AtomicLong mTotalLatency;
+        private AtomicLong mMaxLatency;
+        private AtomicLongArray mLatencyBuckets;
+        private ConcurrentHashMap<Integer, AtomicLong> mStatusCodes;
+
+        private EndpointMetrics(EndpointKind kind, String name, String method) {
+            this.mKind = kind;
+            this.mName = name;
+            this.mMethod = method;
+
+            this.mRequestCount = new AtomicLong();
+            this.mFailureCount = new AtomicLong();
+            this.mInFlight = new AtomicInteger();
+            this.mRequestBytes = new AtomicLong();
+            this.mResponseBytes = new AtomicLong();
+            this.mTotalLatency = new AtomicLong();
+            this.mMaxLatency = new AtomicLong();
+            this.mLatencyBuckets = new AtomicLongArray(LATENCY_BUCKET_BOUNDS.length + 1);
+            this.mStatusCodes = new ConcurrentHashMap<Integer, AtomicLong>();
+        }
+
+        private long onRequestStarted(int requestBytes) {
+            this.mInFlight.incrementAndGet();
+            this.mRequestBytes.addAndGet(requestBytes);
+
+            return System.nanoTime();
+        }
+
+        private void onRequestCompleted(long startTime, ServiceFilterResponse response) {
+            long latency = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+
+            this.mInFlight.decrementAndGet();
+            this.mRequestCount.incrementAndGet();
+            this.mTotalLatency.addAndGet(latency);
+
+            long maxLatency = this.mMaxLatency.get();
+
+            while (latency > maxLatency && !this.mMaxLatency.compareAndSet(maxLatency, latency)) {
+                maxLatency = this.mMaxLatency.get();
+            }
+
+            int bucket = 0;
+
+            while (bucket < LATENCY_BUCKET_BOUNDS.length && latency > LATENCY_BUCKET_BOUNDS[bucket]) {
+                bucket++;
+            }
+
+            this.mLatencyBuckets.incrementAndGet(bucket);
+
+            if (response == null || response.getStatus() == null) {
+                this.mFailureCount.incrementAndGet();
+                return;
+            }
+
+            byte[] content = response.getRawContent();
+
+            if (content != null) {
+                this.mResponseBytes.addAndGet(content.length);
+            }
+
+            Integer statusCode = response.getStatus().getStatusCode();
+
+            AtomicLong statusCount = this.mStatusCodes.get(statusCode);
+
+            if (statusCount == null) {
+                AtomicLong newStatusCount = new AtomicLong();
+                statusCount = this.mStatusCodes.putIfAbsent(statusCode, newStatusCount);
+
+                if (statusCount == null) {
+                    statusCount = newStatusCount;
+                }
+            }
+
+            statusCount.incrementAndGet();
+        }
+
+        private EndpointMetricsSnapshot snapshot() {
+            long[] latencyBuckets = new long[this.mLatencyBuckets.length()];
+
+            for (int i = 0; i < latencyBuckets.length; i++) {
+                latencyBuckets[i] = this.mLatencyBuckets.get(i);
+            }
+
+            Map<Integer, Long> statusCodes = new HashMap<Integer, Long>();
+
+            for (Entry<Integer, AtomicLong> statusCode : this.mStatusCodes.entrySet()) {
+                statusCodes.put(statusCode.getKey(), statusCode.getValue().get());
+            }
+
+            return new EndpointMetricsSnapshot(this.mKind, this.mName, this.mMethod, this.mRequestCount.get(), this.mFailureCount.get(),
+                    this.mInFlight.get(), this.mRequestBytes.get(), this.mResponseBytes.get(), this.mTotalLatency.get(), this.mMaxLatency.get(),
+                    latencyBuckets, statusCodes);
+        }
+    }
+}
@@ -89,6 +89,13 @@ public class MobileServiceConnection {
         mClient = client;
     }
 
+    /**
+     * Returns the RequestScheduler of the client, or null
+     */
+    RequestScheduler getRequestScheduler() {
+        return mClient.getRequestScheduler();
+    }
+
     /**
      * Generates the User-Agent
      */
@@ -121,6 +128,12 @@ public class MobileServiceConnection {
                 ServiceFilterResponse response = null;
 
                 try {
+                    boolean aborted = request instanceof AbortableServiceFilterRequest && ((AbortableServiceFilterRequest) request).isAborted();
+
+                    if (aborted) {
+                        throw new MobileServiceException("The request was aborted.");
+                    }
+
                     response = request.execute();
                     int statusCode = response.getStatus().getStatusCode();
 
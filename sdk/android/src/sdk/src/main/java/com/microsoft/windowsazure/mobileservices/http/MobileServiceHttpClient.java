@@ -147,20 +147,24 @@ public class MobileServiceHttpClient {
         String url = uriBuilder.build().toString();
 
         if (httpMethod.equalsIgnoreCase(HttpGet.METHOD_NAME)) {
-            request = new ServiceFilterRequestImpl(new HttpGet(url), mClient.getAndroidHttpClientFactory());
+            request = new ServiceFilterRequestImpl(new HttpGet(url), mClient.getHttpTransport(), mClient.getRequestCompressionPolicy());
         } else if (httpMethod.equalsIgnoreCase(HttpPost.METHOD_NAME)) {
-            request = new ServiceFilterRequestImpl(new HttpPost(url), mClient.getAndroidHttpClientFactory());
+            request = new ServiceFilterRequestImpl(new HttpPost(url), mClient.getHttpTransport(), mClient.getRequestCompressionPolicy());
         } else if (httpMethod.equalsIgnoreCase(HttpPut.METHOD_NAME)) {
-            request = new ServiceFilterRequestImpl(new HttpPut(url), mClient.getAndroidHttpClientFactory());
+            request = new ServiceFilterRequestImpl(new HttpPut(url), mClient.getHttpTransport(), mClient.getRequestCompressionPolicy());
         } else if (httpMethod.equalsIgnoreCase(HttpPatch.METHOD_NAME)) {
-            request = new ServiceFilterRequestImpl(new HttpPatch(url), mClient.getAndroidHttpClientFactory());
+            request = new ServiceFilterRequestImpl(new HttpPatch(url), mClient.getHttpTransport(), mClient.getRequestCompressionPolicy());
         } else if (httpMethod.equalsIgnoreCase(HttpDelete.METHOD_NAME)) {
-            request = new ServiceFilterRequestImpl(new HttpDelete(url), mClient.getAndroidHttpClientFactory());
+            request = new ServiceFilterRequestImpl(new HttpDelete(url), mClient.getHttpTransport(), mClient.getRequestCompressionPolicy());
         } else {
             future.setException(new IllegalArgumentException("httpMethod not supported"));
             return future;
         }
 
+        if (features != null && features.contains(MobileServiceFeatures.Offline)) {
+            request.setPriority(RequestPriority.Background);
+        }
+
         String featuresHeader = MobileServiceFeatures.featuresToString(features);
         if (featuresHeader != null) {
             if (requestHeaders == null) {
@@ -199,17 +203,6 @@ public class MobileServiceHttpClient {
 
         MobileServiceConnection conn = mClient.createConnection();
 
-        new RequestAsyncTask(request, conn) {
-            @Override
-            protected void onPostExecute(ServiceFilterResponse response) {
-                if (mTaskException != null) {
-                    future.setException(mTaskException);
-                } else {
-                    future.set(response);
-                }
-            }
-        }.executeTask();
-
-        return future;
+        return mClient.getRequestCoalescer().execute(request, conn);
     }
 }
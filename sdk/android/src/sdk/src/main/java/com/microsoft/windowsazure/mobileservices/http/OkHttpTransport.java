@@ -0,0 +1,202 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+
+/**
+ * OkHttpTransport.java
+ */
+package com.microsoft.windowsazure.mobileservices.http;
+
+import com.squareup.okhttp.Call;
+import com.squareup.okhttp.Headers;
+import com.squareup.okhttp.MediaType;
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.Protocol;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.RequestBody;
+import com.squareup.okhttp.Response;
+import com.squareup.okhttp.ResponseBody;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpVersion;
+import org.apache.http.ProtocolVersion;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.conn.ConnectionReleaseTrigger;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.message.BasicStatusLine;
+import org.apache.http.protocol.HTTP;
+import org.apache.http.util.EntityUtils;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * HttpTransport sending the requests with an OkHttpClient, which pools its
+ * connections and multiplexes concurrent requests over one HTTP/2 connection
+ * when the server negotiates it. Requires OkHttp 2.x in the application, and
+ * ALPN support (Android 5.0+) for HTTP/2; other connections use HTTP/1.1.
+ */
+public class OkHttpTransport implements HttpTransport {
+
+    /**
+     * Request headers OkHttp sets itself
+     */
+    private static final String[] SKIPPED_HEADERS = {HTTP.CONTENT_TYPE, HTTP.CONTENT_LEN, HTTP.TARGET_HOST, HTTP.CONN_DIRECTIVE, HTTP.TRANSFER_ENCODING};
+
+    /**
+     * The client sending the requests
+     */
+    private OkHttpClient mClient;
+
+    /**
+     * Constructor for OkHttpTransport, using a new OkHttpClient allowing
+     * HTTP/2 and HTTP/1.1
+     */
+    public OkHttpTransport() {
+        this(new OkHttpClient().setProtocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1)));
+    }
+
+    /**
+     * Constructor for OkHttpTransport
+     *
+     * @param client The OkHttpClient used to send the requests. Share it between
+     *               transports to share its connection pool
+     */
+    public OkHttpTransport(OkHttpClient client) {
+        if (client == null) {
+            throw new IllegalArgumentException("client cannot be null");
+        }
+
+        mClient = client;
+    }
+
+    @Override
+    public ServiceFilterResponse execute(HttpRequestBase request) throws Exception {
+        final Call call = mClient.newCall(createRequest(request));
+
+        // Aborting the request cancels the call. A request already aborted
+        // throws an IOException here.
+        request.setReleaseTrigger(new ConnectionReleaseTrigger() {
+            @Override
+            public void releaseConnection() {
+            }
+
+            @Override
+            public void abortConnection() {
+                call.cancel();
+            }
+        });
+
+        Response response = call.execute();
+        ResponseBody body = response.body();
+
+        try {
+            BasicHttpResponse result = new BasicHttpResponse(new BasicStatusLine(getProtocolVersion(response.protocol()), response.code(), response.message()));
+
+            Headers headers = response.headers();
+            for (int i = 0; i < headers.size(); i++) {
+                result.addHeader(headers.name(i), headers.value(i));
+            }
+
+            ByteArrayEntity entity = new ByteArrayEntity(body.bytes());
+            entity.setContentType(result.getFirstHeader(HTTP.CONTENT_TYPE));
+            entity.setContentEncoding(result.getFirstHeader(HTTP.CONTENT_ENCODING));
+            result.setEntity(entity);
+
+            return new ServiceFilterResponseImpl(result);
+        } finally {
+            body.close();
+        }
+    }
+
+    /**
+     * Creates the OkHttp request equivalent to an Apache request
+     *
+     * @param request The request to convert
+     * @return The OkHttp request
+     * @throws IOException
+     */
+    private static Request createRequest(HttpRequestBase request) throws IOException {
+        Request.Builder builder = new Request.Builder().url(request.getURI().toString());
+
+        for (Header header : request.getAllHeaders()) {
+            if (!isSkippedHeader(header.getName())) {
+                builder.addHeader(header.getName(), header.getValue());
+            }
+        }
+
+        if (request.getFirstHeader(HTTP.USER_AGENT) == null) {
+            builder.header(HTTP.USER_AGENT, MobileServiceConnection.getUserAgent());
+        }
+
+        RequestBody body = null;
+
+        if (request instanceof HttpEntityEnclosingRequest) {
+            HttpEntity entity = ((HttpEntityEnclosingRequest) request).getEntity();
+            byte[] content = entity != null ? EntityUtils.toByteArray(entity) : new byte[0];
+
+            String contentType = null;
+            if (request.getFirstHeader(HTTP.CONTENT_TYPE) != null) {
+                contentType = request.getFirstHeader(HTTP.CONTENT_TYPE).getValue();
+            } else if (entity != null && entity.getContentType() != null) {
+                contentType = entity.getContentType().getValue();
+            }
+
+            body = RequestBody.create(contentType != null ? MediaType.parse(contentType) : null, content);
+        }
+
+        return builder.method(request.getMethod(), body).build();
+    }
+
+    /**
+     * Returns the version of the protocol a response was received with
+     *
+     * @param protocol The OkHttp protocol
+     */
+    private static ProtocolVersion getProtocolVersion(Protocol protocol) {
+        switch (protocol) {
+            case HTTP_1_0:
+                return HttpVersion.HTTP_1_0;
+            case HTTP_2:
+                return new ProtocolVersion("HTTP", 2, 0);
+            case SPDY_3:
+                return new ProtocolVersion("SPDY", 3, 1);
+            default:
+                return HttpVersion.HTTP_1_1;
+        }
+    }
+
+    /**
+     * Indicates if a request header is left for OkHttp to set
+     *
+     * @param name The header name
+     */
+    private static boolean isSkippedHeader(String name) {
+        for (String skipped : SKIPPED_HEADERS) {
+            if (skipped.equalsIgnoreCase(name)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+}
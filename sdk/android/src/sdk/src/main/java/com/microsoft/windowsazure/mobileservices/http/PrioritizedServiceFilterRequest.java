@@ -0,0 +1,43 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+ 
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+ 
+     http://www.apache.org/licenses/LICENSE-2.0
+ 
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ 
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+
+/**
+ * PrioritizedServiceFilterRequest.java
+ */
+package com.microsoft.windowsazure.mobileservices.http;
+
+/**
+ * A ServiceFilterRequest with a priority. Requests not implementing this
+ * interface are interactive.
+ */
+public interface PrioritizedServiceFilterRequest extends ServiceFilterRequest {
+    /**
+     * Gets the request's priority
+     */
+    public RequestPriority getPriority();
+
+    /**
+     * Sets the request's priority. Requests made by offline sync are
+     * background requests, other requests are interactive by default.
+     *
+     * @param priority The priority
+     */
+    public void setPriority(RequestPriority priority);
+}
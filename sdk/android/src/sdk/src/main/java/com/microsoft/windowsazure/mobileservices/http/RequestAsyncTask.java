@@ -48,6 +48,18 @@ public abstract class RequestAsyncTask extends AsyncTask<Void, Void, ServiceFilt
      */
     private ServiceFilterRequest mRequest;
 
+    /**
+     * Scheduler holding a slot for the request, or null
+     */
+    private RequestScheduler mScheduler;
+
+    /**
+     * Priority the request was scheduled with
+     */
+    private RequestPriority mPriority;
+
+    private final Object mSlotLock = new Object();
+
     /**
      * Constructor that specifies request and connection
      *
@@ -59,8 +71,40 @@ public abstract class RequestAsyncTask extends AsyncTask<Void, Void, ServiceFilt
         mConnection = connection;
     }
 
-    @SuppressLint("NewApi")
+    /**
+     * Executes the task. If the client has a RequestScheduler, the task is
+     * executed once the scheduler has a free slot for the request.
+     */
     public void executeTask() {
+        final RequestScheduler scheduler = mConnection.getRequestScheduler();
+
+        if (scheduler == null) {
+            start();
+            return;
+        }
+
+        mPriority = RequestScheduler.getPriority(mRequest);
+
+        scheduler.schedule(mPriority, new Runnable() {
+            @Override
+            public void run() {
+                synchronized (mSlotLock) {
+                    // A task cancelled while waiting gives its slot back
+                    if (isCancelled()) {
+                        scheduler.release(mPriority);
+                        return;
+                    }
+
+                    mScheduler = scheduler;
+                }
+
+                start();
+            }
+        });
+    }
+
+    @SuppressLint("NewApi")
+    private void start() {
         // If it's running with Honeycomb or greater, it must execute each
         // request in a different thread
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
@@ -70,6 +114,20 @@ public abstract class RequestAsyncTask extends AsyncTask<Void, Void, ServiceFilt
         }
     }
 
+    /**
+     * Cancels the task and aborts its request, so that a request being sent
+     * stops instead of running to completion. onCancelled is invoked instead
+     * of onPostExecute.
+     */
+    public void abort() {
+        if (mRequest instanceof AbortableServiceFilterRequest) {
+            ((AbortableServiceFilterRequest) mRequest).abort();
+        }
+
+        cancel(true);
+        releaseSlot();
+    }
+
     @Override
     protected ServiceFilterResponse doInBackground(Void... params) {
         // Call start method that executes the request
@@ -83,8 +141,23 @@ public abstract class RequestAsyncTask extends AsyncTask<Void, Void, ServiceFilt
             } else {
                 mTaskException = new MobileServiceException(e);
             }
+        } finally {
+            releaseSlot();
         }
 
         return response;
     }
+
+    private void releaseSlot() {
+        RequestScheduler scheduler;
+
+        synchronized (mSlotLock) {
+            scheduler = mScheduler;
+            mScheduler = null;
+        }
+
+        if (scheduler != null) {
+            scheduler.release(mPriority);
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,248 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+ 
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+ 
+     http://www.apache.org/licenses/LICENSE-2.0
+ 
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ 
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+
+/**
+ * RequestCoalescer.java
+ */
+package com.microsoft.windowsazure.mobileservices.http;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import com.microsoft.windowsazure.mobileservices.MobileServiceClient;
+import com.microsoft.windowsazure.mobileservices.authentication.MobileServiceUser;
+
+import org.apache.http.Header;
+import org.apache.http.client.methods.HttpGet;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Executes requests for a MobileServiceClient, sharing the response of a GET
+ * request with the identical GET requests started while it is in flight
+ */
+public class RequestCoalescer {
+
+    /**
+     * The client associated with this coalescer
+     */
+    private MobileServiceClient mClient;
+
+    /**
+     * In-flight GET requests by request key
+     */
+    private Map<String, InFlightRequest> mInFlightRequests;
+
+    /**
+     * Constructor for RequestCoalescer
+     *
+     * @param client The client associated with this coalescer
+     */
+    public RequestCoalescer(MobileServiceClient client) {
+        this.mClient = client;
+        this.mInFlightRequests = new HashMap<String, InFlightRequest>();
+    }
+
+    /**
+     * Executes a request. A GET request identical to one in flight, with the
+     * same URL, headers and user, is not sent and completes with the response
+     * of the request in flight. Cancelling the returned future of a GET
+     * request aborts it, once all the callers sharing it have cancelled
+     * theirs. Other requests always run to completion.
+     *
+     * @param request    The request to execute
+     * @param connection The connection used to execute the request
+     * @return A future for the response, owned by the caller
+     */
+    public ListenableFuture<ServiceFilterResponse> execute(ServiceFilterRequest request, MobileServiceConnection connection) {
+        if (!HttpGet.METHOD_NAME.equalsIgnoreCase(request.getMethod())) {
+            final SettableFuture<ServiceFilterResponse> future = SettableFuture.create();
+
+            new RequestAsyncTask(request, connection) {
+                @Override
+                protected void onPostExecute(ServiceFilterResponse response) {
+                    if (mTaskException != null) {
+                        future.setException(mTaskException);
+                    } else {
+                        future.set(response);
+                    }
+                }
+            }.executeTask();
+
+            return future;
+        }
+
+        final String key = getRequestKey(request);
+
+        InFlightRequest inFlightRequest;
+        boolean started = false;
+
+        synchronized (this.mInFlightRequests) {
+            inFlightRequest = this.mInFlightRequests.get(key);
+
+            if (inFlightRequest == null) {
+                inFlightRequest = new InFlightRequest();
+                inFlightRequest.mTask = createTask(request, connection, key, inFlightRequest);
+                this.mInFlightRequests.put(key, inFlightRequest);
+                started = true;
+            }
+
+            inFlightRequest.mCallers++;
+        }
+
+        ListenableFuture<ServiceFilterResponse> future = subscribe(key, inFlightRequest);
+
+        if (started) {
+            inFlightRequest.mTask.executeTask();
+        }
+
+        return future;
+    }
+
+    /**
+     * Returns the number of GET requests in flight
+     */
+    public int getInFlightCount() {
+        synchronized (this.mInFlightRequests) {
+            return this.mInFlightRequests.size();
+        }
+    }
+
+    private ListenableFuture<ServiceFilterResponse> subscribe(final String key, final InFlightRequest inFlightRequest) {
+        // Every caller gets its own future, so that cancelling it does not
+        // affect the other callers
+        final SettableFuture<ServiceFilterResponse> future = SettableFuture.create();
+
+        Futures.addCallback(inFlightRequest.mFuture, new FutureCallback<ServiceFilterResponse>() {
+            @Override
+            public void onFailure(Throwable exception) {
+                future.setException(exception);
+            }
+
+            @Override
+            public void onSuccess(ServiceFilterResponse response) {
+                future.set(response);
+            }
+        });
+
+        future.addListener(new Runnable() {
+            @Override
+            public void run() {
+                if (future.isCancelled()) {
+                    unsubscribe(key, inFlightRequest);
+                }
+            }
+        }, MoreExecutors.directExecutor());
+
+        return future;
+    }
+
+    private void unsubscribe(String key, InFlightRequest inFlightRequest) {
+        synchronized (this.mInFlightRequests) {
+            inFlightRequest.mCallers--;
+
+            if (inFlightRequest.mCallers > 0 || inFlightRequest.mFuture.isDone()) {
+                return;
+            }
+
+            // Later identical requests are sent again instead of sharing the
+            // aborted one
+            remove(key, inFlightRequest);
+        }
+
+        inFlightRequest.mTask.abort();
+        inFlightRequest.mFuture.cancel(false);
+    }
+
+    private RequestAsyncTask createTask(ServiceFilterRequest request, MobileServiceConnection connection, final String key,
+                                        final InFlightRequest inFlightRequest) {
+        return new RequestAsyncTask(request, connection) {
+            @Override
+            protected void onPostExecute(ServiceFilterResponse response) {
+                remove(key, inFlightRequest);
+
+                if (mTaskException != null) {
+                    inFlightRequest.mFuture.setException(mTaskException);
+                } else {
+                    inFlightRequest.mFuture.set(response);
+                }
+            }
+
+            @Override
+            protected void onCancelled() {
+                remove(key, inFlightRequest);
+
+                inFlightRequest.mFuture.cancel(false);
+            }
+        };
+    }
+
+    private void remove(String key, InFlightRequest inFlightRequest) {
+        if (key != null) {
+            synchronized (this.mInFlightRequests) {
+                // An aborted request may have been replaced already
+                if (this.mInFlightRequests.get(key) == inFlightRequest) {
+                    this.mInFlightRequests.remove(key);
+                }
+            }
+        }
+    }
+
+    private String getRequestKey(ServiceFilterRequest request) {
+        StringBuilder key = new StringBuilder(request.getUrl());
+
+        MobileServiceUser user = this.mClient.getCurrentUser();
+
+        key.append('\n').append(user != null ? user.getAuthenticationToken() : "");
+
+        Header[] headers = request.getHeaders();
+
+        if (headers != null) {
+            headers = headers.clone();
+
+            Arrays.sort(headers, new Comparator<Header>() {
+                @Override
+                public int compare(Header lhs, Header rhs) {
+                    return lhs.getName().compareToIgnoreCase(rhs.getName());
+                }
+            });
+
+            for (Header header : headers) {
+                key.append('\n').append(header.getName()).append(':').append(header.getValue());
+            }
+        }
+
+        return key.toString();
+    }
+
+    /**
+     * A request in flight and the number of callers waiting for it
+     */
+    private static class InFlightRequest {
+        private final SettableFuture<ServiceFilterResponse> mFuture = SettableFuture.create();
+        private RequestAsyncTask mTask;
+        private int mCallers;
+    }
+}
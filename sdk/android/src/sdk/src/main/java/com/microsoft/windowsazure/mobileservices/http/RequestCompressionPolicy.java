@@ -0,0 +1,256 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+ 
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+ 
+     http://www.apache.org/licenses/LICENSE-2.0
+ 
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ 
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+
+/**
+ * RequestCompressionPolicy.java
+ */
+package com.microsoft.windowsazure.mobileservices.http;
+
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Selects the request bodies sent with Content-Encoding: gzip. Compression is
+ * enabled for all tables or all custom APIs, and can be switched on or off
+ * for a single table or custom API. It only applies to bodies of at least the
+ * minimum size, sent with POST, PUT or PATCH, and whose content type is not
+ * excluded. Media types that are already compressed, such as images or zip
+ * archives, are excluded by default. The mobile service must accept
+ * compressed request bodies.
+ * <p/>
+ * Set it on the client with MobileServiceClient.setRequestCompressionPolicy.
+ */
+public class RequestCompressionPolicy {
+
+    /**
+     * Default minimum size, in bytes, of a compressed request body
+     */
+    public static final int DEFAULT_MINIMUM_SIZE = 1024;
+
+    private static final String TABLES_PATH = "tables";
+
+    private static final String API_PATH = "api";
+
+    /**
+     * Methods whose request bodies can be compressed
+     */
+    private static final String[] COMPRESSED_METHODS = {"POST", "PUT", "PATCH"};
+
+    /**
+     * Content types excluded by default, since they are already compressed
+     */
+    private static final String[] DEFAULT_EXCLUDED_CONTENT_TYPES = {"image/*", "video/*", "audio/*", "application/zip", "application/gzip",
+            "application/x-gzip"};
+
+    private volatile int mMinimumSize;
+
+    private volatile boolean mAllTables;
+
+    private volatile boolean mAllApis;
+
+    /**
+     * Per-table switches, overriding mAllTables
+     */
+    private Map<String, Boolean> mTables;
+
+    /**
+     * Per-API switches, overriding mAllApis
+     */
+    private Map<String, Boolean> mApis;
+
+    /**
+     * Excluded content types, as "type/subtype" or "type/*"
+     */
+    private Set<String> mExcludedContentTypes;
+
+    /**
+     * Constructor for RequestCompressionPolicy, using the default minimum size
+     */
+    public RequestCompressionPolicy() {
+        this(DEFAULT_MINIMUM_SIZE);
+    }
+
+    /**
+     * Constructor for RequestCompressionPolicy
+     *
+     * @param minimumSize the minimum size, in bytes, of a compressed request
+     *                    body
+     */
+    public RequestCompressionPolicy(int minimumSize) {
+        setMinimumSize(minimumSize);
+
+        this.mTables = new ConcurrentHashMap<String, Boolean>();
+        this.mApis = new ConcurrentHashMap<String, Boolean>();
+        this.mExcludedContentTypes = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+        for (String contentType : DEFAULT_EXCLUDED_CONTENT_TYPES) {
+            this.mExcludedContentTypes.add(contentType);
+        }
+    }
+
+    /**
+     * Returns the minimum size, in bytes, of a compressed request body
+     */
+    public int getMinimumSize() {
+        return this.mMinimumSize;
+    }
+
+    /**
+     * Sets the minimum size, in bytes, of a compressed request body
+     *
+     * @param minimumSize the minimum size
+     */
+    public void setMinimumSize(int minimumSize) {
+        if (minimumSize < 0) {
+            throw new IllegalArgumentException("minimumSize cannot be negative.");
+        }
+
+        this.mMinimumSize = minimumSize;
+    }
+
+    /**
+     * Enables or disables compression for the requests sent to the tables
+     * without a switch of their own
+     *
+     * @param enabled true to compress the requests sent to every table
+     */
+    public void setAllTablesEnabled(boolean enabled) {
+        this.mAllTables = enabled;
+    }
+
+    /**
+     * Enables or disables compression for the requests sent to the custom
+     * APIs without a switch of their own
+     *
+     * @param enabled true to compress the requests sent to every custom API
+     */
+    public void setAllApisEnabled(boolean enabled) {
+        this.mAllApis = enabled;
+    }
+
+    /**
+     * Enables or disables compression for the requests sent to a table
+     *
+     * @param tableName the table name
+     * @param enabled   true to compress the requests sent to the table
+     */
+    public void setTableEnabled(String tableName, boolean enabled) {
+        setEnabled(this.mTables, tableName, enabled);
+    }
+
+    /**
+     * Enables or disables compression for the requests sent to a custom API
+     *
+     * @param apiName the custom API name
+     * @param enabled true to compress the requests sent to the custom API
+     */
+    public void setApiEnabled(String apiName, boolean enabled) {
+        setEnabled(this.mApis, apiName, enabled);
+    }
+
+    /**
+     * Excludes a content type from compression, or includes it again
+     *
+     * @param contentType the content type, as "type/subtype" or "type/*"
+     * @param excluded    true to send the bodies of this content type
+     *                    uncompressed
+     */
+    public void setContentTypeExcluded(String contentType, boolean excluded) {
+        if (contentType == null || contentType.trim().length() == 0) {
+            throw new IllegalArgumentException("contentType cannot be null or empty.");
+        }
+
+        String mediaType = contentType.trim().toLowerCase(Locale.getDefault());
+
+        if (excluded) {
+            this.mExcludedContentTypes.add(mediaType);
+        } else {
+            this.mExcludedContentTypes.remove(mediaType);
+        }
+    }
+
+    /**
+     * Indicates if a request body must be compressed
+     *
+     * @param method        the request method
+     * @param path          the path of the request URI
+     * @param contentType   the content type of the request body, or null
+     * @param contentLength the length of the request body
+     */
+    boolean shouldCompress(String method, String path, String contentType, int contentLength) {
+        if (path == null || contentLength < this.mMinimumSize || contentLength == 0) {
+            return false;
+        }
+
+        if (!isCompressedMethod(method) || isExcludedContentType(contentType)) {
+            return false;
+        }
+
+        String[] segments = path.split("/");
+
+        for (int i = 0; i < segments.length - 1; i++) {
+            String name = segments[i + 1].toLowerCase(Locale.getDefault());
+
+            if (segments[i].equalsIgnoreCase(TABLES_PATH)) {
+                Boolean enabled = this.mTables.get(name);
+                return enabled != null ? enabled : this.mAllTables;
+            } else if (segments[i].equalsIgnoreCase(API_PATH)) {
+                Boolean enabled = this.mApis.get(name);
+                return enabled != null ? enabled : this.mAllApis;
+            }
+        }
+
+        return false;
+    }
+
+    private static boolean isCompressedMethod(String method) {
+        for (String compressedMethod : COMPRESSED_METHODS) {
+            if (compressedMethod.equalsIgnoreCase(method)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private boolean isExcludedContentType(String contentType) {
+        if (contentType == null) {
+            return false;
+        }
+
+        // Parameters such as the charset are ignored
+        String mediaType = contentType.split(";")[0].trim().toLowerCase(Locale.getDefault());
+        int slash = mediaType.indexOf('/');
+
+        return this.mExcludedContentTypes.contains(mediaType)
+                || (slash > 0 && this.mExcludedContentTypes.contains(mediaType.substring(0, slash) + "/*"));
+    }
+
+    private static void setEnabled(Map<String, Boolean> switches, String name, boolean enabled) {
+        if (name == null || name.trim().length() == 0) {
+            throw new IllegalArgumentException("name cannot be null or empty.");
+        }
+
+        switches.put(name.trim().toLowerCase(Locale.getDefault()), enabled);
+    }
+}
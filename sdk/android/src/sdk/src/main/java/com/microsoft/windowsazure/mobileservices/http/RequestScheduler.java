@@ -0,0 +1,236 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+ 
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+ 
+     http://www.apache.org/licenses/LICENSE-2.0
+ 
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ 
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+
+/**
+ * RequestScheduler.java
+ */
+package com.microsoft.windowsazure.mobileservices.http;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Limits the number of requests of a MobileServiceClient sent at the same
+ * time. Interactive requests waiting for a free slot overtake the background
+ * ones, and background requests cannot take the slots reserved for
+ * interactive requests, so a user request never waits behind a long offline
+ * sync.
+ * <p/>
+ * A request takes its slot before it is handed to a thread, so requests
+ * waiting for a free slot do not hold any thread. The scheduler is opt-in,
+ * see MobileServiceClient.setRequestScheduler.
+ */
+public class RequestScheduler {
+
+    /**
+     * Default maximum number of requests in flight
+     */
+    public static final int DEFAULT_MAX_REQUESTS = 6;
+
+    /**
+     * Default maximum number of background requests in flight
+     */
+    public static final int DEFAULT_MAX_BACKGROUND_REQUESTS = 2;
+
+    private int mMaxRequests;
+
+    private int mMaxBackgroundRequests;
+
+    private int mInFlight;
+
+    private int mBackgroundInFlight;
+
+    private long mSequence;
+
+    private PriorityQueue<ScheduledRequest> mWaiters;
+
+    private ReentrantLock mLock;
+
+    /**
+     * Constructor for RequestScheduler, using the default limits
+     */
+    public RequestScheduler() {
+        this(DEFAULT_MAX_REQUESTS, DEFAULT_MAX_BACKGROUND_REQUESTS);
+    }
+
+    /**
+     * Constructor for RequestScheduler
+     *
+     * @param maxRequests           the maximum number of requests in flight
+     * @param maxBackgroundRequests the maximum number of background requests
+     *                              in flight. It must be lower than
+     *                              maxRequests, so that a slot is always left
+     *                              for interactive requests.
+     */
+    public RequestScheduler(int maxRequests, int maxBackgroundRequests) {
+        if (maxBackgroundRequests < 1 || maxRequests <= maxBackgroundRequests) {
+            throw new IllegalArgumentException("Limits must satisfy 1 <= maxBackgroundRequests < maxRequests.");
+        }
+
+        this.mMaxRequests = maxRequests;
+        this.mMaxBackgroundRequests = maxBackgroundRequests;
+        this.mWaiters = new PriorityQueue<ScheduledRequest>();
+        this.mLock = new ReentrantLock();
+    }
+
+    /**
+     * Returns the priority of a request. Requests not implementing
+     * PrioritizedServiceFilterRequest are interactive.
+     *
+     * @param request the request
+     */
+    public static RequestPriority getPriority(ServiceFilterRequest request) {
+        if (request instanceof PrioritizedServiceFilterRequest) {
+            RequestPriority priority = ((PrioritizedServiceFilterRequest) request).getPriority();
+
+            if (priority != null) {
+                return priority;
+            }
+        }
+
+        return RequestPriority.Interactive;
+    }
+
+    /**
+     * Returns the number of requests in flight
+     */
+    public int getInFlightCount() {
+        this.mLock.lock();
+
+        try {
+            return this.mInFlight;
+        } finally {
+            this.mLock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of requests waiting for a free slot
+     */
+    public int getQueueLength() {
+        this.mLock.lock();
+
+        try {
+            return this.mWaiters.size();
+        } finally {
+            this.mLock.unlock();
+        }
+    }
+
+    /**
+     * Starts a request once a slot is free. The request is started on the
+     * calling thread if a slot is free already, otherwise on the thread
+     * releasing a slot, so starting it must not block.
+     *
+     * @param priority the priority of the request
+     * @param start    starts the request. The slot must be released once the
+     *                 request completes.
+     */
+    void schedule(RequestPriority priority, Runnable start) {
+        List<ScheduledRequest> ready;
+
+        this.mLock.lock();
+
+        try {
+            this.mWaiters.add(new ScheduledRequest(priority, this.mSequence++, start));
+            ready = takeFreeSlots();
+        } finally {
+            this.mLock.unlock();
+        }
+
+        start(ready);
+    }
+
+    /**
+     * Releases the slot of a completed request
+     *
+     * @param priority the priority the request was scheduled with
+     */
+    void release(RequestPriority priority) {
+        List<ScheduledRequest> ready;
+
+        this.mLock.lock();
+
+        try {
+            this.mInFlight--;
+
+            if (priority == RequestPriority.Background) {
+                this.mBackgroundInFlight--;
+            }
+
+            ready = takeFreeSlots();
+        } finally {
+            this.mLock.unlock();
+        }
+
+        start(ready);
+    }
+
+    /**
+     * Gives the free slots to the waiters at the head of the queue. Must be
+     * called with the lock held.
+     */
+    private List<ScheduledRequest> takeFreeSlots() {
+        List<ScheduledRequest> ready = new ArrayList<ScheduledRequest>();
+
+        // Interactive waiters are ahead of background ones, so a background
+        // waiter at the head only waits for background slots
+        while (!this.mWaiters.isEmpty() && hasFreeSlot(this.mWaiters.peek().getPriority())) {
+            ScheduledRequest request = this.mWaiters.poll();
+            this.mInFlight++;
+
+            if (request.getPriority() == RequestPriority.Background) {
+                this.mBackgroundInFlight++;
+            }
+
+            ready.add(request);
+        }
+
+        return ready;
+    }
+
+    private static void start(List<ScheduledRequest> ready) {
+        for (ScheduledRequest request : ready) {
+            request.mStart.run();
+        }
+    }
+
+    private boolean hasFreeSlot(RequestPriority priority) {
+        if (this.mInFlight >= this.mMaxRequests) {
+            return false;
+        }
+
+        return priority != RequestPriority.Background || this.mBackgroundInFlight < this.mMaxBackgroundRequests;
+    }
+
+    /**
+     * A request waiting for a free slot
+     */
+    private static class ScheduledRequest extends RequestWaiter {
+        private Runnable mStart;
+
+        ScheduledRequest(RequestPriority priority, long sequence, Runnable start) {
+            super(priority, sequence);
+            this.mStart = start;
+        }
+    }
+}
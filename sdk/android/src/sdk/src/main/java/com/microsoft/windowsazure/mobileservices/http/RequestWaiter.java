@@ -0,0 +1,62 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+ 
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+ 
+     http://www.apache.org/licenses/LICENSE-2.0
+ 
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ 
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+
+/**
+ * RequestWaiter.java
+ */
+package com.microsoft.windowsazure.mobileservices.http;
+
+/**
+ * A request waiting for a free slot. Waiters are ordered by priority, and by
+ * arrival order within a priority.
+ */
+class RequestWaiter implements Comparable<RequestWaiter> {
+    private RequestPriority mPriority;
+    private long mSequence;
+
+    /**
+     * Constructor for RequestWaiter
+     *
+     * @param priority the priority of the request
+     * @param sequence the arrival order of the request
+     */
+    RequestWaiter(RequestPriority priority, long sequence) {
+        this.mPriority = priority != null ? priority : RequestPriority.Interactive;
+        this.mSequence = sequence;
+    }
+
+    /**
+     * Returns the priority of the request
+     */
+    RequestPriority getPriority() {
+        return this.mPriority;
+    }
+
+    @Override
+    public int compareTo(RequestWaiter another) {
+        int result = this.mPriority.compareTo(another.mPriority);
+
+        if (result == 0) {
+            result = this.mSequence < another.mSequence ? -1 : (this.mSequence == another.mSequence ? 0 : 1);
+        }
+
+        return result;
+    }
+}
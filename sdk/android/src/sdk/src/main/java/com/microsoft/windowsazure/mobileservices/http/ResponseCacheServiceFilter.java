@@ -0,0 +1,628 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+ 
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+ 
+     http://www.apache.org/licenses/LICENSE-2.0
+ 
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ 
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+
+/**
+ * ResponseCacheServiceFilter.java
+ */
+package com.microsoft.windowsazure.mobileservices.http;
+
+import android.net.Uri;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.microsoft.windowsazure.mobileservices.MobileServiceClient;
+import com.microsoft.windowsazure.mobileservices.MobileServiceException;
+
+import org.apache.http.Header;
+import org.apache.http.HttpStatus;
+import org.apache.http.HttpVersion;
+import org.apache.http.ProtocolVersion;
+import org.apache.http.StatusLine;
+import org.apache.http.message.BasicHeader;
+import org.apache.http.message.BasicStatusLine;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ServiceFilter that keeps the table GET responses carrying an ETag in a
+ * bounded LRU cache, in memory and optionally on disk. Cached requests are
+ * revalidated with If-None-Match, and a 304 Not Modified response is answered
+ * with the cached content. Any other request sent to a table discards the
+ * responses cached for that table.
+ * <p/>
+ * Add it to the client with MobileServiceClient.withFilter.
+ */
+public class ResponseCacheServiceFilter implements ServiceFilter {
+
+    private static final String TABLES_PATH = "tables";
+
+    private static final String ETAG_HEADER = "ETag";
+
+    private static final String IF_NONE_MATCH_HEADER = "If-None-Match";
+
+    private static final String IF_MATCH_HEADER = "If-Match";
+
+    private static final String X_ZUMO_AUTH_HEADER = "X-ZUMO-AUTH";
+
+    private static final int DISK_FORMAT_VERSION = 1;
+
+    /**
+     * Maximum size, in bytes, of the memory cache and of the disk cache
+     */
+    private long mMaxSize;
+
+    /**
+     * Directory of the disk cache, or null
+     */
+    private File mDirectory;
+
+    /**
+     * Cached entries by request key, in access order
+     */
+    private LinkedHashMap<String, CacheEntry> mEntries;
+
+    private long mSize;
+
+    /**
+     * Number of invalidations by table, used to discard responses to
+     * requests started before an invalidation
+     */
+    private Map<String, Long> mTableGenerations;
+
+    private AtomicLong mHitCount;
+
+    /**
+     * Constructor for an in-memory ResponseCacheServiceFilter
+     *
+     * @param maxSize the maximum size of the cache, in bytes
+     */
+    public ResponseCacheServiceFilter(long maxSize) {
+        this(maxSize, null);
+    }
+
+    /**
+     * Constructor for ResponseCacheServiceFilter
+     *
+     * @param maxSize   the maximum size of the memory cache and of the disk
+     *                  cache, in bytes
+     * @param directory the directory of the disk cache, or null to keep
+     *                  responses in memory only
+     */
+    public ResponseCacheServiceFilter(long maxSize, File directory) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize must be greater than zero.");
+        }
+
+        this.mMaxSize = maxSize;
+        this.mDirectory = directory;
+        this.mEntries = new LinkedHashMap<String, CacheEntry>(16, 0.75f, true);
+        this.mSize = 0;
+        this.mTableGenerations = new HashMap<String, Long>();
+        this.mHitCount = new AtomicLong();
+    }
+
+    private static String getTableName(String url) {
+        if (url == null) {
+            return null;
+        }
+
+        List<String> segments = Uri.parse(url).getPathSegments();
+
+        for (int i = 0; i < segments.size() - 1; i++) {
+            if (segments.get(i).equalsIgnoreCase(TABLES_PATH)) {
+                return segments.get(i + 1).toLowerCase(Locale.getDefault());
+            }
+        }
+
+        return null;
+    }
+
+    private static String getHeaderValue(Header[] headers, String headerName) {
+        if (headers != null) {
+            for (Header header : headers) {
+                if (header.getName().equalsIgnoreCase(headerName)) {
+                    return header.getValue();
+                }
+            }
+        }
+
+        return null;
+    }
+
+    private static String hash(String value) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            byte[] bytes = digest.digest(value.getBytes(MobileServiceClient.UTF8_ENCODING));
+
+            StringBuilder result = new StringBuilder();
+
+            for (byte b : bytes) {
+                result.append(String.format("%02x", b));
+            }
+
+            return result.toString();
+        } catch (NoSuchAlgorithmException e) {
+            return String.format("%08x", value.hashCode());
+        } catch (UnsupportedEncodingException e) {
+            return String.format("%08x", value.hashCode());
+        }
+    }
+
+    private static void deleteDirectory(File directory) {
+        File[] files = directory.listFiles();
+
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+
+        directory.delete();
+    }
+
+    @Override
+    public ListenableFuture<ServiceFilterResponse> handleRequest(ServiceFilterRequest request, NextServiceFilterCallback nextServiceFilterCallback) {
+        final String tableName = getTableName(request.getUrl());
+
+        if (tableName == null) {
+            return nextServiceFilterCallback.onNext(request);
+        }
+
+        if (!"GET".equalsIgnoreCase(request.getMethod())) {
+            invalidate(tableName);
+
+            ListenableFuture<ServiceFilterResponse> future = nextServiceFilterCallback.onNext(request);
+
+            // Invalidate again, in case a query started while the change was
+            // in progress
+            Futures.addCallback(future, new FutureCallback<ServiceFilterResponse>() {
+                @Override
+                public void onFailure(Throwable exception) {
+                    invalidate(tableName);
+                }
+
+                @Override
+                public void onSuccess(ServiceFilterResponse response) {
+                    invalidate(tableName);
+                }
+            });
+
+            return future;
+        }
+
+        Header[] requestHeaders = request.getHeaders();
+
+        if (getHeaderValue(requestHeaders, IF_NONE_MATCH_HEADER) != null || getHeaderValue(requestHeaders, IF_MATCH_HEADER) != null) {
+            return nextServiceFilterCallback.onNext(request);
+        }
+
+        final String key = request.getUrl() + "\n" + getHeaderValue(requestHeaders, X_ZUMO_AUTH_HEADER);
+        final long generation = getGeneration(tableName);
+        final CacheEntry entry = get(key, tableName);
+
+        if (entry != null) {
+            request.addHeader(IF_NONE_MATCH_HEADER, entry.mETag);
+        }
+
+        final SettableFuture<ServiceFilterResponse> result = SettableFuture.create();
+
+        Futures.addCallback(nextServiceFilterCallback.onNext(request), new FutureCallback<ServiceFilterResponse>() {
+            @Override
+            public void onFailure(Throwable exception) {
+                ServiceFilterResponse response = MobileServiceException.getServiceResponse(exception);
+
+                if (entry != null && response != null && response.getStatus() != null
+                        && response.getStatus().getStatusCode() == HttpStatus.SC_NOT_MODIFIED) {
+                    mHitCount.incrementAndGet();
+                    result.set(entry.mResponse);
+                } else {
+                    result.setException(exception);
+                }
+            }
+
+            @Override
+            public void onSuccess(ServiceFilterResponse response) {
+                String etag = getHeaderValue(response.getHeaders(), ETAG_HEADER);
+
+                if (etag != null) {
+                    put(key, tableName, generation, etag, response);
+                } else if (entry != null) {
+                    remove(key, tableName);
+                }
+
+                result.set(response);
+            }
+        });
+
+        return result;
+    }
+
+    /**
+     * Returns the number of requests answered from the cache
+     */
+    public long getHitCount() {
+        return this.mHitCount.get();
+    }
+
+    /**
+     * Discards every cached response
+     */
+    public synchronized void clear() {
+        for (String tableName : new ArrayList<String>(this.mTableGenerations.keySet())) {
+            invalidate(tableName);
+        }
+
+        this.mEntries.clear();
+        this.mSize = 0;
+
+        if (this.mDirectory != null) {
+            File[] tableDirectories = this.mDirectory.listFiles();
+
+            if (tableDirectories != null) {
+                for (File tableDirectory : tableDirectories) {
+                    deleteDirectory(tableDirectory);
+                }
+            }
+        }
+    }
+
+    private synchronized long getGeneration(String tableName) {
+        Long generation = this.mTableGenerations.get(tableName);
+
+        return generation != null ? generation : 0;
+    }
+
+    private synchronized void invalidate(String tableName) {
+        this.mTableGenerations.put(tableName, getGeneration(tableName) + 1);
+
+        Iterator<CacheEntry> iterator = this.mEntries.values().iterator();
+
+        while (iterator.hasNext()) {
+            CacheEntry entry = iterator.next();
+
+            if (entry.mTableName.equals(tableName)) {
+                this.mSize -= entry.mSize;
+                iterator.remove();
+            }
+        }
+
+        if (this.mDirectory != null) {
+            deleteDirectory(new File(this.mDirectory, hash(tableName)));
+        }
+    }
+
+    private synchronized CacheEntry get(String key, String tableName) {
+        CacheEntry entry = this.mEntries.get(key);
+
+        if (entry == null && this.mDirectory != null) {
+            entry = readEntry(getFile(key, tableName), key);
+
+            if (entry != null) {
+                addEntry(key, entry);
+            }
+        }
+
+        return entry;
+    }
+
+    private synchronized void put(String key, String tableName, long generation, String etag, ServiceFilterResponse response) {
+        if (generation != getGeneration(tableName)) {
+            return;
+        }
+
+        CacheEntry entry = new CacheEntry(key, tableName, etag, response);
+
+        if (entry.mSize > this.mMaxSize) {
+            remove(key, tableName);
+            return;
+        }
+
+        addEntry(key, entry);
+
+        if (this.mDirectory != null) {
+            writeEntry(getFile(key, tableName), key, entry);
+            trimDirectory();
+        }
+    }
+
+    private synchronized void remove(String key, String tableName) {
+        CacheEntry entry = this.mEntries.remove(key);
+
+        if (entry != null) {
+            this.mSize -= entry.mSize;
+        }
+
+        if (this.mDirectory != null) {
+            getFile(key, tableName).delete();
+        }
+    }
+
+    private void addEntry(String key, CacheEntry entry) {
+        CacheEntry previous = this.mEntries.put(key, entry);
+
+        if (previous != null) {
+            this.mSize -= previous.mSize;
+        }
+
+        this.mSize += entry.mSize;
+
+        Iterator<CacheEntry> iterator = this.mEntries.values().iterator();
+
+        while (this.mSize > this.mMaxSize && iterator.hasNext()) {
+            this.mSize -= iterator.next().mSize;
+            iterator.remove();
+        }
+    }
+
+    private File getFile(String key, String tableName) {
+        return new File(new File(this.mDirectory, hash(tableName)), hash(key));
+    }
+
+    private CacheEntry readEntry(File file, String key) {
+        if (!file.exists()) {
+            return null;
+        }
+
+        DataInputStream in = null;
+
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+
+            if (in.readInt() != DISK_FORMAT_VERSION || !in.readUTF().equals(key)) {
+                return null;
+            }
+
+            String tableName = in.readUTF();
+            String etag = in.readUTF();
+
+            ProtocolVersion protocolVersion = new ProtocolVersion(in.readUTF(), in.readInt(), in.readInt());
+            StatusLine status = new BasicStatusLine(protocolVersion, in.readInt(), in.readUTF());
+
+            Header[] headers = new Header[in.readInt()];
+
+            for (int i = 0; i < headers.length; i++) {
+                headers[i] = new BasicHeader(in.readUTF(), in.readUTF());
+            }
+
+            int contentLength = in.readInt();
+            byte[] content = null;
+
+            if (contentLength >= 0) {
+                content = new byte[contentLength];
+                in.readFully(content);
+            }
+
+            file.setLastModified(System.currentTimeMillis());
+
+            return new CacheEntry(key, tableName, etag, new CachedResponse(status, headers, content));
+        } catch (IOException e) {
+            file.delete();
+            return null;
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                }
+            }
+        }
+    }
+
+    private void writeEntry(File file, String key, CacheEntry entry) {
+        file.getParentFile().mkdirs();
+
+        DataOutputStream out = null;
+
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+
+            out.writeInt(DISK_FORMAT_VERSION);
+            out.writeUTF(key);
+            out.writeUTF(entry.mTableName);
+            out.writeUTF(entry.mETag);
+
+            StatusLine status = entry.mResponse.getStatus();
+            out.writeUTF(status.getProtocolVersion().getProtocol());
+            out.writeInt(status.getProtocolVersion().getMajor());
+            out.writeInt(status.getProtocolVersion().getMinor());
+            out.writeInt(status.getStatusCode());
+            out.writeUTF(status.getReasonPhrase() != null ? status.getReasonPhrase() : "");
+
+            Header[] headers = entry.mResponse.getHeaders();
+            out.writeInt(headers.length);
+
+            for (Header header : headers) {
+                out.writeUTF(header.getName());
+                out.writeUTF(header.getValue() != null ? header.getValue() : "");
+            }
+
+            byte[] content = entry.mResponse.getRawContent();
+
+            if (content != null) {
+                out.writeInt(content.length);
+                out.write(content);
+            } else {
+                out.writeInt(-1);
+            }
+        } catch (IOException e) {
+            file.delete();
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    file.delete();
+                }
+            }
+        }
+    }
+
+    private void trimDirectory() {
+        File[] tableDirectories = this.mDirectory.listFiles();
+
+        if (tableDirectories == null) {
+            return;
+        }
+
+        List<File> files = new ArrayList<File>();
+        long size = 0;
+
+        for (File tableDirectory : tableDirectories) {
+            File[] tableFiles = tableDirectory.listFiles();
+
+            if (tableFiles != null) {
+                for (File file : tableFiles) {
+                    files.add(file);
+                    size += file.length();
+                }
+            }
+        }
+
+        if (size <= this.mMaxSize) {
+            return;
+        }
+
+        File[] sortedFiles = files.toArray(new File[files.size()]);
+
+        Arrays.sort(sortedFiles, new Comparator<File>() {
+            @Override
+            public int compare(File lhs, File rhs) {
+                long lhsModified = lhs.lastModified();
+                long rhsModified = rhs.lastModified();
+
+                return lhsModified < rhsModified ? -1 : (lhsModified == rhsModified ? 0 : 1);
+            }
+        });
+
+        for (int i = 0; i < sortedFiles.length && size > this.mMaxSize; i++) {
+            size -= sortedFiles[i].length();
+            sortedFiles[i].delete();
+        }
+    }
+
+    /**
+     * A cached response and its ETag
+     */
+    private static class CacheEntry {
+        private String mTableName;
+        private String mETag;
+        private CachedResponse mResponse;
+        private long mSize;
+
+        private CacheEntry(String key, String tableName, String etag, ServiceFilterResponse response) {
+            this.mTableName = tableName;
+            this.mETag = etag;
+            this.mResponse = response instanceof CachedResponse ? (CachedResponse) response : new CachedResponse(response);
+
+            long size = (key.length() + etag.length()) * 2;
+
+            for (Header header : this.mResponse.getHeaders()) {
+                size += (header.getName().length() + (header.getValue() != null ? header.getValue().length() : 0)) * 2;
+            }
+
+            if (this.mResponse.getRawContent() != null) {
+                size += this.mResponse.getRawContent().length;
+            }
+
+            this.mSize = size;
+        }
+    }
+
+    /**
+     * Copy of a response that does not hold the underlying HTTP connection
+     */
+    private static class CachedResponse implements ServiceFilterResponse {
+        private StatusLine mStatus;
+        private Header[] mHeaders;
+        private byte[] mContent;
+
+        private CachedResponse(ServiceFilterResponse response) {
+            StatusLine status = response.getStatus();
+
+            this.mStatus = status != null ? new BasicStatusLine(status.getProtocolVersion(), status.getStatusCode(), status.getReasonPhrase())
+                    : new BasicStatusLine(HttpVersion.HTTP_1_1, HttpStatus.SC_OK, "OK");
+
+            Header[] headers = response.getHeaders();
+            this.mHeaders = new Header[headers != null ? headers.length : 0];
+
+            for (int i = 0; i < this.mHeaders.length; i++) {
+                this.mHeaders[i] = new BasicHeader(headers[i].getName(), headers[i].getValue());
+            }
+
+            this.mContent = response.getRawContent();
+        }
+
+        private CachedResponse(StatusLine status, Header[] headers, byte[] content) {
+            this.mStatus = status;
+            this.mHeaders = headers;
+            this.mContent = content;
+        }
+
+        @Override
+        public Header[] getHeaders() {
+            return this.mHeaders.clone();
+        }
+
+        @Override
+        public String getContent() {
+            if (this.mContent != null) {
+                try {
+                    return new String(this.mContent, MobileServiceClient.UTF8_ENCODING);
+                } catch (UnsupportedEncodingException e) {
+                    return null;
+                }
+            } else {
+                return null;
+            }
+        }
+
+        @Override
+        public byte[] getRawContent() {
+            return this.mContent;
+        }
+
+        @Override
+        public StatusLine getStatus() {
+            return this.mStatus;
+        }
+    }
+}
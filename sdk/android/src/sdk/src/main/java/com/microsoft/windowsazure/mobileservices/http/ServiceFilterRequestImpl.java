@@ -23,26 +23,31 @@ See the Apache Version 2.0 License for specific language governing permissions a
  */
 package com.microsoft.windowsazure.mobileservices.http;
 
-import android.net.http.AndroidHttpClient;
-
 import com.microsoft.windowsazure.mobileservices.MobileServiceClient;
 
 import org.apache.http.Header;
-import org.apache.http.HttpResponse;
 import org.apache.http.client.methods.HttpEntityEnclosingRequestBase;
 import org.apache.http.client.methods.HttpRequestBase;
 import org.apache.http.entity.ByteArrayEntity;
 import org.apache.http.entity.StringEntity;
-import org.apache.http.protocol.HTTP;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * ServiceFilterRequest implementation
  */
-public class ServiceFilterRequestImpl implements ServiceFilterRequest {
+public class ServiceFilterRequestImpl implements PrioritizedServiceFilterRequest, AbortableServiceFilterRequest {
+
+    private static final String CONTENT_ENCODING_HEADER = "Content-Encoding";
+
+    private static final String GZIP_CONTENT_ENCODING = "gzip";
+
+    private static final String CONTENT_TYPE_HEADER = "Content-Type";
 
     /**
      * The request to execute
@@ -54,7 +59,25 @@ public class ServiceFilterRequestImpl implements ServiceFilterRequest {
      */
     private byte[] mContent;
 
-    private AndroidHttpClientFactory mAndroidHttpClientFactory;
+    /**
+     * The transport used to send the request
+     */
+    private HttpTransport mTransport;
+
+    /**
+     * The policy used to compress the request content, or null
+     */
+    private RequestCompressionPolicy mCompressionPolicy;
+
+    /**
+     * Indicates if the entity of the request holds the compressed content
+     */
+    private boolean mCompressed;
+
+    /**
+     * The request priority
+     */
+    private RequestPriority mPriority = RequestPriority.Interactive;
 
     /**
      * @param request
@@ -69,23 +92,81 @@ public class ServiceFilterRequestImpl implements ServiceFilterRequest {
      *                AndroidHttpClient objects
      */
     public ServiceFilterRequestImpl(HttpRequestBase request, AndroidHttpClientFactory factory) {
+        this(request, factory, null);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param request           The request to use
+     * @param factory           The AndroidHttpClientFactory instance used to
+     *                          create AndroidHttpClient objects
+     * @param compressionPolicy The policy used to compress the request
+     *                          content, or null
+     */
+    public ServiceFilterRequestImpl(HttpRequestBase request, AndroidHttpClientFactory factory, RequestCompressionPolicy compressionPolicy) {
+        this(request, new AndroidHttpClientTransport(factory), compressionPolicy);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param request   The request to use
+     * @param transport The transport used to send the request
+     */
+    public ServiceFilterRequestImpl(HttpRequestBase request, HttpTransport transport) {
+        this(request, transport, null);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param request           The request to use
+     * @param transport         The transport used to send the request
+     * @param compressionPolicy The policy used to compress the request
+     *                          content, or null
+     */
+    public ServiceFilterRequestImpl(HttpRequestBase request, HttpTransport transport, RequestCompressionPolicy compressionPolicy) {
+        if (transport == null) {
+            throw new IllegalArgumentException("transport cannot be null");
+        }
+
         mRequest = request;
-        mAndroidHttpClientFactory = factory;
+        mTransport = transport;
+        mCompressionPolicy = compressionPolicy;
     }
 
-    @Override
-    public ServiceFilterResponse execute() throws Exception {
-        // Execute request
-        AndroidHttpClient client = mAndroidHttpClientFactory.createAndroidHttpClient();
-        client.getParams().setParameter(HTTP.USER_AGENT, MobileServiceConnection.getUserAgent());
+    private static byte[] gzip(byte[] content) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(content.length / 2);
+        GZIPOutputStream gzipOut = new GZIPOutputStream(out);
 
         try {
-            final HttpResponse response = client.execute(mRequest);
-            ServiceFilterResponse serviceFilterResponse = new ServiceFilterResponseImpl(response);
-            return serviceFilterResponse;
+            gzipOut.write(content);
         } finally {
-            client.close();
+            gzipOut.close();
         }
+
+        return out.toByteArray();
+    }
+
+    @Override
+    public ServiceFilterResponse execute() throws Exception {
+        // Compress the content just before sending it, so filters always
+        // see the original content
+        applyCompression();
+
+        // Execute request
+        return mTransport.execute(mRequest);
+    }
+
+    @Override
+    public void abort() {
+        mRequest.abort();
+    }
+
+    @Override
+    public boolean isAborted() {
+        return mRequest.isAborted();
     }
 
     @Override
@@ -107,6 +188,7 @@ public class ServiceFilterRequestImpl implements ServiceFilterRequest {
     public void setContent(byte[] content) throws Exception {
         ((HttpEntityEnclosingRequestBase) mRequest).setEntity(new ByteArrayEntity(content));
         mContent = content;
+        removeCompression();
     }
 
     @Override
@@ -127,6 +209,7 @@ public class ServiceFilterRequestImpl implements ServiceFilterRequest {
     public void setContent(String content) throws UnsupportedEncodingException {
         ((HttpEntityEnclosingRequestBase) mRequest).setEntity(new StringEntity(content, MobileServiceClient.UTF8_ENCODING));
         mContent = content.getBytes(MobileServiceClient.UTF8_ENCODING);
+        removeCompression();
     }
 
     @Override
@@ -149,4 +232,50 @@ public class ServiceFilterRequestImpl implements ServiceFilterRequest {
     public String getMethod() {
         return mRequest.getMethod();
     }
-}
\ No newline at end of file
+
+    @Override
+    public RequestPriority getPriority() {
+        return mPriority;
+    }
+
+    @Override
+    public void setPriority(RequestPriority priority) {
+        if (priority == null) {
+            throw new IllegalArgumentException("priority cannot be null");
+        }
+
+        mPriority = priority;
+    }
+
+    private void applyCompression() throws IOException {
+        if (mCompressionPolicy == null || mCompressed || mContent == null || !(mRequest instanceof HttpEntityEnclosingRequestBase)
+                || mRequest.containsHeader(CONTENT_ENCODING_HEADER)) {
+            return;
+        }
+
+        Header contentType = mRequest.getFirstHeader(CONTENT_TYPE_HEADER);
+
+        if (!mCompressionPolicy.shouldCompress(mRequest.getMethod(), mRequest.getURI().getPath(), contentType != null ? contentType.getValue() : null,
+                mContent.length)) {
+            return;
+        }
+
+        byte[] compressedContent = gzip(mContent);
+
+        // Incompressible content is sent as is
+        if (compressedContent.length >= mContent.length) {
+            return;
+        }
+
+        ((HttpEntityEnclosingRequestBase) mRequest).setEntity(new ByteArrayEntity(compressedContent));
+        mRequest.addHeader(CONTENT_ENCODING_HEADER, GZIP_CONTENT_ENCODING);
+        mCompressed = true;
+    }
+
+    private void removeCompression() {
+        if (mCompressed) {
+            mRequest.removeHeaders(CONTENT_ENCODING_HEADER);
+            mCompressed = false;
+        }
+    }
+}
@@ -0,0 +1,204 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+
+/**
+ * BulkOperationExecutor.java
+ */
+package com.microsoft.windowsazure.mobileservices.table;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.microsoft.windowsazure.mobileservices.MobileServiceException;
+import com.microsoft.windowsazure.mobileservices.http.ServiceFilterResponse;
+
+import org.apache.http.HttpStatus;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+
+/**
+ * Executes a table operation for each item of a list, with a bounded number
+ * of operations in flight. A new operation is started as soon as one
+ * completes. No operation is started after one fails with an authentication
+ * error, since the next ones would fail as well.
+ *
+ * @param <I> the type of the items
+ * @param <O> the type of the results
+ */
+abstract class BulkOperationExecutor<I, O> {
+
+    private List<I> mItems;
+
+    private int mMaxConcurrency;
+
+    private List<BulkOperationResult<O>> mResults;
+
+    private SettableFuture<List<BulkOperationResult<O>>> mFuture;
+
+    private int mNextIndex;
+
+    private int mInFlight;
+
+    private boolean mStopped;
+
+    private boolean mDone;
+
+    /**
+     * True while a thread is starting operations. Operations completed
+     * meanwhile leave the free slots to that thread, so that operations
+     * completing synchronously do not recurse.
+     */
+    private boolean mStarting;
+
+    /**
+     * Constructor for BulkOperationExecutor
+     *
+     * @param items          the items
+     * @param maxConcurrency the maximum number of operations in flight
+     */
+    BulkOperationExecutor(List<I> items, int maxConcurrency) {
+        if (items == null) {
+            throw new IllegalArgumentException("items cannot be null.");
+        }
+
+        if (maxConcurrency < 1) {
+            throw new IllegalArgumentException("maxConcurrency must be greater than zero.");
+        }
+
+        this.mItems = new ArrayList<I>(items);
+        this.mMaxConcurrency = maxConcurrency;
+        this.mResults = new ArrayList<BulkOperationResult<O>>(items.size());
+
+        for (int i = 0; i < items.size(); i++) {
+            this.mResults.add(null);
+        }
+
+        this.mFuture = SettableFuture.create();
+    }
+
+    private static boolean isAuthenticationError(Throwable error) {
+        ServiceFilterResponse response = MobileServiceException.getServiceResponse(error);
+
+        return response != null && response.getStatus() != null && response.getStatus().getStatusCode() == HttpStatus.SC_UNAUTHORIZED;
+    }
+
+    /**
+     * Executes the operations
+     *
+     * @return A ListenableFuture that is done when every operation has
+     * completed, returning the results in the order of the items
+     */
+    ListenableFuture<List<BulkOperationResult<O>>> execute() {
+        if (this.mItems.isEmpty()) {
+            this.mFuture.set(this.mResults);
+        } else {
+            startOperations();
+        }
+
+        return this.mFuture;
+    }
+
+    /**
+     * Executes the operation of an item
+     *
+     * @param item the item
+     * @return A ListenableFuture for the result
+     */
+    protected abstract ListenableFuture<O> executeOperation(I item);
+
+    private void startOperations() {
+        synchronized (this) {
+            if (this.mStarting) {
+                return;
+            }
+
+            this.mStarting = true;
+        }
+
+        while (true) {
+            final int index;
+
+            synchronized (this) {
+                if (this.mStopped || this.mNextIndex >= this.mItems.size() || this.mInFlight >= this.mMaxConcurrency) {
+                    this.mStarting = false;
+                    return;
+                }
+
+                index = this.mNextIndex++;
+                this.mInFlight++;
+            }
+
+            ListenableFuture<O> future;
+
+            try {
+                future = executeOperation(this.mItems.get(index));
+            } catch (Throwable throwable) {
+                SettableFuture<O> failedFuture = SettableFuture.create();
+                failedFuture.setException(throwable);
+                future = failedFuture;
+            }
+
+            Futures.addCallback(future, new FutureCallback<O>() {
+                @Override
+                public void onFailure(Throwable throwable) {
+                    onOperationCompleted(index, new BulkOperationResult<O>(null, throwable));
+                }
+
+                @Override
+                public void onSuccess(O result) {
+                    onOperationCompleted(index, new BulkOperationResult<O>(result, null));
+                }
+            });
+        }
+    }
+
+    private void onOperationCompleted(int index, BulkOperationResult<O> result) {
+        boolean done;
+
+        synchronized (this) {
+            this.mResults.set(index, result);
+            this.mInFlight--;
+
+            if (!result.isSuccessful() && isAuthenticationError(result.getError())) {
+                this.mStopped = true;
+            }
+
+            done = !this.mDone && this.mInFlight == 0 && (this.mStopped || this.mNextIndex >= this.mItems.size());
+
+            if (done) {
+                this.mDone = true;
+
+                for (int i = this.mNextIndex; i < this.mItems.size(); i++) {
+                    this.mResults.set(i, new BulkOperationResult<O>(null, new CancellationException(
+                            "The operation was not sent because a previous one failed with an authentication error.")));
+                }
+            }
+        }
+
+        if (done) {
+            this.mFuture.set(this.mResults);
+        } else {
+            startOperations();
+        }
+    }
+}
@@ -0,0 +1,70 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+
+/**
+ * BulkOperationResult.java
+ */
+package com.microsoft.windowsazure.mobileservices.table;
+
+/**
+ * Result of one item of a bulk table operation
+ *
+ * @param <E> the type of the item
+ */
+public class BulkOperationResult<E> {
+
+    private E mItem;
+
+    private Throwable mError;
+
+    /**
+     * Constructor for BulkOperationResult
+     *
+     * @param item  the item returned by the operation
+     * @param error the error of the operation, or null if it succeeded
+     */
+    BulkOperationResult(E item, Throwable error) {
+        this.mItem = item;
+        this.mError = error;
+    }
+
+    /**
+     * Returns the item returned by the operation, or null if it failed
+     */
+    public E getItem() {
+        return this.mItem;
+    }
+
+    /**
+     * Returns the error of the operation, or null if it succeeded. The
+     * operations not sent because a previous one failed with an
+     * authentication error fail with a CancellationException.
+     */
+    public Throwable getError() {
+        return this.mError;
+    }
+
+    /**
+     * Indicates if the operation succeeded
+     */
+    public boolean isSuccessful() {
+        return this.mError == null;
+    }
+}
@@ -26,6 +26,7 @@ package com.microsoft.windowsazure.mobileservices.table;
 import android.net.Uri;
 import android.util.Pair;
 
+import com.google.common.base.Function;
 import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
@@ -37,10 +38,10 @@ import com.google.gson.JsonParser;
 import com.microsoft.windowsazure.mobileservices.MobileServiceClient;
 import com.microsoft.windowsazure.mobileservices.MobileServiceException;
 import com.microsoft.windowsazure.mobileservices.MobileServiceFeatures;
+import com.microsoft.windowsazure.mobileservices.MobileServiceFutures;
 import com.microsoft.windowsazure.mobileservices.http.MobileServiceConnection;
 import com.microsoft.windowsazure.mobileservices.http.MobileServiceHttpClient;
-import com.microsoft.windowsazure.mobileservices.http.RequestAsyncTask;
-import com.microsoft.windowsazure.mobileservices.http.ServiceFilterRequest;
+import com.microsoft.windowsazure.mobileservices.http.RequestPriority;
 import com.microsoft.windowsazure.mobileservices.http.ServiceFilterRequestImpl;
 import com.microsoft.windowsazure.mobileservices.http.ServiceFilterResponse;
 import com.microsoft.windowsazure.mobileservices.table.query.ExecutableJsonQuery;
@@ -171,6 +172,35 @@ public final class MobileServiceJsonTable extends MobileServiceTableBase {
         return executeUrlQuery(nextLink, mFeatures.clone());
     }
 
+    /**
+     * Iterates over the rows returned by a query, loading them page by page
+     * and prefetching the next page in the background
+     *
+     * @param query The query used to retrieve the rows
+     * @return The iterator, to use on a background thread
+     */
+    public MobileServiceQueryIterator<JsonObject> iterate(Query query) {
+        return iterate(query, MobileServiceQueryIterator.DEFAULT_PAGE_SIZE, MobileServiceQueryIterator.DEFAULT_PREFETCH_DEPTH);
+    }
+
+    /**
+     * Iterates over the rows returned by a query, loading them page by page
+     *
+     * @param query         The query used to retrieve the rows
+     * @param pageSize      The number of rows requested per page
+     * @param prefetchDepth The number of pages loaded ahead of the page being
+     *                      read
+     * @return The iterator, to use on a background thread
+     */
+    public MobileServiceQueryIterator<JsonObject> iterate(Query query, int pageSize, int prefetchDepth) {
+        return new MobileServiceQueryIterator<JsonObject>(this, query, pageSize, prefetchDepth, new Function<JsonElement, JsonObject>() {
+            @Override
+            public JsonObject apply(JsonElement element) {
+                return element.getAsJsonObject();
+            }
+        });
+    }
+
     /**
      * Make the request to the mobile service witht the query URL
      *
@@ -211,6 +241,8 @@ public final class MobileServiceJsonTable extends MobileServiceTableBase {
             }
         });
 
+        MobileServiceFutures.propagateCancellation(future, internalFuture);
+
         return future;
     }
 
@@ -421,6 +453,8 @@ public final class MobileServiceJsonTable extends MobileServiceTableBase {
             }
         });
 
+        MobileServiceFutures.propagateCancellation(future, internalFuture);
+
         return future;
     }
 
@@ -783,6 +817,99 @@ public final class MobileServiceJsonTable extends MobileServiceTableBase {
         });
     }
 
+    /**
+     * Inserts a list of JsonObjects into a Mobile Service table, with at most
+     * DEFAULT_BULK_CONCURRENCY requests in flight
+     *
+     * @param elements The JsonObjects to insert
+     * @return A ListenableFuture that is done when every element has been
+     * processed, returning the result of each element in input order
+     */
+    public ListenableFuture<List<BulkOperationResult<JsonObject>>> insertAll(List<JsonObject> elements) {
+        return this.insertAll(elements, DEFAULT_BULK_CONCURRENCY);
+    }
+
+    /**
+     * Inserts a list of JsonObjects into a Mobile Service table. The elements
+     * are inserted in parallel, and no request is sent after one fails with an
+     * authentication error.
+     *
+     * @param elements       The JsonObjects to insert
+     * @param maxConcurrency The maximum number of requests in flight
+     * @return A ListenableFuture that is done when every element has been
+     * processed, returning the result of each element in input order
+     */
+    public ListenableFuture<List<BulkOperationResult<JsonObject>>> insertAll(List<JsonObject> elements, int maxConcurrency) {
+        return new BulkOperationExecutor<JsonObject, JsonObject>(elements, maxConcurrency) {
+            @Override
+            protected ListenableFuture<JsonObject> executeOperation(JsonObject element) {
+                return insert(element, (List<Pair<String, String>>) null);
+            }
+        }.execute();
+    }
+
+    /**
+     * Updates a list of elements from a Mobile Service table, with at most
+     * DEFAULT_BULK_CONCURRENCY requests in flight
+     *
+     * @param elements The JsonObjects to update
+     * @return A ListenableFuture that is done when every element has been
+     * processed, returning the result of each element in input order
+     */
+    public ListenableFuture<List<BulkOperationResult<JsonObject>>> updateAll(List<JsonObject> elements) {
+        return this.updateAll(elements, DEFAULT_BULK_CONCURRENCY);
+    }
+
+    /**
+     * Updates a list of elements from a Mobile Service table. The elements
+     * are updated in parallel, and no request is sent after one fails with an
+     * authentication error.
+     *
+     * @param elements       The JsonObjects to update
+     * @param maxConcurrency The maximum number of requests in flight
+     * @return A ListenableFuture that is done when every element has been
+     * processed, returning the result of each element in input order
+     */
+    public ListenableFuture<List<BulkOperationResult<JsonObject>>> updateAll(List<JsonObject> elements, int maxConcurrency) {
+        return new BulkOperationExecutor<JsonObject, JsonObject>(elements, maxConcurrency) {
+            @Override
+            protected ListenableFuture<JsonObject> executeOperation(JsonObject element) {
+                return update(element, (List<Pair<String, String>>) null);
+            }
+        }.execute();
+    }
+
+    /**
+     * Deletes a list of elements from a Mobile Service table, with at most
+     * DEFAULT_BULK_CONCURRENCY requests in flight
+     *
+     * @param elements The JsonObjects to delete
+     * @return A ListenableFuture that is done when every element has been
+     * processed, returning the result of each element in input order
+     */
+    public ListenableFuture<List<BulkOperationResult<Void>>> deleteAll(List<JsonObject> elements) {
+        return this.deleteAll(elements, DEFAULT_BULK_CONCURRENCY);
+    }
+
+    /**
+     * Deletes a list of elements from a Mobile Service table. The elements
+     * are deleted in parallel, and no request is sent after one fails with an
+     * authentication error.
+     *
+     * @param elements       The JsonObjects to delete
+     * @param maxConcurrency The maximum number of requests in flight
+     * @return A ListenableFuture that is done when every element has been
+     * processed, returning the result of each element in input order
+     */
+    public ListenableFuture<List<BulkOperationResult<Void>>> deleteAll(List<JsonObject> elements, int maxConcurrency) {
+        return new BulkOperationExecutor<JsonObject, Void>(elements, maxConcurrency) {
+            @Override
+            protected ListenableFuture<Void> executeOperation(JsonObject element) {
+                return delete(element, (List<Pair<String, String>>) null);
+            }
+        }.execute();
+    }
+
     /**
      * Undelete an element from a Mobile Service Table
      *
@@ -949,36 +1076,43 @@ public final class MobileServiceJsonTable extends MobileServiceTableBase {
     private ListenableFuture<Pair<JsonElement, ServiceFilterResponse>> executeGetRecords(final String url, EnumSet<MobileServiceFeatures> features) {
         final SettableFuture<Pair<JsonElement, ServiceFilterResponse>> future = SettableFuture.create();
 
-        ServiceFilterRequest request = new ServiceFilterRequestImpl(new HttpGet(url), mClient.getAndroidHttpClientFactory());
+        ServiceFilterRequestImpl request = new ServiceFilterRequestImpl(new HttpGet(url), mClient.getHttpTransport());
         String featuresHeader = MobileServiceFeatures.featuresToString(features);
         if (featuresHeader != null) {
             request.addHeader(MobileServiceHttpClient.X_ZUMO_FEATURES, featuresHeader);
         }
 
+        if (features != null && features.contains(MobileServiceFeatures.Offline)) {
+            request.setPriority(RequestPriority.Background);
+        }
+
         MobileServiceConnection conn = mClient.createConnection();
-        // Create AsyncTask to execute the request and parse the results
-        new RequestAsyncTask(request, conn) {
-            @Override
-            protected void onPostExecute(ServiceFilterResponse response) {
-                if (mTaskException == null && response != null) {
-                    JsonElement results = null;
 
-                    try {
-                        // Parse the results using the given Entity class
-                        String content = response.getContent();
-                        JsonElement json = new JsonParser().parse(content);
+        // Identical GET requests in flight share the response, but each
+        // caller parses its own copy of the results, since they are mutable
+        ListenableFuture<ServiceFilterResponse> internalFuture = mClient.getRequestCoalescer().execute(request, conn);
 
-                        results = json;
+        Futures.addCallback(internalFuture, new FutureCallback<ServiceFilterResponse>() {
+            @Override
+            public void onFailure(Throwable exception) {
+                future.setException(exception);
+            }
 
-                        future.set(Pair.create(results, response));
-                    } catch (Exception e) {
-                        future.setException(new MobileServiceException("Error while retrieving data from response.", e, response));
-                    }
-                } else {
-                    future.setException(mTaskException);
+            @Override
+            public void onSuccess(ServiceFilterResponse response) {
+                try {
+                    // Parse the results using the given Entity class
+                    String content = response.getContent();
+                    JsonElement results = new JsonParser().parse(content);
+
+                    future.set(Pair.create(results, response));
+                } catch (Exception e) {
+                    future.setException(new MobileServiceException("Error while retrieving data from response.", e, response));
                 }
             }
-        }.executeTask();
+        });
+
+        MobileServiceFutures.propagateCancellation(future, internalFuture);
 
         return future;
     }
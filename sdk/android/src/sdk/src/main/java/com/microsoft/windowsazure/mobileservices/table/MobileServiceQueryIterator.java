@@ -0,0 +1,409 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+
+
+/**
+ * MobileServiceQueryIterator.java
+ */
+package com.microsoft.windowsazure.mobileservices.table;
+
+import com.google.common.base.Function;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.microsoft.windowsazure.mobileservices.table.query.Query;
+
+import java.io.Closeable;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Iterates over the results of a query, loading them one page at a time. Pages
+ * follow the next links returned by the mobile service, or are requested with
+ * $top and $skip when it returns none. While a page is read, up to the prefetch
+ * depth of next pages are loaded in the background, so that reading does not
+ * stall at page boundaries.
+ * <p/>
+ * hasNext and next block while the page they need is loading, and throw a
+ * RuntimeException wrapping the error if it fails to load. Do not use the
+ * iterator on the main thread, and close it when the iteration is abandoned.
+ *
+ * @param <E> The type of the results
+ */
+public class MobileServiceQueryIterator<E> implements Iterator<E>, Closeable {
+
+    /**
+     * Default number of results requested per page
+     */
+    public static final int DEFAULT_PAGE_SIZE = 50;
+
+    /**
+     * Default number of pages loaded ahead of the page being read
+     */
+    public static final int DEFAULT_PREFETCH_DEPTH = 1;
+
+    private MobileServiceJsonTable mTable;
+
+    private Query mQuery;
+
+    private int mPageSize;
+
+    private int mPrefetchDepth;
+
+    private Function<JsonElement, E> mConverter;
+
+    /**
+     * Maximum number of results, from the $top of the query
+     */
+    private int mLimit;
+
+    private int mReturnedCount;
+
+    private long mLoadedCount;
+
+    /**
+     * Requested pages, in order. The first one is the next page to read.
+     */
+    private LinkedList<PendingPage> mPendingPages;
+
+    private Object mPagesLock;
+
+    private boolean mFirstPageRequested;
+
+    private boolean mFirstPageLoaded;
+
+    /**
+     * True if the mobile service returned a next link with the first page
+     */
+    private boolean mServerDriven;
+
+    /**
+     * Next link not requested yet
+     */
+    private String mNextLink;
+
+    private int mFirstSkip;
+
+    private int mNextSkip;
+
+    private boolean mAllPagesRequested;
+
+    private boolean mClosed;
+
+    private Iterator<JsonElement> mCurrentPage;
+
+    private boolean mLastPageRead;
+
+    /**
+     * Constructor for MobileServiceQueryIterator
+     *
+     * @param table         The table to query
+     * @param query         The query. Its $top limits the number of results and
+     *                      its $skip sets the first one.
+     * @param pageSize      The number of results requested per page. It must
+     *                      not exceed the maximum page size of the mobile
+     *                      service.
+     * @param prefetchDepth The number of pages loaded ahead of the page being
+     *                      read
+     * @param converter     The function converting each result
+     */
+    MobileServiceQueryIterator(MobileServiceJsonTable table, Query query, int pageSize, int prefetchDepth, Function<JsonElement, E> converter) {
+        if (query == null) {
+            throw new IllegalArgumentException("query cannot be null.");
+        }
+
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("pageSize must be greater than zero.");
+        }
+
+        if (prefetchDepth < 0) {
+            throw new IllegalArgumentException("prefetchDepth cannot be negative.");
+        }
+
+        this.mTable = table;
+        this.mQuery = query.deepClone();
+        this.mPageSize = pageSize;
+        this.mPrefetchDepth = prefetchDepth;
+        this.mConverter = converter;
+        this.mLimit = query.getTop() > 0 ? query.getTop() : Integer.MAX_VALUE;
+        this.mFirstSkip = Math.max(query.getSkip(), 0);
+        this.mNextSkip = this.mFirstSkip;
+        this.mPendingPages = new LinkedList<PendingPage>();
+        this.mPagesLock = new Object();
+
+        synchronized (this.mPagesLock) {
+            requestPages(1);
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (this.mCurrentPage == null || !this.mCurrentPage.hasNext()) {
+            if (this.mLastPageRead || this.mReturnedCount >= this.mLimit) {
+                return false;
+            }
+
+            PendingPage pendingPage;
+
+            synchronized (this.mPagesLock) {
+                if (this.mPendingPages.isEmpty()) {
+                    requestPages(1);
+                }
+
+                pendingPage = this.mPendingPages.poll();
+
+                // Reading a page frees room for one more
+                requestPages(0);
+            }
+
+            if (pendingPage == null) {
+                return false;
+            }
+
+            Page page = getPage(pendingPage);
+
+            this.mCurrentPage = page.mResults.iterator();
+
+            if (page.mLast) {
+                this.mLastPageRead = true;
+                close();
+            }
+        }
+
+        return this.mReturnedCount < this.mLimit;
+    }
+
+    @Override
+    public E next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+
+        this.mReturnedCount++;
+
+        return this.mConverter.apply(this.mCurrentPage.next());
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Stops loading pages and cancels the pages being prefetched. The results
+     * of the page being read are still returned.
+     */
+    @Override
+    public void close() {
+        synchronized (this.mPagesLock) {
+            this.mClosed = true;
+
+            for (PendingPage pendingPage : this.mPendingPages) {
+                pendingPage.mRequest.cancel(true);
+            }
+
+            this.mPendingPages.clear();
+        }
+    }
+
+    /**
+     * Requests pages until the prefetch depth is reached. Must be called
+     * holding mPagesLock.
+     *
+     * @param minimumCount the minimum number of pending pages, to request the
+     *                     page about to be read
+     */
+    private void requestPages(int minimumCount) {
+        while (!this.mClosed && !this.mAllPagesRequested && this.mPendingPages.size() < Math.max(this.mPrefetchDepth, minimumCount)) {
+            ListenableFuture<JsonElement> request;
+            int top = 0;
+
+            if (!this.mFirstPageRequested) {
+                this.mFirstPageRequested = true;
+                top = Math.min(this.mPageSize, this.mLimit);
+                request = this.mTable.execute(getPageQuery(top));
+            } else if (!this.mFirstPageLoaded) {
+                // The paging mode is unknown until the first page is loaded
+                return;
+            } else if (this.mServerDriven) {
+                if (this.mNextLink == null) {
+                    // The next link comes with the page being loaded
+                    return;
+                }
+
+                request = this.mTable.execute(this.mNextLink);
+                this.mNextLink = null;
+            } else {
+                long requestedCount = (long) this.mNextSkip - this.mFirstSkip;
+
+                if (requestedCount >= this.mLimit) {
+                    this.mAllPagesRequested = true;
+                    return;
+                }
+
+                top = (int) Math.min(this.mPageSize, this.mLimit - requestedCount);
+                request = this.mTable.execute(getPageQuery(top));
+            }
+
+            PendingPage pendingPage = new PendingPage(request);
+            this.mPendingPages.add(pendingPage);
+
+            Futures.addCallback(request, new PageCallback(pendingPage, top));
+        }
+    }
+
+    private Query getPageQuery(int top) {
+        int skip = this.mNextSkip;
+
+        this.mNextSkip += top;
+
+        return this.mQuery.deepClone().skip(skip).top(top);
+    }
+
+    private void onPageLoaded(PendingPage pendingPage, JsonElement result, int top) {
+        Page page = new Page();
+        String nextLink = null;
+
+        try {
+            if (result.isJsonObject()) {
+                JsonObject resultObject = result.getAsJsonObject();
+
+                page.mResults = resultObject.getAsJsonArray("results");
+
+                if (resultObject.has("nextLink")) {
+                    nextLink = resultObject.get("nextLink").getAsString();
+                }
+            } else {
+                page.mResults = result.getAsJsonArray();
+            }
+        } catch (RuntimeException e) {
+            onPageFailed(pendingPage, e);
+            return;
+        }
+
+        if (page.mResults == null) {
+            page.mResults = new JsonArray();
+        }
+
+        synchronized (this.mPagesLock) {
+            if (!this.mFirstPageLoaded) {
+                this.mFirstPageLoaded = true;
+                this.mServerDriven = nextLink != null;
+            }
+
+            this.mLoadedCount += page.mResults.size();
+
+            if (this.mServerDriven) {
+                page.mLast = nextLink == null;
+                this.mNextLink = nextLink;
+
+                if (this.mLoadedCount >= this.mLimit) {
+                    this.mAllPagesRequested = true;
+                }
+            } else {
+                page.mLast = page.mResults.size() < top;
+            }
+
+            if (page.mLast) {
+                this.mAllPagesRequested = true;
+            }
+
+            // Requested before the page is returned, so that a reader finding
+            // no pending page knows that all the pages were read
+            requestPages(0);
+        }
+
+        pendingPage.mPage.set(page);
+    }
+
+    private void onPageFailed(PendingPage pendingPage, Throwable exception) {
+        synchronized (this.mPagesLock) {
+            this.mAllPagesRequested = true;
+        }
+
+        pendingPage.mPage.setException(exception);
+    }
+
+    private Page getPage(PendingPage pendingPage) {
+        try {
+            return pendingPage.mPage.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            close();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            close();
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    /**
+     * A page of results
+     */
+    private static class Page {
+        private JsonArray mResults;
+
+        /**
+         * True if there is no page after this one
+         */
+        private boolean mLast;
+    }
+
+    /**
+     * A requested page
+     */
+    private static class PendingPage {
+        private ListenableFuture<JsonElement> mRequest;
+
+        private SettableFuture<Page> mPage;
+
+        private PendingPage(ListenableFuture<JsonElement> request) {
+            this.mRequest = request;
+            this.mPage = SettableFuture.create();
+        }
+    }
+
+    private class PageCallback implements FutureCallback<JsonElement> {
+        private PendingPage mPendingPage;
+
+        private int mTop;
+
+        private PageCallback(PendingPage pendingPage, int top) {
+            this.mPendingPage = pendingPage;
+            this.mTop = top;
+        }
+
+        @Override
+        public void onFailure(Throwable exception) {
+            onPageFailed(this.mPendingPage, exception);
+        }
+
+        @Override
+        public void onSuccess(JsonElement result) {
+            onPageLoaded(this.mPendingPage, result, this.mTop);
+        }
+    }
+}
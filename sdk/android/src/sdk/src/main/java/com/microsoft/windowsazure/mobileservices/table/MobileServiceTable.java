@@ -25,6 +25,7 @@ package com.microsoft.windowsazure.mobileservices.table;
 
 import android.util.Pair;
 
+import com.google.common.base.Function;
 import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
@@ -35,6 +36,7 @@ import com.google.gson.JsonObject;
 import com.microsoft.windowsazure.mobileservices.MobileServiceClient;
 import com.microsoft.windowsazure.mobileservices.MobileServiceException;
 import com.microsoft.windowsazure.mobileservices.MobileServiceFeatures;
+import com.microsoft.windowsazure.mobileservices.MobileServiceFutures;
 import com.microsoft.windowsazure.mobileservices.MobileServiceList;
 import com.microsoft.windowsazure.mobileservices.table.query.ExecutableQuery;
 import com.microsoft.windowsazure.mobileservices.table.query.Query;
@@ -117,6 +119,8 @@ public final class MobileServiceTable<E> extends MobileServiceTableBase {
             }
         });
 
+        MobileServiceFutures.propagateCancellation(future, internalFuture);
+
         return future;
     }
 
@@ -168,6 +172,8 @@ public final class MobileServiceTable<E> extends MobileServiceTableBase {
             }
         });
 
+        MobileServiceFutures.propagateCancellation(future, internalFuture);
+
         return future;
     }
 
@@ -191,9 +197,44 @@ public final class MobileServiceTable<E> extends MobileServiceTableBase {
             }
         });
 
+        MobileServiceFutures.propagateCancellation(future, internalFuture);
+
         return future;
     }
 
+    /**
+     * Iterates over the entities returned by a query, loading them page by
+     * page and prefetching the next page in the background. Each entity is
+     * parsed when it is returned.
+     *
+     * @param query The Query instance to execute
+     * @return The iterator, to use on a background thread
+     */
+    public MobileServiceQueryIterator<E> iterate(Query query) {
+        return iterate(query, MobileServiceQueryIterator.DEFAULT_PAGE_SIZE, MobileServiceQueryIterator.DEFAULT_PREFETCH_DEPTH);
+    }
+
+    /**
+     * Iterates over the entities returned by a query, loading them page by
+     * page. Each entity is parsed when it is returned.
+     *
+     * @param query         The Query instance to execute
+     * @param pageSize      The number of entities requested per page
+     * @param prefetchDepth The number of pages loaded ahead of the page being
+     *                      read
+     * @return The iterator, to use on a background thread
+     */
+    public MobileServiceQueryIterator<E> iterate(Query query, int pageSize, int prefetchDepth) {
+        final Gson gson = mClient.getGsonBuilder().create();
+
+        return new MobileServiceQueryIterator<E>(mInternalTable, query, pageSize, prefetchDepth, new Function<JsonElement, E>() {
+            @Override
+            public E apply(JsonElement element) {
+                return parseResults(element, gson).get(0);
+            }
+        });
+    }
+
     /**
      * Process the Results of the Query
      *
@@ -427,6 +468,8 @@ public final class MobileServiceTable<E> extends MobileServiceTableBase {
             }
         });
 
+        MobileServiceFutures.propagateCancellation(future, internalFuture);
+
         return future;
     }
 
@@ -489,10 +532,14 @@ public final class MobileServiceTable<E> extends MobileServiceTableBase {
      * @param callback   Callback to invoke when the operation is completed
      */
     public ListenableFuture<E> insert(final E element, List<Pair<String, String>> parameters) {
+        return this.insert(element, parameters, mClient.getGsonBuilder().create());
+    }
+
+    private ListenableFuture<E> insert(final E element, List<Pair<String, String>> parameters, final Gson gson) {
         final SettableFuture<E> future = SettableFuture.create();
         JsonObject json = null;
         try {
-            json = mClient.getGsonBuilder().create().toJsonTree(element).getAsJsonObject();
+            json = gson.toJsonTree(element).getAsJsonObject();
         } catch (IllegalArgumentException e) {
             future.setException(e);
             return future;
@@ -517,7 +564,7 @@ public final class MobileServiceTable<E> extends MobileServiceTableBase {
                 try {
 
                     if (result != null) {
-                        entity = parseResults(result).get(0);
+                        entity = parseResults(result, gson).get(0);
                         if (entity != null && element != null) {
                             copyFields(entity, element);
                             entity = element;
@@ -594,12 +641,16 @@ public final class MobileServiceTable<E> extends MobileServiceTableBase {
      * @param callback   Callback to invoke when the operation is completed
      */
     public ListenableFuture<E> update(final E element, final List<Pair<String, String>> parameters) {
+        return this.update(element, parameters, mClient.getGsonBuilder().create());
+    }
+
+    private ListenableFuture<E> update(final E element, final List<Pair<String, String>> parameters, final Gson gson) {
         final SettableFuture<E> future = SettableFuture.create();
 
         JsonObject json = null;
 
         try {
-            json = mClient.getGsonBuilder().create().toJsonTree(element).getAsJsonObject();
+            json = gson.toJsonTree(element).getAsJsonObject();
         } catch (IllegalArgumentException e) {
             future.setException(e);
             return future;
@@ -616,7 +667,7 @@ public final class MobileServiceTable<E> extends MobileServiceTableBase {
             public void onSuccess(JsonElement result) {
                 E entity = null;
                 try {
-                    entity = parseResults(result).get(0);
+                    entity = parseResults(result, gson).get(0);
                     if (entity != null && element != null) {
                         copyFields(entity, element);
                         entity = element;
@@ -785,6 +836,10 @@ public final class MobileServiceTable<E> extends MobileServiceTableBase {
      *                   request URI query string
      */
     public ListenableFuture<Void> delete(E element, List<Pair<String, String>> parameters) {
+        return this.delete(element, parameters, mClient.getGsonBuilder().create());
+    }
+
+    private ListenableFuture<Void> delete(E element, List<Pair<String, String>> parameters, Gson gson) {
 
         validateId(element);
 
@@ -793,7 +848,7 @@ public final class MobileServiceTable<E> extends MobileServiceTableBase {
         JsonObject json = null;
 
         try {
-            json = mClient.getGsonBuilder().create().toJsonTree(element).getAsJsonObject();
+            json = gson.toJsonTree(element).getAsJsonObject();
         } catch (IllegalArgumentException e) {
             future.setException(e);
             return future;
@@ -815,6 +870,107 @@ public final class MobileServiceTable<E> extends MobileServiceTableBase {
         return future;
     }
 
+    /**
+     * Inserts a list of entities into a Mobile Service Table, with at most
+     * DEFAULT_BULK_CONCURRENCY requests in flight
+     *
+     * @param elements The entities to insert
+     * @return A ListenableFuture that is done when every entity has been
+     * processed, returning the result of each entity in input order
+     */
+    public ListenableFuture<List<BulkOperationResult<E>>> insertAll(List<E> elements) {
+        return this.insertAll(elements, DEFAULT_BULK_CONCURRENCY);
+    }
+
+    /**
+     * Inserts a list of entities into a Mobile Service Table. The entities are
+     * inserted in parallel, and no request is sent after one fails with an
+     * authentication error. A single Gson instance serializes and parses all
+     * the entities.
+     *
+     * @param elements       The entities to insert
+     * @param maxConcurrency The maximum number of requests in flight
+     * @return A ListenableFuture that is done when every entity has been
+     * processed, returning the result of each entity in input order
+     */
+    public ListenableFuture<List<BulkOperationResult<E>>> insertAll(List<E> elements, int maxConcurrency) {
+        final Gson gson = mClient.getGsonBuilder().create();
+
+        return new BulkOperationExecutor<E, E>(elements, maxConcurrency) {
+            @Override
+            protected ListenableFuture<E> executeOperation(E element) {
+                return insert(element, null, gson);
+            }
+        }.execute();
+    }
+
+    /**
+     * Updates a list of entities from a Mobile Service Table, with at most
+     * DEFAULT_BULK_CONCURRENCY requests in flight
+     *
+     * @param elements The entities to update
+     * @return A ListenableFuture that is done when every entity has been
+     * processed, returning the result of each entity in input order
+     */
+    public ListenableFuture<List<BulkOperationResult<E>>> updateAll(List<E> elements) {
+        return this.updateAll(elements, DEFAULT_BULK_CONCURRENCY);
+    }
+
+    /**
+     * Updates a list of entities from a Mobile Service Table. The entities are
+     * updated in parallel, and no request is sent after one fails with an
+     * authentication error. A single Gson instance serializes and parses all
+     * the entities.
+     *
+     * @param elements       The entities to update
+     * @param maxConcurrency The maximum number of requests in flight
+     * @return A ListenableFuture that is done when every entity has been
+     * processed, returning the result of each entity in input order
+     */
+    public ListenableFuture<List<BulkOperationResult<E>>> updateAll(List<E> elements, int maxConcurrency) {
+        final Gson gson = mClient.getGsonBuilder().create();
+
+        return new BulkOperationExecutor<E, E>(elements, maxConcurrency) {
+            @Override
+            protected ListenableFuture<E> executeOperation(E element) {
+                return update(element, null, gson);
+            }
+        }.execute();
+    }
+
+    /**
+     * Deletes a list of entities from a Mobile Service Table, with at most
+     * DEFAULT_BULK_CONCURRENCY requests in flight
+     *
+     * @param elements The entities to delete
+     * @return A ListenableFuture that is done when every entity has been
+     * processed, returning the result of each entity in input order
+     */
+    public ListenableFuture<List<BulkOperationResult<Void>>> deleteAll(List<E> elements) {
+        return this.deleteAll(elements, DEFAULT_BULK_CONCURRENCY);
+    }
+
+    /**
+     * Deletes a list of entities from a Mobile Service Table. The entities are
+     * deleted in parallel, and no request is sent after one fails with an
+     * authentication error.
+     *
+     * @param elements       The entities to delete
+     * @param maxConcurrency The maximum number of requests in flight
+     * @return A ListenableFuture that is done when every entity has been
+     * processed, returning the result of each entity in input order
+     */
+    public ListenableFuture<List<BulkOperationResult<Void>>> deleteAll(List<E> elements, int maxConcurrency) {
+        final Gson gson = mClient.getGsonBuilder().create();
+
+        return new BulkOperationExecutor<E, Void>(elements, maxConcurrency) {
+            @Override
+            protected ListenableFuture<Void> executeOperation(E element) {
+                return delete(element, null, gson);
+            }
+        }.execute();
+    }
+
     /**
      * Deletes an entity from a Mobile Service Table using a given id
      *
@@ -853,6 +1009,17 @@ public final class MobileServiceTable<E> extends MobileServiceTableBase {
      */
     private List<E> parseResults(JsonElement results) {
         Gson gson = mClient.getGsonBuilder().create();
+        return parseResults(results, gson);
+    }
+
+    /**
+     * Parses the JSON object to a typed list
+     *
+     * @param results JSON results
+     * @param gson    The Gson instance used to parse the results
+     * @return List of entities
+     */
+    private List<E> parseResults(JsonElement results, Gson gson) {
         return JsonEntityParser.parseResults(results, gson, mClazz);
     }
 
@@ -63,6 +63,11 @@ abstract class MobileServiceTableBase implements MobileServiceTableSystemPropert
      */
     public static final String TABLES_URL = "tables/";
 
+    /**
+     * Default maximum number of requests in flight for a bulk operation
+     */
+    public static final int DEFAULT_BULK_CONCURRENCY = 4;
+
     /**
      * The string prefix used to indicate system properties
      */
@@ -536,7 +541,7 @@ abstract class MobileServiceTableBase implements MobileServiceTableSystemPropert
 
         final SettableFuture<Void> future = SettableFuture.create();
 
-        delete = new ServiceFilterRequestImpl(new HttpDelete(uriBuilder.build().toString()), mClient.getAndroidHttpClientFactory());
+        delete = new ServiceFilterRequestImpl(new HttpDelete(uriBuilder.build().toString()), mClient.getHttpTransport());
         if (!features.isEmpty()) {
             delete.addHeader(MobileServiceHttpClient.X_ZUMO_FEATURES, MobileServiceFeatures.featuresToString(features));
         }
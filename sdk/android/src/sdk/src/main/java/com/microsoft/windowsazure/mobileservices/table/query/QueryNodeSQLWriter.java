@@ -34,11 +34,28 @@ import java.util.List;
 public class QueryNodeSQLWriter implements QueryNodeVisitor<QueryNode> {
     private StringBuilder mBuilder;
 
+    /**
+     * Indicates if dates are stored as milliseconds since the epoch instead
+     * of ISO 8601 strings
+     */
+    private boolean mEpochMillisDates;
+
     /**
      * Constructor for QueryNodeSQLWriter
      */
     QueryNodeSQLWriter() {
+        this(false);
+    }
+
+    /**
+     * Constructor for QueryNodeSQLWriter
+     *
+     * @param epochMillisDates true if dates are stored as milliseconds since the
+     *                         epoch
+     */
+    QueryNodeSQLWriter(boolean epochMillisDates) {
         this.mBuilder = new StringBuilder();
+        this.mEpochMillisDates = epochMillisDates;
     }
 
     private static String getSQLOperator(UnaryOperatorNode node) {
@@ -119,28 +136,28 @@ public class QueryNodeSQLWriter implements QueryNodeVisitor<QueryNode> {
         return sqlOperator;
     }
 
-    private static String getSQLOperatorFormat(FunctionCallNode node) {
+    private static String getSQLOperatorFormat(FunctionCallNode node, boolean epochMillisDates) {
         String operatorFormat = "";
         FunctionCallKind operatorKind = node.getFunctionCallKind();
 
         switch (operatorKind) {
             case Year:
-                operatorFormat = formatDateOperation("%%Y");
+                operatorFormat = formatDateOperation("%%Y", epochMillisDates);
                 break;
             case Month:
-                operatorFormat = formatDateOperation("%%m");
+                operatorFormat = formatDateOperation("%%m", epochMillisDates);
                 break;
             case Day:
-                operatorFormat = formatDateOperation("%%d");
+                operatorFormat = formatDateOperation("%%d", epochMillisDates);
                 break;
             case Hour:
-                operatorFormat = formatDateOperation("%%H");
+                operatorFormat = formatDateOperation("%%H", epochMillisDates);
                 break;
             case Minute:
-                operatorFormat = formatDateOperation("%%M");
+                operatorFormat = formatDateOperation("%%M", epochMillisDates);
                 break;
             case Second:
-                operatorFormat = formatDateOperation("%%s");
+                operatorFormat = formatDateOperation("%%s", epochMillisDates);
                 break;
             case Floor:
                 operatorFormat = formatMathOperation(-1);
@@ -189,12 +206,17 @@ public class QueryNodeSQLWriter implements QueryNodeVisitor<QueryNode> {
         return operatorFormat;
     }
 
-    private static String formatDateOperation(String datePart) {
+    private static String formatDateOperation(String datePart, boolean epochMillisDates) {
         StringBuilder builder = new StringBuilder();
 
         builder.append("CAST(strftime('");
         builder.append(datePart);
-        builder.append("', %1$s) AS INTEGER)");
+
+        if (epochMillisDates) {
+            builder.append("', %1$s / 1000, 'unixepoch') AS INTEGER)");
+        } else {
+            builder.append("', %1$s) AS INTEGER)");
+        }
 
         return builder.toString();
     }
@@ -338,7 +360,7 @@ public class QueryNodeSQLWriter implements QueryNodeVisitor<QueryNode> {
         if (value instanceof String) {
             constant = process((String) value);
         } else if (value instanceof Date) {
-            constant = process((Date) value);
+            constant = this.mEpochMillisDates ? String.valueOf(((Date) value).getTime()) : process((Date) value);
         } else if (value instanceof Boolean) {
             constant = process((Boolean) value);
         }
@@ -396,7 +418,7 @@ public class QueryNodeSQLWriter implements QueryNodeVisitor<QueryNode> {
 
     @Override
     public QueryNode visit(FunctionCallNode node) {
-        String format = getSQLOperatorFormat(node);
+        String format = getSQLOperatorFormat(node, this.mEpochMillisDates);
 
         Object[] args = new Object[node.getArguments().size()];
         List<QueryNode> arguments = node.getArguments();
@@ -63,7 +63,18 @@ public class QuerySQLWriter {
      * Returns the SQL string representation of the query's where clause
      */
     public static String getWhereClause(Query query) throws MobileServiceException {
-        QueryNodeSQLWriter sqlWriter = new QueryNodeSQLWriter();
+        return getWhereClause(query, false);
+    }
+
+    /**
+     * Returns the SQL string representation of the query's where clause
+     *
+     * @param query            the query
+     * @param epochMillisDates true if dates are stored as milliseconds since the
+     *                         epoch instead of ISO 8601 strings
+     */
+    public static String getWhereClause(Query query, boolean epochMillisDates) throws MobileServiceException {
+        QueryNodeSQLWriter sqlWriter = new QueryNodeSQLWriter(epochMillisDates);
 
         if (query != null && query.getQueryNode() != null) {
             query.getQueryNode().accept(sqlWriter);
@@ -33,8 +33,11 @@ import com.microsoft.windowsazure.mobileservices.MobileServiceClient;
 import com.microsoft.windowsazure.mobileservices.MobileServiceFeatures;
 import com.microsoft.windowsazure.mobileservices.table.query.Query;
 import com.microsoft.windowsazure.mobileservices.table.sync.localstore.MobileServiceLocalStoreException;
+import com.microsoft.windowsazure.mobileservices.table.sync.pull.PullPartitioning;
 
+import java.util.ArrayList;
 import java.util.EnumSet;
+import java.util.List;
 import java.util.UUID;
 
 /**
@@ -71,6 +74,25 @@ public class MobileServiceJsonSyncTable {
      * @return A ListenableFuture that is done when results have been pulled.
      */
     public ListenableFuture<Void> pull(final Query query, final String queryId) {
+        return pull(query, queryId, null);
+    }
+
+    /**
+     * Performs a query against the remote table and stores results, pulling
+     * the partitions of the query concurrently. The partitions of an
+     * incremental pull keep their own watermarks until all of them have been
+     * pulled. At most four partitions are pulled at the same time, and their
+     * requests are background requests, so a RequestScheduler set on the
+     * client limits them further to its maximum of background requests.
+     *
+     * @param query        an optional query to filter results
+     * @param queryId      an optional query id, for an incremental pull
+     * @param partitioning an optional partitioning of the query
+     * @return A ListenableFuture that is done when results have been pulled.
+     * Cancelling it aborts the request in flight and stops the pull before
+     * the next page.
+     */
+    public ListenableFuture<Void> pull(final Query query, final String queryId, final PullPartitioning partitioning) {
         final MobileServiceJsonSyncTable thisTable = this;
         final SettableFuture<Void> result = SettableFuture.create();
 
@@ -79,7 +101,7 @@ public class MobileServiceJsonSyncTable {
             @Override
             public void run() {
                 try {
-                    thisTable.mClient.getSyncContext().pull(thisTable.mName, query, queryId);
+                    thisTable.mClient.getSyncContext().pull(thisTable.mName, query, queryId, partitioning, result);
 
                     result.set(null);
                 } catch (Throwable throwable) {
@@ -297,6 +319,97 @@ public class MobileServiceJsonSyncTable {
         return result;
     }
 
+    /**
+     * Insert a list of items into the local table and enqueue the operations
+     * to be synchronized on context push. The items and the operations are
+     * written in a single transaction of a TransactionalLocalStore, so either
+     * all the items are inserted or none. Other stores write them one by one.
+     *
+     * @param items the items to be inserted
+     * @return A ListenableFuture that is done when the items have been
+     * inserted, returning copies of the inserted items including ids.
+     */
+    public ListenableFuture<List<JsonObject>> insertAll(final List<JsonObject> items) {
+        final MobileServiceJsonSyncTable thisTable = this;
+        final SettableFuture<List<JsonObject>> result = SettableFuture.create();
+
+        new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    List<JsonObject> newItems = thisTable.insertAllContext(items);
+
+                    result.set(newItems);
+                } catch (Throwable throwable) {
+                    result.setException(throwable);
+                }
+            }
+        }).start();
+
+        return result;
+    }
+
+    /**
+     * Update a list of items in the local table and enqueue the operations to
+     * be synchronized on context push. The items and the operations are
+     * written in a single transaction of a TransactionalLocalStore, so either
+     * all the items are updated or none. Other stores write them one by one.
+     *
+     * @param items the items to be updated
+     * @return A ListenableFuture that is done when the items have been updated.
+     */
+    public ListenableFuture<Void> updateAll(final List<JsonObject> items) {
+        final MobileServiceJsonSyncTable thisTable = this;
+        final SettableFuture<Void> result = SettableFuture.create();
+
+        new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    thisTable.updateAllContext(items);
+
+                    result.set(null);
+                } catch (Throwable throwable) {
+                    result.setException(throwable);
+                }
+            }
+        }).start();
+
+        return result;
+    }
+
+    /**
+     * Delete a list of items from the local table and enqueue the operations
+     * to be synchronized on context push. The items and the operations are
+     * written in a single transaction of a TransactionalLocalStore, so either
+     * all the items are deleted or none. Other stores write them one by one.
+     *
+     * @param items the items to be deleted
+     * @return A ListenableFuture that is done when the items have been deleted.
+     */
+    public ListenableFuture<Void> deleteAll(final List<JsonObject> items) {
+        final MobileServiceJsonSyncTable thisTable = this;
+        final SettableFuture<Void> result = SettableFuture.create();
+
+        new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    thisTable.deleteAllContext(items);
+
+                    result.set(null);
+                } catch (Throwable throwable) {
+                    result.setException(throwable);
+                }
+            }
+        }).start();
+
+        return result;
+    }
+
     private JsonElement readContext(Query query) throws MobileServiceLocalStoreException {
         return this.mClient.getSyncContext().read(this.mName, query);
     }
@@ -337,6 +450,38 @@ public class MobileServiceJsonSyncTable {
         this.mClient.getSyncContext().delete(this.mName, itemId);
     }
 
+    private List<JsonObject> insertAllContext(List<JsonObject> items) throws Throwable {
+        List<JsonObject> newItems = new ArrayList<JsonObject>(items.size());
+
+        for (JsonObject item : items) {
+            newItems.add(validateIdOnInsert(item));
+        }
+
+        this.mClient.getSyncContext().insertAll(this.mName, newItems);
+
+        return newItems;
+    }
+
+    private void updateAllContext(List<JsonObject> items) throws Throwable {
+        List<JsonObject> newItems = new ArrayList<JsonObject>(items.size());
+
+        for (JsonObject item : items) {
+            newItems.add(validateIdOnUpdateOrDelete(item));
+        }
+
+        this.mClient.getSyncContext().updateAll(this.mName, newItems);
+    }
+
+    private void deleteAllContext(List<JsonObject> items) throws Throwable {
+        List<JsonObject> newItems = new ArrayList<JsonObject>(items.size());
+
+        for (JsonObject item : items) {
+            newItems.add(validateIdOnUpdateOrDelete(item));
+        }
+
+        this.mClient.getSyncContext().deleteAll(this.mName, newItems);
+    }
+
     private JsonObject validateIdOnInsert(JsonObject item) throws JsonSyntaxException, IllegalArgumentException {
         JsonObject newItem = (JsonObject) new JsonParser().parse(item.toString());
         String itemId = null;
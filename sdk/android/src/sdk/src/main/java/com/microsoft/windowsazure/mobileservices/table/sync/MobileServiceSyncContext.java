@@ -24,7 +24,9 @@ See the Apache Version 2.0 License for specific language governing permissions a
 package com.microsoft.windowsazure.mobileservices.table.sync;
 
 import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
 import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
@@ -37,9 +39,13 @@ import com.microsoft.windowsazure.mobileservices.table.MobileServiceSystemColumn
 import com.microsoft.windowsazure.mobileservices.table.query.Query;
 import com.microsoft.windowsazure.mobileservices.table.query.QueryOperations;
 import com.microsoft.windowsazure.mobileservices.table.query.QueryOrder;
+import com.microsoft.windowsazure.mobileservices.table.sync.events.PullPageEvent;
+import com.microsoft.windowsazure.mobileservices.table.sync.events.SyncEventListener;
+import com.microsoft.windowsazure.mobileservices.table.sync.events.SyncLockKind;
 import com.microsoft.windowsazure.mobileservices.table.sync.localstore.ColumnDataType;
 import com.microsoft.windowsazure.mobileservices.table.sync.localstore.MobileServiceLocalStore;
 import com.microsoft.windowsazure.mobileservices.table.sync.localstore.MobileServiceLocalStoreException;
+import com.microsoft.windowsazure.mobileservices.table.sync.localstore.TransactionalLocalStore;
 import com.microsoft.windowsazure.mobileservices.table.sync.operations.DeleteOperation;
 import com.microsoft.windowsazure.mobileservices.table.sync.operations.InsertOperation;
 import com.microsoft.windowsazure.mobileservices.table.sync.operations.LocalTableOperationProcessor;
@@ -47,8 +53,10 @@ import com.microsoft.windowsazure.mobileservices.table.sync.operations.MobileSer
 import com.microsoft.windowsazure.mobileservices.table.sync.operations.RemoteTableOperationProcessor;
 import com.microsoft.windowsazure.mobileservices.table.sync.operations.TableOperation;
 import com.microsoft.windowsazure.mobileservices.table.sync.operations.TableOperationError;
+import com.microsoft.windowsazure.mobileservices.table.sync.operations.TableOperationKind;
 import com.microsoft.windowsazure.mobileservices.table.sync.operations.UpdateOperation;
 import com.microsoft.windowsazure.mobileservices.table.sync.pull.IncrementalPullStrategy;
+import com.microsoft.windowsazure.mobileservices.table.sync.pull.PullPartitioning;
 import com.microsoft.windowsazure.mobileservices.table.sync.pull.PullStrategy;
 import com.microsoft.windowsazure.mobileservices.table.sync.push.MobileServicePushCompletionResult;
 import com.microsoft.windowsazure.mobileservices.table.sync.push.MobileServicePushFailedException;
@@ -72,8 +80,13 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Queue;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantLock;
@@ -87,6 +100,15 @@ public class MobileServiceSyncContext {
      * Table that stores backed up items
      */
     private static final String ITEM_BACKUP_TABLE = "__itembackups";
+    /**
+     * Table that stores the last server version of items with a pending
+     * update, used to push only the changed fields
+     */
+    private static final String ITEM_SNAPSHOT_TABLE = "__itemsnapshots";
+    /**
+     * Maximum number of partitions of a pull that are pulled at the same time
+     */
+    private static final int MAX_PULL_PARTITION_THREADS = 4;
     private SettableFuture<Void> mInitialized;
     private MobileServiceClient mClient;
     private MobileServiceLocalStore mStore;
@@ -135,6 +157,10 @@ public class MobileServiceSyncContext {
      * Semaphore to signal that there are currently no pending push requests
      */
     private Semaphore mPushSRConsumerIdle;
+    /**
+     * Optional listener for timing and queue events
+     */
+    private volatile SyncEventListener mSyncEventListener;
 
     /**
      * Constructor for MobileServiceSyncContext
@@ -156,6 +182,14 @@ public class MobileServiceSyncContext {
         columns.put("clientitem", ColumnDataType.Other);
 
         store.defineTable(ITEM_BACKUP_TABLE, columns);
+
+        columns = new HashMap<String, ColumnDataType>();
+        columns.put("id", ColumnDataType.String);
+        columns.put("tablename", ColumnDataType.String);
+        columns.put("itemid", ColumnDataType.String);
+        columns.put("serveritem", ColumnDataType.Other);
+
+        store.defineTable(ITEM_SNAPSHOT_TABLE, columns);
     }
 
     private static boolean isDeleted(JsonObject item) {
@@ -185,6 +219,25 @@ public class MobileServiceSyncContext {
         return this.mHandler;
     }
 
+    /**
+     * Returns the listener for timing and queue events, or null.
+     *
+     * @return The SyncEventListener instance
+     */
+    public SyncEventListener getSyncEventListener() {
+        return this.mSyncEventListener;
+    }
+
+    /**
+     * Sets the listener for timing and queue events. Pass null to stop
+     * receiving events.
+     *
+     * @param listener The SyncEventListener instance
+     */
+    public void setSyncEventListener(SyncEventListener listener) {
+        this.mSyncEventListener = listener;
+    }
+
     /**
      * Indicates whether sync context has been initialized or not.
      *
@@ -224,6 +277,8 @@ public class MobileServiceSyncContext {
             ensureCorrectlyInitialized();
 
             this.mOpQueue.removeOperationWithErrorFromQueue(tableOperationError);
+
+            onQueueDepthChanged();
         } finally {
             this.mInitLock.readLock().unlock();
         }
@@ -245,16 +300,20 @@ public class MobileServiceSyncContext {
 
             ensureCorrectlyInitialized();
 
-            this.mOpLock.writeLock().lock();
+            // get SHARED access to op lock; the id lock excludes local
+            // writes and the push of the item
+            lockOp(this.mOpLock.readLock());
 
             String tableItemId = tableOperationError.getTableName() + "/" + tableOperationError.getItemId();
 
-            tableLock = this.mTableLockMap.lockRead(tableOperationError.getTableName());
+            tableLock = lockTableRead(tableOperationError.getTableName());
 
-            idLock = this.mIdLockMap.lock(tableItemId);
+            idLock = lockId(tableItemId);
 
             this.mStore.upsert(tableOperationError.getTableName(), tableOperationError.getServerItem(), true);
 
+            this.mStore.delete(ITEM_SNAPSHOT_TABLE, tableItemId);
+
             removeTableOperation(tableOperationError);
 
         } finally {
@@ -262,7 +321,7 @@ public class MobileServiceSyncContext {
                 this.mInitLock.readLock().unlock();
             } finally {
                 try {
-                    this.mOpLock.writeLock().unlock();
+                    this.mOpLock.readLock().unlock();
                 } finally {
                     try {
                         this.mIdLockMap.unLock(idLock);
@@ -290,18 +349,22 @@ public class MobileServiceSyncContext {
 
             ensureCorrectlyInitialized();
 
-            this.mOpLock.writeLock().lock();
+            // get SHARED access to op lock; the id lock excludes local
+            // writes and the push of the item
+            lockOp(this.mOpLock.readLock());
 
             String tableItemId = tableOperationError.getTableName() + "/" + tableOperationError.getItemId();
 
-            tableLock = this.mTableLockMap.lockRead(tableOperationError.getTableName());
+            tableLock = lockTableRead(tableOperationError.getTableName());
 
-            idLock = this.mIdLockMap.lock(tableItemId);
+            idLock = lockId(tableItemId);
 
             String itemId = tableOperationError.getItemId();
 
             this.mStore.delete(tableOperationError.getTableName(), itemId);
 
+            this.mStore.delete(ITEM_SNAPSHOT_TABLE, tableItemId);
+
             removeTableOperation(tableOperationError);
 
         } finally {
@@ -309,7 +372,7 @@ public class MobileServiceSyncContext {
                 this.mInitLock.readLock().unlock();
             } finally {
                 try {
-                    this.mOpLock.writeLock().unlock();
+                    this.mOpLock.readLock().unlock();
                 } finally {
                     try {
                         this.mIdLockMap.unLock(idLock);
@@ -338,7 +401,7 @@ public class MobileServiceSyncContext {
             ensureCorrectlyInitialized();
 
             // get SHARED access to op lock
-            this.mOpLock.readLock().lock();
+            lockOp(this.mOpLock.readLock());
 
             try {
                 result = this.mOpQueue.countPending();
@@ -388,15 +451,28 @@ public class MobileServiceSyncContext {
      * @return A ListenableFuture that is done when operations have been pushed.
      */
     public ListenableFuture<Void> push() {
+        return push(null);
+    }
+
+    /**
+     * Pushes the pending operations of a table up to the remote store. The
+     * operations of other tables stay pending, even if they were made before.
+     *
+     * @param tableName the table name, or null to push the operations of all
+     *                  tables
+     * @return A ListenableFuture that is done when operations have been pushed.
+     */
+    public ListenableFuture<Void> push(String tableName) {
         final MobileServiceSyncContext thisContext = this;
         final SettableFuture<Void> result = SettableFuture.create();
+        final String invTableName = tableName != null ? tableName.trim().toLowerCase(Locale.getDefault()) : null;
 
         new Thread(new Runnable() {
 
             @Override
             public void run() {
                 try {
-                    thisContext.pushContext();
+                    thisContext.pushContext(invTableName);
 
                     result.set(null);
                 } catch (Throwable throwable) {
@@ -415,6 +491,35 @@ public class MobileServiceSyncContext {
      * @param query     an optional query to filter results
      */
     void pull(String tableName, Query query, String queryId) throws Throwable {
+        pull(tableName, query, queryId, null);
+    }
+
+    /**
+     * Performs a query against the remote table and stores results, pulling
+     * the partitions of the query concurrently.
+     *
+     * @param tableName    the remote table name
+     * @param query        an optional query to filter results
+     * @param queryId      an optional query id, for an incremental pull
+     * @param partitioning an optional partitioning of the query
+     */
+    void pull(String tableName, Query query, String queryId, PullPartitioning partitioning) throws Throwable {
+        pull(tableName, query, queryId, partitioning, null);
+    }
+
+    /**
+     * Performs a query against the remote table and stores results, stopping
+     * between pages when cancelled. The pages stored keep their watermark, so
+     * that an incremental pull resumes after them.
+     *
+     * @param tableName    the remote table name
+     * @param query        an optional query to filter results
+     * @param queryId      an optional query id, for an incremental pull
+     * @param partitioning an optional partitioning of the query
+     * @param cancellation an optional future whose cancellation stops the
+     *                     pull and aborts the request of the current page
+     */
+    void pull(String tableName, Query query, String queryId, PullPartitioning partitioning, ListenableFuture<?> cancellation) throws Throwable {
         this.mInitLock.readLock().lock();
 
         try {
@@ -425,6 +530,8 @@ public class MobileServiceSyncContext {
             boolean busyPullDone = false;
 
             while (!busyPullDone) {
+                throwIfCancelled(cancellation);
+
                 ListenableFuture<Void> pushFuture = null;
 
                 // prevent Coffman Circular wait condition: lock resources in
@@ -432,19 +539,23 @@ public class MobileServiceSyncContext {
                 // Id.
 
                 // get SHARED access to op lock
-                this.mOpLock.readLock().lock();
+                lockOp(this.mOpLock.readLock());
 
                 try {
                     // get EXCLUSIVE access to table lock
-                    MultiReadWriteLock<String> multiRWLock = this.mTableLockMap.lockWrite(invTableName);
+                    MultiReadWriteLock<String> multiRWLock = lockTableWrite(invTableName);
 
                     try {
                         int pendingTable = this.mOpQueue.countPending(invTableName);
 
                         if (pendingTable > 0) {
-                            pushFuture = push();
+                            // Only the operations of the pulled table must be
+                            // pushed before it is pulled
+                            pushFuture = push(invTableName);
+                        } else if (partitioning != null) {
+                            processPartitionedPull(invTableName, query, queryId, partitioning, cancellation);
                         } else {
-                            processPull(invTableName, query, queryId);
+                            processPull(invTableName, query, queryId, cancellation);
                         }
                     } finally {
                         this.mTableLockMap.unLockWrite(multiRWLock);
@@ -485,10 +596,10 @@ public class MobileServiceSyncContext {
             // same order, independent of unlock order. Op then Table then
             // Id.
 
-            this.mOpLock.readLock().lock();
+            lockOp(this.mOpLock.readLock());
 
             try {
-                MultiReadWriteLock<String> multiRWLock = this.mTableLockMap.lockWrite(invTableName);
+                MultiReadWriteLock<String> multiRWLock = lockTableWrite(invTableName);
 
                 try {
                     int pendingTable = this.mOpQueue.countPending(invTableName);
@@ -598,6 +709,66 @@ public class MobileServiceSyncContext {
         processOperation(operation, null);
     }
 
+    /**
+     * Insert a list of items into the local table and enqueue the operations
+     * to be synchronized on context push. The items and the operations are
+     * written in a single transaction of a TransactionalLocalStore.
+     *
+     * @param tableName the local table name
+     * @param items     the items to be inserted, with their ids
+     */
+    void insertAll(String tableName, List<JsonObject> items) throws Throwable {
+        String invTableName = tableName != null ? tableName.trim().toLowerCase(Locale.getDefault()) : null;
+
+        List<TableOperation> operations = new ArrayList<TableOperation>(items.size());
+
+        for (JsonObject item : items) {
+            operations.add(new InsertOperation(invTableName, item.get("id").getAsString()));
+        }
+
+        processOperations(invTableName, operations, items);
+    }
+
+    /**
+     * Update a list of items in the local table and enqueue the operations to
+     * be synchronized on context push. The items and the operations are
+     * written in a single transaction of a TransactionalLocalStore.
+     *
+     * @param tableName the local table name
+     * @param items     the items to be updated
+     */
+    void updateAll(String tableName, List<JsonObject> items) throws Throwable {
+        String invTableName = tableName != null ? tableName.trim().toLowerCase(Locale.getDefault()) : null;
+
+        List<TableOperation> operations = new ArrayList<TableOperation>(items.size());
+
+        for (JsonObject item : items) {
+            operations.add(new UpdateOperation(invTableName, item.get("id").getAsString()));
+        }
+
+        processOperations(invTableName, operations, items);
+    }
+
+    /**
+     * Delete a list of items from the local table and enqueue the operations
+     * to be synchronized on context push. The items and the operations are
+     * written in a single transaction of a TransactionalLocalStore.
+     *
+     * @param tableName the local table name
+     * @param items     the items to be deleted
+     */
+    void deleteAll(String tableName, List<JsonObject> items) throws Throwable {
+        String invTableName = tableName != null ? tableName.trim().toLowerCase(Locale.getDefault()) : null;
+
+        List<TableOperation> operations = new ArrayList<TableOperation>(items.size());
+
+        for (JsonObject item : items) {
+            operations.add(new DeleteOperation(invTableName, item.get("id").getAsString()));
+        }
+
+        processOperations(invTableName, operations, items);
+    }
+
 
     private void initializeContext(final MobileServiceLocalStore store, final MobileServiceSyncHandler handler) throws Throwable {
         this.mInitLock.writeLock().lock();
@@ -605,7 +776,7 @@ public class MobileServiceSyncContext {
         try {
             waitPendingPushSR();
 
-            this.mOpLock.writeLock().lock();
+            lockOp(this.mOpLock.writeLock());
 
             try {
                 this.mPushSRLock.lock();
@@ -625,7 +796,10 @@ public class MobileServiceSyncContext {
 
                         this.mStore.initialize();
 
-                        this.mIdLockMap = new MultiLockDictionary<String>();
+                        // Item locks are held briefly and only ordered
+                        // by the op and table locks, so they favor
+                        // throughput over fairness
+                        this.mIdLockMap = new MultiLockDictionary<String>(false);
                         this.mTableLockMap = new MultiReadWriteLockDictionary<String>();
 
                         this.mOpQueue = OperationQueue.load(this.mStore);
@@ -655,7 +829,7 @@ public class MobileServiceSyncContext {
         }
     }
 
-    private void pushContext() throws Throwable {
+    private void pushContext(String tableName) throws Throwable {
         PushSyncRequest pushSR = null;
 
         this.mInitLock.readLock().lock();
@@ -666,7 +840,7 @@ public class MobileServiceSyncContext {
             this.mPushSRLock.lock();
 
             try {
-                Bookmark bookmark = this.mOpQueue.bookmark();
+                Bookmark bookmark = this.mOpQueue.bookmark(tableName);
 
                 pushSR = new PushSyncRequest(bookmark, new Semaphore(0));
                 this.mPushSRQueue.add(pushSR);
@@ -699,19 +873,13 @@ public class MobileServiceSyncContext {
         }
     }
 
-    private void processPull(String tableName, Query query, String queryId) throws Throwable {
+    private void processPull(String tableName, Query query, String queryId, ListenableFuture<?> cancellation) throws Throwable {
 
         try {
 
-            MobileServiceJsonTable table = this.mClient.getTable(tableName);
+            MobileServiceJsonTable table = getPullTable(tableName);
 
-            table.addFeature(MobileServiceFeatures.Offline);
-
-            if (query == null) {
-                query = table.top(1000).orderBy("id", QueryOrder.Ascending);
-            } else {
-                query = query.deepClone();
-            }
+            query = getPullQuery(table, query);
 
             PullStrategy strategy;
 
@@ -723,47 +891,222 @@ public class MobileServiceSyncContext {
 
             strategy.initialize();
 
-            JsonArray elements = null;
+            pullPages(tableName, queryId, table, strategy, cancellation);
 
-            do {
+        } catch (ExecutionException e) {
+            throw e.getCause();
+        } catch (CancellationException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            throw e.getCause();
+        }
+    }
 
-                JsonElement result = table.execute(strategy.getLastQuery()).get();
+    private void processPartitionedPull(String tableName, Query query, String queryId, PullPartitioning partitioning, final ListenableFuture<?> cancellation)
+            throws Throwable {
 
-                if (result != null) {
+        int count = partitioning.getCount();
 
-                    if (result.isJsonObject()) {
-                        JsonObject jsonObject = result.getAsJsonObject();
+        final Throwable[] exceptions = new Throwable[count];
+        List<Future<?>> partitionFutures = new ArrayList<Future<?>>(count);
 
-                        if (jsonObject.has("results") && jsonObject.get("results").isJsonArray()) {
-                            elements = jsonObject.get("results").getAsJsonArray();
-                        }
+        // The partitions beyond the pool size wait for a free thread
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(count, MAX_PULL_PARTITION_THREADS),
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("MobileServicePullPartition-%d").build());
 
-                    } else if (result.isJsonArray()) {
-                        elements = result.getAsJsonArray();
-                    }
+        for (int i = 0; i < count; i++) {
+            final int partition = i;
 
-                    processElements(tableName, elements);
+            // Every partition has its own table, since the strategies set its
+            // system properties
+            final MobileServiceJsonTable table = getPullTable(tableName);
+            Query partitionQuery = partitioning.getQuery(getPullQuery(table, query), partition);
 
-                    strategy.onResultsProcessed(elements);
+            final PullStrategy strategy;
+
+            if (queryId != null) {
+                strategy = new IncrementalPullStrategy(partitionQuery, queryId, partition, this.mStore, table);
+            } else {
+                strategy = new PullStrategy(partitionQuery, table);
+            }
+
+            final String thisTableName = tableName;
+            final String thisQueryId = queryId;
+
+            partitionFutures.add(executor.submit(new Runnable() {
+
+                @Override
+                public void run() {
+                    try {
+                        strategy.initialize();
+
+                        pullPages(thisTableName, thisQueryId, table, strategy, cancellation);
+                    } catch (Throwable throwable) {
+                        exceptions[partition] = throwable;
+                    }
                 }
+            }));
+        }
 
+        try {
+            for (Future<?> partitionFuture : partitionFutures) {
+                partitionFuture.get();
             }
-            while (strategy.moveToNextPage(elements.size()));
+        } finally {
+            executor.shutdown();
+        }
 
-        } catch (ExecutionException e) {
-            throw e.getCause();
-        } catch (RuntimeException e) {
-            throw e.getCause();
+        for (Throwable exception : exceptions) {
+            if (exception instanceof CancellationException) {
+                throw exception;
+            } else if ((exception instanceof ExecutionException || exception instanceof RuntimeException) && exception.getCause() != null) {
+                throw exception.getCause();
+            } else if (exception != null) {
+                throw exception;
+            }
+        }
+
+        // The partitions that completed keep their watermarks until all of
+        // them complete, so that a failed pull resumes where they stopped
+        if (queryId != null) {
+            IncrementalPullStrategy.mergePartitions(this.mStore, getPullQuery(getPullTable(tableName), query), queryId, partitioning);
         }
     }
 
-    private void processElements(String tableName, JsonArray elements) throws Throwable {
-        if (elements != null) {
+    private MobileServiceJsonTable getPullTable(String tableName) {
+        MobileServiceJsonTable table = this.mClient.getTable(tableName);
+
+        table.addFeature(MobileServiceFeatures.Offline);
+
+        return table;
+    }
+
+    private Query getPullQuery(MobileServiceJsonTable table, Query query) {
+        if (query == null) {
+            return table.top(1000).orderBy("id", QueryOrder.Ascending);
+        } else {
+            return query.deepClone();
+        }
+    }
+
+    private void pullPages(String tableName, String queryId, MobileServiceJsonTable table, PullStrategy strategy, ListenableFuture<?> cancellation)
+            throws Throwable {
+
+        JsonArray elements = null;
+        int pageIndex = 0;
+
+        // A single listener cancels the page in flight, whichever it is
+        final AtomicReference<Future<?>> currentPage = new AtomicReference<Future<?>>();
+
+        if (cancellation != null) {
+            final ListenableFuture<?> pull = cancellation;
+
+            cancellation.addListener(new Runnable() {
+                @Override
+                public void run() {
+                    Future<?> page = currentPage.get();
+
+                    if (pull.isCancelled() && page != null) {
+                        page.cancel(true);
+                    }
+                }
+            }, MoreExecutors.directExecutor());
+        }
+
+        do {
+            // Each page is committed with its watermark, so the pull can stop
+            // between two pages
+            throwIfCancelled(cancellation);
+
+            long startTime = System.nanoTime();
+
+            ListenableFuture<JsonElement> page = table.execute(strategy.getLastQuery());
+
+            currentPage.set(page);
+
+            // The pull may have been cancelled before the page was set
+            if (cancellation != null && cancellation.isCancelled()) {
+                page.cancel(true);
+            }
+
+            JsonElement result = page.get();
+
+            // A page received after the pull was cancelled is not stored
+            throwIfCancelled(cancellation);
+
+            long networkTime = System.nanoTime() - startTime;
+
+            if (result != null) {
+
+                if (result.isJsonObject()) {
+                    JsonObject jsonObject = result.getAsJsonObject();
+
+                    if (jsonObject.has("results") && jsonObject.get("results").isJsonArray()) {
+                        elements = jsonObject.get("results").getAsJsonArray();
+                    }
+
+                } else if (result.isJsonArray()) {
+                    elements = result.getAsJsonArray();
+                }
+
+                List<JsonObject> updatedJsonObjects = new ArrayList<JsonObject>();
+                List<String> deletedIds = new ArrayList<String>();
+
+                startTime = System.nanoTime();
+
+                readElements(elements, updatedJsonObjects, deletedIds);
 
-            List<JsonObject> updatedJsonObjects = new ArrayList<JsonObject>();
-            List<String> deletedIds = new ArrayList<String>();
+                long decodeTime = System.nanoTime() - startTime;
+                startTime = System.nanoTime();
+
+                // An empty page, usually the last one, writes nothing
+                boolean hasElements = elements != null && elements.size() > 0;
+
+                if (hasElements && this.mStore instanceof TransactionalLocalStore) {
+                    TransactionalLocalStore store = (TransactionalLocalStore) this.mStore;
+
+                    // The items and the watermark of a page are committed
+                    // together, so that a page is never stored without its
+                    // watermark, nor the other way round
+                    store.beginTransaction();
+
+                    try {
+                        storeElements(tableName, updatedJsonObjects, deletedIds);
+
+                        strategy.onResultsProcessed(elements);
+
+                        store.setTransactionSuccessful();
+                    } finally {
+                        store.endTransaction();
+                    }
+                } else {
+                    storeElements(tableName, updatedJsonObjects, deletedIds);
+
+                    strategy.onResultsProcessed(elements);
+                }
+
+                long storeWriteTime = System.nanoTime() - startTime;
+
+                if (this.mSyncEventListener != null) {
+                    int rowCount = elements != null ? elements.size() : 0;
+                    onPullPageCompleted(new PullPageEvent(tableName, queryId, pageIndex, rowCount, networkTime, decodeTime, storeWriteTime));
+                }
+            }
+
+            pageIndex++;
+
+        }
+        while (strategy.moveToNextPage(elements.size()));
+    }
 
+    private static void throwIfCancelled(Future<?> cancellation) {
+        if (cancellation != null && cancellation.isCancelled()) {
+            throw new CancellationException("The pull was cancelled.");
+        }
+    }
 
+    private void readElements(JsonArray elements, List<JsonObject> updatedJsonObjects, List<String> deletedIds) {
+        if (elements != null) {
             for (JsonElement element : elements) {
 
                 JsonObject jsonObject = element.getAsJsonObject();
@@ -779,16 +1122,18 @@ public class MobileServiceSyncContext {
                     updatedJsonObjects.add(jsonObject);
                 }
             }
+        }
+    }
 
-            if (deletedIds.size() > 0) {
-                this.mStore.delete(tableName,
-                        deletedIds.toArray(new String[deletedIds.size()]));
-            }
+    private void storeElements(String tableName, List<JsonObject> updatedJsonObjects, List<String> deletedIds) throws Throwable {
+        if (deletedIds.size() > 0) {
+            this.mStore.delete(tableName,
+                    deletedIds.toArray(new String[deletedIds.size()]));
+        }
 
-            if (updatedJsonObjects.size() > 0) {
-                this.mStore.upsert(tableName,
-                        updatedJsonObjects.toArray(new JsonObject[updatedJsonObjects.size()]), true);
-            }
+        if (updatedJsonObjects.size() > 0) {
+            this.mStore.upsert(tableName,
+                    updatedJsonObjects.toArray(new JsonObject[updatedJsonObjects.size()]), true);
         }
     }
 
@@ -862,8 +1207,12 @@ public class MobileServiceSyncContext {
 
             while (operation != null) {
                 try {
+                    long startTime = System.nanoTime();
+                    boolean pushed = false;
+
                     try {
                         pushOperation(operation);
+                        pushed = true;
                     } catch (MobileServiceLocalStoreException localStoreException) {
                         pushCompletionResult.setStatus(MobileServicePushStatus.CancelledByLocalStoreError);
 
@@ -881,6 +1230,8 @@ public class MobileServiceSyncContext {
                             this.mOpErrorList.add(getTableOperationError(operation, syncHandlerException));
                             failedOperations.add(operation);
                         }
+                    } finally {
+                        onPushOperationCompleted(operation, System.nanoTime() - startTime, pushed);
                     }
 
                     // '/' is a reserved character that cannot be used on string
@@ -892,8 +1243,16 @@ public class MobileServiceSyncContext {
 
                     this.mStore.delete(ITEM_BACKUP_TABLE, tableItemId);
 
+                    // A failed operation is pushed again, so it keeps the
+                    // snapshot of the server version
+                    if (pushed) {
+                        this.mStore.delete(ITEM_SNAPSHOT_TABLE, tableItemId);
+                    }
+
                     bookmark.dequeue();
 
+                    onQueueDepthChanged();
+
                 } finally {
                     try {
                         this.mIdLockMap.unLock(lockedOp.getIdLock());
@@ -925,7 +1284,7 @@ public class MobileServiceSyncContext {
         if (pushCompletionResult.getStatus() != MobileServicePushStatus.Complete) {
             if (failedOperations.size() > 0) {
                 //Reload Queue with pending error operations
-                this.mOpLock.writeLock().lock();
+                lockOp(this.mOpLock.writeLock());
 
                 try {
                     for (TableOperation failedOperation : failedOperations) {
@@ -959,7 +1318,19 @@ public class MobileServiceSyncContext {
             }
         }
 
-        JsonObject result = this.mHandler.executeTableOperation(new RemoteTableOperationProcessor(this.mClient, item), operation);
+        JsonObject snapshot = null;
+
+        if (operation.getKind() == TableOperationKind.Update) {
+            String tableItemId = operation.getTableName() + "/" + operation.getItemId();
+
+            JsonObject snapshotItem = this.mStore.lookup(ITEM_SNAPSHOT_TABLE, tableItemId);
+
+            if (snapshotItem != null && snapshotItem.get("serveritem").isJsonObject()) {
+                snapshot = snapshotItem.getAsJsonObject("serveritem");
+            }
+        }
+
+        JsonObject result = this.mHandler.executeTableOperation(new RemoteTableOperationProcessor(this.mClient, item, snapshot), operation);
 
         if (result != null) {
             this.mStore.upsert(operation.getTableName(), result, true);
@@ -967,21 +1338,26 @@ public class MobileServiceSyncContext {
     }
 
     private LockProtectedOperation peekAndLock(Bookmark bookmark) {
-        LockProtectedOperation lockedOp = null;
-
         // prevent Coffman Circular wait condition: lock resources in same
         // order, independent of unlock order. Op then Table then Id.
 
-        // get EXCLUSIVE access to op lock, for a short time
-        this.mOpLock.writeLock().lock();
-
-        try {
+        // The op lock is not taken, so that local writes proceed while the
+        // push advances the queue. A local write may collapse the peeked
+        // operation before its locks are acquired, so the queue is peeked
+        // again once they are held, until the operation is still the next.
+        while (true) {
             TableOperation operation = bookmark.peek();
 
-            if (operation != null) {
-                // get SHARED access to table lock
-                MultiReadWriteLock<String> tableLock = this.mTableLockMap.lockRead(operation.getTableName());
+            if (operation == null) {
+                return null;
+            }
+
+            // get SHARED access to table lock
+            MultiReadWriteLock<String> tableLock = lockTableRead(operation.getTableName());
+
+            MultiLock<String> idLock = null;
 
+            try {
                 // '/' is a reserved character that cannot be used on string
                 // ids.
                 // We use it to build a unique compound string from tableName
@@ -989,15 +1365,28 @@ public class MobileServiceSyncContext {
                 String tableItemId = operation.getTableName() + "/" + operation.getItemId();
 
                 // get EXCLUSIVE access to id lock
-                MultiLock<String> idLock = this.mIdLockMap.lock(tableItemId);
+                idLock = lockId(tableItemId);
+
+                if (bookmark.peek() == operation) {
+                    LockProtectedOperation lockedOp = new LockProtectedOperation(operation, tableLock, idLock);
+
+                    tableLock = null;
+                    idLock = null;
 
-                lockedOp = new LockProtectedOperation(operation, tableLock, idLock);
+                    return lockedOp;
+                }
+            } finally {
+                try {
+                    if (idLock != null) {
+                        this.mIdLockMap.unLock(idLock);
+                    }
+                } finally {
+                    if (tableLock != null) {
+                        this.mTableLockMap.unLockRead(tableLock);
+                    }
+                }
             }
-        } finally {
-            this.mOpLock.writeLock().unlock();
         }
-
-        return lockedOp;
     }
 
     private MobileServicePushStatus getPushCancelReason(MobileServiceSyncHandlerException syncHandlerException) {
@@ -1069,11 +1458,11 @@ public class MobileServiceSyncContext {
             // order, independent of unlock order. Op then Table then Id.
 
             // get SHARED access to op lock
-            this.mOpLock.readLock().lock();
+            lockOp(this.mOpLock.readLock());
 
             try {
                 // get SHARED access to table lock
-                MultiReadWriteLock<String> tableLock = this.mTableLockMap.lockRead(operation.getTableName());
+                MultiReadWriteLock<String> tableLock = lockTableRead(operation.getTableName());
 
                 try {
                     // '/' is a reserved character that cannot be used on string
@@ -1084,11 +1473,21 @@ public class MobileServiceSyncContext {
                     String tableItemId = operation.getTableName() + "/" + operation.getItemId();
 
                     // get EXCLUSIVE access to id lock
-                    MultiLock<String> idLock = this.mIdLockMap.lock(tableItemId);
+                    MultiLock<String> idLock = lockId(tableItemId);
 
                     try {
+                        if (operation.getKind() == TableOperationKind.Update) {
+                            snapshotItem(operation, tableItemId);
+                        }
+
                         operation.accept(new LocalTableOperationProcessor(this.mStore, item, ITEM_BACKUP_TABLE));
-                        this.mOpQueue.enqueue(operation);
+                        boolean collapsed = this.mOpQueue.enqueue(operation);
+
+                        if (collapsed) {
+                            onOperationCollapsed(operation);
+                        }
+
+                        onQueueDepthChanged();
                     } finally {
                         this.mIdLockMap.unLock(idLock);
                     }
@@ -1103,6 +1502,245 @@ public class MobileServiceSyncContext {
         }
     }
 
+    private void processOperations(String tableName, List<TableOperation> operations, List<JsonObject> items) throws Throwable {
+        this.mInitLock.readLock().lock();
+
+        try {
+            ensureCorrectlyInitialized();
+
+            // prevent Coffman Circular wait condition: lock resources in same
+            // order, independent of unlock order. Op then Table then Id.
+
+            // get SHARED access to op lock
+            lockOp(this.mOpLock.readLock());
+
+            try {
+                // get EXCLUSIVE access to table lock, which covers every item
+                // of the table, instead of an id lock per item
+                MultiReadWriteLock<String> tableLock = lockTableWrite(tableName);
+
+                try {
+                    List<TableOperation> collapsedOperations;
+
+                    if (this.mOpQueue.supportsBatches()) {
+                        this.mOpQueue.beginBatch();
+
+                        try {
+                            processLocalOperations(tableName, operations, items);
+                            collapsedOperations = this.mOpQueue.enqueueAll(operations);
+
+                            this.mOpQueue.setBatchSuccessful();
+                        } finally {
+                            this.mOpQueue.endBatch();
+                        }
+                    } else {
+                        // Without transactions, each item is written with its
+                        // operation, as by single operations
+                        collapsedOperations = processOperationsOneByOne(operations, items);
+                    }
+
+                    for (TableOperation operation : collapsedOperations) {
+                        onOperationCollapsed(operation);
+                    }
+
+                    onQueueDepthChanged();
+                } finally {
+                    this.mTableLockMap.unLockWrite(tableLock);
+                }
+            } finally {
+                this.mOpLock.readLock().unlock();
+            }
+        } finally {
+            this.mInitLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Applies a list of operations to the local table and enqueues them one
+     * at a time
+     *
+     * @return the operations that were collapsed with a pending operation
+     */
+    private List<TableOperation> processOperationsOneByOne(List<TableOperation> operations, List<JsonObject> items) throws Throwable {
+        List<TableOperation> collapsedOperations = new ArrayList<TableOperation>();
+
+        for (int i = 0; i < operations.size(); i++) {
+            TableOperation operation = operations.get(i);
+
+            if (operation.getKind() == TableOperationKind.Update) {
+                snapshotItem(operation, operation.getTableName() + "/" + operation.getItemId());
+            }
+
+            operation.accept(new LocalTableOperationProcessor(this.mStore, items.get(i), ITEM_BACKUP_TABLE));
+
+            if (this.mOpQueue.enqueue(operation)) {
+                collapsedOperations.add(operation);
+            }
+        }
+
+        return collapsedOperations;
+    }
+
+    /**
+     * Applies a list of operations to the local table, upserting the inserted
+     * and updated items at once
+     */
+    private void processLocalOperations(String tableName, List<TableOperation> operations, List<JsonObject> items) throws Throwable {
+        List<JsonObject> upsertedItems = new ArrayList<JsonObject>();
+
+        for (int i = 0; i < operations.size(); i++) {
+            TableOperation operation = operations.get(i);
+            JsonObject item = items.get(i);
+
+            if (operation.getKind() == TableOperationKind.Delete) {
+                operation.accept(new LocalTableOperationProcessor(this.mStore, item, ITEM_BACKUP_TABLE));
+            } else {
+                if (operation.getKind() == TableOperationKind.Update) {
+                    // The snapshots are taken before the items are upserted
+                    snapshotItem(operation, operation.getTableName() + "/" + operation.getItemId());
+                }
+
+                upsertedItems.add(item);
+            }
+        }
+
+        if (!upsertedItems.isEmpty()) {
+            this.mStore.upsert(tableName, upsertedItems.toArray(new JsonObject[upsertedItems.size()]), false);
+        }
+    }
+
+    /**
+     * Saves the last server version of an item before its first local update,
+     * so that the update pushes only the changed fields. The item is the
+     * server version if it has no pending operation. A snapshot already saved
+     * is kept until the item is pushed, since a failed push leaves local
+     * changes in the item.
+     */
+    private void snapshotItem(TableOperation operation, String tableItemId) throws MobileServiceLocalStoreException {
+        if (this.mOpQueue.hasPendingOperation(operation.getTableName(), operation.getItemId())) {
+            return;
+        }
+
+        if (this.mStore.lookup(ITEM_SNAPSHOT_TABLE, tableItemId) != null) {
+            return;
+        }
+
+        JsonObject serverItem = this.mStore.lookup(operation.getTableName(), operation.getItemId());
+
+        if (serverItem != null) {
+            JsonObject snapshotItem = new JsonObject();
+            snapshotItem.addProperty("id", tableItemId);
+            snapshotItem.addProperty("tablename", operation.getTableName());
+            snapshotItem.addProperty("itemid", operation.getItemId());
+            snapshotItem.add("serveritem", serverItem);
+
+            this.mStore.upsert(ITEM_SNAPSHOT_TABLE, snapshotItem, false);
+        }
+    }
+
+    private void lockOp(Lock lock) {
+        long startTime = System.nanoTime();
+
+        lock.lock();
+
+        onLockAcquired(SyncLockKind.Operation, null, startTime);
+    }
+
+    private MultiReadWriteLock<String> lockTableRead(String tableName) {
+        long startTime = System.nanoTime();
+
+        MultiReadWriteLock<String> tableLock = this.mTableLockMap.lockRead(tableName);
+
+        onLockAcquired(SyncLockKind.Table, tableName, startTime);
+
+        return tableLock;
+    }
+
+    private MultiReadWriteLock<String> lockTableWrite(String tableName) {
+        long startTime = System.nanoTime();
+
+        MultiReadWriteLock<String> tableLock = this.mTableLockMap.lockWrite(tableName);
+
+        onLockAcquired(SyncLockKind.Table, tableName, startTime);
+
+        return tableLock;
+    }
+
+    private MultiLock<String> lockId(String tableItemId) {
+        long startTime = System.nanoTime();
+
+        MultiLock<String> idLock = this.mIdLockMap.lock(tableItemId);
+
+        onLockAcquired(SyncLockKind.Item, tableItemId, startTime);
+
+        return idLock;
+    }
+
+    /**
+     * Raises the lock acquired event. Like the other events, an exception
+     * thrown by the listener is ignored, so that it neither leaves a lock held
+     * nor fails an operation that already completed.
+     */
+    private void onLockAcquired(SyncLockKind lockKind, String key, long startTime) {
+        SyncEventListener listener = this.mSyncEventListener;
+
+        if (listener != null) {
+            try {
+                listener.onLockAcquired(lockKind, key, System.nanoTime() - startTime);
+            } catch (RuntimeException e) {
+                // ignored
+            }
+        }
+    }
+
+    private void onQueueDepthChanged() {
+        SyncEventListener listener = this.mSyncEventListener;
+
+        if (listener != null) {
+            try {
+                listener.onQueueDepthChanged(this.mOpQueue.countPending());
+            } catch (RuntimeException e) {
+                // ignored
+            }
+        }
+    }
+
+    private void onOperationCollapsed(TableOperation operation) {
+        SyncEventListener listener = this.mSyncEventListener;
+
+        if (listener != null) {
+            try {
+                listener.onOperationCollapsed(operation);
+            } catch (RuntimeException e) {
+                // ignored
+            }
+        }
+    }
+
+    private void onPushOperationCompleted(TableOperation operation, long latency, boolean succeeded) {
+        SyncEventListener listener = this.mSyncEventListener;
+
+        if (listener != null) {
+            try {
+                listener.onPushOperationCompleted(operation, latency, succeeded);
+            } catch (RuntimeException e) {
+                // ignored
+            }
+        }
+    }
+
+    private void onPullPageCompleted(PullPageEvent event) {
+        SyncEventListener listener = this.mSyncEventListener;
+
+        if (listener != null) {
+            try {
+                listener.onPullPageCompleted(event);
+            } catch (RuntimeException e) {
+                // ignored
+            }
+        }
+    }
+
     private static class PushSyncRequest {
         private Bookmark mBookmark;
         private Semaphore mSignalDone;
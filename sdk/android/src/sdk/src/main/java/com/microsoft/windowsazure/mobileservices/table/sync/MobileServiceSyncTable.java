@@ -31,12 +31,15 @@ import com.google.gson.Gson;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.microsoft.windowsazure.mobileservices.MobileServiceClient;
+import com.microsoft.windowsazure.mobileservices.MobileServiceFutures;
 import com.microsoft.windowsazure.mobileservices.MobileServiceList;
 import com.microsoft.windowsazure.mobileservices.table.query.Query;
 import com.microsoft.windowsazure.mobileservices.table.serialization.JsonEntityParser;
 import com.microsoft.windowsazure.mobileservices.table.sync.localstore.MobileServiceLocalStoreException;
 import com.microsoft.windowsazure.mobileservices.table.sync.operations.TableOperationError;
+import com.microsoft.windowsazure.mobileservices.table.sync.pull.PullPartitioning;
 
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -75,7 +78,25 @@ public class MobileServiceSyncTable<E> {
      * @return A ListenableFuture that is done when results have been pulled.
      */
     public ListenableFuture<Void> pull(Query query, String queryId) {
-        ListenableFuture<Void> pull = this.mInternalTable.pull(query, queryId);
+        return pull(query, queryId, null);
+    }
+
+    /**
+     * Performs a query against the remote table and stores results, pulling
+     * the partitions of the query concurrently. At most four partitions are
+     * pulled at the same time, and their requests are background requests,
+     * so a RequestScheduler set on the client limits them further to its
+     * maximum of background requests.
+     *
+     * @param query        an optional query to filter results
+     * @param queryId      an optional query id, for an incremental pull
+     * @param partitioning an optional partitioning of the query
+     * @return A ListenableFuture that is done when results have been pulled.
+     * Cancelling it aborts the request in flight and stops the pull before
+     * the next page.
+     */
+    public ListenableFuture<Void> pull(Query query, String queryId, PullPartitioning partitioning) {
+        ListenableFuture<Void> pull = this.mInternalTable.pull(query, queryId, partitioning);
 
         final SettableFuture<Void> result = SettableFuture.create();
 
@@ -92,6 +113,8 @@ public class MobileServiceSyncTable<E> {
             }
         });
 
+        MobileServiceFutures.propagateCancellation(result, pull);
+
         return result;
     }
 
@@ -353,6 +376,111 @@ public class MobileServiceSyncTable<E> {
         return future;
     }
 
+    /**
+     * Insert a list of items into the local table and enqueue the operations
+     * to be synchronized on context push. The items and the operations are
+     * written in a single transaction of a TransactionalLocalStore, so either
+     * all the items are inserted or none. Other stores write them one by one.
+     *
+     * @param items the items to be inserted
+     * @return A ListenableFuture that is done when the items have been
+     * inserted, returning the inserted items including ids.
+     */
+    public ListenableFuture<List<E>> insertAll(List<E> items) {
+        final SettableFuture<List<E>> future = SettableFuture.create();
+
+        ListenableFuture<List<JsonObject>> internalFuture = mInternalTable.insertAll(toJsonObjects(items));
+
+        Futures.addCallback(internalFuture, new FutureCallback<List<JsonObject>>() {
+            @Override
+            public void onFailure(Throwable throwable) {
+                future.setException(throwable);
+            }
+
+            @Override
+            public void onSuccess(List<JsonObject> result) {
+                List<E> newItems = new ArrayList<E>(result.size());
+
+                for (JsonObject item : result) {
+                    newItems.add(parseResults(item).get(0));
+                }
+
+                future.set(newItems);
+            }
+        });
+
+        return future;
+    }
+
+    /**
+     * Update a list of items in the local table and enqueue the operations to
+     * be synchronized on context push. The items and the operations are
+     * written in a single transaction of a TransactionalLocalStore, so either
+     * all the items are updated or none. Other stores write them one by one.
+     *
+     * @param items the items to be updated
+     * @return A ListenableFuture that is done when the items have been updated.
+     */
+    public ListenableFuture<Void> updateAll(List<E> items) {
+        final SettableFuture<Void> future = SettableFuture.create();
+
+        ListenableFuture<Void> internalFuture = mInternalTable.updateAll(toJsonObjects(items));
+
+        Futures.addCallback(internalFuture, new FutureCallback<Void>() {
+            @Override
+            public void onFailure(Throwable throwable) {
+                future.setException(throwable);
+            }
+
+            @Override
+            public void onSuccess(Void value) {
+                future.set(value);
+            }
+        });
+
+        return future;
+    }
+
+    /**
+     * Delete a list of items from the local table and enqueue the operations
+     * to be synchronized on context push. The items and the operations are
+     * written in a single transaction of a TransactionalLocalStore, so either
+     * all the items are deleted or none. Other stores write them one by one.
+     *
+     * @param items the items to be deleted
+     * @return A ListenableFuture that is done when the items have been deleted.
+     */
+    public ListenableFuture<Void> deleteAll(List<E> items) {
+        final SettableFuture<Void> future = SettableFuture.create();
+
+        ListenableFuture<Void> internalFuture = mInternalTable.deleteAll(toJsonObjects(items));
+
+        Futures.addCallback(internalFuture, new FutureCallback<Void>() {
+            @Override
+            public void onFailure(Throwable throwable) {
+                future.setException(throwable);
+            }
+
+            @Override
+            public void onSuccess(Void value) {
+                future.set(value);
+            }
+        });
+
+        return future;
+    }
+
+    private List<JsonObject> toJsonObjects(List<E> items) {
+        Gson gson = mClient.getGsonBuilder().create();
+        List<JsonObject> jsonItems = new ArrayList<JsonObject>(items.size());
+
+        for (E item : items) {
+            jsonItems.add(gson.toJsonTree(item).getAsJsonObject());
+        }
+
+        return jsonItems;
+    }
+
     private List<E> parseResults(JsonElement results) {
         Gson gson = mClient.getGsonBuilder().create();
         return JsonEntityParser.parseResults(results, gson, mClazz);
@@ -0,0 +1,130 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+ 
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+ 
+     http://www.apache.org/licenses/LICENSE-2.0
+ 
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ 
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+
+/**
+ * PullPageEvent.java
+ */
+package com.microsoft.windowsazure.mobileservices.table.sync.events;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Timings of a single page of a pull. Times are in nanoseconds.
+ */
+public final class PullPageEvent {
+
+    private String mTableName;
+    private String mQueryId;
+    private int mPageIndex;
+    private int mRowCount;
+    private long mNetworkTime;
+    private long mDecodeTime;
+    private long mStoreWriteTime;
+
+    /**
+     * Constructor for PullPageEvent
+     *
+     * @param tableName      the table name
+     * @param queryId        the query id of an incremental pull, or null
+     * @param pageIndex      the zero-based index of the page
+     * @param rowCount       the number of rows in the page
+     * @param networkTime    the time spent executing the request
+     * @param decodeTime     the time spent reading the rows from the response
+     * @param storeWriteTime the time spent writing the rows and the watermark
+     *                       to the local store
+     */
+    public PullPageEvent(String tableName, String queryId, int pageIndex, int rowCount, long networkTime, long decodeTime, long storeWriteTime) {
+        this.mTableName = tableName;
+        this.mQueryId = queryId;
+        this.mPageIndex = pageIndex;
+        this.mRowCount = rowCount;
+        this.mNetworkTime = networkTime;
+        this.mDecodeTime = decodeTime;
+        this.mStoreWriteTime = storeWriteTime;
+    }
+
+    /**
+     * Returns the table name
+     */
+    public String getTableName() {
+        return this.mTableName;
+    }
+
+    /**
+     * Returns the query id of an incremental pull, or null
+     */
+    public String getQueryId() {
+        return this.mQueryId;
+    }
+
+    /**
+     * Returns the zero-based index of the page
+     */
+    public int getPageIndex() {
+        return this.mPageIndex;
+    }
+
+    /**
+     * Returns the number of rows in the page
+     */
+    public int getRowCount() {
+        return this.mRowCount;
+    }
+
+    /**
+     * Returns the time spent executing the request, including the parsing of
+     * the response body
+     */
+    public long getNetworkTime() {
+        return this.mNetworkTime;
+    }
+
+    /**
+     * Returns the time spent reading the rows and deleted ids from the parsed
+     * response
+     */
+    public long getDecodeTime() {
+        return this.mDecodeTime;
+    }
+
+    /**
+     * Returns the time spent writing the rows and the watermark to the local
+     * store
+     */
+    public long getStoreWriteTime() {
+        return this.mStoreWriteTime;
+    }
+
+    /**
+     * Returns the total time spent on the page
+     */
+    public long getTotalTime() {
+        return this.mNetworkTime + this.mDecodeTime + this.mStoreWriteTime;
+    }
+
+    /**
+     * Returns the number of rows processed per second
+     */
+    public double getRowsPerSecond() {
+        long totalTime = getTotalTime();
+
+        return totalTime > 0 ? (double) this.mRowCount * TimeUnit.SECONDS.toNanos(1) / totalTime : 0;
+    }
+}
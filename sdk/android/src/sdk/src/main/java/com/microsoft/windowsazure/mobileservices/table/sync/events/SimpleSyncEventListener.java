@@ -0,0 +1,53 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+ 
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+ 
+     http://www.apache.org/licenses/LICENSE-2.0
+ 
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ 
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+
+/**
+ * SimpleSyncEventListener.java
+ */
+package com.microsoft.windowsazure.mobileservices.table.sync.events;
+
+import com.microsoft.windowsazure.mobileservices.table.sync.operations.TableOperation;
+
+/**
+ * Basic implementation of SyncEventListener that ignores every event.
+ * Override only the events of interest.
+ */
+public class SimpleSyncEventListener implements SyncEventListener {
+
+    @Override
+    public void onPullPageCompleted(PullPageEvent event) {
+    }
+
+    @Override
+    public void onPushOperationCompleted(TableOperation operation, long latency, boolean succeeded) {
+    }
+
+    @Override
+    public void onQueueDepthChanged(int pendingOperations) {
+    }
+
+    @Override
+    public void onOperationCollapsed(TableOperation operation) {
+    }
+
+    @Override
+    public void onLockAcquired(SyncLockKind lockKind, String key, long waitTime) {
+    }
+}
@@ -0,0 +1,77 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+ 
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+ 
+     http://www.apache.org/licenses/LICENSE-2.0
+ 
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ 
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+
+/**
+ * SyncEventListener.java
+ */
+package com.microsoft.windowsazure.mobileservices.table.sync.events;
+
+import com.microsoft.windowsazure.mobileservices.table.sync.operations.TableOperation;
+
+/**
+ * Receives timing and queue events from a MobileServiceSyncContext. Events are
+ * raised synchronously on the thread doing the work, so implementations must
+ * be thread-safe and return quickly. Runtime exceptions thrown by an
+ * implementation are ignored and do not affect the sync operations.
+ */
+public interface SyncEventListener {
+
+    /**
+     * Called after a page of a pull has been written to the local store
+     *
+     * @param event the page timings
+     */
+    void onPullPageCompleted(PullPageEvent event);
+
+    /**
+     * Called after a table operation has been sent to the server
+     *
+     * @param operation the table operation
+     * @param latency   the time spent executing the operation, in nanoseconds
+     * @param succeeded true if the operation completed without error
+     */
+    void onPushOperationCompleted(TableOperation operation, long latency, boolean succeeded);
+
+    /**
+     * Called after operations are added to or removed from the operation
+     * queue
+     *
+     * @param pendingOperations the number of pending operations
+     */
+    void onQueueDepthChanged(int pendingOperations);
+
+    /**
+     * Called when an enqueued operation is collapsed with the pending
+     * operation for the same item
+     *
+     * @param operation the enqueued operation
+     */
+    void onOperationCollapsed(TableOperation operation);
+
+    /**
+     * Called after one of the sync context locks has been acquired
+     *
+     * @param lockKind the kind of lock
+     * @param key      the table name or table/item id, null for the operation
+     *                 lock
+     * @param waitTime the time spent waiting for the lock, in nanoseconds
+     */
+    void onLockAcquired(SyncLockKind lockKind, String key, long waitTime);
+}
@@ -0,0 +1,301 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+
+
+/**
+ * CborColumnCodec.java
+ */
+package com.microsoft.windowsazure.mobileservices.table.sync.localstore;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+
+import java.io.ByteArrayOutputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.Map.Entry;
+
+/**
+ * ColumnCodec using the subset of CBOR (RFC 7049) needed by JSON values:
+ * integers, doubles, UTF-8 strings, arrays, maps, booleans and null. Integral
+ * numbers that fit in 64 bits are stored as integers and other numbers as
+ * doubles. Decoding a value does not tokenize text, and strings are decoded
+ * without escaping.
+ */
+public class CborColumnCodec implements ColumnCodec {
+
+    private static final int MAJOR_UNSIGNED = 0;
+    private static final int MAJOR_NEGATIVE = 1;
+    private static final int MAJOR_TEXT = 3;
+    private static final int MAJOR_ARRAY = 4;
+    private static final int MAJOR_MAP = 5;
+    private static final int MAJOR_SIMPLE = 7;
+
+    private static final int SIMPLE_FALSE = 20;
+    private static final int SIMPLE_TRUE = 21;
+    private static final int SIMPLE_NULL = 22;
+    private static final int SIMPLE_DOUBLE = 27;
+
+    private static final String UTF8 = "UTF-8";
+
+    @Override
+    public byte[] encode(JsonElement value) {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        try {
+            write(output, value);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+
+        return output.toByteArray();
+    }
+
+    @Override
+    public JsonElement decode(byte[] data) {
+        Reader reader = new Reader(data);
+
+        try {
+            JsonElement value = reader.read();
+
+            if (reader.mPosition != data.length) {
+                throw new IllegalArgumentException("Unexpected data after the encoded value.");
+            }
+
+            return value;
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        } catch (IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("The encoded value is truncated.", e);
+        }
+    }
+
+    private static void write(ByteArrayOutputStream output, JsonElement value) throws UnsupportedEncodingException {
+        if (value == null || value.isJsonNull()) {
+            output.write(MAJOR_SIMPLE << 5 | SIMPLE_NULL);
+        } else if (value.isJsonObject()) {
+            JsonObject object = value.getAsJsonObject();
+
+            writeHeader(output, MAJOR_MAP, object.entrySet().size());
+
+            for (Entry<String, JsonElement> property : object.entrySet()) {
+                writeText(output, property.getKey());
+                write(output, property.getValue());
+            }
+        } else if (value.isJsonArray()) {
+            JsonArray array = value.getAsJsonArray();
+
+            writeHeader(output, MAJOR_ARRAY, array.size());
+
+            for (JsonElement element : array) {
+                write(output, element);
+            }
+        } else {
+            JsonPrimitive primitive = value.getAsJsonPrimitive();
+
+            if (primitive.isBoolean()) {
+                output.write(MAJOR_SIMPLE << 5 | (primitive.getAsBoolean() ? SIMPLE_TRUE : SIMPLE_FALSE));
+            } else if (primitive.isNumber()) {
+                writeNumber(output, primitive);
+            } else {
+                writeText(output, primitive.getAsString());
+            }
+        }
+    }
+
+    private static void writeNumber(ByteArrayOutputStream output, JsonPrimitive primitive) {
+        String text = primitive.getAsString();
+
+        if (isIntegral(text)) {
+            try {
+                long longValue = Long.parseLong(text);
+
+                if (longValue >= 0) {
+                    writeHeader(output, MAJOR_UNSIGNED, longValue);
+                } else {
+                    writeHeader(output, MAJOR_NEGATIVE, -1 - longValue);
+                }
+
+                return;
+            } catch (NumberFormatException e) {
+                // Larger than 64 bits, stored as a double
+            }
+        }
+
+        long bits = Double.doubleToLongBits(primitive.getAsDouble());
+
+        output.write(MAJOR_SIMPLE << 5 | SIMPLE_DOUBLE);
+
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            output.write((int) (bits >>> shift));
+        }
+    }
+
+    private static boolean isIntegral(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+
+            if (!(c >= '0' && c <= '9') && !(i == 0 && c == '-')) {
+                return false;
+            }
+        }
+
+        return text.length() > 0;
+    }
+
+    private static void writeText(ByteArrayOutputStream output, String text) throws UnsupportedEncodingException {
+        byte[] bytes = text.getBytes(UTF8);
+
+        writeHeader(output, MAJOR_TEXT, bytes.length);
+        output.write(bytes, 0, bytes.length);
+    }
+
+    private static void writeHeader(ByteArrayOutputStream output, int majorType, long argument) {
+        int type = majorType << 5;
+
+        if (argument < 24) {
+            output.write(type | (int) argument);
+        } else if (argument < 0x100L) {
+            output.write(type | 24);
+            output.write((int) argument);
+        } else if (argument < 0x10000L) {
+            output.write(type | 25);
+            writeBytes(output, argument, 2);
+        } else if (argument < 0x100000000L) {
+            output.write(type | 26);
+            writeBytes(output, argument, 4);
+        } else {
+            output.write(type | 27);
+            writeBytes(output, argument, 8);
+        }
+    }
+
+    private static void writeBytes(ByteArrayOutputStream output, long value, int count) {
+        for (int shift = (count - 1) * 8; shift >= 0; shift -= 8) {
+            output.write((int) (value >>> shift));
+        }
+    }
+
+    private static class Reader {
+        private byte[] mData;
+        private int mPosition;
+
+        private Reader(byte[] data) {
+            this.mData = data;
+        }
+
+        private JsonElement read() throws UnsupportedEncodingException {
+            int initialByte = this.mData[this.mPosition++] & 0xff;
+            int majorType = initialByte >>> 5;
+            int additionalInfo = initialByte & 0x1f;
+
+            if (majorType == MAJOR_SIMPLE) {
+                switch (additionalInfo) {
+                    case SIMPLE_FALSE:
+                        return new JsonPrimitive(false);
+                    case SIMPLE_TRUE:
+                        return new JsonPrimitive(true);
+                    case SIMPLE_NULL:
+                        return JsonNull.INSTANCE;
+                    case SIMPLE_DOUBLE:
+                        return new JsonPrimitive(Double.longBitsToDouble(readBytes(8)));
+                    default:
+                        throw new IllegalArgumentException("Unsupported simple value " + additionalInfo + ".");
+                }
+            }
+
+            long argument = readArgument(additionalInfo);
+
+            switch (majorType) {
+                case MAJOR_UNSIGNED:
+                    return new JsonPrimitive(argument);
+                case MAJOR_NEGATIVE:
+                    return new JsonPrimitive(-1 - argument);
+                case MAJOR_TEXT:
+                    return new JsonPrimitive(readText((int) argument));
+                case MAJOR_ARRAY:
+                    JsonArray array = new JsonArray();
+
+                    for (long i = 0; i < argument; i++) {
+                        array.add(read());
+                    }
+
+                    return array;
+                case MAJOR_MAP:
+                    JsonObject object = new JsonObject();
+
+                    for (long i = 0; i < argument; i++) {
+                        int keyByte = this.mData[this.mPosition++] & 0xff;
+
+                        if (keyByte >>> 5 != MAJOR_TEXT) {
+                            throw new IllegalArgumentException("Map keys must be strings.");
+                        }
+
+                        String key = readText((int) readArgument(keyByte & 0x1f));
+
+                        object.add(key, read());
+                    }
+
+                    return object;
+                default:
+                    throw new IllegalArgumentException("Unsupported major type " + majorType + ".");
+            }
+        }
+
+        private long readArgument(int additionalInfo) {
+            if (additionalInfo < 24) {
+                return additionalInfo;
+            }
+
+            switch (additionalInfo) {
+                case 24:
+                    return readBytes(1);
+                case 25:
+                    return readBytes(2);
+                case 26:
+                    return readBytes(4);
+                case 27:
+                    return readBytes(8);
+                default:
+                    throw new IllegalArgumentException("Unsupported length " + additionalInfo + ".");
+            }
+        }
+
+        private long readBytes(int count) {
+            long value = 0;
+
+            for (int i = 0; i < count; i++) {
+                value = (value << 8) | (this.mData[this.mPosition++] & 0xff);
+            }
+
+            return value;
+        }
+
+        private String readText(int length) throws UnsupportedEncodingException {
+            String text = new String(this.mData, this.mPosition, length, UTF8);
+
+            this.mPosition += length;
+
+            return text;
+        }
+    }
+}
@@ -0,0 +1,49 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+
+
+/**
+ * ColumnCodec.java
+ */
+package com.microsoft.windowsazure.mobileservices.table.sync.localstore;
+
+import com.google.gson.JsonElement;
+
+/**
+ * Encodes the values of ColumnDataType.Other columns, which the local stores
+ * otherwise keep as JSON text, to the bytes stored in a BLOB column
+ */
+public interface ColumnCodec {
+    /**
+     * Encodes a value
+     *
+     * @param value the value, not null
+     * @return the encoded value
+     */
+    byte[] encode(JsonElement value);
+
+    /**
+     * Decodes a value
+     *
+     * @param data the encoded value
+     * @return the value
+     */
+    JsonElement decode(byte[] data);
+}
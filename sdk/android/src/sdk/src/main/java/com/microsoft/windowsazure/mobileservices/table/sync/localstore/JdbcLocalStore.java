@@ -0,0 +1,806 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+
+/**
+ * JdbcLocalStore.java
+ */
+package com.microsoft.windowsazure.mobileservices.table.sync.localstore;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.microsoft.windowsazure.mobileservices.table.query.Query;
+import com.microsoft.windowsazure.mobileservices.table.query.QuerySQLWriter;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Implements MobileServiceLocalStore backed by a JDBC connection to an SQLite
+ * database, so the offline sync engine can run outside of an Android device
+ */
+public class JdbcLocalStore implements TransactionalLocalStore {
+    private Map<String, Map<String, ColumnDataInfo>> mTables;
+    private String mUrl;
+    private Connection mConnection;
+    private ReentrantLock mConnectionLock;
+    private boolean mDatesStoredAsEpochMillis;
+    private ColumnCodec mOtherColumnCodec;
+
+    /**
+     * Nesting depth of the current transaction. The connection lock is held
+     * while a transaction is open, so only the owning thread uses these
+     */
+    private int mTransactionDepth;
+    private boolean mTransactionSuccessful;
+    private boolean mTransactionFailed;
+    private boolean mTransactionAutoCommit;
+
+    /**
+     * Constructor for JdbcLocalStore
+     *
+     * @param url the JDBC url of the SQLite database, e.g.
+     *            "jdbc:sqlite:/path/to/file.db" or "jdbc:sqlite::memory:"
+     */
+    public JdbcLocalStore(String url) {
+        if (url == null || url.trim().length() == 0) {
+            throw new IllegalArgumentException("url cannot be null or empty.");
+        }
+
+        this.mTables = new HashMap<String, Map<String, ColumnDataInfo>>();
+        this.mUrl = url;
+        this.mConnectionLock = new ReentrantLock();
+    }
+
+    /**
+     * Constructor for JdbcLocalStore
+     *
+     * @param connection an open JDBC connection to an SQLite database. The store
+     *                   takes ownership of the connection
+     */
+    public JdbcLocalStore(Connection connection) {
+        if (connection == null) {
+            throw new IllegalArgumentException("connection cannot be null.");
+        }
+
+        this.mTables = new HashMap<String, Map<String, ColumnDataInfo>>();
+        this.mConnection = connection;
+        this.mConnectionLock = new ReentrantLock();
+    }
+
+    /**
+     * Stores the Date and DateTimeOffset columns as INTEGER milliseconds since
+     * the epoch instead of ISO 8601 TEXT, so that date filters and sorting
+     * compare integers. Items are still read and written with ISO 8601
+     * strings. Must be set before the tables are created, and cannot be
+     * changed for an existing database.
+     *
+     * @param datesStoredAsEpochMillis true to store dates as milliseconds since
+     *                                 the epoch
+     */
+    public void setDatesStoredAsEpochMillis(boolean datesStoredAsEpochMillis) {
+        this.mDatesStoredAsEpochMillis = datesStoredAsEpochMillis;
+    }
+
+    /**
+     * Indicates if the Date and DateTimeOffset columns are stored as INTEGER
+     * milliseconds since the epoch
+     */
+    public boolean areDatesStoredAsEpochMillis() {
+        return this.mDatesStoredAsEpochMillis;
+    }
+
+    /**
+     * Sets the codec of the ColumnDataType.Other columns, stored as BLOB
+     * instead of JSON text. Must be set before the tables are created, and
+     * cannot be changed for an existing database.
+     *
+     * @param otherColumnCodec the codec, or null to store JSON text
+     */
+    public void setOtherColumnCodec(ColumnCodec otherColumnCodec) {
+        this.mOtherColumnCodec = otherColumnCodec;
+    }
+
+    /**
+     * Returns the codec of the ColumnDataType.Other columns, or null if they
+     * are stored as JSON text
+     */
+    public ColumnCodec getOtherColumnCodec() {
+        return this.mOtherColumnCodec;
+    }
+
+    @Override
+    public void initialize() throws MobileServiceLocalStoreException {
+        this.mConnectionLock.lock();
+
+        try {
+            Connection connection = this.getConnection();
+
+            boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+
+            try {
+                Map<String, String> tableSchemas = readStrings(connection, SQLiteStoreUtilities.SELECT_TABLE_SCHEMAS_SQL, true);
+                boolean fingerprintTableExists = tableSchemas.containsKey(SQLiteStoreUtilities.SCHEMA_FINGERPRINT_TABLE);
+
+                Map<String, String> fingerprints = fingerprintTableExists ? readStrings(connection,
+                        SQLiteStoreUtilities.SELECT_SCHEMA_FINGERPRINTS_SQL, false) : new HashMap<String, String>();
+
+                // Tables whose definition or schema changed since the last
+                // initialization; the others are left untouched
+                List<String> changedTables = new ArrayList<String>();
+
+                for (Entry<String, Map<String, ColumnDataInfo>> entry : this.mTables.entrySet()) {
+                    String tableSchema = tableSchemas.get(entry.getKey());
+
+                    if (tableSchema == null
+                            || !SQLiteStoreUtilities.getSchemaFingerprint(entry.getValue(), tableSchema, this.mDatesStoredAsEpochMillis,
+                            this.mOtherColumnCodec).equals(fingerprints.get(entry.getKey()))) {
+                        changedTables.add(entry.getKey());
+                    }
+                }
+
+                if (!changedTables.isEmpty()) {
+                    if (!fingerprintTableExists) {
+                        executeUpdate(connection, SQLiteStoreUtilities.CREATE_SCHEMA_FINGERPRINT_TABLE_SQL, null);
+                    }
+
+                    for (String invTableName : changedTables) {
+                        createTableFromObject(connection, invTableName, this.mTables.get(invTableName), this.mDatesStoredAsEpochMillis,
+                                this.mOtherColumnCodec);
+                    }
+
+                    tableSchemas = readStrings(connection, SQLiteStoreUtilities.SELECT_TABLE_SCHEMAS_SQL, true);
+
+                    for (String invTableName : changedTables) {
+                        List<Object> parameters = new ArrayList<Object>();
+                        parameters.add(invTableName);
+                        parameters.add(SQLiteStoreUtilities.getSchemaFingerprint(this.mTables.get(invTableName), tableSchemas.get(invTableName),
+                                this.mDatesStoredAsEpochMillis, this.mOtherColumnCodec));
+
+                        executeUpdate(connection, SQLiteStoreUtilities.UPSERT_SCHEMA_FINGERPRINT_SQL, parameters);
+                    }
+                }
+
+                connection.commit();
+            } catch (Throwable t) {
+                connection.rollback();
+                throw t;
+            } finally {
+                connection.setAutoCommit(autoCommit);
+            }
+        } catch (Throwable t) {
+            throw new MobileServiceLocalStoreException(t);
+        } finally {
+            this.mConnectionLock.unlock();
+        }
+    }
+
+    @Override
+    public void defineTable(String tableName, Map<String, ColumnDataType> columns) throws MobileServiceLocalStoreException {
+        try {
+            String invTableName = SQLiteStoreUtilities.normalizeTableName(tableName);
+
+            Map<String, ColumnDataInfo> table = this.mTables.containsKey(invTableName) ? this.mTables.get(invTableName) : new HashMap<String, ColumnDataInfo>();
+            table.put("id", new ColumnDataInfo(ColumnDataType.String, "id"));
+
+            for (String colName : columns.keySet()) {
+                ColumnDataType colDataType = columns.get(colName);
+                String invColumnName = SQLiteStoreUtilities.normalizeColumnName(colName);
+
+                SQLiteStoreUtilities.validateReservedProperties(colDataType, invColumnName);
+
+                if (!invColumnName.equals("id")) {
+                    table.put(invColumnName, new ColumnDataInfo(colDataType, colName));
+                }
+            }
+
+            this.mTables.put(invTableName, table);
+        } catch (Throwable t) {
+            throw new MobileServiceLocalStoreException(t);
+        }
+    }
+
+    @Override
+    public JsonElement read(Query query) throws MobileServiceLocalStoreException {
+        try {
+            JsonElement result;
+            JsonArray rows = new JsonArray();
+
+            String invTableName = SQLiteStoreUtilities.normalizeTableName(query.getTableName());
+
+            Map<String, ColumnDataInfo> table = this.mTables.get(invTableName);
+
+            String[] columns = SQLiteStoreUtilities.getColumns(query, table);
+
+            String whereClause = SQLiteStoreUtilities.getWhereClause(query, this.mDatesStoredAsEpochMillis);
+
+            String orderByClause = QuerySQLWriter.getOrderByClause(query);
+
+            StringBuilder sql = new StringBuilder();
+            sql.append("SELECT ");
+
+            String delimiter = "";
+
+            for (String column : columns) {
+                sql.append(delimiter);
+                sql.append("\"");
+                sql.append(column);
+                sql.append("\"");
+                delimiter = ",";
+            }
+
+            sql.append(" FROM \"");
+            sql.append(invTableName);
+            sql.append("\"");
+
+            if (whereClause != null) {
+                sql.append(" WHERE ");
+                sql.append(whereClause);
+            }
+
+            if (orderByClause != null) {
+                sql.append(" ORDER BY ");
+                sql.append(orderByClause);
+            }
+
+            int limit = query.getTop() > 0 ? query.getTop() : -1;
+            int offset = query.getSkip() > 0 ? query.getSkip() : 0;
+
+            if (limit > 0 || offset > 0) {
+                sql.append(" LIMIT ");
+                sql.append(limit);
+                sql.append(" OFFSET ");
+                sql.append(offset);
+            }
+
+            Integer inlineCount = null;
+
+            this.mConnectionLock.lock();
+
+            try {
+                Connection connection = this.getConnection();
+
+                if (query.hasInlineCount()) {
+                    inlineCount = count(connection, invTableName, whereClause);
+                }
+
+                PreparedStatement statement = connection.prepareStatement(sql.toString());
+
+                try {
+                    ResultSet resultSet = statement.executeQuery();
+
+                    try {
+                        Map<String, Integer> columnIndexes = getColumnIndexes(resultSet);
+
+                        while (resultSet.next()) {
+                            rows.add(parseRow(resultSet, columnIndexes, table, this.mDatesStoredAsEpochMillis, this.mOtherColumnCodec));
+                        }
+                    } finally {
+                        resultSet.close();
+                    }
+                } finally {
+                    statement.close();
+                }
+            } finally {
+                this.mConnectionLock.unlock();
+            }
+
+            if (query.hasInlineCount()) {
+                JsonObject resObj = new JsonObject();
+                resObj.addProperty("count", inlineCount);
+                resObj.add("results", rows);
+                result = resObj;
+            } else {
+                result = rows;
+            }
+
+            return result;
+        } catch (Throwable t) {
+            throw new MobileServiceLocalStoreException(t);
+        }
+    }
+
+    @Override
+    public JsonObject lookup(String tableName, String itemId) throws MobileServiceLocalStoreException {
+        try {
+            JsonObject result = null;
+            String invTableName = SQLiteStoreUtilities.normalizeTableName(tableName);
+
+            Map<String, ColumnDataInfo> table = this.mTables.get(invTableName);
+
+            this.mConnectionLock.lock();
+
+            try {
+                PreparedStatement statement = this.getConnection().prepareStatement(
+                        String.format("SELECT * FROM \"%s\" WHERE \"id\" = ?", invTableName));
+
+                try {
+                    statement.setString(1, itemId);
+
+                    ResultSet resultSet = statement.executeQuery();
+
+                    try {
+                        if (resultSet.next()) {
+                            result = parseRow(resultSet, getColumnIndexes(resultSet), table, this.mDatesStoredAsEpochMillis, this.mOtherColumnCodec);
+                        }
+                    } finally {
+                        resultSet.close();
+                    }
+                } finally {
+                    statement.close();
+                }
+            } finally {
+                this.mConnectionLock.unlock();
+            }
+
+            return result;
+        } catch (Throwable t) {
+            throw new MobileServiceLocalStoreException(t);
+        }
+    }
+
+    @Override
+    public void upsert(String tableName, JsonObject item, boolean fromServer) throws MobileServiceLocalStoreException {
+        try {
+            JsonObject[] items = new JsonObject[1];
+            items[0] = item;
+
+            upsert(tableName, items, fromServer);
+        } catch (Throwable t) {
+            throw new MobileServiceLocalStoreException(t);
+        }
+    }
+
+    @Override
+    public void upsert(String tableName, JsonObject[] items, boolean fromServer) throws MobileServiceLocalStoreException {
+        try {
+            String invTableName = SQLiteStoreUtilities.normalizeTableName(tableName);
+
+            Map<String, ColumnDataInfo> tableDefinition = this.mTables.get(invTableName);
+
+            int pageSize = SQLiteStoreUtilities.getUpsertPageSize(tableDefinition);
+
+            List<SQLiteStoreUtilities.Statement> statements = new ArrayList<SQLiteStoreUtilities.Statement>();
+
+            for (int start = 0; start < items.length; start += pageSize) {
+                int localPageSize = Math.min(pageSize, items.length - start);
+
+                JsonObject[] pageItems = new JsonObject[localPageSize];
+                System.arraycopy(items, start, pageItems, 0, localPageSize);
+
+                SQLiteStoreUtilities.Statement statement = SQLiteStoreUtilities.generateUpsertStatement(invTableName, tableDefinition, pageItems,
+                        fromServer, this.mDatesStoredAsEpochMillis, this.mOtherColumnCodec);
+
+                if (statement.sql.length() > 0) {
+                    statements.add(statement);
+                }
+            }
+
+            if (statements.isEmpty()) {
+                return;
+            }
+
+            this.mConnectionLock.lock();
+
+            try {
+                Connection connection = this.getConnection();
+
+                boolean autoCommit = connection.getAutoCommit();
+                connection.setAutoCommit(false);
+
+                try {
+                    for (SQLiteStoreUtilities.Statement statement : statements) {
+                        executeUpdate(connection, statement.sql, statement.parameters);
+                    }
+
+                    if (autoCommit) {
+                        connection.commit();
+                    }
+                } catch (Throwable t) {
+                    if (autoCommit) {
+                        connection.rollback();
+                    }
+
+                    throw t;
+                } finally {
+                    connection.setAutoCommit(autoCommit);
+                }
+            } finally {
+                this.mConnectionLock.unlock();
+            }
+        } catch (Throwable t) {
+            throw new MobileServiceLocalStoreException(t);
+        }
+    }
+
+    @Override
+    public void delete(String tableName, String itemId) throws MobileServiceLocalStoreException {
+        try {
+            String[] itemsIds = new String[1];
+            itemsIds[0] = itemId;
+
+            delete(tableName, itemsIds);
+        } catch (Throwable t) {
+            throw new MobileServiceLocalStoreException(t);
+        }
+    }
+
+    @Override
+    public void delete(String tableName, String[] itemsIds) throws MobileServiceLocalStoreException {
+        try {
+            String invTableName = SQLiteStoreUtilities.normalizeTableName(tableName);
+
+            this.mConnectionLock.lock();
+
+            try {
+                Connection connection = this.getConnection();
+
+                boolean autoCommit = connection.getAutoCommit();
+                connection.setAutoCommit(false);
+
+                try {
+                    PreparedStatement statement = connection.prepareStatement(String.format("DELETE FROM \"%s\" WHERE \"id\" = ?", invTableName));
+
+                    try {
+                        for (String itemId : itemsIds) {
+                            statement.setString(1, itemId);
+                            statement.addBatch();
+                        }
+
+                        statement.executeBatch();
+                    } finally {
+                        statement.close();
+                    }
+
+                    if (autoCommit) {
+                        connection.commit();
+                    }
+                } catch (Throwable t) {
+                    if (autoCommit) {
+                        connection.rollback();
+                    }
+
+                    throw t;
+                } finally {
+                    connection.setAutoCommit(autoCommit);
+                }
+            } finally {
+                this.mConnectionLock.unlock();
+            }
+        } catch (Throwable t) {
+            throw new MobileServiceLocalStoreException(t);
+        }
+    }
+
+    @Override
+    public void delete(Query query) throws MobileServiceLocalStoreException {
+        try {
+            String invTableName = SQLiteStoreUtilities.normalizeTableName(query.getTableName());
+
+            String whereClause = SQLiteStoreUtilities.getWhereClause(query, this.mDatesStoredAsEpochMillis);
+
+            String sql = String.format("DELETE FROM \"%s\"", invTableName);
+
+            if (whereClause != null) {
+                sql += " WHERE " + whereClause;
+            }
+
+            this.mConnectionLock.lock();
+
+            try {
+                executeUpdate(this.getConnection(), sql, null);
+            } finally {
+                this.mConnectionLock.unlock();
+            }
+        } catch (Throwable t) {
+            throw new MobileServiceLocalStoreException(t);
+        }
+    }
+
+    @Override
+    public void beginTransaction() throws MobileServiceLocalStoreException {
+        // The connection lock is held until the matching endTransaction, so
+        // other threads wait for the transaction to end
+        this.mConnectionLock.lock();
+
+        try {
+            if (this.mTransactionDepth == 0) {
+                Connection connection = this.getConnection();
+
+                this.mTransactionAutoCommit = connection.getAutoCommit();
+                connection.setAutoCommit(false);
+                this.mTransactionFailed = false;
+            }
+
+            this.mTransactionDepth++;
+            this.mTransactionSuccessful = false;
+        } catch (Throwable t) {
+            this.mConnectionLock.unlock();
+            throw new MobileServiceLocalStoreException(t);
+        }
+    }
+
+    @Override
+    public void setTransactionSuccessful() throws MobileServiceLocalStoreException {
+        this.mConnectionLock.lock();
+
+        try {
+            if (this.mTransactionDepth == 0) {
+                throw new MobileServiceLocalStoreException("There is no transaction in progress.");
+            }
+
+            this.mTransactionSuccessful = true;
+        } finally {
+            this.mConnectionLock.unlock();
+        }
+    }
+
+    @Override
+    public void endTransaction() throws MobileServiceLocalStoreException {
+        this.mConnectionLock.lock();
+
+        try {
+            if (this.mTransactionDepth == 0) {
+                throw new MobileServiceLocalStoreException("There is no transaction in progress.");
+            }
+
+            try {
+                this.mTransactionFailed |= !this.mTransactionSuccessful;
+                this.mTransactionSuccessful = false;
+                this.mTransactionDepth--;
+
+                if (this.mTransactionDepth == 0) {
+                    Connection connection = this.getConnection();
+
+                    try {
+                        if (this.mTransactionFailed) {
+                            connection.rollback();
+                        } else {
+                            connection.commit();
+                        }
+                    } finally {
+                        connection.setAutoCommit(this.mTransactionAutoCommit);
+                    }
+                }
+            } catch (Throwable t) {
+                throw new MobileServiceLocalStoreException(t);
+            } finally {
+                // Releases the lock taken by beginTransaction
+                this.mConnectionLock.unlock();
+            }
+        } finally {
+            this.mConnectionLock.unlock();
+        }
+    }
+
+    /**
+     * Closes the underlying JDBC connection
+     *
+     * @throws MobileServiceLocalStoreException
+     */
+    public void close() throws MobileServiceLocalStoreException {
+        this.mConnectionLock.lock();
+
+        try {
+            if (this.mConnection != null) {
+                this.mConnection.close();
+                this.mConnection = null;
+            }
+        } catch (Throwable t) {
+            throw new MobileServiceLocalStoreException(t);
+        } finally {
+            this.mConnectionLock.unlock();
+        }
+    }
+
+    private Connection getConnection() throws SQLException {
+        if (this.mConnection == null) {
+            if (this.mUrl == null) {
+                throw new SQLException("The connection has been closed.");
+            }
+
+            this.mConnection = DriverManager.getConnection(this.mUrl);
+        }
+
+        return this.mConnection;
+    }
+
+    private static void executeUpdate(Connection connection, String sql, List<Object> parameters) throws SQLException {
+        PreparedStatement statement = connection.prepareStatement(sql);
+
+        try {
+            if (parameters != null) {
+                for (int i = 0; i < parameters.size(); i++) {
+                    statement.setObject(i + 1, parameters.get(i));
+                }
+            }
+
+            statement.executeUpdate();
+        } finally {
+            statement.close();
+        }
+    }
+
+    /**
+     * Reads the two columns returned by a query as a map
+     *
+     * @param connection the connection
+     * @param sql        the query
+     * @param lowerCased true to lower case the keys
+     */
+    private static Map<String, String> readStrings(Connection connection, String sql, boolean lowerCased) throws SQLException {
+        Map<String, String> result = new HashMap<String, String>();
+
+        PreparedStatement statement = connection.prepareStatement(sql);
+
+        try {
+            ResultSet resultSet = statement.executeQuery();
+
+            try {
+                while (resultSet.next()) {
+                    String key = resultSet.getString(1);
+                    result.put(lowerCased ? key.toLowerCase(Locale.getDefault()) : key, resultSet.getString(2));
+                }
+            } finally {
+                resultSet.close();
+            }
+        } finally {
+            statement.close();
+        }
+
+        return result;
+    }
+
+    private static int count(Connection connection, String invTableName, String whereClause) throws SQLException {
+        String sql = String.format("SELECT COUNT(*) FROM \"%s\"", invTableName);
+
+        if (whereClause != null) {
+            sql += " WHERE " + whereClause;
+        }
+
+        PreparedStatement statement = connection.prepareStatement(sql);
+
+        try {
+            ResultSet resultSet = statement.executeQuery();
+
+            try {
+                return resultSet.next() ? resultSet.getInt(1) : 0;
+            } finally {
+                resultSet.close();
+            }
+        } finally {
+            statement.close();
+        }
+    }
+
+    private static Map<String, Integer> getColumnIndexes(ResultSet resultSet) throws SQLException {
+        ResultSetMetaData metaData = resultSet.getMetaData();
+
+        Map<String, Integer> columnIndexes = new HashMap<String, Integer>();
+
+        for (int i = 1; i <= metaData.getColumnCount(); i++) {
+            columnIndexes.put(metaData.getColumnName(i).toLowerCase(Locale.getDefault()), i);
+        }
+
+        return columnIndexes;
+    }
+
+    private static JsonObject parseRow(ResultSet resultSet, Map<String, Integer> columnIndexes, Map<String, ColumnDataInfo> table,
+                                       boolean datesStoredAsEpochMillis, ColumnCodec otherColumnCodec) throws SQLException {
+        JsonObject result = new JsonObject();
+
+        for (Entry<String, ColumnDataInfo> column : table.entrySet()) {
+            String originalColumnName = column.getValue().getOriginalName();
+
+            ColumnDataType columnDataType = column.getValue().getColumnDataType();
+            Integer columnIndex = columnIndexes.get(column.getKey());
+
+            if (columnIndex != null) {
+
+                switch (columnDataType) {
+                    case Boolean:
+                        boolean booleanValue = resultSet.getInt(columnIndex) > 0 ? true : false;
+                        result.addProperty(originalColumnName, booleanValue);
+                        break;
+                    case Real:
+                        double doubleValue = resultSet.getDouble(columnIndex);
+                        result.addProperty(originalColumnName, doubleValue);
+                        break;
+                    case Integer:
+                        int intValue = resultSet.getInt(columnIndex);
+                        result.addProperty(originalColumnName, intValue);
+                        break;
+                    case String:
+                        String stringValue = resultSet.getString(columnIndex);
+                        result.addProperty(originalColumnName, stringValue);
+                        break;
+                    case Date:
+                    case DateTimeOffset:
+                        String dateValue;
+
+                        if (datesStoredAsEpochMillis) {
+                            long epochMillis = resultSet.getLong(columnIndex);
+                            dateValue = SQLiteStoreUtilities.getDateString(resultSet.wasNull() ? null : epochMillis);
+                        } else {
+                            dateValue = resultSet.getString(columnIndex);
+                        }
+
+                        result.addProperty(originalColumnName, dateValue);
+                        break;
+                    case Other:
+                        if (otherColumnCodec != null) {
+                            byte[] otherData = resultSet.getBytes(columnIndex);
+                            result.add(originalColumnName, otherData != null ? otherColumnCodec.decode(otherData) : null);
+                        } else {
+                            String otherValue = resultSet.getString(columnIndex);
+                            result.add(originalColumnName, otherValue != null ? new JsonParser().parse(otherValue) : null);
+                        }
+                        break;
+                }
+            }
+        }
+
+        return result;
+    }
+
+    private static void createTableFromObject(Connection connection, String invTableName, Map<String, ColumnDataInfo> table,
+                                              boolean datesStoredAsEpochMillis, ColumnCodec otherColumnCodec) throws SQLException {
+        executeUpdate(connection, String.format("CREATE TABLE IF NOT EXISTS \"%s\" (\"id\" TEXT PRIMARY KEY)", invTableName), null);
+
+        List<String> invColumnNames = new ArrayList<String>();
+
+        PreparedStatement statement = connection.prepareStatement(String.format("PRAGMA table_info(\"%s\")", invTableName));
+
+        try {
+            ResultSet resultSet = statement.executeQuery();
+
+            try {
+                while (resultSet.next()) {
+                    invColumnNames.add(SQLiteStoreUtilities.normalizeColumnName(resultSet.getString("name")));
+                }
+            } finally {
+                resultSet.close();
+            }
+        } finally {
+            statement.close();
+        }
+
+        for (Entry<String, ColumnDataInfo> column : table.entrySet()) {
+            if (!invColumnNames.contains(column.getKey())) {
+                String type = SQLiteStoreUtilities.getColumnType(column.getValue().getColumnDataType(), datesStoredAsEpochMillis, otherColumnCodec);
+
+                executeUpdate(connection, String.format("ALTER TABLE \"%s\" ADD COLUMN \"%s\" %s", invTableName, column.getKey(), type), null);
+            }
+        }
+    }
+}
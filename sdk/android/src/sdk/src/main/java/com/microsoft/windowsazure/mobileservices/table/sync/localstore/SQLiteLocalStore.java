@@ -36,7 +36,6 @@ import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
-import com.microsoft.windowsazure.mobileservices.MobileServiceException;
 import com.microsoft.windowsazure.mobileservices.table.query.Query;
 import com.microsoft.windowsazure.mobileservices.table.query.QuerySQLWriter;
 
@@ -50,10 +49,12 @@ import java.util.Map.Entry;
 /**
  * Implements MobileServiceLocalStore backed by an SQLite DB
  */
-public class SQLiteLocalStore extends SQLiteOpenHelper implements MobileServiceLocalStore {
+public class SQLiteLocalStore extends SQLiteOpenHelper implements TransactionalLocalStore {
     private Map<String, Map<String, ColumnDataInfo>> mTables;
     private int mConcurrencyCount;
     private Object mConcurrencyLock;
+    private boolean mDatesStoredAsEpochMillis;
+    private ColumnCodec mOtherColumnCodec;
 
     /**
      * Constructor for SQLiteLocalStore
@@ -92,14 +93,100 @@ public class SQLiteLocalStore extends SQLiteOpenHelper implements MobileServiceL
     public SQLiteLocalStore(Context context, String name, CursorFactory factory, int version, DatabaseErrorHandler errorHandler) {
         super(context, name, factory, version, errorHandler);
         this.mTables = new HashMap<String, Map<String, ColumnDataInfo>>();
+        this.mConcurrencyCount = 0;
+        this.mConcurrencyLock = new Object();
+    }
+
+    /**
+     * Stores the Date and DateTimeOffset columns as INTEGER milliseconds since
+     * the epoch instead of ISO 8601 TEXT, so that date filters and sorting
+     * compare integers. Items are still read and written with ISO 8601
+     * strings. Must be set before the tables are created, and cannot be
+     * changed for an existing database.
+     *
+     * @param datesStoredAsEpochMillis true to store dates as milliseconds since
+     *                                 the epoch
+     */
+    public void setDatesStoredAsEpochMillis(boolean datesStoredAsEpochMillis) {
+        this.mDatesStoredAsEpochMillis = datesStoredAsEpochMillis;
+    }
+
+    /**
+     * Indicates if the Date and DateTimeOffset columns are stored as INTEGER
+     * milliseconds since the epoch
+     */
+    public boolean areDatesStoredAsEpochMillis() {
+        return this.mDatesStoredAsEpochMillis;
+    }
+
+    /**
+     * Sets the codec of the ColumnDataType.Other columns, stored as BLOB
+     * instead of JSON text. Must be set before the tables are created, and
+     * cannot be changed for an existing database.
+     *
+     * @param otherColumnCodec the codec, or null to store JSON text
+     */
+    public void setOtherColumnCodec(ColumnCodec otherColumnCodec) {
+        this.mOtherColumnCodec = otherColumnCodec;
+    }
+
+    /**
+     * Returns the codec of the ColumnDataType.Other columns, or null if they
+     * are stored as JSON text
+     */
+    public ColumnCodec getOtherColumnCodec() {
+        return this.mOtherColumnCodec;
     }
 
     @Override
     public void initialize() throws MobileServiceLocalStoreException {
         SQLiteDatabase db = this.getWritableDatabaseSynchronized();
         try {
+            Map<String, String> tableSchemas = readStrings(db, SQLiteStoreUtilities.SELECT_TABLE_SCHEMAS_SQL, true);
+            boolean fingerprintTableExists = tableSchemas.containsKey(SQLiteStoreUtilities.SCHEMA_FINGERPRINT_TABLE);
+
+            Map<String, String> fingerprints = fingerprintTableExists ? readStrings(db, SQLiteStoreUtilities.SELECT_SCHEMA_FINGERPRINTS_SQL, false)
+                    : new HashMap<String, String>();
+
+            // Tables whose definition or schema changed since the last
+            // initialization; the others are left untouched
+            List<String> changedTables = new ArrayList<String>();
+
             for (Entry<String, Map<String, ColumnDataInfo>> entry : this.mTables.entrySet()) {
-                createTableFromObject(db, entry.getKey(), entry.getValue());
+                String tableSchema = tableSchemas.get(entry.getKey());
+
+                if (tableSchema == null
+                        || !SQLiteStoreUtilities.getSchemaFingerprint(entry.getValue(), tableSchema, this.mDatesStoredAsEpochMillis, this.mOtherColumnCodec)
+                        .equals(fingerprints.get(entry.getKey()))) {
+                    changedTables.add(entry.getKey());
+                }
+            }
+
+            if (!changedTables.isEmpty()) {
+                db.beginTransaction();
+
+                try {
+                    if (!fingerprintTableExists) {
+                        db.execSQL(SQLiteStoreUtilities.CREATE_SCHEMA_FINGERPRINT_TABLE_SQL);
+                    }
+
+                    for (String invTableName : changedTables) {
+                        createTableFromObject(db, invTableName, this.mTables.get(invTableName));
+                    }
+
+                    tableSchemas = readStrings(db, SQLiteStoreUtilities.SELECT_TABLE_SCHEMAS_SQL, true);
+
+                    for (String invTableName : changedTables) {
+                        String fingerprint = SQLiteStoreUtilities.getSchemaFingerprint(this.mTables.get(invTableName), tableSchemas.get(invTableName),
+                                this.mDatesStoredAsEpochMillis, this.mOtherColumnCodec);
+
+                        db.execSQL(SQLiteStoreUtilities.UPSERT_SCHEMA_FINGERPRINT_SQL, new Object[]{invTableName, fingerprint});
+                    }
+
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
             }
         } catch (Throwable t) {
             throw new MobileServiceLocalStoreException(t);
@@ -111,16 +198,16 @@ public class SQLiteLocalStore extends SQLiteOpenHelper implements MobileServiceL
     @Override
     public void defineTable(String tableName, Map<String, ColumnDataType> columns) throws MobileServiceLocalStoreException {
         try {
-            String invTableName = normalizeTableName(tableName);
+            String invTableName = SQLiteStoreUtilities.normalizeTableName(tableName);
 
             Map<String, ColumnDataInfo> table = this.mTables.containsKey(invTableName) ? this.mTables.get(invTableName) : new HashMap<String, ColumnDataInfo>();
             table.put("id", new ColumnDataInfo(ColumnDataType.String, "id"));
 
             for (String colName : columns.keySet()) {
                 ColumnDataType colDataType = columns.get(colName);
-                String invColumnName = normalizeColumnName(colName);
+                String invColumnName = SQLiteStoreUtilities.normalizeColumnName(colName);
 
-                validateReservedProperties(colDataType, invColumnName);
+                SQLiteStoreUtilities.validateReservedProperties(colDataType, invColumnName);
 
                 if (!invColumnName.equals("id")) {
                     table.put(invColumnName, new ColumnDataInfo(colDataType, colName));
@@ -139,13 +226,13 @@ public class SQLiteLocalStore extends SQLiteOpenHelper implements MobileServiceL
             JsonElement result;
             JsonArray rows = new JsonArray();
 
-            String invTableName = normalizeTableName(query.getTableName());
+            String invTableName = SQLiteStoreUtilities.normalizeTableName(query.getTableName());
 
             Map<String, ColumnDataInfo> table = this.mTables.get(invTableName);
 
-            String[] columns = getColumns(query, table);
+            String[] columns = SQLiteStoreUtilities.getColumns(query, table);
 
-            String whereClause = getWhereClause(query);
+            String whereClause = SQLiteStoreUtilities.getWhereClause(query, this.mDatesStoredAsEpochMillis);
 
             String orderByClause = QuerySQLWriter.getOrderByClause(query);
 
@@ -206,7 +293,7 @@ public class SQLiteLocalStore extends SQLiteOpenHelper implements MobileServiceL
     public JsonObject lookup(String tableName, String itemId) throws MobileServiceLocalStoreException {
         try {
             JsonObject result = null;
-            String invTableName = normalizeTableName(tableName);
+            String invTableName = SQLiteStoreUtilities.normalizeTableName(tableName);
 
             Map<String, ColumnDataInfo> table = this.mTables.get(invTableName);
 
@@ -253,14 +340,11 @@ public class SQLiteLocalStore extends SQLiteOpenHelper implements MobileServiceL
     @Override
     public void upsert(String tableName, JsonObject[] items, boolean fromServer) throws MobileServiceLocalStoreException {
         try {
-            String invTableName = normalizeTableName(tableName);
+            String invTableName = SQLiteStoreUtilities.normalizeTableName(tableName);
 
             int itemsCount = items.length;
 
-            int tableColumnsSize = mTables.get(invTableName).entrySet().size();
-            int maxSize = 999;
-
-            int pageSize = maxSize / tableColumnsSize;
+            int pageSize = SQLiteStoreUtilities.getUpsertPageSize(mTables.get(invTableName));
 
             int pageCounts = (itemsCount / pageSize) + 1;
 
@@ -280,7 +364,8 @@ public class SQLiteLocalStore extends SQLiteOpenHelper implements MobileServiceL
                     pageItems[j] = items[(i * pageSize) + j];
                 }
 
-                Statement statement = generateUpsertStatement(invTableName, pageItems, fromServer);
+                SQLiteStoreUtilities.Statement statement = SQLiteStoreUtilities.generateUpsertStatement(invTableName, mTables.get(invTableName), pageItems, fromServer,
+                        this.mDatesStoredAsEpochMillis, this.mOtherColumnCodec);
 
                 if (fromServer && statement.sql == "")
                     return;
@@ -304,7 +389,7 @@ public class SQLiteLocalStore extends SQLiteOpenHelper implements MobileServiceL
     @Override
     public void delete(String tableName, String itemId) throws MobileServiceLocalStoreException {
         try {
-            String invTableName = normalizeTableName(tableName);
+            String invTableName = SQLiteStoreUtilities.normalizeTableName(tableName);
 
             SQLiteDatabase db = this.getWritableDatabaseSynchronized();
 
@@ -321,7 +406,7 @@ public class SQLiteLocalStore extends SQLiteOpenHelper implements MobileServiceL
     @Override
     public void delete(String tableName, String[] itemsIds) throws MobileServiceLocalStoreException {
         try {
-            String invTableName = normalizeTableName(tableName);
+            String invTableName = SQLiteStoreUtilities.normalizeTableName(tableName);
 
             SQLiteDatabase db = this.getWritableDatabaseSynchronized();
 
@@ -340,9 +425,9 @@ public class SQLiteLocalStore extends SQLiteOpenHelper implements MobileServiceL
     @Override
     public void delete(Query query) throws MobileServiceLocalStoreException {
         try {
-            String invTableName = normalizeTableName(query.getTableName());
+            String invTableName = SQLiteStoreUtilities.normalizeTableName(query.getTableName());
 
-            String whereClause = getWhereClause(query);
+            String whereClause = SQLiteStoreUtilities.getWhereClause(query, this.mDatesStoredAsEpochMillis);
 
             SQLiteDatabase db = this.getWritableDatabaseSynchronized();
 
@@ -357,93 +442,61 @@ public class SQLiteLocalStore extends SQLiteOpenHelper implements MobileServiceL
     }
 
     @Override
-    public void onCreate(SQLiteDatabase db) {
-    }
-
-    @Override
-    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-    }
-
-    private String normalizeTableName(String tableName) {
-        String invTableName = tableName != null ? tableName.trim().toLowerCase(Locale.getDefault()) : null;
-
-        if (invTableName == null || tableName.length() == 0) {
-            throw new IllegalArgumentException("Table name cannot be null or empty.");
-        }
-
-        if (invTableName.length() > 60) {
-            throw new IllegalArgumentException("Table name cannot be longer than 60 characters.");
-        }
-
-        if (invTableName.matches("[a-zA-Z]/w*")) {
-            throw new IllegalArgumentException("Table name must start with a letter, and can contain only alpha-numeric characters and underscores.");
-        }
+    public void beginTransaction() throws MobileServiceLocalStoreException {
+        try {
+            // The database is kept open until the matching endTransaction
+            SQLiteDatabase db = this.getWritableDatabaseSynchronized();
 
-        if (invTableName.matches("sqlite_/w*")) {
-            throw new IllegalArgumentException("Table names prefixed with \"sqlite_\" are system reserved.");
+            try {
+                db.beginTransaction();
+            } catch (Throwable t) {
+                this.closeDatabaseSynchronized(db);
+                throw t;
+            }
+        } catch (Throwable t) {
+            throw new MobileServiceLocalStoreException(t);
         }
-
-        return invTableName;
     }
 
-    private String normalizeColumnName(String columnName) {
-        String invColumnName = columnName != null ? columnName.trim().toLowerCase(Locale.getDefault()) : null;
-
-        if (invColumnName == null || columnName.length() == 0) {
-            throw new IllegalArgumentException("Column name cannot be null or empty.");
-        }
-
-        if (invColumnName.length() > 128) {
-            throw new IllegalArgumentException("Column name cannot be longer than 128 characters.");
-        }
-
-        if (invColumnName.matches("[a-zA-Z_]/w*")) {
-            throw new IllegalArgumentException(
-                    "Column name must start with a letter or underscore, and can contain only alpha-numeric characters and underscores.");
-        }
+    @Override
+    public void setTransactionSuccessful() throws MobileServiceLocalStoreException {
+        try {
+            SQLiteDatabase db = this.getWritableDatabaseSynchronized();
 
-        if (invColumnName.matches("__/w*") && !isSystemProperty(invColumnName)) {
-            throw new IllegalArgumentException("Column names prefixed with \"__\" are system reserved.");
+            try {
+                db.setTransactionSuccessful();
+            } finally {
+                this.closeDatabaseSynchronized(db);
+            }
+        } catch (Throwable t) {
+            throw new MobileServiceLocalStoreException(t);
         }
-
-        return invColumnName;
     }
 
-    private List<String> normalizeColumnNames(List<String> columnNames) {
-        List<String> invColumnNames = new ArrayList<String>(columnNames.size());
+    @Override
+    public void endTransaction() throws MobileServiceLocalStoreException {
+        try {
+            SQLiteDatabase db = this.getWritableDatabaseSynchronized();
 
-        for (String columnName : columnNames) {
-            invColumnNames.add(normalizeColumnName(columnName));
-        }
+            try {
+                db.endTransaction();
+            } finally {
+                this.closeDatabaseSynchronized(db);
 
-        return invColumnNames;
+                // Releases the database opened by beginTransaction
+                this.closeDatabaseSynchronized(db);
+            }
+        } catch (Throwable t) {
+            throw new MobileServiceLocalStoreException(t);
+        }
     }
 
-    private boolean isSystemProperty(String invColumnName) {
-
-        invColumnName = invColumnName.trim().toLowerCase(Locale.getDefault());
-
-        return invColumnName.equals("__version") || invColumnName.equals("__createdat") || invColumnName.equals("__updatedat")
-                || invColumnName.equals("__queueloadedat") || invColumnName.equals("__deleted");
+    @Override
+    public void onCreate(SQLiteDatabase db) {
     }
 
-    private void validateReservedProperties(ColumnDataType colDataType, String invColumnName) throws IllegalArgumentException {
-
-        invColumnName = invColumnName.trim().toLowerCase(Locale.getDefault());
-
-        if (invColumnName.equals("id") && colDataType != ColumnDataType.String) {
-            throw new IllegalArgumentException("System column \"id\" must be ColumnDataType.String.");
-        } else if (invColumnName.equals("__version") && colDataType != ColumnDataType.String) {
-            throw new IllegalArgumentException("System column \"__version\" must be ColumnDataType.String.");
-        } else if (invColumnName.equals("__createdat") && (colDataType != ColumnDataType.DateTimeOffset && colDataType != ColumnDataType.Date)) {
-            throw new IllegalArgumentException("System column \"__createdat\" must be ColumnDataType.DateTimeOffset or ColumnDataType.Date.");
-        } else if (invColumnName.equals("__updatedat") && (colDataType != ColumnDataType.DateTimeOffset && colDataType != ColumnDataType.Date)) {
-            throw new IllegalArgumentException("System column \"__updatedat\" must be ColumnDataType.DateTimeOffset or ColumnDataType.Date.");
-        } else if (invColumnName.equals("__queueloadedat") && (colDataType != ColumnDataType.DateTimeOffset && colDataType != ColumnDataType.Date)) {
-            throw new IllegalArgumentException("System column \"__queueloadedat\" must be ColumnDataType.DateTimeOffset or ColumnDataType.Date.");
-        } else if (invColumnName.equals("__deleted") && colDataType != ColumnDataType.Boolean) {
-            throw new IllegalArgumentException("System column \"__deleted\" must be ColumnDataType.Boolean.");
-        }
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
     }
 
     private JsonObject parseRow(Cursor cursor, Map<String, ColumnDataInfo> table) {
@@ -476,15 +529,26 @@ public class SQLiteLocalStore extends SQLiteOpenHelper implements MobileServiceL
                         result.addProperty(originalColumnName, stringValue);
                         break;
                     case Date:
-                        String dateValue = cursor.getString(columnIndex);
-                        result.addProperty(originalColumnName, dateValue);
-                        break;
                     case DateTimeOffset:
-                        String dateTimeOffsetValue = cursor.getString(columnIndex);
-                        result.addProperty(originalColumnName, dateTimeOffsetValue);
+                        String dateValue;
+
+                        if (this.mDatesStoredAsEpochMillis) {
+                            dateValue = SQLiteStoreUtilities.getDateString(cursor.isNull(columnIndex) ? null : cursor.getLong(columnIndex));
+                        } else {
+                            dateValue = cursor.getString(columnIndex);
+                        }
+
+                        result.addProperty(originalColumnName, dateValue);
                         break;
                     case Other:
-                        JsonElement otherValue = parseOtherDataType(cursor.getString(columnIndex));
+                        JsonElement otherValue;
+
+                        if (this.mOtherColumnCodec != null) {
+                            otherValue = cursor.isNull(columnIndex) ? null : this.mOtherColumnCodec.decode(cursor.getBlob(columnIndex));
+                        } else {
+                            otherValue = parseOtherDataType(cursor.getString(columnIndex));
+                        }
+
                         result.add(originalColumnName, otherValue);
                         break;
                 }
@@ -502,136 +566,32 @@ public class SQLiteLocalStore extends SQLiteOpenHelper implements MobileServiceL
         return new JsonParser().parse(value);
     }
 
-    private Statement generateUpsertStatement(String tableName, JsonObject[] items, boolean fromServer) {
-        Statement result = new Statement();
-
-        String invTableName = normalizeTableName(tableName);
-
-        StringBuilder sql = new StringBuilder();
-
-        sql.append("INSERT OR REPLACE INTO \"");
-        sql.append(invTableName);
-        sql.append("\" (");
-
-        String delimiter = "";
-
-        JsonObject firstItem = items[0];
-
-        Map<String, ColumnDataInfo> tableDefinition = mTables.get(invTableName);
-
-        List<Object> parameters = new ArrayList<Object>(firstItem.entrySet().size());
-
-        int columnsOnStatement = 0;
-
-        for (Entry<String, JsonElement> property : firstItem.entrySet()) {
-
-            //if (isSystemProperty(property.getKey()) && !tableDefinition.containsKey(property.getKey())) {
-            //    continue;
-            //}
-
-            if (fromServer && !tableDefinition.containsKey(property.getKey().toLowerCase())) {
-                continue;
-            }
-
-            String invColumnName = normalizeColumnName(property.getKey());
-            sql.append(delimiter);
-            sql.append("\"");
-            sql.append(invColumnName);
-            sql.append("\"");
-            delimiter = ",";
-
-            columnsOnStatement++;
-        }
-
-        if (columnsOnStatement == 0){
-            result.sql = "";
-            result.parameters = parameters;
-
-            return result;
-        }
-
-        sql.append(") VALUES ");
-
-        String prefix = "";
-
-        for (JsonObject item : items) {
-            sql.append(prefix);
-            appendInsertValuesSql(sql, parameters, tableDefinition, item, fromServer);
-            prefix = ",";
-        }
-
-        result.sql = sql.toString();
-        result.parameters = parameters;
-
-        return result;
-    }
+    /**
+     * Reads the two columns returned by a query as a map
+     *
+     * @param db         the database
+     * @param sql        the query
+     * @param lowerCased true to lower case the keys
+     */
+    private static Map<String, String> readStrings(SQLiteDatabase db, String sql, boolean lowerCased) {
+        Map<String, String> result = new HashMap<String, String>();
 
-    private void appendInsertValuesSql(StringBuilder sql, List<Object> parameters,
-                                       Map<String, ColumnDataInfo> tableDefinition, JsonObject item, boolean fromServer) {
-        sql.append("(");
-        int colCount = 0;
+        Cursor cursor = null;
 
-        for (Entry<String, JsonElement> property : item.entrySet()) {
+        try {
+            cursor = db.rawQuery(sql, null);
 
-            if (fromServer && !tableDefinition.containsKey(normalizeColumnName(property.getKey()))) {
-                continue;
+            while (cursor.moveToNext()) {
+                String key = cursor.getString(0);
+                result.put(lowerCased ? key.toLowerCase(Locale.getDefault()) : key, cursor.getString(1));
             }
-
-            if (colCount > 0)
-                sql.append(",");
-
-            String paramName = "@p" + parameters.size();
-
-            JsonElement value = property.getValue();
-
-            if (value.isJsonNull()) {
-                parameters.add(null);
-            } else if (value.isJsonPrimitive()) {
-                if (value.getAsJsonPrimitive().isBoolean()) {
-                    long longVal = value.getAsJsonPrimitive().getAsBoolean() ? 1L : 0L;
-                    parameters.add(longVal);
-                } else if (value.getAsJsonPrimitive().isNumber()) {
-                    parameters.add(value.getAsJsonPrimitive().getAsDouble());
-                } else {
-                    parameters.add(value.getAsJsonPrimitive().getAsString());
-                }
-            } else {
-                parameters.add(value.toString());
+        } finally {
+            if (cursor != null && !cursor.isClosed()) {
+                cursor.close();
             }
-
-            sql.append(paramName);
-            colCount++;
-
-        }
-
-        sql.append(")");
-    }
-
-    private String[] getColumns(Query query, Map<String, ColumnDataInfo> table) {
-        String[] columns = table.keySet().toArray(new String[0]);
-
-        List<String> projection = query.getProjection();
-
-        if (projection != null && projection.size() > 0) {
-            columns = normalizeColumnNames(projection).toArray(new String[0]);
-        }
-        return columns;
-    }
-
-    private String getWhereClause(Query query) throws MobileServiceLocalStoreException {
-        String whereClause;
-
-        try {
-            whereClause = QuerySQLWriter.getWhereClause(query);
-        } catch (MobileServiceException e) {
-            throw new MobileServiceLocalStoreException("Unable to build filter expression.", e);
-        }
-
-        if (whereClause != null && whereClause.length() == 0) {
-            whereClause = null;
         }
 
-        return whereClause;
+        return result;
     }
 
     private void createTableFromObject(SQLiteDatabase db, String invTableName, Map<String, ColumnDataInfo> table) {
@@ -650,7 +610,7 @@ public class SQLiteLocalStore extends SQLiteOpenHelper implements MobileServiceL
             while (cursor.moveToNext()) {
                 int columnIndex = cursor.getColumnIndex("name");
                 String columnName = cursor.getString(columnIndex);
-                String invColumnName = normalizeColumnName(columnName);
+                String invColumnName = SQLiteStoreUtilities.normalizeColumnName(columnName);
                 invColumnNames.add(invColumnName);
             }
         } finally {
@@ -670,31 +630,7 @@ public class SQLiteLocalStore extends SQLiteOpenHelper implements MobileServiceL
         for (Entry<String, ColumnDataType> newColumn : newColumns.entrySet()) {
             String invColumnName = newColumn.getKey();
 
-            String type = "";
-
-            switch (newColumn.getValue()) {
-                case Boolean:
-                    type = "INTEGER";
-                    break;
-                case Real:
-                    type = "REAL";
-                    break;
-                case Integer:
-                    type = "INTEGER";
-                    break;
-                case String:
-                    type = "TEXT";
-                    break;
-                case Date:
-                    type = "TEXT";
-                    break;
-                case DateTimeOffset:
-                    type = "TEXT";
-                    break;
-                case Other:
-                    type = "TEXT";
-                    break;
-            }
+            String type = SQLiteStoreUtilities.getColumnType(newColumn.getValue(), this.mDatesStoredAsEpochMillis, this.mOtherColumnCodec);
 
             String createSql = String.format("ALTER TABLE \"%s\" ADD COLUMN \"%s\" %s", invTableName, invColumnName, type);
 
@@ -717,9 +653,4 @@ public class SQLiteLocalStore extends SQLiteOpenHelper implements MobileServiceL
             }
         }
     }
-
-    private static class Statement {
-        private String sql;
-        private List<Object> parameters;
-    }
 }
\ No newline at end of file
@@ -0,0 +1,417 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+
+/**
+ * SQLiteStoreUtilities.java
+ */
+package com.microsoft.windowsazure.mobileservices.table.sync.localstore;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.microsoft.windowsazure.mobileservices.MobileServiceClient;
+import com.microsoft.windowsazure.mobileservices.MobileServiceException;
+import com.microsoft.windowsazure.mobileservices.table.query.Query;
+import com.microsoft.windowsazure.mobileservices.table.query.QuerySQLWriter;
+import com.microsoft.windowsazure.mobileservices.table.serialization.DateSerializer;
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+
+/**
+ * Schema rules and statement generation shared by the SQLite based local stores
+ */
+final class SQLiteStoreUtilities {
+    /**
+     * Maximum number of host parameters allowed in a single SQLite statement
+     */
+    static final int MAX_PARAMETERS = 999;
+
+    /**
+     * Table holding the schema fingerprint of each defined table
+     */
+    static final String SCHEMA_FINGERPRINT_TABLE = "__schemafingerprints";
+
+    /**
+     * Statements reading and writing the schema fingerprints
+     */
+    static final String CREATE_SCHEMA_FINGERPRINT_TABLE_SQL = "CREATE TABLE IF NOT EXISTS \"" + SCHEMA_FINGERPRINT_TABLE
+            + "\" (\"id\" TEXT PRIMARY KEY, \"fingerprint\" TEXT)";
+    static final String SELECT_SCHEMA_FINGERPRINTS_SQL = "SELECT \"id\", \"fingerprint\" FROM \"" + SCHEMA_FINGERPRINT_TABLE + "\"";
+    static final String UPSERT_SCHEMA_FINGERPRINT_SQL = "INSERT OR REPLACE INTO \"" + SCHEMA_FINGERPRINT_TABLE
+            + "\" (\"id\", \"fingerprint\") VALUES (?, ?)";
+    static final String SELECT_TABLE_SCHEMAS_SQL = "SELECT \"name\", \"sql\" FROM \"sqlite_master\" WHERE \"type\" = 'table'";
+
+    private SQLiteStoreUtilities() {
+    }
+
+    static String normalizeTableName(String tableName) {
+        String invTableName = tableName != null ? tableName.trim().toLowerCase(Locale.getDefault()) : null;
+
+        if (invTableName == null || tableName.length() == 0) {
+            throw new IllegalArgumentException("Table name cannot be null or empty.");
+        }
+
+        if (invTableName.length() > 60) {
+            throw new IllegalArgumentException("Table name cannot be longer than 60 characters.");
+        }
+
+        if (invTableName.matches("[a-zA-Z]/w*")) {
+            throw new IllegalArgumentException("Table name must start with a letter, and can contain only alpha-numeric characters and underscores.");
+        }
+
+        if (invTableName.matches("sqlite_/w*")) {
+            throw new IllegalArgumentException("Table names prefixed with \"sqlite_\" are system reserved.");
+        }
+
+        return invTableName;
+    }
+
+    static String normalizeColumnName(String columnName) {
+        String invColumnName = columnName != null ? columnName.trim().toLowerCase(Locale.getDefault()) : null;
+
+        if (invColumnName == null || columnName.length() == 0) {
+            throw new IllegalArgumentException("Column name cannot be null or empty.");
+        }
+
+        if (invColumnName.length() > 128) {
+            throw new IllegalArgumentException("Column name cannot be longer than 128 characters.");
+        }
+
+        if (invColumnName.matches("[a-zA-Z_]/w*")) {
+            throw new IllegalArgumentException(
+                    "Column name must start with a letter or underscore, and can contain only alpha-numeric characters and underscores.");
+        }
+
+        if (invColumnName.matches("__/w*") && !isSystemProperty(invColumnName)) {
+            throw new IllegalArgumentException("Column names prefixed with \"__\" are system reserved.");
+        }
+
+        return invColumnName;
+    }
+
+    static List<String> normalizeColumnNames(List<String> columnNames) {
+        List<String> invColumnNames = new ArrayList<String>(columnNames.size());
+
+        for (String columnName : columnNames) {
+            invColumnNames.add(normalizeColumnName(columnName));
+        }
+
+        return invColumnNames;
+    }
+
+    static boolean isSystemProperty(String invColumnName) {
+
+        invColumnName = invColumnName.trim().toLowerCase(Locale.getDefault());
+
+        return invColumnName.equals("__version") || invColumnName.equals("__createdat") || invColumnName.equals("__updatedat")
+                || invColumnName.equals("__queueloadedat") || invColumnName.equals("__deleted");
+    }
+
+    static void validateReservedProperties(ColumnDataType colDataType, String invColumnName) throws IllegalArgumentException {
+
+        invColumnName = invColumnName.trim().toLowerCase(Locale.getDefault());
+
+        if (invColumnName.equals("id") && colDataType != ColumnDataType.String) {
+            throw new IllegalArgumentException("System column \"id\" must be ColumnDataType.String.");
+        } else if (invColumnName.equals("__version") && colDataType != ColumnDataType.String) {
+            throw new IllegalArgumentException("System column \"__version\" must be ColumnDataType.String.");
+        } else if (invColumnName.equals("__createdat") && (colDataType != ColumnDataType.DateTimeOffset && colDataType != ColumnDataType.Date)) {
+            throw new IllegalArgumentException("System column \"__createdat\" must be ColumnDataType.DateTimeOffset or ColumnDataType.Date.");
+        } else if (invColumnName.equals("__updatedat") && (colDataType != ColumnDataType.DateTimeOffset && colDataType != ColumnDataType.Date)) {
+            throw new IllegalArgumentException("System column \"__updatedat\" must be ColumnDataType.DateTimeOffset or ColumnDataType.Date.");
+        } else if (invColumnName.equals("__queueloadedat") && (colDataType != ColumnDataType.DateTimeOffset && colDataType != ColumnDataType.Date)) {
+            throw new IllegalArgumentException("System column \"__queueloadedat\" must be ColumnDataType.DateTimeOffset or ColumnDataType.Date.");
+        } else if (invColumnName.equals("__deleted") && colDataType != ColumnDataType.Boolean) {
+            throw new IllegalArgumentException("System column \"__deleted\" must be ColumnDataType.Boolean.");
+        }
+    }
+
+    static Statement generateUpsertStatement(String tableName, Map<String, ColumnDataInfo> tableDefinition, JsonObject[] items, boolean fromServer,
+                                             boolean epochMillisDates, ColumnCodec otherColumnCodec) {
+        Statement result = new Statement();
+
+        String invTableName = normalizeTableName(tableName);
+
+        StringBuilder sql = new StringBuilder();
+
+        sql.append("INSERT OR REPLACE INTO \"");
+        sql.append(invTableName);
+        sql.append("\" (");
+
+        String delimiter = "";
+
+        JsonObject firstItem = items[0];
+
+        List<Object> parameters = new ArrayList<Object>(firstItem.entrySet().size());
+
+        int columnsOnStatement = 0;
+
+        for (Entry<String, JsonElement> property : firstItem.entrySet()) {
+
+            //if (isSystemProperty(property.getKey()) && !tableDefinition.containsKey(property.getKey())) {
+            //    continue;
+            //}
+
+            if (fromServer && !tableDefinition.containsKey(property.getKey().toLowerCase())) {
+                continue;
+            }
+
+            String invColumnName = normalizeColumnName(property.getKey());
+            sql.append(delimiter);
+            sql.append("\"");
+            sql.append(invColumnName);
+            sql.append("\"");
+            delimiter = ",";
+
+            columnsOnStatement++;
+        }
+
+        if (columnsOnStatement == 0){
+            result.sql = "";
+            result.parameters = parameters;
+
+            return result;
+        }
+
+        sql.append(") VALUES ");
+
+        String prefix = "";
+
+        for (JsonObject item : items) {
+            sql.append(prefix);
+            appendInsertValuesSql(sql, parameters, tableDefinition, item, fromServer, epochMillisDates, otherColumnCodec);
+            prefix = ",";
+        }
+
+        result.sql = sql.toString();
+        result.parameters = parameters;
+
+        return result;
+    }
+
+    private static void appendInsertValuesSql(StringBuilder sql, List<Object> parameters,
+                                       Map<String, ColumnDataInfo> tableDefinition, JsonObject item, boolean fromServer, boolean epochMillisDates,
+                                       ColumnCodec otherColumnCodec) {
+        sql.append("(");
+        int colCount = 0;
+
+        for (Entry<String, JsonElement> property : item.entrySet()) {
+
+            if (fromServer && !tableDefinition.containsKey(normalizeColumnName(property.getKey()))) {
+                continue;
+            }
+
+            if (colCount > 0)
+                sql.append(",");
+
+            String paramName = "@p" + parameters.size();
+
+            JsonElement value = property.getValue();
+            ColumnDataInfo column = tableDefinition.get(normalizeColumnName(property.getKey()));
+
+            if (value.isJsonNull()) {
+                parameters.add(null);
+            } else if (epochMillisDates && isDateColumn(column)) {
+                parameters.add(getEpochMillis(property.getKey(), value));
+            } else if (otherColumnCodec != null && column != null && column.getColumnDataType() == ColumnDataType.Other) {
+                parameters.add(otherColumnCodec.encode(value));
+            } else if (value.isJsonPrimitive()) {
+                if (value.getAsJsonPrimitive().isBoolean()) {
+                    long longVal = value.getAsJsonPrimitive().getAsBoolean() ? 1L : 0L;
+                    parameters.add(longVal);
+                } else if (value.getAsJsonPrimitive().isNumber()) {
+                    parameters.add(value.getAsJsonPrimitive().getAsDouble());
+                } else {
+                    parameters.add(value.getAsJsonPrimitive().getAsString());
+                }
+            } else {
+                parameters.add(value.toString());
+            }
+
+            sql.append(paramName);
+            colCount++;
+
+        }
+
+        sql.append(")");
+    }
+
+    static String[] getColumns(Query query, Map<String, ColumnDataInfo> table) {
+        String[] columns = table.keySet().toArray(new String[0]);
+
+        List<String> projection = query.getProjection();
+
+        if (projection != null && projection.size() > 0) {
+            columns = normalizeColumnNames(projection).toArray(new String[0]);
+        }
+        return columns;
+    }
+
+    static String getWhereClause(Query query, boolean epochMillisDates) throws MobileServiceLocalStoreException {
+        String whereClause;
+
+        try {
+            whereClause = QuerySQLWriter.getWhereClause(query, epochMillisDates);
+        } catch (MobileServiceException e) {
+            throw new MobileServiceLocalStoreException("Unable to build filter expression.", e);
+        }
+
+        if (whereClause != null && whereClause.length() == 0) {
+            whereClause = null;
+        }
+
+        return whereClause;
+    }
+
+    /**
+     * Returns the value read from a date column stored as milliseconds since
+     * the epoch, as the ISO 8601 string stored otherwise
+     *
+     * @param epochMillis the milliseconds since the epoch, or null
+     */
+    static String getDateString(Long epochMillis) {
+        return epochMillis != null ? DateSerializer.serialize(new Date(epochMillis)) : null;
+    }
+
+    private static boolean isDateColumn(ColumnDataInfo column) {
+        return column != null
+                && (column.getColumnDataType() == ColumnDataType.Date || column.getColumnDataType() == ColumnDataType.DateTimeOffset);
+    }
+
+    private static long getEpochMillis(String propertyName, JsonElement value) {
+        if (value.isJsonPrimitive() && value.getAsJsonPrimitive().isNumber()) {
+            return value.getAsLong();
+        }
+
+        try {
+            return DateSerializer.deserialize(value.getAsString()).getTime();
+        } catch (ParseException e) {
+            throw new IllegalArgumentException("Property \"" + propertyName + "\" must be an ISO 8601 date.", e);
+        }
+    }
+
+    /**
+     * Returns the SQLite column type used to store the given data type
+     *
+     * @param columnDataType   the column data type
+     * @param epochMillisDates true if dates are stored as milliseconds since the
+     *                         epoch instead of ISO 8601 strings
+     * @param otherColumnCodec the codec of the Other columns, or null to store
+     *                         them as JSON text
+     * @return the SQLite column type
+     */
+    static String getColumnType(ColumnDataType columnDataType, boolean epochMillisDates, ColumnCodec otherColumnCodec) {
+        String type = "";
+
+        switch (columnDataType) {
+            case Boolean:
+                type = "INTEGER";
+                break;
+            case Real:
+                type = "REAL";
+                break;
+            case Integer:
+                type = "INTEGER";
+                break;
+            case String:
+                type = "TEXT";
+                break;
+            case Date:
+                type = epochMillisDates ? "INTEGER" : "TEXT";
+                break;
+            case DateTimeOffset:
+                type = epochMillisDates ? "INTEGER" : "TEXT";
+                break;
+            case Other:
+                type = otherColumnCodec != null ? "BLOB" : "TEXT";
+                break;
+        }
+
+        return type;
+    }
+
+    /**
+     * Returns the fingerprint of a table. It covers the definition of the
+     * table, the storage of its columns and the schema of the SQLite table, so
+     * that a table altered or dropped outside of the store does not match.
+     *
+     * @param table            the table definition
+     * @param tableSql         the CREATE TABLE statement of the SQLite table,
+     *                         as stored in sqlite_master
+     * @param epochMillisDates true if dates are stored as milliseconds since the
+     *                         epoch
+     * @param otherColumnCodec the codec of the Other columns, or null
+     * @return the fingerprint
+     */
+    static String getSchemaFingerprint(Map<String, ColumnDataInfo> table, String tableSql, boolean epochMillisDates,
+                                       ColumnCodec otherColumnCodec) {
+        StringBuilder schema = new StringBuilder();
+
+        for (Entry<String, ColumnDataInfo> column : new TreeMap<String, ColumnDataInfo>(table).entrySet()) {
+            ColumnDataType columnDataType = column.getValue().getColumnDataType();
+
+            schema.append(column.getKey()).append(' ').append(columnDataType).append(' ')
+                    .append(getColumnType(columnDataType, epochMillisDates, otherColumnCodec)).append('\n');
+        }
+
+        schema.append(tableSql);
+
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            byte[] bytes = digest.digest(schema.toString().getBytes(MobileServiceClient.UTF8_ENCODING));
+
+            StringBuilder result = new StringBuilder();
+
+            for (byte b : bytes) {
+                result.append(String.format("%02x", b));
+            }
+
+            return result.toString();
+        } catch (NoSuchAlgorithmException e) {
+            return schema.toString();
+        } catch (UnsupportedEncodingException e) {
+            return schema.toString();
+        }
+    }
+
+    /**
+     * Returns the number of items that can be upserted in a single statement
+     *
+     * @param tableDefinition the table definition
+     * @return the page size
+     */
+    static int getUpsertPageSize(Map<String, ColumnDataInfo> tableDefinition) {
+        return MAX_PARAMETERS / tableDefinition.size();
+    }
+
+    static class Statement {
+        String sql;
+        List<Object> parameters;
+    }
+}
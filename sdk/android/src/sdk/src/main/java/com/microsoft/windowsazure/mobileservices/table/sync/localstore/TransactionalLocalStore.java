@@ -0,0 +1,56 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+ 
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+ 
+     http://www.apache.org/licenses/LICENSE-2.0
+ 
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ 
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+
+/**
+ * TransactionalLocalStore.java
+ */
+package com.microsoft.windowsazure.mobileservices.table.sync.localstore;
+
+/**
+ * A local store that can write several changes in one transaction. The bulk
+ * operations of sync tables and the pages of a pull are written atomically
+ * to a transactional store, and item by item to other stores.
+ */
+public interface TransactionalLocalStore extends MobileServiceLocalStore {
+    /**
+     * Begins a transaction. The changes made by the current thread until the
+     * matching call to endTransaction are committed together if
+     * setTransactionSuccessful is called, and rolled back otherwise.
+     * Transactions can be nested, and the outermost one commits or rolls back
+     * the changes of the nested ones.
+     *
+     * @throws MobileServiceLocalStoreException
+     */
+    void beginTransaction() throws MobileServiceLocalStoreException;
+
+    /**
+     * Marks the current transaction as successful.
+     *
+     * @throws MobileServiceLocalStoreException
+     */
+    void setTransactionSuccessful() throws MobileServiceLocalStoreException;
+
+    /**
+     * Ends the current transaction, committing or rolling back its changes.
+     *
+     * @throws MobileServiceLocalStoreException
+     */
+    void endTransaction() throws MobileServiceLocalStoreException;
+}
@@ -31,6 +31,7 @@ import com.microsoft.windowsazure.mobileservices.MobileServiceClient;
 import com.microsoft.windowsazure.mobileservices.MobileServiceException;
 import com.microsoft.windowsazure.mobileservices.MobileServiceFeatures;
 import com.microsoft.windowsazure.mobileservices.table.MobileServiceJsonTable;
+import com.microsoft.windowsazure.mobileservices.table.MobileServiceSystemColumns;
 import com.microsoft.windowsazure.mobileservices.table.MobileServiceSystemProperty;
 
 import java.util.EnumSet;
@@ -42,8 +43,11 @@ import java.util.concurrent.ExecutionException;
  * Processes a table operation against a remote store.
  */
 public class RemoteTableOperationProcessor implements TableOperationVisitor<JsonObject> {
+    private static final String VERSION_PROPERTY = "__version";
+
     private MobileServiceClient mClient;
     private JsonObject mItem;
+    private JsonObject mSnapshot;
 
     /**
      * Constructor for RemoteTableOperationProcessor
@@ -52,8 +56,21 @@ public class RemoteTableOperationProcessor implements TableOperationVisitor<Json
      * @param item   the item to process
      */
     public RemoteTableOperationProcessor(MobileServiceClient client, JsonObject item) {
+        this(client, item, null);
+    }
+
+    /**
+     * Constructor for RemoteTableOperationProcessor
+     *
+     * @param client   the mobile service client
+     * @param item     the item to process
+     * @param snapshot the last server version of the item, or null. Updates
+     *                 send only the fields changed since this version.
+     */
+    public RemoteTableOperationProcessor(MobileServiceClient client, JsonObject item, JsonObject snapshot) {
         this.mClient = client;
         this.mItem = item;
+        this.mSnapshot = snapshot;
     }
 
     private static EnumSet<MobileServiceSystemProperty> getSystemProperties(JsonObject instance) {
@@ -113,15 +130,62 @@ public class RemoteTableOperationProcessor implements TableOperationVisitor<Json
         }
     }
 
+    /**
+     * Returns the fields of an item changed since the snapshot, with the id
+     * and version, or null if the snapshot is not the version the item was
+     * changed from
+     */
+    private static JsonObject getChangedFields(JsonObject item, JsonObject snapshot) {
+        if (item == null || snapshot == null) {
+            return null;
+        }
+
+        JsonElement version = item.get(VERSION_PROPERTY);
+
+        if (version == null || version.isJsonNull() || !version.equals(snapshot.get(VERSION_PROPERTY))) {
+            return null;
+        }
+
+        JsonObject changedFields = new JsonObject();
+
+        for (Entry<String, JsonElement> property : item.entrySet()) {
+            String propertyName = property.getKey();
+
+            if (propertyName.equalsIgnoreCase(MobileServiceSystemColumns.Id) || propertyName.equals(VERSION_PROPERTY)) {
+                changedFields.add(propertyName, property.getValue());
+            } else if (!propertyName.startsWith("__") && !property.getValue().equals(snapshot.get(propertyName))) {
+                changedFields.add(propertyName, property.getValue());
+            }
+        }
+
+        return changedFields;
+    }
+
     @Override
     public JsonObject visit(UpdateOperation operation) throws Throwable {
         MobileServiceJsonTable table = this.getRemoteTable(operation.getTableName());
         table.setSystemProperties(getSystemProperties(this.mItem));
 
-        ListenableFuture<JsonObject> future = table.update(this.mItem);
+        JsonObject changedFields = getChangedFields(this.mItem, this.mSnapshot);
+
+        ListenableFuture<JsonObject> future = table.update(changedFields != null ? changedFields : this.mItem);
 
         try {
-            return future.get();
+            JsonObject result = future.get();
+
+            if (changedFields != null && result != null) {
+                // The result holds the sent fields only, so it is merged into
+                // a copy of the whole item
+                JsonObject item = (JsonObject) new JsonParser().parse(this.mItem.toString());
+
+                for (Entry<String, JsonElement> property : result.entrySet()) {
+                    item.add(property.getKey(), property.getValue());
+                }
+
+                result = item;
+            }
+
+            return result;
         } catch (ExecutionException ex) {
             throw ex.getCause();
         }
@@ -28,17 +28,48 @@ public class IncrementalPullStrategy extends PullStrategy {
 
     private static final String INCREMENTAL_PULL_STRATEGY_TABLE = "__incrementalPullData";
 
+    private static final String PARTITION_SEPARATOR = "#";
+
     private MobileServiceLocalStore mStore;
     private DateTimeOffset maxUpdatedAt;
     private DateTimeOffset deltaToken;
+
+    /**
+     * Id of the last item pulled with maxUpdatedAt. Together they are the
+     * watermark, so that items sharing an __updatedAt are pulled once.
+     */
+    private String maxId;
+    private String deltaTokenId;
     private String queryId;
+
+    /**
+     * Index of the partition pulled, or -1 when the query is not partitioned
+     */
+    private int partition;
+    private String storeId;
     private Query originalQuery;
     private MobileServiceJsonTable table;
 
     public IncrementalPullStrategy(Query query, String queryId, MobileServiceLocalStore localStore, MobileServiceJsonTable table) {
+        this(query, queryId, -1, localStore, table);
+    }
+
+    /**
+     * Constructor for the strategy pulling a partition of a query. The
+     * partition keeps its own watermark, starting from the watermark of the
+     * query, until mergePartitions is called.
+     *
+     * @param query      the query, restricted to the partition
+     * @param queryId    the query id
+     * @param partition  the partition index
+     * @param localStore the local store
+     * @param table      the table
+     */
+    public IncrementalPullStrategy(Query query, String queryId, int partition, MobileServiceLocalStore localStore, MobileServiceJsonTable table) {
         super(query, table);
         this.mStore = localStore;
         this.queryId = queryId;
+        this.partition = partition;
         this.table = table;
     }
 
@@ -47,13 +78,59 @@ public class IncrementalPullStrategy extends PullStrategy {
         Map<String, ColumnDataType> columns = new HashMap<String, ColumnDataType>();
         columns.put("id", ColumnDataType.String);
         columns.put("maxupdateddate", ColumnDataType.String);
+        columns.put("maxupdatedid", ColumnDataType.String);
 
         store.defineTable(INCREMENTAL_PULL_STRATEGY_TABLE, columns);
     }
 
-    public void initialize() {
+    /**
+     * Merges the watermarks of the partitions of a query, once all of them
+     * have been pulled, into the watermark of the query
+     *
+     * @param store        the local store
+     * @param query        the query
+     * @param queryId      the query id
+     * @param partitioning the partitioning of the query
+     */
+    public static void mergePartitions(MobileServiceLocalStore store, Query query, String queryId, PullPartitioning partitioning)
+            throws MobileServiceLocalStoreException {
+
+        String queryStoreId = getStoreId(query, queryId);
+        String[] partitionStoreIds = new String[partitioning.getCount()];
+        JsonObject merged = null;
+
+        for (int i = 0; i < partitionStoreIds.length; i++) {
+            partitionStoreIds[i] = queryStoreId + PARTITION_SEPARATOR + i;
+
+            JsonObject watermark = readWatermark(store, partitionStoreIds[i]);
+
+            if (watermark == null) {
+                continue;
+            }
+
+            // The partitions of __updatedAt are in ascending order, so the
+            // last one with items has the largest watermark. The ranges of
+            // __updatedAt of other partitions overlap, and only the smallest
+            // watermark is known to cover all of them.
+            if (merged == null || partitioning.isOrderedByUpdatedAt() || compareWatermarks(watermark, merged) < 0) {
+                merged = watermark;
+            }
+        }
+
+        if (merged != null) {
+            JsonObject watermark = new JsonObject();
+
+            watermark.addProperty("id", queryStoreId);
+            watermark.add("maxupdateddate", merged.get("maxupdateddate"));
+            watermark.add("maxupdatedid", merged.get("maxupdatedid"));
 
-        JsonElement results = null;
+            store.upsert(INCREMENTAL_PULL_STRATEGY_TABLE, watermark, false);
+        }
+
+        store.delete(INCREMENTAL_PULL_STRATEGY_TABLE, partitionStoreIds);
+    }
+
+    public void initialize() {
 
         try {
 
@@ -66,22 +143,27 @@ public class IncrementalPullStrategy extends PullStrategy {
 
             originalQuery = query;
 
-            results = mStore.read(
-                    QueryOperations.tableName(INCREMENTAL_PULL_STRATEGY_TABLE)
-                            .field("id")
-                            .eq(query.getTableName() + "_" + queryId));
+            String queryStoreId = getStoreId(query, queryId);
+
+            storeId = partition >= 0 ? queryStoreId + PARTITION_SEPARATOR + partition : queryStoreId;
 
-            if (results != null) {
+            JsonObject result = readWatermark(mStore, storeId);
 
-                JsonArray resultsArray = results.getAsJsonArray();
+            if (result == null && partition >= 0) {
+                result = readWatermark(mStore, queryStoreId);
+            }
+
+            if (result != null) {
+                String stringMaxUpdatedDate = result.get("maxupdateddate").getAsString();
 
-                if (resultsArray.size() > 0) {
-                    JsonElement result = resultsArray.get(0);
+                deltaToken = maxUpdatedAt = getDateFromString(stringMaxUpdatedDate);
 
-                    String stringMaxUpdatedDate = result.getAsJsonObject()
-                            .get("maxupdateddate").getAsString();
+                // Rows saved before the id was part of the watermark have no
+                // id
+                JsonElement maxUpdatedId = result.get("maxupdatedid");
 
-                    deltaToken = maxUpdatedAt = getDateFromString(stringMaxUpdatedDate);
+                if (maxUpdatedAt != null && maxUpdatedId != null && !maxUpdatedId.isJsonNull()) {
+                    deltaTokenId = maxId = maxUpdatedId.getAsString();
                 }
             }
 
@@ -104,20 +186,23 @@ public class IncrementalPullStrategy extends PullStrategy {
         JsonObject lastElement = elements.get(elements.size() - 1).getAsJsonObject();
 
         String lastElementUpdatedAt = lastElement.get(MobileServiceSystemColumns.UpdatedAt).getAsString();
+        String lastElementId = lastElement.get(MobileServiceSystemColumns.Id).getAsString();
 
         maxUpdatedAt = getDateFromString(lastElementUpdatedAt);
+        maxId = lastElementId;
 
-        saveMaxUpdatedDate(lastElementUpdatedAt);
+        saveMaxUpdatedDate(lastElementUpdatedAt, lastElementId);
     }
 
     public boolean moveToNextPage(int lastElementCount) {
 
-        if (deltaToken == null || maxUpdatedAt.after(deltaToken)) {
+        if (deltaToken == null || isWatermarkAdvanced()) {
 
             if (lastElementCount == 0)
                 return false;
 
             deltaToken = maxUpdatedAt;
+            deltaTokenId = maxId;
 
             this.query.skip(-1);
 
@@ -126,15 +211,27 @@ public class IncrementalPullStrategy extends PullStrategy {
             return true;
         }
 
+        // The watermark did not move, e.g. the service does not filter by id
+        // or truncates __updatedAt: fall back to skip paging
         return super.moveToNextPage(lastElementCount);
     }
 
-    private void saveMaxUpdatedDate(String lastElementUpdatedAt) {
+    private boolean isWatermarkAdvanced() {
+
+        if (maxUpdatedAt.after(deltaToken)) {
+            return true;
+        }
+
+        return maxUpdatedAt.equals(deltaToken) && maxId != null && (deltaTokenId == null || maxId.compareTo(deltaTokenId) > 0);
+    }
+
+    private void saveMaxUpdatedDate(String lastElementUpdatedAt, String lastElementId) {
 
         JsonObject updatedElement = new JsonObject();
 
-        updatedElement.addProperty("id", query.getTableName() + "_" + queryId);
+        updatedElement.addProperty("id", storeId);
         updatedElement.addProperty("maxupdateddate", lastElementUpdatedAt);
+        updatedElement.addProperty("maxupdatedid", lastElementId);
 
         try {
             mStore.upsert(INCREMENTAL_PULL_STRATEGY_TABLE, updatedElement, false);
@@ -153,7 +250,18 @@ public class IncrementalPullStrategy extends PullStrategy {
         }
 
         if (maxUpdatedAt != null) {
-            Query filterQuery = QueryOperations.field(MobileServiceSystemColumns.UpdatedAt).ge(this.maxUpdatedAt);
+            Query filterQuery;
+
+            if (maxId != null) {
+                // (__updatedAt gt X) or (__updatedAt eq X and id gt Y)
+                Query sameUpdatedAtQuery = QueryOperations.field(MobileServiceSystemColumns.UpdatedAt).eq(maxUpdatedAt)
+                        .and(QueryOperations.field(MobileServiceSystemColumns.Id).gt(maxId));
+
+                filterQuery = QueryOperations.query(QueryOperations.field(MobileServiceSystemColumns.UpdatedAt).gt(maxUpdatedAt)
+                        .or(QueryOperations.query(sameUpdatedAtQuery)));
+            } else {
+                filterQuery = QueryOperations.field(MobileServiceSystemColumns.UpdatedAt).ge(maxUpdatedAt);
+            }
 
             if (this.query.getQueryNode() != null) {
                 this.query = this.query.and(filterQuery);
@@ -167,9 +275,48 @@ public class IncrementalPullStrategy extends PullStrategy {
         this.query.getOrderBy().clear();
 
         this.query.orderBy(MobileServiceSystemColumns.UpdatedAt, QueryOrder.Ascending);
+        this.query.orderBy(MobileServiceSystemColumns.Id, QueryOrder.Ascending);
+    }
+
+    private static String getStoreId(Query query, String queryId) {
+        return query.getTableName() + "_" + queryId;
+    }
+
+    private static JsonObject readWatermark(MobileServiceLocalStore store, String id) throws MobileServiceLocalStoreException {
+
+        JsonElement results = store.read(
+                QueryOperations.tableName(INCREMENTAL_PULL_STRATEGY_TABLE)
+                        .field("id")
+                        .eq(id));
+
+        if (results != null && results.getAsJsonArray().size() > 0) {
+            return results.getAsJsonArray().get(0).getAsJsonObject();
+        }
+
+        return null;
+    }
+
+    private static int compareWatermarks(JsonObject watermark, JsonObject otherWatermark) {
+
+        DateTimeOffset updatedAt = getDateFromString(watermark.get("maxupdateddate").getAsString());
+        DateTimeOffset otherUpdatedAt = getDateFromString(otherWatermark.get("maxupdateddate").getAsString());
+
+        int result = updatedAt.compareTo(otherUpdatedAt);
+
+        if (result == 0) {
+            JsonElement id = watermark.get("maxupdatedid");
+            JsonElement otherId = otherWatermark.get("maxupdatedid");
+
+            String idValue = id != null && !id.isJsonNull() ? id.getAsString() : "";
+            String otherIdValue = otherId != null && !otherId.isJsonNull() ? otherId.getAsString() : "";
+
+            result = idValue.compareTo(otherIdValue);
+        }
+
+        return result;
     }
 
-    private DateTimeOffset getDateFromString(String stringValue) {
+    private static DateTimeOffset getDateFromString(String stringValue) {
 
         if (stringValue == null) {
             return null;
@@ -0,0 +1,171 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+
+
+/**
+ * PullPartitioning.java
+ */
+package com.microsoft.windowsazure.mobileservices.table.sync.pull;
+
+import com.microsoft.windowsazure.mobileservices.table.DateTimeOffset;
+import com.microsoft.windowsazure.mobileservices.table.MobileServiceSystemColumns;
+import com.microsoft.windowsazure.mobileservices.table.query.Query;
+import com.microsoft.windowsazure.mobileservices.table.query.QueryOperations;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Splits a pull into disjoint partitions, pulled concurrently. Each partition
+ * adds a range filter on __updatedAt or id to the pull query. The first
+ * partition has no lower bound and the last one no upper bound, so that every
+ * item belongs to exactly one partition.
+ */
+public class PullPartitioning {
+
+    private String mField;
+
+    /**
+     * Ascending boundaries between consecutive partitions
+     */
+    private List<Object> mBoundaries;
+
+    private PullPartitioning(String field, List<Object> boundaries) {
+        this.mField = field;
+        this.mBoundaries = boundaries;
+    }
+
+    /**
+     * Creates a partitioning that splits a range of __updatedAt in partitions
+     * of equal length. Items updated before the range belong to the first
+     * partition and items updated after it, to the last one.
+     *
+     * @param from  the start of the range, usually the oldest __updatedAt of
+     *              the table
+     * @param to    the end of the range, usually the current time
+     * @param count the number of partitions
+     */
+    public static PullPartitioning byUpdatedAt(Date from, Date to, int count) {
+        if (from == null || to == null || !from.before(to)) {
+            throw new IllegalArgumentException("from must be before to.");
+        }
+
+        if (count < 1) {
+            throw new IllegalArgumentException("count must be greater than zero.");
+        }
+
+        List<Object> boundaries = new ArrayList<Object>();
+        long length = to.getTime() - from.getTime();
+
+        for (int i = 1; i < count; i++) {
+            boundaries.add(new DateTimeOffset(new Date(from.getTime() + length * i / count)));
+        }
+
+        return new PullPartitioning(MobileServiceSystemColumns.UpdatedAt, boundaries);
+    }
+
+    /**
+     * Creates a partitioning that splits the ids at the given boundaries, e.g.
+     * "4", "8" and "c" for four partitions of GUID ids. A partition includes
+     * its lower boundary.
+     *
+     * @param boundaries the ascending boundaries between partitions
+     */
+    public static PullPartitioning byId(String... boundaries) {
+        List<Object> boundaryList = new ArrayList<Object>();
+
+        for (String boundary : boundaries) {
+            if (boundary == null || boundary.length() == 0) {
+                throw new IllegalArgumentException("Boundaries cannot be null or empty.");
+            }
+
+            if (boundaryList.size() > 0 && boundary.compareTo((String) boundaryList.get(boundaryList.size() - 1)) <= 0) {
+                throw new IllegalArgumentException("Boundaries must be in ascending order.");
+            }
+
+            boundaryList.add(boundary);
+        }
+
+        return new PullPartitioning(MobileServiceSystemColumns.Id, boundaryList);
+    }
+
+    /**
+     * Returns the number of partitions
+     */
+    public int getCount() {
+        return this.mBoundaries.size() + 1;
+    }
+
+    /**
+     * Returns a copy of a query restricted to a partition
+     *
+     * @param query     the pull query
+     * @param partition the partition index
+     */
+    public Query getQuery(Query query, int partition) {
+        if (partition < 0 || partition >= getCount()) {
+            throw new IllegalArgumentException("partition is out of range.");
+        }
+
+        Query partitionQuery = query.deepClone();
+
+        if (this.mBoundaries.size() == 0) {
+            return partitionQuery;
+        }
+
+        Query filterQuery;
+
+        if (partition == 0) {
+            filterQuery = QueryOperations.field(this.mField).lt(getBoundary(0));
+        } else if (partition == this.mBoundaries.size()) {
+            filterQuery = QueryOperations.field(this.mField).ge(getBoundary(partition - 1));
+        } else {
+            filterQuery = QueryOperations.field(this.mField).ge(getBoundary(partition - 1))
+                    .and(QueryOperations.field(this.mField).lt(getBoundary(partition)));
+        }
+
+        if (partitionQuery.getQueryNode() != null) {
+            partitionQuery.and(QueryOperations.query(filterQuery));
+        } else {
+            partitionQuery.setQueryNode(filterQuery.getQueryNode());
+        }
+
+        return partitionQuery;
+    }
+
+    /**
+     * Indicates if the partitions are ranges of __updatedAt, in which case the
+     * watermark of the last partition with items covers all of them
+     */
+    boolean isOrderedByUpdatedAt() {
+        return MobileServiceSystemColumns.UpdatedAt.equals(this.mField);
+    }
+
+    private Query getBoundary(int index) {
+        Object boundary = this.mBoundaries.get(index);
+
+        if (boundary instanceof Date) {
+            return QueryOperations.val((Date) boundary);
+        } else {
+            return QueryOperations.val((String) boundary);
+        }
+    }
+}
@@ -32,6 +32,7 @@ import com.microsoft.windowsazure.mobileservices.table.serialization.DateSeriali
 import com.microsoft.windowsazure.mobileservices.table.sync.localstore.ColumnDataType;
 import com.microsoft.windowsazure.mobileservices.table.sync.localstore.MobileServiceLocalStore;
 import com.microsoft.windowsazure.mobileservices.table.sync.localstore.MobileServiceLocalStoreException;
+import com.microsoft.windowsazure.mobileservices.table.sync.localstore.TransactionalLocalStore;
 import com.microsoft.windowsazure.mobileservices.table.sync.operations.DeleteOperation;
 import com.microsoft.windowsazure.mobileservices.table.sync.operations.InsertOperation;
 import com.microsoft.windowsazure.mobileservices.table.sync.operations.MobileServiceTableOperationState;
@@ -43,10 +44,15 @@ import com.microsoft.windowsazure.mobileservices.table.sync.operations.TableOper
 import com.microsoft.windowsazure.mobileservices.table.sync.operations.UpdateOperation;
 
 import java.text.ParseException;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.Queue;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
@@ -61,16 +67,26 @@ public class OperationQueue {
     private static final String OPERATION_QUEUE_TABLE = "__operations";
     private MobileServiceLocalStore mStore;
     private Queue<OperationQueueItem> mQueue;
+    /**
+     * Operations of each table, in queue order, so that a table can be pushed
+     * without walking the operations of the other tables
+     */
+    private Map<String, Queue<OperationQueueItem>> mTableQueues;
     private Queue<BookmarkQueueItem> mBookmarkQueue;
     private Map<String, OperationQueueItem> mIdOperationMap;
     private Map<String, Integer> mTableCountMap;
     private Date mLoadedAt;
     private long mSequence;
     private ReadWriteLock mSyncLock;
+    /**
+     * True if the batch in progress must be committed
+     */
+    private boolean mBatchSuccessful;
     private OperationQueue(MobileServiceLocalStore store) {
         this.mStore = store;
 
         this.mQueue = new LinkedList<OperationQueueItem>();
+        this.mTableQueues = new HashMap<String, Queue<OperationQueueItem>>();
         this.mBookmarkQueue = new LinkedList<BookmarkQueueItem>();
 
         this.mIdOperationMap = new HashMap<String, OperationQueueItem>();
@@ -113,35 +129,7 @@ public class OperationQueue {
     public static OperationQueue load(MobileServiceLocalStore store) throws ParseException, MobileServiceLocalStoreException {
         OperationQueue opQueue = new OperationQueue(store);
 
-        JsonElement operations = store.read(QueryOperations.tableName(OPERATION_QUEUE_TABLE).orderBy("__queueLoadedAt", QueryOrder.Ascending)
-                .orderBy("sequence", QueryOrder.Ascending));
-
-        if (operations.isJsonArray()) {
-            JsonArray array = (JsonArray) operations;
-
-            for (JsonElement element : array) {
-                if (element.isJsonObject()) {
-                    OperationQueueItem opQueueItem = deserialize((JsonObject) element);
-                    opQueue.mQueue.add(opQueueItem);
-
-                    // '/' is a reserved character that cannot be used on string
-                    // ids.
-                    // We use it to build a unique compound string from
-                    // tableName and itemId
-                    String tableItemId = opQueueItem.getTableName() + "/" + opQueueItem.getItemId();
-
-                    opQueue.mIdOperationMap.put(tableItemId, opQueueItem);
-
-                    Integer tableCount = opQueue.mTableCountMap.get(opQueueItem.getTableName());
-
-                    if (tableCount != null) {
-                        opQueue.mTableCountMap.put(opQueueItem.getTableName(), tableCount + 1);
-                    } else {
-                        opQueue.mTableCountMap.put(opQueueItem.getTableName(), 1);
-                    }
-                }
-            }
-        }
+        opQueue.loadOperations();
 
         return opQueue;
     }
@@ -193,49 +181,151 @@ public class OperationQueue {
      * Enqueue a new table operation
      *
      * @param operation the table operation
+     * @return true if the operation was collapsed with the pending operation
+     * for the same item
      * @throws Throwable
      */
-    public void enqueue(TableOperation operation) throws Throwable {
+    public boolean enqueue(TableOperation operation) throws Throwable {
         this.mSyncLock.writeLock().lock();
 
         try {
+            return enqueueItem(operation, null);
+        } finally {
+            this.mSyncLock.writeLock().unlock();
+        }
+    }
 
-            //If an operation state is already seted, keep it to support requee failed operations
-            if (operation.getOperationState() == null) {
-                operation.setOperationState(MobileServiceTableOperationState.Pending);
+    /**
+     * Enqueue a list of new table operations, collapsing them with the
+     * pending operations for the same items. The queue entries are written to
+     * the local store with one upsert and one delete.
+     *
+     * @param operations the table operations
+     * @return the operations that were collapsed with a pending operation
+     * @throws Throwable
+     */
+    public List<TableOperation> enqueueAll(List<TableOperation> operations) throws Throwable {
+        this.mSyncLock.writeLock().lock();
+
+        try {
+            List<TableOperation> collapsedOperations = new ArrayList<TableOperation>();
+            StoreChanges changes = new StoreChanges();
+
+            for (TableOperation operation : operations) {
+                if (enqueueItem(operation, changes)) {
+                    collapsedOperations.add(operation);
+                }
             }
 
-            // '/' is a reserved character that cannot be used on string ids.
-            // We use it to build a unique compound string from tableName and
-            // itemId
-            String tableItemId = operation.getTableName() + "/" + operation.getItemId();
+            changes.apply(this.mStore);
 
-            if (this.mIdOperationMap.containsKey(tableItemId)) {
-                OperationQueueItem prevOpQueueItem = this.mIdOperationMap.get(tableItemId);
-                TableOperation prevOperation = prevOpQueueItem.getOperation();
+            return collapsedOperations;
+        } finally {
+            this.mSyncLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Returns true if the local store supports batches, i.e. is a
+     * TransactionalLocalStore
+     */
+    public boolean supportsBatches() {
+        return this.mStore instanceof TransactionalLocalStore;
+    }
 
-                TableOperation collapsedOperation = prevOperation.accept(new TableOperationCollapser(operation));
+    /**
+     * Begins a batch. The queue is locked until endBatch, and the changes
+     * made to the local store by the current thread, including the queue
+     * entries, are made in a single store transaction. The queue is locked
+     * before the transaction is started, so that the threads writing queue
+     * entries never wait for the transaction while holding the queue.
+     * Requires a store supporting batches.
+     *
+     * @throws MobileServiceLocalStoreException
+     */
+    public void beginBatch() throws MobileServiceLocalStoreException {
+        this.mSyncLock.writeLock().lock();
 
-                if (collapsedOperation == null || collapsedOperation == operation) {
-                    prevOpQueueItem.cancel();
+        try {
+            ((TransactionalLocalStore) this.mStore).beginTransaction();
+            this.mBatchSuccessful = false;
+        } catch (MobileServiceLocalStoreException e) {
+            this.mSyncLock.writeLock().unlock();
+            throw e;
+        }
+    }
 
-                    removeOperationQueueItem(prevOpQueueItem);
+    /**
+     * Marks the current batch as successful, so that endBatch commits it
+     *
+     * @throws MobileServiceLocalStoreException
+     */
+    public void setBatchSuccessful() throws MobileServiceLocalStoreException {
+        ((TransactionalLocalStore) this.mStore).setTransactionSuccessful();
+        this.mBatchSuccessful = true;
+    }
 
-                    if (collapsedOperation == operation) {
-                        enqueueOperation(operation);
-                    }
-                }
+    /**
+     * Ends the current batch. If the batch is not successful, its changes are
+     * rolled back and the queue is reloaded from the local store.
+     *
+     * @throws ParseException
+     * @throws MobileServiceLocalStoreException
+     */
+    public void endBatch() throws ParseException, MobileServiceLocalStoreException {
+        try {
+            boolean successful = this.mBatchSuccessful;
+            this.mBatchSuccessful = false;
 
-                dequeueCancelledOperations();
-            } else {
-                enqueueOperation(operation);
-            }
+            ((TransactionalLocalStore) this.mStore).endTransaction();
 
+            if (!successful) {
+                loadOperations();
+            }
         } finally {
             this.mSyncLock.writeLock().unlock();
         }
     }
 
+    private boolean enqueueItem(TableOperation operation, StoreChanges changes) throws Throwable {
+        boolean collapsed = false;
+
+        //If an operation state is already seted, keep it to support requee failed operations
+        if (operation.getOperationState() == null) {
+            operation.setOperationState(MobileServiceTableOperationState.Pending);
+        }
+
+        // '/' is a reserved character that cannot be used on string ids.
+        // We use it to build a unique compound string from tableName and
+        // itemId
+        String tableItemId = operation.getTableName() + "/" + operation.getItemId();
+
+        if (this.mIdOperationMap.containsKey(tableItemId)) {
+            OperationQueueItem prevOpQueueItem = this.mIdOperationMap.get(tableItemId);
+            TableOperation prevOperation = prevOpQueueItem.getOperation();
+
+            TableOperation collapsedOperation = prevOperation.accept(new TableOperationCollapser(operation));
+
+            if (collapsedOperation == null || collapsedOperation == operation) {
+                prevOpQueueItem.cancel();
+
+                removeOperationQueueItem(prevOpQueueItem, changes);
+
+                if (collapsedOperation == operation) {
+                    enqueueOperation(operation, changes);
+                }
+            }
+
+            dequeueCancelledOperations(operation.getTableName());
+
+            collapsed = true;
+        } else {
+            enqueueOperation(operation, changes);
+        }
+
+        return collapsed;
+    }
+
     /**
      * Dequeue the next table operation
      *
@@ -273,7 +363,7 @@ public class OperationQueue {
 
                 removeOperationQueueItem(currentOperationQueueItem);
 
-                dequeueCancelledOperations();
+                dequeueCancelledOperations(currentOperationQueueItem.getTableName());
             }
 
         } finally {
@@ -340,16 +430,47 @@ public class OperationQueue {
         }
     }
 
+    /**
+     * Indicates if there is a pending table operation for an item
+     *
+     * @param tableName the table name
+     * @param itemId    the item id
+     * @return true if an operation for the item is pending
+     */
+    public boolean hasPendingOperation(String tableName, String itemId) {
+        this.mSyncLock.readLock().lock();
+
+        try {
+            // '/' is a reserved character that cannot be used on string ids.
+            // We use it to build a unique compound string from tableName and
+            // itemId
+            return this.mIdOperationMap.containsKey(tableName + "/" + itemId);
+        } finally {
+            this.mSyncLock.readLock().unlock();
+        }
+    }
+
     /**
      * Adds a new push sync bookmark
      *
      * @return the bookmark
      */
     public Bookmark bookmark() {
+        return bookmark(null);
+    }
+
+    /**
+     * Adds a new push sync bookmark for the operations of a table
+     *
+     * @param tableName the table name, or null for the operations of all
+     *                  tables
+     * @return the bookmark
+     */
+    public Bookmark bookmark(String tableName) {
         this.mSyncLock.writeLock().lock();
 
         try {
-            BookmarkQueueItem bookmarkQueueItem = new BookmarkQueueItem(this.mLoadedAt, this.mSequence);
+            BookmarkQueueItem bookmarkQueueItem = new BookmarkQueueItem(this.mLoadedAt, this.mSequence, tableName);
             this.mBookmarkQueue.add(bookmarkQueueItem);
             return new Bookmark(this, bookmarkQueueItem);
         } finally {
@@ -374,40 +495,80 @@ public class OperationQueue {
         }
     }
 
-    private void enqueueOperation(TableOperation operation) throws ParseException, MobileServiceLocalStoreException {
+    /**
+     * Loads the table operations from the local store, replacing the ones in
+     * memory
+     */
+    private void loadOperations() throws ParseException, MobileServiceLocalStoreException {
+        this.mQueue.clear();
+        this.mTableQueues.clear();
+        this.mIdOperationMap.clear();
+        this.mTableCountMap.clear();
+
+        JsonElement operations = this.mStore.read(QueryOperations.tableName(OPERATION_QUEUE_TABLE).orderBy("__queueLoadedAt", QueryOrder.Ascending)
+                .orderBy("sequence", QueryOrder.Ascending));
+
+        if (operations != null && operations.isJsonArray()) {
+            JsonArray array = (JsonArray) operations;
+
+            for (JsonElement element : array) {
+                if (element.isJsonObject()) {
+                    addOperationQueueItem(deserialize((JsonObject) element));
+                }
+            }
+        }
+    }
+
+    private void enqueueOperation(TableOperation operation, StoreChanges changes) throws ParseException, MobileServiceLocalStoreException {
         OperationQueueItem opQueueItem = new OperationQueueItem(operation, this.mLoadedAt, this.mSequence++);
 
-        this.mStore.upsert(OPERATION_QUEUE_TABLE, serialize(opQueueItem), false);
+        if (changes != null) {
+            changes.upsert(serialize(opQueueItem));
+        } else {
+            this.mStore.upsert(OPERATION_QUEUE_TABLE, serialize(opQueueItem), false);
+        }
+
+        addOperationQueueItem(opQueueItem);
+    }
 
+    private void addOperationQueueItem(OperationQueueItem opQueueItem) {
         this.mQueue.add(opQueueItem);
+        getTableQueue(opQueueItem.getTableName(), true).add(opQueueItem);
 
         // '/' is a reserved character that cannot be used on string ids.
         // We use it to build a unique compound string from tableName and
         // itemId
-        String tableItemId = operation.getTableName() + "/" + operation.getItemId();
+        String tableItemId = opQueueItem.getTableName() + "/" + opQueueItem.getItemId();
 
         this.mIdOperationMap.put(tableItemId, opQueueItem);
 
-        Integer tableCount = this.mTableCountMap.get(operation.getTableName());
+        Integer tableCount = this.mTableCountMap.get(opQueueItem.getTableName());
 
         if (tableCount != null) {
-            this.mTableCountMap.put(operation.getTableName(), tableCount + 1);
+            this.mTableCountMap.put(opQueueItem.getTableName(), tableCount + 1);
         } else {
-            this.mTableCountMap.put(operation.getTableName(), 1);
+            this.mTableCountMap.put(opQueueItem.getTableName(), 1);
         }
     }
 
     private TableOperation dequeueOperation(OperationQueueItem opQueueItem) throws MobileServiceLocalStoreException {
-        this.mQueue.poll();
+        // The item is removed from the head of its table queue, and may be in
+        // the middle of the queue of all tables; it is cancelled so that the
+        // other queue discards it when it reaches the head
+        opQueueItem.cancel();
 
         removeOperationQueueItem(opQueueItem);
 
-        dequeueCancelledOperations();
+        dequeueCancelledOperations(opQueueItem.getTableName());
 
         return opQueueItem.getOperation();
     }
 
     private void removeOperationQueueItem(OperationQueueItem opQueueItem) throws MobileServiceLocalStoreException {
+        removeOperationQueueItem(opQueueItem, null);
+    }
+
+    private void removeOperationQueueItem(OperationQueueItem opQueueItem, StoreChanges changes) throws MobileServiceLocalStoreException {
         // '/' is a reserved character that cannot be used on string ids.
         // We use it to build a unique compound string from tableName and
         // itemId
@@ -423,13 +584,50 @@ public class OperationQueue {
             this.mTableCountMap.remove(opQueueItem.getTableName());
         }
 
-        this.mStore.delete(OPERATION_QUEUE_TABLE, opQueueItem.getId());
+        if (changes != null) {
+            changes.delete(opQueueItem.getId());
+        } else {
+            this.mStore.delete(OPERATION_QUEUE_TABLE, opQueueItem.getId());
+        }
     }
 
-    private void dequeueCancelledOperations() {
+    private void dequeueCancelledOperations(String tableName) {
         while (this.mQueue.peek() != null && this.mQueue.peek().isCancelled()) {
             this.mQueue.poll();
         }
+
+        Queue<OperationQueueItem> tableQueue = getTableQueue(tableName, false);
+
+        if (tableQueue != null) {
+            while (tableQueue.peek() != null && tableQueue.peek().isCancelled()) {
+                tableQueue.poll();
+            }
+
+            if (tableQueue.isEmpty()) {
+                this.mTableQueues.remove(tableName);
+            }
+        }
+    }
+
+    private Queue<OperationQueueItem> getTableQueue(String tableName, boolean create) {
+        Queue<OperationQueueItem> tableQueue = this.mTableQueues.get(tableName);
+
+        if (tableQueue == null && create) {
+            tableQueue = new LinkedList<OperationQueueItem>();
+            this.mTableQueues.put(tableName, tableQueue);
+        }
+
+        return tableQueue;
+    }
+
+    private Queue<OperationQueueItem> getBookmarkedQueue(BookmarkQueueItem bookmarkQueueItem) {
+        if (bookmarkQueueItem.mTableName == null) {
+            return this.mQueue;
+        }
+
+        Queue<OperationQueueItem> tableQueue = getTableQueue(bookmarkQueueItem.mTableName, false);
+
+        return tableQueue != null ? tableQueue : new LinkedList<OperationQueueItem>();
     }
 
     private void dequeueCancelledBookmarks() {
@@ -448,7 +646,7 @@ public class OperationQueue {
                 throw new IllegalStateException("There are other pending bookmarks to be processed.");
             } else {
                 TableOperation result = null;
-                OperationQueueItem opQueueItem = this.mQueue.peek();
+                OperationQueueItem opQueueItem = getBookmarkedQueue(bookmarkQueueItem).peek();
 
                 if (verifyBookmarkedOperation(bookmarkQueueItem, opQueueItem)) {
                     result = dequeueOperation(opQueueItem);
@@ -471,7 +669,7 @@ public class OperationQueue {
                 throw new IllegalStateException("There are other pending bookmarks to be processed.");
             } else {
                 TableOperation result = null;
-                OperationQueueItem opQueueItem = this.mQueue.peek();
+                OperationQueueItem opQueueItem = getBookmarkedQueue(bookmarkQueueItem).peek();
 
                 if (verifyBookmarkedOperation(bookmarkQueueItem, opQueueItem)) {
                     result = opQueueItem.getOperation();
@@ -588,15 +786,51 @@ public class OperationQueue {
     private static class BookmarkQueueItem {
         private Date mQueueLoadedAt;
         private long mSequence;
+        private String mTableName;
         private boolean mCancelled;
 
-        private BookmarkQueueItem(Date queueLoadedAt, long sequence) {
+        private BookmarkQueueItem(Date queueLoadedAt, long sequence, String tableName) {
             this.mQueueLoadedAt = queueLoadedAt;
             this.mSequence = sequence;
+            this.mTableName = tableName;
             this.mCancelled = false;
         }
     }
 
+    /**
+     * Queue entries to be written to the local store at the end of a batch
+     */
+    private static class StoreChanges {
+        private Map<String, JsonObject> mUpserts;
+        private Set<String> mDeletes;
+
+        private StoreChanges() {
+            this.mUpserts = new LinkedHashMap<String, JsonObject>();
+            this.mDeletes = new LinkedHashSet<String>();
+        }
+
+        private void upsert(JsonObject element) {
+            this.mUpserts.put(element.get("id").getAsString(), element);
+        }
+
+        private void delete(String id) {
+            // An entry added in the same batch is not in the store yet
+            if (this.mUpserts.remove(id) == null) {
+                this.mDeletes.add(id);
+            }
+        }
+
+        private void apply(MobileServiceLocalStore store) throws MobileServiceLocalStoreException {
+            if (!this.mUpserts.isEmpty()) {
+                store.upsert(OPERATION_QUEUE_TABLE, this.mUpserts.values().toArray(new JsonObject[this.mUpserts.size()]), false);
+            }
+
+            if (!this.mDeletes.isEmpty()) {
+                store.delete(OPERATION_QUEUE_TABLE, this.mDeletes.toArray(new String[this.mDeletes.size()]));
+            }
+        }
+    }
+
     /**
      * Class that represents a push sync bookmark, and table operations within
      * it
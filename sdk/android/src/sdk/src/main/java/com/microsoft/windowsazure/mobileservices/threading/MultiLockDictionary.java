@@ -23,25 +23,50 @@ See the Apache Version 2.0 License for specific language governing permissions a
  */
 package com.microsoft.windowsazure.mobileservices.threading;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
 /**
- * A key-lock dictionary that discards no longer referenced locks
+ * A key-lock dictionary that discards no longer referenced locks.
+ * <p/>
+ * Locks are reference counted and shared by the threads locking the same
+ * key, without a global lock: a released lock is removed from the dictionary
+ * once its count drops to zero, and a lock being removed is never handed out
+ * again.
  *
  * @param <T> type of the key and param to the MultiLock<T> lock
  */
 public class MultiLockDictionary<T> {
-    private Map<T, MultiLock<T>> mMap;
-    private Object sync;
+    private ConcurrentMap<T, MultiLock<T>> mMap;
+    private boolean mFair;
+    private AtomicLong mLockCount;
+    private AtomicLong mContentionCount;
+    private AtomicLong mWaitTime;
+
     /**
-     * Constructor for MultiLockDictionary
+     * Constructor for MultiLockDictionary, using fair locks
      */
     public MultiLockDictionary() {
-        this.mMap = new HashMap<T, MultiLock<T>>();
-        this.sync = new Object();
+        this(true);
+    }
+
+    /**
+     * Constructor for MultiLockDictionary
+     *
+     * @param fair true to grant the locks in arrival order, false for a
+     *             higher throughput under contention
+     */
+    public MultiLockDictionary(boolean fair) {
+        this.mMap = new ConcurrentHashMap<T, MultiLock<T>>();
+        this.mFair = fair;
+        this.mLockCount = new AtomicLong();
+        this.mContentionCount = new AtomicLong();
+        this.mWaitTime = new AtomicLong();
     }
 
     /**
@@ -51,18 +76,18 @@ public class MultiLockDictionary<T> {
      * @return the lock
      */
     public MultiLock<T> lock(T key) {
-        MultiLock<T> multiLock = null;
+        MultiLock<T> multiLock = increaseLock(key);
 
-        synchronized (sync) {
-            if (!this.mMap.containsKey(key)) {
-                this.mMap.put(key, new MultiLock<T>());
-            }
+        this.mLockCount.incrementAndGet();
 
-            multiLock = this.mMap.get(key);
-            multiLock.mCount++;
-        }
+        if (!tryLockNow(multiLock.mLock)) {
+            long startTime = System.nanoTime();
 
-        multiLock.mLock.lock();
+            multiLock.mLock.lock();
+
+            this.mContentionCount.incrementAndGet();
+            this.mWaitTime.addAndGet(System.nanoTime() - startTime);
+        }
 
         return multiLock;
     }
@@ -73,13 +98,74 @@ public class MultiLockDictionary<T> {
      * @param multiLock the lock
      */
     public void unLock(MultiLock<T> multiLock) {
-        synchronized (sync) {
-            multiLock.mCount--;
-            multiLock.mLock.unlock();
+        multiLock.mLock.unlock();
+
+        if (multiLock.mCount.decrementAndGet() == 0) {
+            this.mMap.remove(multiLock.mKey, multiLock);
+        }
+    }
 
-            if (multiLock.mCount == 0) {
-                this.mMap.remove(multiLock.mKey);
+    /**
+     * Returns the number of lock acquisitions
+     */
+    public long getLockCount() {
+        return this.mLockCount.get();
+    }
+
+    /**
+     * Returns the number of lock acquisitions that waited for another thread
+     */
+    public long getContentionCount() {
+        return this.mContentionCount.get();
+    }
+
+    /**
+     * Returns the total time, in nanoseconds, spent waiting for locks
+     */
+    public long getWaitTime() {
+        return this.mWaitTime.get();
+    }
+
+    /**
+     * Returns the number of keys currently locked or waited for
+     */
+    public int size() {
+        return this.mMap.size();
+    }
+
+    /**
+     * Acquires the lock immediately if it is free, honoring the fairness
+     * setting of the lock
+     */
+    static boolean tryLockNow(Lock lock) {
+        try {
+            return lock.tryLock(0, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private MultiLock<T> increaseLock(T key) {
+        while (true) {
+            MultiLock<T> multiLock = this.mMap.get(key);
+
+            if (multiLock == null) {
+                MultiLock<T> newLock = new MultiLock<T>(key, this.mFair);
+
+                multiLock = this.mMap.putIfAbsent(key, newLock);
+
+                if (multiLock == null) {
+                    return newLock;
+                }
             }
+
+            if (multiLock.retain()) {
+                return multiLock;
+            }
+
+            // The lock is being discarded; help remove it and retry
+            this.mMap.remove(key, multiLock);
         }
     }
 
@@ -90,15 +176,38 @@ public class MultiLockDictionary<T> {
      */
     public static class MultiLock<T> {
         private T mKey;
-        private int mCount;
+        private AtomicInteger mCount;
         private Lock mLock;
 
         /**
          * Constructor for MultiLock
          */
         public MultiLock() {
-            this.mCount = 0;
-            this.mLock = new ReentrantLock(true);
+            this(null, true);
+        }
+
+        private MultiLock(T key, boolean fair) {
+            this.mKey = key;
+            this.mCount = new AtomicInteger(1);
+            this.mLock = new ReentrantLock(fair);
+        }
+
+        /**
+         * Adds a reference to the lock, unless it has already been
+         * discarded
+         */
+        private boolean retain() {
+            while (true) {
+                int count = this.mCount.get();
+
+                if (count == 0) {
+                    return false;
+                }
+
+                if (this.mCount.compareAndSet(count, count + 1)) {
+                    return true;
+                }
+            }
         }
     }
 }
@@ -23,25 +23,48 @@ See the Apache Version 2.0 License for specific language governing permissions a
  */
 package com.microsoft.windowsazure.mobileservices.threading;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
- * A key-readWriteLock dictionary that discards no longer referenced locks
+ * A key-readWriteLock dictionary that discards no longer referenced locks.
+ * <p/>
+ * Locks are reference counted and shared by the threads locking the same
+ * key, without a global lock, like in MultiLockDictionary.
  *
  * @param <T> type of the key and param to the MultiReadWriteLock<T> lock
  */
 public class MultiReadWriteLockDictionary<T> {
-    private Map<T, MultiReadWriteLock<T>> mMap;
-    private Object sync;
+    private ConcurrentMap<T, MultiReadWriteLock<T>> mMap;
+    private boolean mFair;
+    private AtomicLong mLockCount;
+    private AtomicLong mContentionCount;
+    private AtomicLong mWaitTime;
+
     /**
-     * Constructor for MultiReadWriteLockDictionary
+     * Constructor for MultiReadWriteLockDictionary, using fair locks
      */
     public MultiReadWriteLockDictionary() {
-        this.mMap = new HashMap<T, MultiReadWriteLock<T>>();
-        this.sync = new Object();
+        this(true);
+    }
+
+    /**
+     * Constructor for MultiReadWriteLockDictionary
+     *
+     * @param fair true to grant the locks in arrival order, false for a
+     *             higher throughput under contention
+     */
+    public MultiReadWriteLockDictionary(boolean fair) {
+        this.mMap = new ConcurrentHashMap<T, MultiReadWriteLock<T>>();
+        this.mFair = fair;
+        this.mLockCount = new AtomicLong();
+        this.mContentionCount = new AtomicLong();
+        this.mWaitTime = new AtomicLong();
     }
 
     /**
@@ -53,7 +76,7 @@ public class MultiReadWriteLockDictionary<T> {
     public MultiReadWriteLock<T> lockRead(T key) {
         MultiReadWriteLock<T> multiRWLock = increaseLock(key);
 
-        multiRWLock.mReadWriteLock.readLock().lock();
+        lock(multiRWLock.mReadWriteLock.readLock());
 
         return multiRWLock;
     }
@@ -67,7 +90,7 @@ public class MultiReadWriteLockDictionary<T> {
     public MultiReadWriteLock<T> lockWrite(T key) {
         MultiReadWriteLock<T> multiRWLock = increaseLock(key);
 
-        multiRWLock.mReadWriteLock.writeLock().lock();
+        lock(multiRWLock.mReadWriteLock.writeLock());
 
         return multiRWLock;
     }
@@ -94,28 +117,73 @@ public class MultiReadWriteLockDictionary<T> {
         decreaseLock(multiRWLock);
     }
 
+    /**
+     * Returns the number of lock acquisitions
+     */
+    public long getLockCount() {
+        return this.mLockCount.get();
+    }
+
+    /**
+     * Returns the number of lock acquisitions that waited for another thread
+     */
+    public long getContentionCount() {
+        return this.mContentionCount.get();
+    }
+
+    /**
+     * Returns the total time, in nanoseconds, spent waiting for locks
+     */
+    public long getWaitTime() {
+        return this.mWaitTime.get();
+    }
+
+    /**
+     * Returns the number of keys currently locked or waited for
+     */
+    public int size() {
+        return this.mMap.size();
+    }
+
+    private void lock(Lock lock) {
+        this.mLockCount.incrementAndGet();
+
+        if (!MultiLockDictionary.tryLockNow(lock)) {
+            long startTime = System.nanoTime();
+
+            lock.lock();
+
+            this.mContentionCount.incrementAndGet();
+            this.mWaitTime.addAndGet(System.nanoTime() - startTime);
+        }
+    }
+
     private MultiReadWriteLock<T> increaseLock(T key) {
-        MultiReadWriteLock<T> multiRWLock = null;
+        while (true) {
+            MultiReadWriteLock<T> multiRWLock = this.mMap.get(key);
 
-        synchronized (sync) {
-            if (!this.mMap.containsKey(key)) {
-                this.mMap.put(key, new MultiReadWriteLock<T>());
+            if (multiRWLock == null) {
+                MultiReadWriteLock<T> newLock = new MultiReadWriteLock<T>(key, this.mFair);
+
+                multiRWLock = this.mMap.putIfAbsent(key, newLock);
+
+                if (multiRWLock == null) {
+                    return newLock;
+                }
             }
 
-            multiRWLock = this.mMap.get(key);
-            multiRWLock.mCount++;
-        }
+            if (multiRWLock.retain()) {
+                return multiRWLock;
+            }
 
-        return multiRWLock;
+            // The lock is being discarded; help remove it and retry
+            this.mMap.remove(key, multiRWLock);
+        }
     }
 
     private void decreaseLock(MultiReadWriteLock<T> multiRWLock) {
-        synchronized (sync) {
-            multiRWLock.mCount--;
-
-            if (multiRWLock.mCount == 0) {
-                this.mMap.remove(multiRWLock.mKey);
-            }
+        if (multiRWLock.mCount.decrementAndGet() == 0) {
+            this.mMap.remove(multiRWLock.mKey, multiRWLock);
         }
     }
 
@@ -126,15 +194,38 @@ public class MultiReadWriteLockDictionary<T> {
      */
     public static class MultiReadWriteLock<T> {
         private T mKey;
-        private int mCount;
+        private AtomicInteger mCount;
         private ReadWriteLock mReadWriteLock;
 
         /**
          * Constructor for MultiReadWriteLock
          */
         public MultiReadWriteLock() {
-            this.mCount = 0;
-            this.mReadWriteLock = new ReentrantReadWriteLock(true);
+            this(null, true);
+        }
+
+        private MultiReadWriteLock(T key, boolean fair) {
+            this.mKey = key;
+            this.mCount = new AtomicInteger(1);
+            this.mReadWriteLock = new ReentrantReadWriteLock(fair);
+        }
+
+        /**
+         * Adds a reference to the lock, unless it has already been
+         * discarded
+         */
+        private boolean retain() {
+            while (true) {
+                int count = this.mCount.get();
+
+                if (count == 0) {
+                    return false;
+                }
+
+                if (this.mCount.compareAndSet(count, count + 1)) {
+                    return true;
+                }
+            }
         }
     }
 }
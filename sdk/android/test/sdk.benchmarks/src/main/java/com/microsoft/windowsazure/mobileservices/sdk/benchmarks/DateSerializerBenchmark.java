@@ -0,0 +1,70 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+package com.microsoft.windowsazure.mobileservices.sdk.benchmarks;
+
+import com.microsoft.windowsazure.mobileservices.table.serialization.DateSerializer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.text.ParseException;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the ISO-8601 date conversions used for every date column and
+ * system property
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DateSerializerBenchmark {
+
+    private Date mDate = new Date(1420070400123L);
+
+    private String mDateString = "2015-01-01T00:00:00.123Z";
+
+    private String mShortDateString = "2015-01-01T00:00:00Z";
+
+    @Benchmark
+    public String serialize() {
+        return DateSerializer.serialize(mDate);
+    }
+
+    @Benchmark
+    public Date deserialize() throws ParseException {
+        return DateSerializer.deserialize(mDateString);
+    }
+
+    @Benchmark
+    public Date deserializeWithoutMilliseconds() throws ParseException {
+        return DateSerializer.deserialize(mShortDateString);
+    }
+}
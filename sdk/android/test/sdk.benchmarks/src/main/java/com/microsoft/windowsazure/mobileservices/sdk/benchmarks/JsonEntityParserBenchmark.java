@@ -0,0 +1,95 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+package com.microsoft.windowsazure.mobileservices.sdk.benchmarks;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.microsoft.windowsazure.mobileservices.table.serialization.DateSerializer;
+import com.microsoft.windowsazure.mobileservices.table.serialization.JsonEntityParser;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the conversion of query results into typed entities
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JsonEntityParserBenchmark {
+
+    @Param({"1", "50", "1000"})
+    public int rows;
+
+    private Gson mGson;
+
+    private JsonArray mResults;
+
+    @Setup
+    public void setup() {
+        mGson = new GsonBuilder().registerTypeAdapter(Date.class, new DateSerializer()).create();
+
+        mResults = new JsonArray();
+
+        for (int i = 0; i < rows; i++) {
+            JsonObject item = new JsonObject();
+            item.addProperty("id", "item-" + i);
+            item.addProperty("text", "Text of item number " + i);
+            item.addProperty("complete", i % 2 == 0);
+            item.addProperty("priority", i % 10);
+            item.addProperty("price", i * 1.5);
+            item.addProperty("dueDate", "2015-01-01T00:00:00.000Z");
+
+            mResults.add(item);
+        }
+    }
+
+    @Benchmark
+    public List<Item> parseResults() {
+        return JsonEntityParser.parseResults(mResults, mGson, Item.class);
+    }
+
+    public static class Item {
+        public String id;
+        public String text;
+        public boolean complete;
+        public int priority;
+        public double price;
+        public Date dueDate;
+    }
+}
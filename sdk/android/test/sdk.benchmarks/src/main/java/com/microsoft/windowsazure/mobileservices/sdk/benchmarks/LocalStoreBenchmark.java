@@ -0,0 +1,160 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+package com.microsoft.windowsazure.mobileservices.sdk.benchmarks;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.microsoft.windowsazure.mobileservices.table.query.Query;
+import com.microsoft.windowsazure.mobileservices.table.query.QueryOrder;
+import com.microsoft.windowsazure.mobileservices.table.sync.localstore.ColumnDataType;
+import com.microsoft.windowsazure.mobileservices.table.sync.localstore.JdbcLocalStore;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static com.microsoft.windowsazure.mobileservices.table.query.QueryOperations.tableName;
+
+/**
+ * Measures reads and upserts through the local store used by the offline
+ * sync engine
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LocalStoreBenchmark {
+
+    private static final String TABLE_NAME = "TodoItem";
+
+    private static final int TABLE_ROWS = 10000;
+
+    /**
+     * Number of items per upsert/read, e.g. a pull page
+     */
+    @Param({"1", "50"})
+    public int pageSize;
+
+    private File mFile;
+
+    private JdbcLocalStore mStore;
+
+    private JsonObject[] mPage;
+
+    private Query mReadQuery;
+
+    private int mNextPage;
+
+    @Setup
+    public void setup() throws Throwable {
+        mFile = File.createTempFile("localstore", ".db");
+
+        mStore = new JdbcLocalStore("jdbc:sqlite:" + mFile.getAbsolutePath());
+
+        Map<String, ColumnDataType> columns = new HashMap<String, ColumnDataType>();
+        columns.put("id", ColumnDataType.String);
+        columns.put("text", ColumnDataType.String);
+        columns.put("complete", ColumnDataType.Boolean);
+        columns.put("priority", ColumnDataType.Integer);
+        columns.put("price", ColumnDataType.Real);
+        columns.put("tags", ColumnDataType.Other);
+        columns.put("__version", ColumnDataType.String);
+        columns.put("__updatedAt", ColumnDataType.DateTimeOffset);
+
+        mStore.defineTable(TABLE_NAME, columns);
+        mStore.initialize();
+
+        JsonObject[] items = new JsonObject[TABLE_ROWS];
+
+        for (int i = 0; i < TABLE_ROWS; i++) {
+            items[i] = createItem(i);
+        }
+
+        mStore.upsert(TABLE_NAME, items, true);
+
+        mPage = new JsonObject[pageSize];
+
+        mReadQuery = tableName(TABLE_NAME).field("priority").eq(3).orderBy("__updatedAt", QueryOrder.Ascending).top(pageSize);
+    }
+
+    @TearDown
+    public void tearDown() throws Throwable {
+        mStore.close();
+        mFile.delete();
+    }
+
+    @Benchmark
+    public JdbcLocalStore upsert() throws Throwable {
+        int first = (mNextPage++ * pageSize) % TABLE_ROWS;
+
+        for (int i = 0; i < pageSize; i++) {
+            mPage[i] = createItem((first + i) % TABLE_ROWS);
+        }
+
+        mStore.upsert(TABLE_NAME, mPage, true);
+
+        return mStore;
+    }
+
+    @Benchmark
+    public JsonElement read() throws Throwable {
+        return mStore.read(mReadQuery);
+    }
+
+    @Benchmark
+    public JsonObject lookup() throws Throwable {
+        return mStore.lookup(TABLE_NAME, "item-" + (mNextPage++ % TABLE_ROWS));
+    }
+
+    private static JsonObject createItem(int index) {
+        JsonObject item = new JsonObject();
+        item.addProperty("id", "item-" + index);
+        item.addProperty("text", "Text of item number " + index);
+        item.addProperty("complete", index % 2 == 0);
+        item.addProperty("priority", index % 10);
+        item.addProperty("price", index * 1.5);
+
+        JsonObject tags = new JsonObject();
+        tags.addProperty("color", "red");
+        tags.addProperty("size", index % 5);
+        item.add("tags", tags);
+
+        item.addProperty("__version", "AAAAAAAAB9E=");
+        item.addProperty("__updatedAt", "2015-01-01T00:00:00.000Z");
+
+        return item;
+    }
+}
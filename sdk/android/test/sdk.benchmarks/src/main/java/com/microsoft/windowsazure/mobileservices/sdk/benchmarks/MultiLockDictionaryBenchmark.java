@@ -0,0 +1,104 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+package com.microsoft.windowsazure.mobileservices.sdk.benchmarks;
+
+import com.microsoft.windowsazure.mobileservices.threading.MultiLockDictionary;
+import com.microsoft.windowsazure.mobileservices.threading.MultiLockDictionary.MultiLock;
+import com.microsoft.windowsazure.mobileservices.threading.MultiReadWriteLockDictionary;
+import com.microsoft.windowsazure.mobileservices.threading.MultiReadWriteLockDictionary.MultiReadWriteLock;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the throughput of the key lock dictionaries used by the sync
+ * context when many threads write to the local tables concurrently
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(8)
+@State(Scope.Benchmark)
+public class MultiLockDictionaryBenchmark {
+
+    /**
+     * Number of distinct keys; a single key means every thread contends for
+     * the same lock
+     */
+    @Param({"1", "16", "10000"})
+    public int keys;
+
+    /**
+     * Fairness of the item locks; the sync context uses non-fair item locks
+     */
+    @Param({"true", "false"})
+    public boolean fair;
+
+    private MultiLockDictionary<String> mIdLocks;
+
+    private MultiReadWriteLockDictionary<String> mTableLocks;
+
+    @Setup
+    public void setUp() {
+        mIdLocks = new MultiLockDictionary<String>(fair);
+        mTableLocks = new MultiReadWriteLockDictionary<String>();
+    }
+
+    @Benchmark
+    public void lockUnlock() {
+        MultiLock<String> lock = mIdLocks.lock(nextKey());
+
+        mIdLocks.unLock(lock);
+    }
+
+    @Benchmark
+    public void tableReadLockAndIdLock() {
+        String key = nextKey();
+
+        MultiReadWriteLock<String> tableLock = mTableLocks.lockRead("table");
+
+        try {
+            MultiLock<String> idLock = mIdLocks.lock(key);
+
+            mIdLocks.unLock(idLock);
+        } finally {
+            mTableLocks.unLockRead(tableLock);
+        }
+    }
+
+    private String nextKey() {
+        return "item/" + ThreadLocalRandom.current().nextInt(keys);
+    }
+}
@@ -0,0 +1,105 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+package com.microsoft.windowsazure.mobileservices.sdk.benchmarks;
+
+import com.microsoft.windowsazure.mobileservices.table.sync.localstore.JdbcLocalStore;
+import com.microsoft.windowsazure.mobileservices.table.sync.operations.DeleteOperation;
+import com.microsoft.windowsazure.mobileservices.table.sync.operations.InsertOperation;
+import com.microsoft.windowsazure.mobileservices.table.sync.operations.TableOperation;
+import com.microsoft.windowsazure.mobileservices.table.sync.operations.TableOperationCollapser;
+import com.microsoft.windowsazure.mobileservices.table.sync.operations.UpdateOperation;
+import com.microsoft.windowsazure.mobileservices.table.sync.queue.OperationQueue;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures enqueuing operations in the operation queue, including the
+ * collapsing of operations on the same item
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class OperationQueueBenchmark {
+
+    private static final String TABLE_NAME = "TodoItem";
+
+    private JdbcLocalStore mStore;
+
+    private OperationQueue mQueue;
+
+    private long mNextId;
+
+    @Setup(Level.Iteration)
+    public void setup() throws Throwable {
+        mStore = new JdbcLocalStore("jdbc:sqlite::memory:");
+
+        OperationQueue.initializeStore(mStore);
+        mStore.initialize();
+
+        mQueue = OperationQueue.load(mStore);
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() throws Throwable {
+        mStore.close();
+    }
+
+    @Benchmark
+    public OperationQueue enqueueInsert() throws Throwable {
+        mQueue.enqueue(new InsertOperation(TABLE_NAME, String.valueOf(mNextId++)));
+
+        return mQueue;
+    }
+
+    @Benchmark
+    public OperationQueue enqueueAndCollapse() throws Throwable {
+        String itemId = String.valueOf(mNextId++);
+
+        // insert + update collapses into the insert, insert + delete cancels both
+        mQueue.enqueue(new InsertOperation(TABLE_NAME, itemId));
+        mQueue.enqueue(new UpdateOperation(TABLE_NAME, itemId));
+        mQueue.enqueue(new DeleteOperation(TABLE_NAME, itemId));
+
+        return mQueue;
+    }
+
+    @Benchmark
+    public TableOperation collapse() throws Throwable {
+        TableOperation existingOperation = new UpdateOperation(TABLE_NAME, "item");
+
+        return existingOperation.accept(new TableOperationCollapser(new UpdateOperation(TABLE_NAME, "item")));
+    }
+}
@@ -0,0 +1,128 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+package com.microsoft.windowsazure.mobileservices.sdk.benchmarks;
+
+import android.util.Pair;
+
+import com.microsoft.windowsazure.mobileservices.MobileServiceException;
+import com.microsoft.windowsazure.mobileservices.table.MobileServiceSystemProperty;
+import com.microsoft.windowsazure.mobileservices.table.MobileServiceTableSystemPropertiesProvider;
+import com.microsoft.windowsazure.mobileservices.table.query.Query;
+import com.microsoft.windowsazure.mobileservices.table.query.QueryODataWriter;
+import com.microsoft.windowsazure.mobileservices.table.query.QueryOrder;
+import com.microsoft.windowsazure.mobileservices.table.query.QuerySQLWriter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static com.microsoft.windowsazure.mobileservices.table.query.QueryOperations.field;
+import static com.microsoft.windowsazure.mobileservices.table.query.QueryOperations.tableName;
+
+/**
+ * Measures the generation of OData query strings and SQL clauses
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class QueryWriterBenchmark {
+
+    private Query mQuery;
+
+    private MobileServiceTableSystemPropertiesProvider mTable;
+
+    @Setup
+    public void setup() {
+        mQuery = tableName("TodoItem")
+                .field("complete").eq(false)
+                .and(field("text").ne("don't forget"))
+                .and(field("__updatedAt").ge(new Date(1420070400000L)))
+                .and().startsWith("text", "buy")
+                .or(field("priority").gt(3).and(field("priority").le(10)))
+                .orderBy("__updatedAt", QueryOrder.Ascending)
+                .orderBy("id", QueryOrder.Ascending)
+                .select("id", "text", "complete", "priority", "__updatedAt")
+                .top(50)
+                .skip(100)
+                .includeDeleted();
+
+        mTable = new MobileServiceTableSystemPropertiesProvider() {
+            private EnumSet<MobileServiceSystemProperty> mSystemProperties = EnumSet.of(MobileServiceSystemProperty.Version,
+                    MobileServiceSystemProperty.UpdatedAt);
+
+            @Override
+            public EnumSet<MobileServiceSystemProperty> getSystemProperties() {
+                return mSystemProperties;
+            }
+
+            @Override
+            public void setSystemProperties(EnumSet<MobileServiceSystemProperty> systemProperties) {
+                mSystemProperties = systemProperties;
+            }
+
+            @Override
+            public List<Pair<String, String>> addSystemProperties(EnumSet<MobileServiceSystemProperty> systemProperties,
+                                                                  List<Pair<String, String>> existingProperties) {
+                List<Pair<String, String>> result = new ArrayList<Pair<String, String>>();
+
+                if (existingProperties != null) {
+                    result.addAll(existingProperties);
+                }
+
+                result.add(new Pair<String, String>("__systemproperties", "__version,__updatedAt"));
+
+                return result;
+            }
+        };
+    }
+
+    @Benchmark
+    public String oDataQueryString() throws UnsupportedEncodingException {
+        return QueryODataWriter.getRowFilter(mQuery) + QueryODataWriter.getRowSetModifiers(mQuery, mTable);
+    }
+
+    @Benchmark
+    public String sqlWhereClause() throws MobileServiceException {
+        return QuerySQLWriter.getWhereClause(mQuery);
+    }
+
+    @Benchmark
+    public String sqlClauses() throws MobileServiceException {
+        return QuerySQLWriter.getSelectClause(mQuery) + QuerySQLWriter.getWhereClause(mQuery) + QuerySQLWriter.getOrderByClause(mQuery)
+                + QuerySQLWriter.getLimitClause(mQuery);
+    }
+}
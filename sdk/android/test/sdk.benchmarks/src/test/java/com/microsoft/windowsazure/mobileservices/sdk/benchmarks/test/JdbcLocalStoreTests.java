@@ -0,0 +1,173 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+package com.microsoft.windowsazure.mobileservices.sdk.benchmarks.test;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.microsoft.windowsazure.mobileservices.table.query.Query;
+import com.microsoft.windowsazure.mobileservices.table.query.QueryOperations;
+import com.microsoft.windowsazure.mobileservices.table.query.QueryOrder;
+import com.microsoft.windowsazure.mobileservices.table.sync.localstore.ColumnDataType;
+import com.microsoft.windowsazure.mobileservices.table.sync.localstore.JdbcLocalStore;
+import com.microsoft.windowsazure.mobileservices.table.sync.localstore.MobileServiceLocalStoreException;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+public class JdbcLocalStoreTests extends TestCase {
+
+    private static final String TestTable = "todo";
+
+    private File mFile;
+
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        mFile = File.createTempFile("jdbcLocalStoreTest", ".db");
+    }
+
+    protected void tearDown() throws Exception {
+        mFile.delete();
+
+        super.tearDown();
+    }
+
+    public void testUpsertThenLookupReturnsTheItem() throws MobileServiceLocalStoreException {
+        JdbcLocalStore store = createStore();
+
+        try {
+            store.upsert(TestTable, createItem("abc", "Hey", 42), false);
+
+            JsonObject item = store.lookup(TestTable, "abc");
+
+            assertNotNull(item);
+            assertEquals("Hey", item.get("text").getAsString());
+            assertEquals(42, item.get("count").getAsInt());
+            assertTrue(item.get("complete").getAsBoolean());
+        } finally {
+            store.close();
+        }
+    }
+
+    public void testUpsertReplacesTheExistingItem() throws MobileServiceLocalStoreException {
+        JdbcLocalStore store = createStore();
+
+        try {
+            store.upsert(TestTable, createItem("abc", "Hey", 1), false);
+            store.upsert(TestTable, createItem("abc", "World", 2), false);
+
+            JsonObject item = store.lookup(TestTable, "abc");
+
+            assertEquals("World", item.get("text").getAsString());
+            assertEquals(1, readAll(store).size());
+        } finally {
+            store.close();
+        }
+    }
+
+    public void testReadFiltersAndSortsTheItems() throws MobileServiceLocalStoreException {
+        JdbcLocalStore store = createStore();
+
+        try {
+            store.upsert(TestTable, new JsonObject[]{createItem("a", "A", 3), createItem("b", "B", 1), createItem("c", "C", 2)}, false);
+
+            Query query = QueryOperations.tableName(TestTable).field("count").gt(1).orderBy("count", QueryOrder.Descending);
+
+            JsonArray items = store.read(query).getAsJsonArray();
+
+            assertEquals(2, items.size());
+            assertEquals("a", items.get(0).getAsJsonObject().get("id").getAsString());
+            assertEquals("c", items.get(1).getAsJsonObject().get("id").getAsString());
+        } finally {
+            store.close();
+        }
+    }
+
+    public void testDeleteRemovesTheItems() throws MobileServiceLocalStoreException {
+        JdbcLocalStore store = createStore();
+
+        try {
+            store.upsert(TestTable, new JsonObject[]{createItem("a", "A", 1), createItem("b", "B", 2), createItem("c", "C", 3)}, false);
+
+            store.delete(TestTable, "a");
+            store.delete(QueryOperations.tableName(TestTable).field("count").eq(2));
+
+            JsonArray items = readAll(store);
+
+            assertEquals(1, items.size());
+            assertEquals("c", items.get(0).getAsJsonObject().get("id").getAsString());
+            assertNull(store.lookup(TestTable, "a"));
+        } finally {
+            store.close();
+        }
+    }
+
+    public void testItemsArePersistedAcrossStores() throws MobileServiceLocalStoreException {
+        JdbcLocalStore store = createStore();
+
+        try {
+            store.upsert(TestTable, createItem("abc", "Hey", 42), false);
+        } finally {
+            store.close();
+        }
+
+        store = createStore();
+
+        try {
+            assertEquals("Hey", store.lookup(TestTable, "abc").get("text").getAsString());
+        } finally {
+            store.close();
+        }
+    }
+
+    private JdbcLocalStore createStore() throws MobileServiceLocalStoreException {
+        Map<String, ColumnDataType> tableDefinition = new HashMap<String, ColumnDataType>();
+        tableDefinition.put("id", ColumnDataType.String);
+        tableDefinition.put("text", ColumnDataType.String);
+        tableDefinition.put("count", ColumnDataType.Integer);
+        tableDefinition.put("complete", ColumnDataType.Boolean);
+
+        JdbcLocalStore store = new JdbcLocalStore("jdbc:sqlite:" + mFile.getAbsolutePath());
+        store.defineTable(TestTable, tableDefinition);
+        store.initialize();
+
+        return store;
+    }
+
+    private static JsonObject createItem(String id, String text, int count) {
+        JsonObject item = new JsonObject();
+        item.addProperty("id", id);
+        item.addProperty("text", text);
+        item.addProperty("count", count);
+        item.addProperty("complete", true);
+
+        return item;
+    }
+
+    private static JsonArray readAll(JdbcLocalStore store) throws MobileServiceLocalStoreException {
+        JsonElement result = store.read(QueryOperations.tableName(TestTable).orderBy("id", QueryOrder.Ascending));
+
+        return result.getAsJsonArray();
+    }
+}
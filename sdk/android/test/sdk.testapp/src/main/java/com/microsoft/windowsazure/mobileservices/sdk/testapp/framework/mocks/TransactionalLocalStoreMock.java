@@ -0,0 +1,23 @@
+package com.microsoft.windowsazure.mobileservices.sdk.testapp.framework.mocks;
+
+import com.microsoft.windowsazure.mobileservices.table.sync.localstore.MobileServiceLocalStoreException;
+import com.microsoft.windowsazure.mobileservices.table.sync.localstore.TransactionalLocalStore;
+
+public class TransactionalLocalStoreMock extends MobileServiceLocalStoreMock implements TransactionalLocalStore {
+    public int Transactions = 0;
+
+    @Override
+    public void beginTransaction() throws MobileServiceLocalStoreException {
+        this.Transactions++;
+    }
+
+    @Override
+    public void setTransactionSuccessful() throws MobileServiceLocalStoreException {
+
+    }
+
+    @Override
+    public void endTransaction() throws MobileServiceLocalStoreException {
+
+    }
+}
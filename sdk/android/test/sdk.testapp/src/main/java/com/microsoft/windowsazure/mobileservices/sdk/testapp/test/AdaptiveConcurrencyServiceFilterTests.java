@@ -0,0 +1,292 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+package com.microsoft.windowsazure.mobileservices.sdk.testapp.test;
+
+import android.test.InstrumentationTestCase;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import com.microsoft.windowsazure.mobileservices.MobileServiceException;
+import com.microsoft.windowsazure.mobileservices.http.AdaptiveConcurrencyServiceFilter;
+import com.microsoft.windowsazure.mobileservices.http.NextServiceFilterCallback;
+import com.microsoft.windowsazure.mobileservices.http.PrioritizedServiceFilterRequest;
+import com.microsoft.windowsazure.mobileservices.http.RequestPriority;
+import com.microsoft.windowsazure.mobileservices.http.ServiceFilterRequest;
+import com.microsoft.windowsazure.mobileservices.http.ServiceFilterResponse;
+import com.microsoft.windowsazure.mobileservices.sdk.testapp.framework.filters.ServiceFilterRequestMock;
+import com.microsoft.windowsazure.mobileservices.sdk.testapp.framework.filters.ServiceFilterResponseMock;
+import com.microsoft.windowsazure.mobileservices.sdk.testapp.framework.filters.StatusLineMock;
+
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+
+public class AdaptiveConcurrencyServiceFilterTests extends InstrumentationTestCase {
+
+    public void testSuccessfulRequestsAtTheLimitIncreaseTheLimitUpToTheMaximum() throws Throwable {
+        AdaptiveConcurrencyServiceFilter filter = createFilter(2, 1, 3, 60000);
+        NextCallbackMock next = new NextCallbackMock();
+
+        int rounds = 0;
+
+        while (filter.getLimit() < 3) {
+            assertTrue("The limit should grow after a few rounds", rounds++ < 10);
+
+            runRound(filter, next, filter.getLimit(), 200);
+        }
+
+        // The limit does not grow past the maximum
+        for (int i = 0; i < 10; i++) {
+            runRound(filter, next, filter.getLimit(), 200);
+        }
+
+        assertEquals(3, filter.getLimit());
+        assertEquals(0, filter.getInFlight());
+    }
+
+    public void testSuccessfulRequestsUnderTheLimitDoNotIncreaseTheLimit() throws Throwable {
+        AdaptiveConcurrencyServiceFilter filter = createFilter(4, 1, 16, 60000);
+        NextCallbackMock next = new NextCallbackMock();
+
+        for (int i = 0; i < 20; i++) {
+            runRound(filter, next, 1, 200);
+        }
+
+        assertEquals(4, filter.getLimit());
+    }
+
+    public void testThrottledAndTimedOutRequestsHalveTheLimitDownToTheMinimum() throws Throwable {
+        AdaptiveConcurrencyServiceFilter filter = createFilter(8, 2, 16, 60000);
+        NextCallbackMock next = new NextCallbackMock();
+
+        runRound(filter, next, 1, 429);
+        assertEquals(4, filter.getLimit());
+
+        runRound(filter, next, 1, 503);
+        assertEquals(2, filter.getLimit());
+
+        // The limit does not go below the minimum
+        ListenableFuture<ServiceFilterResponse> future = filter.handleRequest(createRequest(), next);
+        next.fail(next.getCallCount() - 1, new MobileServiceException("Timed out", new SocketTimeoutException()));
+        assertTrue(future.isDone());
+        assertEquals(2, filter.getLimit());
+
+        filter = createFilter(8, 1, 16, 60000);
+
+        future = filter.handleRequest(createRequest(), next);
+        next.fail(next.getCallCount() - 1, new MobileServiceException("Timed out", new SocketTimeoutException()));
+        assertTrue(future.isDone());
+        assertEquals(4, filter.getLimit());
+    }
+
+    public void testBurstOfThrottledRequestsHalvesTheLimitOnce() throws Throwable {
+        AdaptiveConcurrencyServiceFilter filter = createFilter(4, 1, 16, 60000);
+        NextCallbackMock next = new NextCallbackMock();
+
+        runRound(filter, next, 4, 503);
+
+        assertEquals(2, filter.getLimit());
+    }
+
+    public void testSlowRequestsDecreaseTheLimit() throws Throwable {
+        AdaptiveConcurrencyServiceFilter filter = createFilter(4, 1, 16, 1);
+        NextCallbackMock next = new NextCallbackMock();
+
+        ListenableFuture<ServiceFilterResponse> future = filter.handleRequest(createRequest(), next);
+        Thread.sleep(20);
+        next.complete(0, 200);
+
+        assertEquals(200, future.get().getStatus().getStatusCode());
+        assertEquals(2, filter.getLimit());
+    }
+
+    public void testRequestsOverTheLimitWaitForAFreeSlot() throws Throwable {
+        AdaptiveConcurrencyServiceFilter filter = createFilter(1, 1, 1, 60000);
+        NextCallbackMock next = new NextCallbackMock();
+
+        ListenableFuture<ServiceFilterResponse> first = filter.handleRequest(createRequest(), next);
+        ListenableFuture<ServiceFilterResponse> second = filter.handleRequest(createRequest(), next);
+        ListenableFuture<ServiceFilterResponse> third = filter.handleRequest(createRequest(), next);
+
+        // handleRequest returned without sending the requests over the limit
+        assertEquals(1, next.getCallCount());
+        assertEquals(1, filter.getInFlight());
+        assertEquals(2, filter.getQueueLength());
+        assertFalse(second.isDone());
+        assertFalse(third.isDone());
+
+        next.complete(0, 200);
+
+        assertTrue(first.isDone());
+        assertEquals(2, next.getCallCount());
+        assertEquals(1, filter.getInFlight());
+        assertEquals(1, filter.getQueueLength());
+        assertFalse(second.isDone());
+
+        next.complete(1, 200);
+        next.complete(2, 200);
+
+        assertEquals(200, second.get().getStatus().getStatusCode());
+        assertEquals(200, third.get().getStatus().getStatusCode());
+        assertEquals(3, next.getCallCount());
+        assertEquals(0, filter.getInFlight());
+        assertEquals(0, filter.getQueueLength());
+    }
+
+    public void testCancelledQueuedRequestIsNotSent() throws Throwable {
+        AdaptiveConcurrencyServiceFilter filter = createFilter(1, 1, 1, 60000);
+        NextCallbackMock next = new NextCallbackMock();
+
+        filter.handleRequest(createRequest(), next);
+        ListenableFuture<ServiceFilterResponse> queued = filter.handleRequest(createRequest(), next);
+
+        queued.cancel(false);
+
+        assertEquals(0, filter.getQueueLength());
+
+        next.complete(0, 200);
+
+        assertEquals(1, next.getCallCount());
+        assertEquals(0, filter.getInFlight());
+    }
+
+    public void testQueuedInteractiveRequestsGoBeforeBackgroundOnes() throws Throwable {
+        AdaptiveConcurrencyServiceFilter filter = createFilter(1, 1, 1, 60000);
+        NextCallbackMock next = new NextCallbackMock();
+
+        filter.handleRequest(createRequest(RequestPriority.Interactive), next);
+
+        ServiceFilterRequest background = createRequest(RequestPriority.Background);
+        ServiceFilterRequest interactive = createRequest(RequestPriority.Interactive);
+
+        filter.handleRequest(background, next);
+        filter.handleRequest(interactive, next);
+
+        next.complete(0, 200);
+        assertSame(interactive, next.getRequest(1));
+
+        next.complete(1, 200);
+        assertSame(background, next.getRequest(2));
+    }
+
+    private static AdaptiveConcurrencyServiceFilter createFilter(int initialLimit, int minLimit, int maxLimit, long latencyThreshold) {
+        // Queued requests are sent on the thread completing the previous one,
+        // so that the tests control every step
+        return new AdaptiveConcurrencyServiceFilter(initialLimit, minLimit, maxLimit, latencyThreshold, MoreExecutors.directExecutor());
+    }
+
+    private static ServiceFilterRequest createRequest() {
+        return new ServiceFilterRequestMock(new ServiceFilterResponseMock());
+    }
+
+    private static ServiceFilterRequest createRequest(RequestPriority priority) {
+        PrioritizedRequestMock request = new PrioritizedRequestMock();
+        request.setPriority(priority);
+        return request;
+    }
+
+    /**
+     * Sends the given number of requests at the same time and completes them
+     * with the given status code
+     */
+    private static void runRound(AdaptiveConcurrencyServiceFilter filter, NextCallbackMock next, int count, int statusCode) {
+        int firstCall = next.getCallCount();
+        List<ListenableFuture<ServiceFilterResponse>> futures = new ArrayList<ListenableFuture<ServiceFilterResponse>>();
+
+        for (int i = 0; i < count; i++) {
+            futures.add(filter.handleRequest(createRequest(), next));
+        }
+
+        assertEquals(firstCall + count, next.getCallCount());
+
+        for (int i = 0; i < count; i++) {
+            next.complete(firstCall + i, statusCode);
+        }
+
+        for (ListenableFuture<ServiceFilterResponse> future : futures) {
+            assertTrue(future.isDone());
+        }
+    }
+
+    /**
+     * Next filter whose responses are completed by the test
+     */
+    private static class NextCallbackMock implements NextServiceFilterCallback {
+        private List<SettableFuture<ServiceFilterResponse>> mFutures = new ArrayList<SettableFuture<ServiceFilterResponse>>();
+        private List<ServiceFilterRequest> mRequests = new ArrayList<ServiceFilterRequest>();
+
+        @Override
+        public synchronized ListenableFuture<ServiceFilterResponse> onNext(ServiceFilterRequest request) {
+            SettableFuture<ServiceFilterResponse> future = SettableFuture.create();
+            mFutures.add(future);
+            mRequests.add(request);
+            return future;
+        }
+
+        synchronized ServiceFilterRequest getRequest(int call) {
+            return mRequests.get(call);
+        }
+
+        synchronized int getCallCount() {
+            return mFutures.size();
+        }
+
+        void complete(int call, int statusCode) {
+            ServiceFilterResponseMock response = new ServiceFilterResponseMock();
+            response.setStatus(new StatusLineMock(statusCode));
+
+            if (statusCode < 200 || statusCode >= 300) {
+                fail(call, new MobileServiceException(String.format("{'code': %d}", statusCode), response));
+            } else {
+                getFuture(call).set(response);
+            }
+        }
+
+        void fail(int call, Throwable exception) {
+            getFuture(call).setException(exception);
+        }
+
+        private synchronized SettableFuture<ServiceFilterResponse> getFuture(int call) {
+            return mFutures.get(call);
+        }
+    }
+
+    /**
+     * Request mock with a priority
+     */
+    private static class PrioritizedRequestMock extends ServiceFilterRequestMock implements PrioritizedServiceFilterRequest {
+        private RequestPriority mPriority = RequestPriority.Interactive;
+
+        PrioritizedRequestMock() {
+            super(new ServiceFilterResponseMock());
+        }
+
+        @Override
+        public RequestPriority getPriority() {
+            return mPriority;
+        }
+
+        @Override
+        public void setPriority(RequestPriority priority) {
+            mPriority = priority;
+        }
+    }
+}
@@ -0,0 +1,149 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+package com.microsoft.windowsazure.mobileservices.sdk.testapp.test;
+
+import android.test.InstrumentationTestCase;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.microsoft.windowsazure.mobileservices.MobileServiceClient;
+import com.microsoft.windowsazure.mobileservices.MobileServiceException;
+import com.microsoft.windowsazure.mobileservices.http.EndpointMetricsSnapshot;
+import com.microsoft.windowsazure.mobileservices.http.EndpointMetricsSnapshot.EndpointKind;
+import com.microsoft.windowsazure.mobileservices.http.MetricsServiceFilter;
+import com.microsoft.windowsazure.mobileservices.http.NextServiceFilterCallback;
+import com.microsoft.windowsazure.mobileservices.http.ServiceFilter;
+import com.microsoft.windowsazure.mobileservices.http.ServiceFilterRequest;
+import com.microsoft.windowsazure.mobileservices.http.ServiceFilterResponse;
+import com.microsoft.windowsazure.mobileservices.sdk.testapp.framework.filters.EchoFilter;
+import com.microsoft.windowsazure.mobileservices.sdk.testapp.framework.filters.ServiceFilterResponseMock;
+import com.microsoft.windowsazure.mobileservices.sdk.testapp.framework.filters.StatusLineMock;
+
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+public class MetricsServiceFilterTests extends InstrumentationTestCase {
+    String appUrl = "";
+    String appKey = "";
+
+    @Override
+    protected void setUp() throws Exception {
+        appUrl = "http://myapp.com/";
+        appKey = "qwerty";
+        super.setUp();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        super.tearDown();
+    }
+
+    public void testMetricsAreKeyedByTableApiAndMethod() throws Throwable {
+        MetricsServiceFilter metrics = new MetricsServiceFilter();
+
+        MobileServiceClient client = new MobileServiceClient(appUrl, appKey, getInstrumentation().getTargetContext());
+        client = client.withFilter(new EchoFilter()).withFilter(metrics);
+
+        JsonObject item = new JsonObject();
+        item.addProperty("id", "1");
+        item.addProperty("name", "John");
+
+        client.getTable("People").insert(item).get();
+        client.getTable("People").insert(item).get();
+        client.invokeApi("myApi", item).get();
+
+        List<EndpointMetricsSnapshot> snapshot = metrics.getSnapshot();
+
+        assertEquals(2, snapshot.size());
+
+        EndpointMetricsSnapshot tableMetrics = find(snapshot, EndpointKind.Table, "People", "POST");
+        assertNotNull(tableMetrics);
+        assertEquals(2, tableMetrics.getRequestCount());
+        assertEquals(0, tableMetrics.getFailureCount());
+        assertEquals(0, tableMetrics.getInFlight());
+        assertTrue(tableMetrics.getRequestBytes() > 0);
+        assertEquals(tableMetrics.getRequestBytes(), tableMetrics.getResponseBytes());
+        assertEquals(Long.valueOf(2), tableMetrics.getStatusCodeCounts().get(200));
+
+        long bucketTotal = 0;
+
+        for (long count : tableMetrics.getLatencyBuckets()) {
+            bucketTotal += count;
+        }
+
+        assertEquals(2, bucketTotal);
+        assertEquals(EndpointMetricsSnapshot.getLatencyBucketBounds().length + 1, tableMetrics.getLatencyBuckets().length);
+
+        EndpointMetricsSnapshot apiMetrics = find(snapshot, EndpointKind.Api, "myApi", "POST");
+        assertNotNull(apiMetrics);
+        assertEquals(1, apiMetrics.getRequestCount());
+    }
+
+    public void testMetricsRecordErrorStatusCodes() throws Throwable {
+        MetricsServiceFilter metrics = new MetricsServiceFilter();
+
+        MobileServiceClient client = new MobileServiceClient(appUrl, appKey, getInstrumentation().getTargetContext());
+        client = client.withFilter(new ServiceFilter() {
+            @Override
+            public ListenableFuture<ServiceFilterResponse> handleRequest(ServiceFilterRequest request, NextServiceFilterCallback nextServiceFilterCallback) {
+                ServiceFilterResponseMock response = new ServiceFilterResponseMock();
+                response.setStatus(new StatusLineMock(404));
+                response.setContent("{\"error\":\"not found\"}");
+
+                SettableFuture<ServiceFilterResponse> resultFuture = SettableFuture.create();
+                resultFuture.setException(new MobileServiceException("not found", response));
+
+                return resultFuture;
+            }
+        }).withFilter(metrics);
+
+        try {
+            client.getTable("People").lookUp("1").get();
+            fail("Expected an exception");
+        } catch (ExecutionException e) {
+            // expected
+        }
+
+        EndpointMetricsSnapshot tableMetrics = find(metrics.getSnapshot(), EndpointKind.Table, "People", "GET");
+        assertNotNull(tableMetrics);
+        assertEquals(1, tableMetrics.getRequestCount());
+        assertEquals(Long.valueOf(1), tableMetrics.getStatusCodeCounts().get(404));
+
+        JsonArray export = metrics.exportSnapshot();
+        assertEquals(1, export.size());
+        assertEquals("People", export.get(0).getAsJsonObject().get("name").getAsString());
+        assertEquals(1, export.get(0).getAsJsonObject().get("statusCodes").getAsJsonObject().get("404").getAsInt());
+
+        metrics.reset();
+        assertEquals(0, metrics.getSnapshot().size());
+    }
+
+    private static EndpointMetricsSnapshot find(List<EndpointMetricsSnapshot> snapshot, EndpointKind kind, String name, String method) {
+        for (EndpointMetricsSnapshot endpoint : snapshot) {
+            if (endpoint.getKind() == kind && name.equals(endpoint.getName()) && method.equals(endpoint.getMethod())) {
+                return endpoint;
+            }
+        }
+
+        return null;
+    }
+}
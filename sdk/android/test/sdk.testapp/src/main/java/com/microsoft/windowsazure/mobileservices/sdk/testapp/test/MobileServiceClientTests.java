@@ -19,20 +19,28 @@ See the Apache Version 2.0 License for specific language governing permissions a
  */
 package com.microsoft.windowsazure.mobileservices.sdk.testapp.test;
 
+import android.content.Context;
+import android.content.ContextWrapper;
+import android.content.SharedPreferences;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteDatabase.CursorFactory;
 import android.os.Build;
 import android.test.InstrumentationTestCase;
 import android.util.Pair;
 
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.SettableFuture;
+import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.microsoft.windowsazure.mobileservices.MobileServiceClient;
 import com.microsoft.windowsazure.mobileservices.authentication.MobileServiceAuthenticationProvider;
 import com.microsoft.windowsazure.mobileservices.authentication.MobileServiceUser;
 import com.microsoft.windowsazure.mobileservices.http.NextServiceFilterCallback;
+import com.microsoft.windowsazure.mobileservices.http.OkHttpTransport;
 import com.microsoft.windowsazure.mobileservices.http.ServiceFilter;
 import com.microsoft.windowsazure.mobileservices.http.ServiceFilterRequest;
 import com.microsoft.windowsazure.mobileservices.http.ServiceFilterResponse;
+import com.microsoft.windowsazure.mobileservices.notifications.MobileServicePush;
 import com.microsoft.windowsazure.mobileservices.sdk.testapp.framework.filters.ServiceFilterRequestMock;
 import com.microsoft.windowsazure.mobileservices.sdk.testapp.framework.filters.ServiceFilterResponseMock;
 import com.microsoft.windowsazure.mobileservices.sdk.testapp.framework.filters.StatusLineMock;
@@ -43,15 +51,40 @@ import com.microsoft.windowsazure.mobileservices.sdk.testapp.test.types.PersonTe
 import com.microsoft.windowsazure.mobileservices.sdk.testapp.test.types.PersonTestObjectWithoutId;
 import com.microsoft.windowsazure.mobileservices.table.MobileServiceJsonTable;
 import com.microsoft.windowsazure.mobileservices.table.MobileServiceTable;
+import com.squareup.okhttp.Connection;
+import com.squareup.okhttp.Interceptor;
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.Protocol;
+import com.squareup.okhttp.Response;
+import com.squareup.okhttp.internal.SslContextBuilder;
+import com.squareup.okhttp.mockwebserver.Dispatcher;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.RecordedRequest;
 
 import org.apache.http.Header;
+import org.apache.http.ProtocolVersion;
+import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.protocol.HTTP;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.net.MalformedURLException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSession;
 
 public class MobileServiceClientTests extends InstrumentationTestCase {
     String appUrl = "";
@@ -73,6 +106,29 @@ public class MobileServiceClientTests extends InstrumentationTestCase {
         assertEquals(appKey, client.getAppKey());
     }
 
+    public void testNewMobileServiceClientShouldNotAccessStorageUntilSubsystemsAreUsed() throws MalformedURLException {
+        StorageRecordingContext context = new StorageRecordingContext(getInstrumentation().getTargetContext());
+
+        MobileServiceClient client = new MobileServiceClient(appUrl, appKey, context);
+        MobileServiceClient filteredClient = client.withFilter(new ServiceFilter() {
+            @Override
+            public ListenableFuture<ServiceFilterResponse> handleRequest(ServiceFilterRequest request, NextServiceFilterCallback nextServiceFilterCallback) {
+                return nextServiceFilterCallback.onNext(request);
+            }
+        });
+
+        client.getTable("dummy");
+        filteredClient.getSyncContext();
+
+        assertTrue(context.getAccesses().isEmpty());
+
+        MobileServicePush push = client.getPush();
+
+        assertSame(push, client.getPush());
+        assertTrue(context.getAccesses().contains("getSharedPreferences"));
+        assertSame(filteredClient.getSyncContext(), filteredClient.getSyncContext());
+    }
+
     public void testNewMobileServiceClientWithEmptyAppUrlShouldThrowException() {
         try {
             new MobileServiceClient("", appKey, getInstrumentation().getTargetContext());
@@ -804,6 +860,159 @@ public class MobileServiceClientTests extends InstrumentationTestCase {
 
     }
 
+    public void testOkHttpTransportShouldMultiplexConcurrentRequestsOverOneHttp2Connection() throws Throwable {
+        // HTTP/2 is negotiated with ALPN, available from Android 5.0 (API 21)
+        if (Build.VERSION.SDK_INT < 21) {
+            return;
+        }
+
+        final CountDownLatch secondRequestReceived = new CountDownLatch(1);
+        final SettableFuture<Boolean> firstResponseHeld = SettableFuture.create();
+
+        MockWebServer server = new MockWebServer();
+        SSLContext sslContext = SslContextBuilder.localhost();
+        server.useHttps(sslContext.getSocketFactory(), false);
+        server.setProtocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1));
+
+        // The first response is held until the second request is received,
+        // so both requests are in flight together
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                if (request.getPath().contains("firstApi")) {
+                    firstResponseHeld.set(secondRequestReceived.await(5, TimeUnit.SECONDS));
+                } else if (request.getPath().contains("secondApi")) {
+                    secondRequestReceived.countDown();
+                }
+
+                return new MockResponse().setBody("{\"id\":1}");
+            }
+        });
+        server.start();
+
+        try {
+            final List<Protocol> protocols = Collections.synchronizedList(new ArrayList<Protocol>());
+            final List<Connection> connections = Collections.synchronizedList(new ArrayList<Connection>());
+
+            OkHttpClient okHttpClient = new OkHttpClient();
+            okHttpClient.setSslSocketFactory(sslContext.getSocketFactory());
+            okHttpClient.setHostnameVerifier(new HostnameVerifier() {
+                @Override
+                public boolean verify(String hostname, SSLSession session) {
+                    return true;
+                }
+            });
+            okHttpClient.networkInterceptors().add(new Interceptor() {
+                @Override
+                public Response intercept(Chain chain) throws IOException {
+                    connections.add(chain.connection());
+
+                    Response response = chain.proceed(chain.request());
+                    protocols.add(response.protocol());
+
+                    return response;
+                }
+            });
+
+            MobileServiceClient client = new MobileServiceClient(server.getUrl("/").toString(), appKey, getInstrumentation().getTargetContext());
+            client.setHttpTransport(new OkHttpTransport(okHttpClient));
+
+            List<Pair<String, String>> headers = new ArrayList<Pair<String, String>>();
+            List<Pair<String, String>> parameters = new ArrayList<Pair<String, String>>();
+
+            // Opens the connection, so that the concurrent requests don't
+            // race to open one each
+            client.invokeApi("warmUpApi", null, HttpGet.METHOD_NAME, headers, parameters).get(10, TimeUnit.SECONDS);
+
+            // The APIs differ, so that the requests are not coalesced
+            ListenableFuture<ServiceFilterResponse> first = client.invokeApi("firstApi", null, HttpGet.METHOD_NAME, headers, parameters);
+            ListenableFuture<ServiceFilterResponse> second = client.invokeApi("secondApi", null, HttpGet.METHOD_NAME, headers, parameters);
+
+            assertEquals(new ProtocolVersion("HTTP", 2, 0), first.get(10, TimeUnit.SECONDS).getStatus().getProtocolVersion());
+            assertEquals(new ProtocolVersion("HTTP", 2, 0), second.get(10, TimeUnit.SECONDS).getStatus().getProtocolVersion());
+
+            assertTrue(firstResponseHeld.get(10, TimeUnit.SECONDS));
+
+            assertEquals(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_2, Protocol.HTTP_2), protocols);
+            assertEquals(3, connections.size());
+            assertSame(connections.get(0), connections.get(1));
+            assertSame(connections.get(0), connections.get(2));
+
+            // Requests sent over the same connection are numbered in order
+            List<Integer> sequenceNumbers = new ArrayList<Integer>();
+            for (int i = 0; i < 3; i++) {
+                sequenceNumbers.add(server.takeRequest().getSequenceNumber());
+            }
+            Collections.sort(sequenceNumbers);
+
+            assertEquals(Arrays.asList(0, 1, 2), sequenceNumbers);
+        } finally {
+            server.shutdown();
+        }
+    }
+
+    /**
+     * Context recording the calls that access the storage
+     */
+    static class StorageRecordingContext extends ContextWrapper {
+        private List<String> mAccesses = Collections.synchronizedList(new ArrayList<String>());
+
+        StorageRecordingContext(Context base) {
+            super(base);
+        }
+
+        List<String> getAccesses() {
+            return mAccesses;
+        }
+
+        @Override
+        public Context getApplicationContext() {
+            return this;
+        }
+
+        @Override
+        public SharedPreferences getSharedPreferences(String name, int mode) {
+            mAccesses.add("getSharedPreferences");
+            return super.getSharedPreferences(name, mode);
+        }
+
+        @Override
+        public SQLiteDatabase openOrCreateDatabase(String name, int mode, CursorFactory factory) {
+            mAccesses.add("openOrCreateDatabase");
+            return super.openOrCreateDatabase(name, mode, factory);
+        }
+
+        @Override
+        public File getDatabasePath(String name) {
+            mAccesses.add("getDatabasePath");
+            return super.getDatabasePath(name);
+        }
+
+        @Override
+        public FileInputStream openFileInput(String name) throws FileNotFoundException {
+            mAccesses.add("openFileInput");
+            return super.openFileInput(name);
+        }
+
+        @Override
+        public FileOutputStream openFileOutput(String name, int mode) throws FileNotFoundException {
+            mAccesses.add("openFileOutput");
+            return super.openFileOutput(name, mode);
+        }
+
+        @Override
+        public File getFilesDir() {
+            mAccesses.add("getFilesDir");
+            return super.getFilesDir();
+        }
+
+        @Override
+        public File getCacheDir() {
+            mAccesses.add("getCacheDir");
+            return super.getCacheDir();
+        }
+    }
+
     abstract class MyAbstractClass {
         int id;
         String name;
@@ -19,16 +19,23 @@ See the Apache Version 2.0 License for specific language governing permissions a
  */
 package com.microsoft.windowsazure.mobileservices.sdk.testapp.test;
 
+import android.content.Context;
 import android.test.InstrumentationTestCase;
 
 import com.google.common.base.Function;
+import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
 import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
 import com.microsoft.windowsazure.mobileservices.MobileServiceClient;
 import com.microsoft.windowsazure.mobileservices.MobileServiceException;
 import com.microsoft.windowsazure.mobileservices.http.NextServiceFilterCallback;
+import com.microsoft.windowsazure.mobileservices.http.RequestPriority;
+import com.microsoft.windowsazure.mobileservices.http.RequestScheduler;
 import com.microsoft.windowsazure.mobileservices.http.ServiceFilter;
 import com.microsoft.windowsazure.mobileservices.http.ServiceFilterRequest;
 import com.microsoft.windowsazure.mobileservices.http.ServiceFilterResponse;
@@ -37,17 +44,29 @@ import com.microsoft.windowsazure.mobileservices.sdk.testapp.framework.filters.S
 import com.microsoft.windowsazure.mobileservices.sdk.testapp.framework.filters.StatusLineMock;
 import com.microsoft.windowsazure.mobileservices.sdk.testapp.framework.mocks.MobileServiceLocalStoreMock;
 import com.microsoft.windowsazure.mobileservices.sdk.testapp.framework.mocks.MobileServiceSyncHandlerMock;
+import com.microsoft.windowsazure.mobileservices.sdk.testapp.framework.mocks.TransactionalLocalStoreMock;
 import com.microsoft.windowsazure.mobileservices.sdk.testapp.test.helpers.EncodingUtilities;
+import com.microsoft.windowsazure.mobileservices.sdk.testapp.test.helpers.SQLiteStoreTestsUtilities;
 import com.microsoft.windowsazure.mobileservices.sdk.testapp.test.types.CustomFunctionTwoParameters;
 import com.microsoft.windowsazure.mobileservices.sdk.testapp.test.types.IdPropertyTestClasses.StringIdType;
 import com.microsoft.windowsazure.mobileservices.table.MobileServiceExceptionBase;
 import com.microsoft.windowsazure.mobileservices.table.query.Query;
+import com.microsoft.windowsazure.mobileservices.table.query.QueryODataWriter;
 import com.microsoft.windowsazure.mobileservices.table.query.QueryOperations;
 import com.microsoft.windowsazure.mobileservices.table.query.QueryOrder;
 import com.microsoft.windowsazure.mobileservices.table.sync.MobileServiceJsonSyncTable;
 import com.microsoft.windowsazure.mobileservices.table.sync.MobileServiceSyncTable;
+import com.microsoft.windowsazure.mobileservices.table.sync.events.PullPageEvent;
+import com.microsoft.windowsazure.mobileservices.table.sync.events.SimpleSyncEventListener;
+import com.microsoft.windowsazure.mobileservices.table.sync.events.SyncLockKind;
+import com.microsoft.windowsazure.mobileservices.table.sync.localstore.ColumnDataType;
+import com.microsoft.windowsazure.mobileservices.table.sync.localstore.MobileServiceLocalStoreException;
+import com.microsoft.windowsazure.mobileservices.table.sync.localstore.SQLiteLocalStore;
+import com.microsoft.windowsazure.mobileservices.table.sync.operations.TableOperation;
 import com.microsoft.windowsazure.mobileservices.table.sync.operations.TableOperationError;
 import com.microsoft.windowsazure.mobileservices.table.sync.operations.TableOperationKind;
+import com.microsoft.windowsazure.mobileservices.table.sync.pull.IncrementalPullStrategy;
+import com.microsoft.windowsazure.mobileservices.table.sync.pull.PullPartitioning;
 import com.microsoft.windowsazure.mobileservices.table.sync.push.MobileServicePushFailedException;
 import com.microsoft.windowsazure.mobileservices.table.sync.push.MobileServicePushStatus;
 import com.microsoft.windowsazure.mobileservices.table.sync.queue.OperationErrorList;
@@ -56,15 +75,24 @@ import com.microsoft.windowsazure.mobileservices.table.sync.synchandler.SimpleSy
 import org.apache.http.Header;
 
 import java.io.IOException;
+import java.io.UnsupportedEncodingException;
 import java.net.MalformedURLException;
+import java.net.URLDecoder;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.TimeZone;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class MobileServiceSyncTableTests extends InstrumentationTestCase {
     String appUrl = "";
@@ -72,6 +100,7 @@ public class MobileServiceSyncTableTests extends InstrumentationTestCase {
     GsonBuilder gsonBuilder;
     String OperationQueue = "__operations";
     String SyncErrors = "__errors";
+    String BulkTestDbName = "bulkTest.db";
 
     protected void setUp() throws Exception {
         appUrl = "http://myapp.com/";
@@ -313,6 +342,61 @@ public class MobileServiceSyncTableTests extends InstrumentationTestCase {
         // populated
     }
 
+    public void testPullPushesOnlyTheOperationsOfThePulledTable() throws Throwable {
+        MobileServiceLocalStoreMock store = new MobileServiceLocalStoreMock();
+        ServiceFilterContainer serviceFilterContainer = new ServiceFilterContainer();
+
+        MobileServiceClient client = new MobileServiceClient(appUrl, appKey, getInstrumentation().getTargetContext());
+
+        client = client.withFilter(getTestFilter(serviceFilterContainer, false, "{\"id\":\"abc\",\"String\":\"Hey\"}", // for
+                // insert
+                "[{\"id\":\"abc\",\"String\":\"Hey\"},{\"id\":\"def\",\"String\":\"World\"}]", // remote
+                // item
+                "[]", // last page
+                "{\"id\":\"an id\",\"String\":\"what?\"}" // for
+                // the insert pushed last
+        ));
+
+        client.getSyncContext().initialize(store, new SimpleSyncHandler()).get();
+
+        // insert an item in another table first
+        MobileServiceSyncTable<StringIdType> table2 = client.getSyncTable(StringIdType.class);
+
+        StringIdType item = new StringIdType();
+
+        item.Id = "an id";
+        item.String = "what?";
+
+        table2.insert(item).get();
+
+        // then insert an item in the pulled table
+        MobileServiceJsonSyncTable table1 = client.getSyncTable("someTable");
+
+        JsonObject jsonObject = new JsonObject();
+        jsonObject.addProperty("id", "abc");
+
+        table1.insert(jsonObject).get();
+
+        assertEquals(2, client.getSyncContext().getPendingOperations());
+
+        // this should push the operation of the pulled table only
+        table1.pull(null).get();
+
+        assertEquals("POST", serviceFilterContainer.Requests.get(0).Method);
+        assertTrue(serviceFilterContainer.Requests.get(0).Url.contains("tables/sometable"));
+
+        for (ServiceFilterRequestData request : serviceFilterContainer.Requests) {
+            assertFalse(request.Url.contains("tables/stringidtype"));
+        }
+
+        // the operation of the other table is still pending
+        assertEquals(1, client.getSyncContext().getPendingOperations());
+
+        client.getSyncContext().push().get();
+
+        assertEquals(0, client.getSyncContext().getPendingOperations());
+    }
+
     // REVISAR EL TEMA DE LOS HANDLERS Y LAS EXCEPCIONES
     // public void testPullThrowsWhenPushThrows()
     // throws MalformedURLException, InterruptedException,
@@ -489,14 +573,15 @@ public class MobileServiceSyncTableTests extends InstrumentationTestCase {
                 serviceFilterContainer.Requests.get(0).Url,
                 EncodingUtilities
                         .percentEncodeSpaces(
-                                "http://myapp.com/tables/stringidtype?$filter=String%20eq%20('noMatch')&$top=50&$orderby=__updatedAt%20asc&__includeDeleted=true&__systemproperties=__updatedAt,__version,__deleted"));
+                                "http://myapp.com/tables/stringidtype?$filter=String%20eq%20('noMatch')&$top=50&$orderby=__updatedAt%20asc,id%20asc&__includeDeleted=true&__systemproperties=__updatedAt,__version,__deleted"));
 
         assertEquals(
                 serviceFilterContainer.Requests.get(1).Url,
                 EncodingUtilities
                         .percentEncodeSpaces(
                                 "http://myapp.com/tables/stringidtype?$filter=String%20eq%20('noMatch')%20and%20" +
-                                        "(__updatedAt%20ge%20(datetimeoffset'"+updatedAt1 +"'))&$top=50&$orderby=__updatedAt%20asc&__includeDeleted=true&__systemproperties=__updatedAt,__version,__deleted"));
+                                        "((__updatedAt%20gt%20(datetimeoffset'" + updatedAt1 + "')%20or%20((__updatedAt%20eq%20(datetimeoffset'" + updatedAt1 + "')%20and%20(id%20gt%20('def'))))))" +
+                                        "&$top=50&$orderby=__updatedAt%20asc,id%20asc&__includeDeleted=true&__systemproperties=__updatedAt,__version,__deleted"));
     }
 
     public void testIncrementalPullSaveLastUpdatedAtDate() throws MalformedURLException, InterruptedException, ExecutionException, MobileServiceException {
@@ -536,7 +621,400 @@ public class MobileServiceSyncTableTests extends InstrumentationTestCase {
         String stringMaxUpdatedDate = result.getAsJsonObject()
                 .get("maxupdateddate").getAsString();
 
+        String stringMaxUpdatedId = result.getAsJsonObject()
+                .get("maxupdatedid").getAsString();
+
         assertEquals(updatedAt2, stringMaxUpdatedDate);
+        assertEquals("def", stringMaxUpdatedId);
+    }
+
+    public void testIncrementalPullCommitsEachPageInOneTransaction() throws Throwable {
+
+        TransactionalLocalStoreMock store = new TransactionalLocalStoreMock();
+        ServiceFilterContainer serviceFilterContainer = new ServiceFilterContainer();
+        String queryKey = "QueryKey";
+
+        MobileServiceClient client = new MobileServiceClient(appUrl, appKey, getInstrumentation().getTargetContext());
+
+        SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
+        sdf.setTimeZone(TimeZone.getTimeZone("UTC"));
+
+        String updatedAt = sdf.format(new Date());
+
+        client = client.withFilter(getTestFilter(serviceFilterContainer, false,
+                "[{\"id\":\"abc\",\"String\":\"Hey\",\"__updatedAt\":\"" + updatedAt + "\"}," +
+                        "{\"id\":\"def\",\"String\":\"World\",\"__updatedAt\":\"" + updatedAt + "\"}]"
+        ));
+
+        client.getSyncContext().initialize(store, new SimpleSyncHandler()).get();
+
+        MobileServiceSyncTable<StringIdType> table = client.getSyncTable(StringIdType.class);
+
+        Query query = QueryOperations.tableName(table.getName());
+
+        table.pull(query, queryKey).get();
+
+        // One page with items and one empty page, which writes nothing
+        assertEquals(2, serviceFilterContainer.Requests.size());
+        assertEquals(1, store.Transactions);
+
+        assertEquals(2, store.Tables.get(table.getName().toLowerCase(Locale.getDefault())).size());
+        assertNotNull(store.Tables.get("__incrementalPullData").get(table.getName() + "_" + queryKey));
+    }
+
+    public void testIncrementalPullRollsBackThePageWhenItsWatermarkFails() throws Throwable {
+        Context context = getInstrumentation().getTargetContext();
+        context.deleteDatabase(BulkTestDbName);
+
+        FailingSQLiteLocalStore store = new FailingSQLiteLocalStore(context, BulkTestDbName);
+
+        Map<String, ColumnDataType> tableDefinition = new HashMap<String, ColumnDataType>();
+        tableDefinition.put("id", ColumnDataType.String);
+        tableDefinition.put("String", ColumnDataType.String);
+        tableDefinition.put("__updatedAt", ColumnDataType.DateTimeOffset);
+
+        store.defineTable("stringidtype", tableDefinition);
+
+        ServiceFilterContainer serviceFilterContainer = new ServiceFilterContainer();
+        String queryKey = "QueryKey";
+
+        MobileServiceClient client = new MobileServiceClient(appUrl, appKey, context);
+
+        SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
+        sdf.setTimeZone(TimeZone.getTimeZone("UTC"));
+
+        String updatedAt = sdf.format(new Date());
+        String page = "[{\"id\":\"abc\",\"String\":\"Hey\",\"__updatedAt\":\"" + updatedAt + "\"}," +
+                "{\"id\":\"def\",\"String\":\"World\",\"__updatedAt\":\"" + updatedAt + "\"}]";
+
+        client = client.withFilter(getTestFilter(serviceFilterContainer, false, page, page));
+
+        client.getSyncContext().initialize(store, new SimpleSyncHandler()).get();
+
+        MobileServiceSyncTable<StringIdType> table = client.getSyncTable(StringIdType.class);
+
+        Query query = QueryOperations.tableName(table.getName());
+
+        store.fail("__incrementalPullData", 1);
+
+        try {
+            table.pull(query, queryKey).get();
+            fail("Expected Exception");
+        } catch (ExecutionException ex) {
+            // expected
+        }
+
+        // the items of the page are rolled back with its watermark
+        assertEquals(0L, SQLiteStoreTestsUtilities.countRows(context, BulkTestDbName, "stringidtype"));
+        assertEquals(0L, SQLiteStoreTestsUtilities.countRows(context, BulkTestDbName, "__incrementalPullData"));
+
+        store.fail(null, 0);
+
+        table.pull(query, queryKey).get();
+
+        assertEquals(2L, SQLiteStoreTestsUtilities.countRows(context, BulkTestDbName, "stringidtype"));
+        assertEquals(1L, SQLiteStoreTestsUtilities.countRows(context, BulkTestDbName, "__incrementalPullData"));
+    }
+
+    public void testCancelledPullStopsBeforeTheNextPage() throws Throwable {
+
+        MobileServiceLocalStoreMock store = new MobileServiceLocalStoreMock();
+        final ServiceFilterContainer serviceFilterContainer = new ServiceFilterContainer();
+        final SettableFuture<ListenableFuture<Void>> cancelledPull = SettableFuture.create();
+
+        MobileServiceClient client = new MobileServiceClient(appUrl, appKey, getInstrumentation().getTargetContext());
+
+        client = client.withFilter(getTestFilter(serviceFilterContainer, new Function<ServiceFilterRequest, Void>() {
+            @Override
+            public Void apply(ServiceFilterRequest request) {
+                // The first pull is cancelled while its first page is requested
+                if (serviceFilterContainer.Requests.size() == 1) {
+                    Futures.getUnchecked(cancelledPull).cancel(true);
+                }
+
+                return null;
+            }
+        }, "[{\"id\":\"abc\",\"String\":\"Hey\"}]", "[{\"id\":\"def\",\"String\":\"World\"}]", "[]"));
+
+        client.getSyncContext().initialize(store, new SimpleSyncHandler()).get();
+
+        MobileServiceSyncTable<StringIdType> table = client.getSyncTable(StringIdType.class);
+
+        Query query = QueryOperations.tableName(table.getName());
+
+        cancelledPull.set(table.pull(query));
+
+        try {
+            cancelledPull.get().get();
+            fail("Expected Exception CancellationException");
+        } catch (CancellationException e) {
+            // expected
+        }
+
+        // Pulls of a table are serialized, so this pull starts once the
+        // cancelled one has stopped
+        table.pull(query).get();
+
+        // The cancelled pull requested only its first page
+        assertEquals(3, serviceFilterContainer.Requests.size());
+
+        LinkedHashMap<String, JsonObject> items = store.Tables.get(table.getName().toLowerCase(Locale.getDefault()));
+
+        assertEquals(1, items.size());
+        assertTrue(items.containsKey("def"));
+    }
+
+    public void testIncrementalPullUsesUpdatedAtAndIdAsWatermark() throws MalformedURLException, InterruptedException, ExecutionException, MobileServiceException {
+
+        MobileServiceLocalStoreMock store = new MobileServiceLocalStoreMock();
+        ServiceFilterContainer serviceFilterContainer = new ServiceFilterContainer();
+        String queryKey = "QueryKey";
+
+        MobileServiceClient client = new MobileServiceClient(appUrl, appKey, getInstrumentation().getTargetContext());
+
+        SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
+        sdf.setTimeZone(TimeZone.getTimeZone("UTC"));
+
+        String updatedAt = sdf.format(new Date());
+
+        client = client.withFilter(getTestFilter(serviceFilterContainer, false,
+                "[{\"id\":\"abc\",\"String\":\"Hey\",\"__updatedAt\":\"" + updatedAt + "\"}," +
+                        "{\"id\":\"def\",\"String\":\"Hey\",\"__updatedAt\":\"" + updatedAt + "\"}]",
+                "[{\"id\":\"ghi\",\"String\":\"Hey\",\"__updatedAt\":\"" + updatedAt + "\"}]",
+                "[]"
+        ));
+
+        client.getSyncContext().initialize(store, new SimpleSyncHandler()).get();
+
+        MobileServiceSyncTable<StringIdType> table = client.getSyncTable(StringIdType.class);
+
+        Query query = QueryOperations.field("String").eq("Hey");
+
+        table.pull(query, queryKey).get();
+
+        assertEquals(3, serviceFilterContainer.Requests.size());
+
+        // Items sharing the __updatedAt are paged by id, without skip
+        assertEquals(
+                serviceFilterContainer.Requests.get(1).Url,
+                EncodingUtilities
+                        .percentEncodeSpaces("http://myapp.com/tables/stringidtype?$filter=String%20eq%20('Hey')%20and%20" +
+                                "((__updatedAt%20gt%20(datetimeoffset'" + updatedAt + "')%20or%20((__updatedAt%20eq%20(datetimeoffset'" + updatedAt + "')%20and%20(id%20gt%20('def'))))))" +
+                                "&$top=50&$orderby=__updatedAt%20asc,id%20asc&__includeDeleted=true&__systemproperties=__updatedAt,__version,__deleted"));
+
+        assertEquals(
+                serviceFilterContainer.Requests.get(2).Url,
+                EncodingUtilities
+                        .percentEncodeSpaces("http://myapp.com/tables/stringidtype?$filter=String%20eq%20('Hey')%20and%20" +
+                                "((__updatedAt%20gt%20(datetimeoffset'" + updatedAt + "')%20or%20((__updatedAt%20eq%20(datetimeoffset'" + updatedAt + "')%20and%20(id%20gt%20('ghi'))))))" +
+                                "&$top=50&$orderby=__updatedAt%20asc,id%20asc&__includeDeleted=true&__systemproperties=__updatedAt,__version,__deleted"));
+    }
+
+    public void testPartitionedPullSendsOneQueryPerPartition() throws Throwable {
+
+        MobileServiceLocalStoreMock store = new MobileServiceLocalStoreMock();
+
+        MobileServiceClient client = new MobileServiceClient(appUrl, appKey, getInstrumentation().getTargetContext());
+
+        final List<String> urls = new ArrayList<String>();
+
+        client = client.withFilter(new ServiceFilter() {
+            @Override
+            public ListenableFuture<ServiceFilterResponse> handleRequest(ServiceFilterRequest request, NextServiceFilterCallback next) {
+                synchronized (urls) {
+                    urls.add(request.getUrl());
+                }
+
+                ServiceFilterResponseMock response = new ServiceFilterResponseMock();
+                response.setStatus(new StatusLineMock(200));
+                response.setContent("[]");
+
+                return next.onNext(new ServiceFilterRequestMock(response));
+            }
+        });
+
+        client.getSyncContext().initialize(store, new SimpleSyncHandler()).get();
+
+        MobileServiceSyncTable<StringIdType> table = client.getSyncTable(StringIdType.class);
+
+        Query query = QueryOperations.field("String").eq("Hey");
+
+        table.pull(query, null, PullPartitioning.byId("4", "8")).get();
+
+        assertEquals(3, urls.size());
+
+        String prefix = "http://myapp.com/tables/stringidtype?$filter=String%20eq%20('Hey')%20and%20";
+
+        assertTrue(urls.contains(EncodingUtilities.percentEncodeSpaces(prefix +
+                "((id%20lt%20('4')))&$top=50&$skip=0&$orderby=id%20asc&__includeDeleted=true&__systemproperties=__version,__deleted")));
+        assertTrue(urls.contains(EncodingUtilities.percentEncodeSpaces(prefix +
+                "((id%20ge%20('4')%20and%20(id%20lt%20('8'))))&$top=50&$skip=0&$orderby=id%20asc&__includeDeleted=true&__systemproperties=__version,__deleted")));
+        assertTrue(urls.contains(EncodingUtilities.percentEncodeSpaces(prefix +
+                "((id%20ge%20('8')))&$top=50&$skip=0&$orderby=id%20asc&__includeDeleted=true&__systemproperties=__version,__deleted")));
+    }
+
+    public void testPartitionedIncrementalPullKeepsAWatermarkPerPartitionAndResumes() throws Throwable {
+
+        // the partitions write to the store concurrently
+        final MobileServiceLocalStoreMock store = new SynchronizedLocalStoreMock();
+        store.readAsyncFunc = readWatermarks(store);
+
+        String queryKey = "QueryKey";
+        String incrementalPullStrategyTable = "__incrementalPullData";
+
+        MobileServiceClient client = new MobileServiceClient(appUrl, appKey, getInstrumentation().getTargetContext());
+
+        SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
+        sdf.setTimeZone(TimeZone.getTimeZone("UTC"));
+
+        final String updatedAt1 = sdf.format(new Date(1400000000000L));
+        final String updatedAt2 = sdf.format(new Date(1400000001000L));
+        final String updatedAt3 = sdf.format(new Date(1400000002000L));
+
+        final List<String> urls = new ArrayList<String>();
+        final AtomicBoolean failLastPartition = new AtomicBoolean(true);
+
+        client = client.withFilter(new ServiceFilter() {
+            @Override
+            public ListenableFuture<ServiceFilterResponse> handleRequest(ServiceFilterRequest request, NextServiceFilterCallback next) {
+                String url = request.getUrl();
+
+                synchronized (urls) {
+                    urls.add(url);
+                }
+
+                ServiceFilterResponseMock response = new ServiceFilterResponseMock();
+                response.setStatus(new StatusLineMock(200));
+
+                if (url.contains("id%20ge%20('8')") && failLastPartition.get()) {
+                    response.setStatus(new StatusLineMock(500));
+                    response.setContent("{\"error\":\"partition failed\"}");
+                } else if (url.contains("__updatedAt%20gt")) {
+                    // every partition has a single page
+                    response.setContent("[]");
+                } else if (url.contains("id%20lt%20('4')")) {
+                    response.setContent("[{\"id\":\"1a\",\"String\":\"Hey\",\"__updatedAt\":\"" + updatedAt2 + "\"}," +
+                            "{\"id\":\"2b\",\"String\":\"Hey\",\"__updatedAt\":\"" + updatedAt2 + "\"}]");
+                } else if (url.contains("id%20ge%20('8')")) {
+                    response.setContent("[{\"id\":\"9a\",\"String\":\"Hey\",\"__updatedAt\":\"" + updatedAt3 + "\"}]");
+                } else {
+                    response.setContent("[{\"id\":\"5a\",\"String\":\"Hey\",\"__updatedAt\":\"" + updatedAt1 + "\"}]");
+                }
+
+                return next.onNext(new ServiceFilterRequestMock(response));
+            }
+        });
+
+        client.getSyncContext().initialize(store, new SimpleSyncHandler()).get();
+
+        MobileServiceSyncTable<StringIdType> table = client.getSyncTable(StringIdType.class);
+
+        Query query = QueryOperations.tableName(table.getName()).field("String").eq("Hey");
+        PullPartitioning partitioning = PullPartitioning.byId("4", "8");
+
+        try {
+            table.pull(query, queryKey, partitioning).get();
+            fail("Expected Exception");
+        } catch (ExecutionException ex) {
+            // expected
+        }
+
+        LinkedHashMap<String, JsonObject> watermarks = store.Tables.get(incrementalPullStrategyTable);
+        String storeId = table.getName() + "_" + queryKey;
+
+        // the partitions that completed keep their own watermarks
+        assertNull(watermarks.get(storeId));
+        assertEquals(updatedAt2, watermarks.get(storeId + "#0").get("maxupdateddate").getAsString());
+        assertEquals("2b", watermarks.get(storeId + "#0").get("maxupdatedid").getAsString());
+        assertEquals(updatedAt1, watermarks.get(storeId + "#1").get("maxupdateddate").getAsString());
+        assertEquals("5a", watermarks.get(storeId + "#1").get("maxupdatedid").getAsString());
+        assertNull(watermarks.get(storeId + "#2"));
+
+        failLastPartition.set(false);
+
+        synchronized (urls) {
+            urls.clear();
+        }
+
+        table.pull(query, queryKey, partitioning).get();
+
+        // the completed partitions resume after their watermarks
+        boolean firstPartitionResumed = false;
+        boolean secondPartitionResumed = false;
+
+        synchronized (urls) {
+            for (String url : urls) {
+                assertFalse(url.contains("id%20lt%20('4')") && !url.contains("__updatedAt%20gt"));
+
+                firstPartitionResumed |= url.contains("id%20lt%20('4')") && url.contains("id%20gt%20('2b')");
+                secondPartitionResumed |= url.contains("id%20lt%20('8')") && url.contains("id%20gt%20('5a')");
+            }
+        }
+
+        assertTrue(firstPartitionResumed);
+        assertTrue(secondPartitionResumed);
+
+        LinkedHashMap<String, JsonObject> items = store.Tables.get(table.getName().toLowerCase(Locale.getDefault()));
+
+        assertEquals(4, items.size());
+
+        // the partitions of ids overlap in __updatedAt, so the smallest
+        // watermark is kept and the partition watermarks are removed
+        assertEquals(1, watermarks.size());
+        assertEquals(updatedAt1, watermarks.get(storeId).get("maxupdateddate").getAsString());
+        assertEquals("5a", watermarks.get(storeId).get("maxupdatedid").getAsString());
+    }
+
+    public void testMergePartitionsKeepsTheWatermarkOfTheLastUpdatedAtPartition() throws Throwable {
+
+        MobileServiceLocalStoreMock store = new MobileServiceLocalStoreMock();
+        store.readAsyncFunc = readWatermarks(store);
+
+        SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
+        sdf.setTimeZone(TimeZone.getTimeZone("UTC"));
+
+        Date from = new Date(1400000000000L);
+        Date to = new Date(1400000003000L);
+
+        String updatedAt1 = sdf.format(new Date(1400000000500L));
+        String updatedAt2 = sdf.format(new Date(1400000001500L));
+
+        // the last partition has no items
+        store.upsert("__incrementalPullData", getWatermark("stringidtype_QueryKey#0", updatedAt1, "zzz"), false);
+        store.upsert("__incrementalPullData", getWatermark("stringidtype_QueryKey#1", updatedAt2, "aaa"), false);
+
+        IncrementalPullStrategy.mergePartitions(store, QueryOperations.tableName("stringidtype"), "QueryKey", PullPartitioning.byUpdatedAt(from, to, 3));
+
+        LinkedHashMap<String, JsonObject> watermarks = store.Tables.get("__incrementalPullData");
+
+        assertEquals(1, watermarks.size());
+        assertEquals(updatedAt2, watermarks.get("stringidtype_QueryKey").get("maxupdateddate").getAsString());
+        assertEquals("aaa", watermarks.get("stringidtype_QueryKey").get("maxupdatedid").getAsString());
+    }
+
+    public void testMergePartitionsKeepsTheSmallestWatermarkOfIdPartitions() throws Throwable {
+
+        MobileServiceLocalStoreMock store = new MobileServiceLocalStoreMock();
+        store.readAsyncFunc = readWatermarks(store);
+
+        SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
+        sdf.setTimeZone(TimeZone.getTimeZone("UTC"));
+
+        String updatedAt1 = sdf.format(new Date(1400000000000L));
+        String updatedAt2 = sdf.format(new Date(1400000001000L));
+
+        store.upsert("__incrementalPullData", getWatermark("stringidtype_QueryKey#0", updatedAt2, "1a"), false);
+        store.upsert("__incrementalPullData", getWatermark("stringidtype_QueryKey#1", updatedAt1, "5b"), false);
+        store.upsert("__incrementalPullData", getWatermark("stringidtype_QueryKey#2", updatedAt1, "9a"), false);
+
+        IncrementalPullStrategy.mergePartitions(store, QueryOperations.tableName("stringidtype"), "QueryKey", PullPartitioning.byId("4", "8"));
+
+        LinkedHashMap<String, JsonObject> watermarks = store.Tables.get("__incrementalPullData");
+
+        // the ids break the tie between equal __updatedAt
+        assertEquals(1, watermarks.size());
+        assertEquals(updatedAt1, watermarks.get("stringidtype_QueryKey").get("maxupdateddate").getAsString());
+        assertEquals("5b", watermarks.get("stringidtype_QueryKey").get("maxupdatedid").getAsString());
     }
 
     public void testincrementalSyncUsesSkipWhenMaxUpdateAtIsSame() throws MalformedURLException, InterruptedException, ExecutionException, MobileServiceException {
@@ -573,19 +1051,21 @@ public class MobileServiceSyncTableTests extends InstrumentationTestCase {
 
         table.pull(query, queryKey).get();
 
-        // Skip added
+        // Skip added, the service returned the same items again
         assertEquals(
                 serviceFilterContainer.Requests.get(2).Url,
                 EncodingUtilities
-                        .percentEncodeSpaces("http://myapp.com/tables/stringidtype?$filter=String%20eq%20('Hey')%20and%20(__updatedAt%20ge%20(datetimeoffset'"+updatedAt1+"'))" +
+                        .percentEncodeSpaces("http://myapp.com/tables/stringidtype?$filter=String%20eq%20('Hey')%20and%20" +
+                                "((__updatedAt%20gt%20(datetimeoffset'" + updatedAt1 + "')%20or%20((__updatedAt%20eq%20(datetimeoffset'" + updatedAt1 + "')%20and%20(id%20gt%20('def'))))))" +
                                 "&$top=50&$skip=2&" +
-                                "$orderby=__updatedAt%20asc&__includeDeleted=true&__systemproperties=__updatedAt,__version,__deleted"));
+                                "$orderby=__updatedAt%20asc,id%20asc&__includeDeleted=true&__systemproperties=__updatedAt,__version,__deleted"));
         // Skip removed
         assertEquals(
                 serviceFilterContainer.Requests.get(3).Url,
                 EncodingUtilities
-                        .percentEncodeSpaces("http://myapp.com/tables/stringidtype?$filter=String%20eq%20('Hey')%20and%20(__updatedAt%20ge%20(datetimeoffset'"+updatedAt2+"'))" +
-                                "&$top=50&$orderby=__updatedAt%20asc&__includeDeleted=true&__systemproperties=__updatedAt,__version,__deleted"));
+                        .percentEncodeSpaces("http://myapp.com/tables/stringidtype?$filter=String%20eq%20('Hey')%20and%20" +
+                                "((__updatedAt%20gt%20(datetimeoffset'" + updatedAt2 + "')%20or%20((__updatedAt%20eq%20(datetimeoffset'" + updatedAt2 + "')%20and%20(id%20gt%20('def'))))))" +
+                                "&$top=50&$orderby=__updatedAt%20asc,id%20asc&__includeDeleted=true&__systemproperties=__updatedAt,__version,__deleted"));
     }
 
     public void testPurgeDoesNotThrowExceptionWhenThereIsNoOperationInTable() throws MalformedURLException, InterruptedException, ExecutionException {
@@ -3134,12 +3614,630 @@ public class MobileServiceSyncTableTests extends InstrumentationTestCase {
         this.TestCollapseCancel(firstOperationOnItem1, operationOnItem2, secondOperationOnItem1, assertRequest);
     }
 
-    public void testPushIsAbortedOnNetworkError() throws Throwable {
-        this.TestPushAbort(new IOException(), MobileServicePushStatus.CancelledByNetworkError);
-    }
+    public void testSyncEventListenerReportsQueuePushAndPullEvents() throws Throwable {
+        MobileServiceLocalStoreMock store = new MobileServiceLocalStoreMock();
+        ServiceFilterContainer serviceFilterContainer = new ServiceFilterContainer();
 
-    public void testPushIsAbortedOnAuthenticationError() throws Throwable {
-        // Create a mock response simulating an error
+        MobileServiceClient client = new MobileServiceClient(appUrl, appKey, getInstrumentation().getTargetContext());
+
+        client = client.withFilter(getTestFilter(serviceFilterContainer, false, "{\"id\":\"an id\",\"String\":\"Hey\"}",
+                "[{\"id\":\"abc\",\"String\":\"Hey\"},{\"id\":\"def\",\"String\":\"World\"}]"));
+
+        final List<Integer> queueDepths = new ArrayList<Integer>();
+        final List<TableOperation> collapsedOperations = new ArrayList<TableOperation>();
+        final List<TableOperation> pushedOperations = new ArrayList<TableOperation>();
+        final List<PullPageEvent> pullPages = new ArrayList<PullPageEvent>();
+        final List<SyncLockKind> acquiredLocks = new ArrayList<SyncLockKind>();
+
+        client.getSyncContext().setSyncEventListener(new SimpleSyncEventListener() {
+            @Override
+            public synchronized void onQueueDepthChanged(int pendingOperations) {
+                queueDepths.add(pendingOperations);
+            }
+
+            @Override
+            public synchronized void onOperationCollapsed(TableOperation operation) {
+                collapsedOperations.add(operation);
+            }
+
+            @Override
+            public synchronized void onPushOperationCompleted(TableOperation operation, long latency, boolean succeeded) {
+                assertTrue(succeeded);
+                assertTrue(latency >= 0);
+                pushedOperations.add(operation);
+            }
+
+            @Override
+            public synchronized void onPullPageCompleted(PullPageEvent event) {
+                pullPages.add(event);
+            }
+
+            @Override
+            public synchronized void onLockAcquired(SyncLockKind lockKind, String key, long waitTime) {
+                acquiredLocks.add(lockKind);
+            }
+        });
+
+        client.getSyncContext().initialize(store, new SimpleSyncHandler()).get();
+
+        MobileServiceSyncTable<StringIdType> table = client.getSyncTable(StringIdType.class);
+
+        StringIdType item = new StringIdType();
+
+        item.Id = "an id";
+        item.String = "what?";
+
+        table.insert(item).get();
+
+        item.String = "how?";
+
+        table.update(item).get();
+
+        assertEquals(1, collapsedOperations.size());
+
+        client.getSyncContext().push().get();
+
+        assertEquals(1, pushedOperations.size());
+        assertEquals(0, (int) queueDepths.get(queueDepths.size() - 1));
+
+        table.pull(null).get();
+
+        assertTrue(pullPages.size() > 0);
+        assertEquals(2, pullPages.get(0).getRowCount());
+        assertEquals(0, pullPages.get(0).getPageIndex());
+        assertEquals(table.getName().toLowerCase(Locale.getDefault()), pullPages.get(0).getTableName());
+
+        assertTrue(acquiredLocks.contains(SyncLockKind.Operation));
+        assertTrue(acquiredLocks.contains(SyncLockKind.Table));
+        assertTrue(acquiredLocks.contains(SyncLockKind.Item));
+    }
+
+    public void testSyncEventListenerExceptionsAreIgnored() throws Throwable {
+        MobileServiceLocalStoreMock store = new MobileServiceLocalStoreMock();
+        ServiceFilterContainer serviceFilterContainer = new ServiceFilterContainer();
+
+        MobileServiceClient client = new MobileServiceClient(appUrl, appKey, getInstrumentation().getTargetContext());
+
+        client = client.withFilter(getTestFilter(serviceFilterContainer, false, "{\"id\":\"an id\",\"String\":\"Hey\"}",
+                "[{\"id\":\"abc\",\"String\":\"Hey\"}]", "[]"));
+
+        client.getSyncContext().setSyncEventListener(new SimpleSyncEventListener() {
+            @Override
+            public void onQueueDepthChanged(int pendingOperations) {
+                throw new IllegalStateException();
+            }
+
+            @Override
+            public void onOperationCollapsed(TableOperation operation) {
+                throw new IllegalStateException();
+            }
+
+            @Override
+            public void onPushOperationCompleted(TableOperation operation, long latency, boolean succeeded) {
+                throw new IllegalStateException();
+            }
+
+            @Override
+            public void onPullPageCompleted(PullPageEvent event) {
+                throw new IllegalStateException();
+            }
+
+            @Override
+            public void onLockAcquired(SyncLockKind lockKind, String key, long waitTime) {
+                throw new IllegalStateException();
+            }
+        });
+
+        client.getSyncContext().initialize(store, new SimpleSyncHandler()).get();
+
+        MobileServiceSyncTable<StringIdType> table = client.getSyncTable(StringIdType.class);
+
+        StringIdType item = new StringIdType();
+
+        item.Id = "an id";
+        item.String = "what?";
+
+        table.insert(item).get();
+
+        // The locks taken by the insert were released, and the collapsed
+        // update succeeds
+        item.String = "how?";
+
+        table.update(item).get();
+
+        client.getSyncContext().push().get();
+
+        assertEquals(0, client.getSyncContext().getPendingOperations());
+
+        table.pull(null).get();
+
+        assertEquals(2, store.Tables.get(table.getName().toLowerCase(Locale.getDefault())).size());
+    }
+
+    public void testSyncRequestsAreSentWithBackgroundPriority() throws Throwable {
+        MobileServiceLocalStoreMock store = new MobileServiceLocalStoreMock();
+        ServiceFilterContainer serviceFilterContainer = new ServiceFilterContainer();
+
+        MobileServiceClient client = new MobileServiceClient(appUrl, appKey, getInstrumentation().getTargetContext());
+
+        final List<RequestPriority> priorities = new ArrayList<RequestPriority>();
+
+        client = client.withFilter(getTestFilter(serviceFilterContainer, false, "{\"id\":\"an id\",\"String\":\"Hey\"}", "[]",
+                "{\"id\":\"an id\",\"String\":\"Hey\"}")).withFilter(
+                new ServiceFilter() {
+                    @Override
+                    public ListenableFuture<ServiceFilterResponse> handleRequest(ServiceFilterRequest request, NextServiceFilterCallback next) {
+                        synchronized (priorities) {
+                            priorities.add(RequestScheduler.getPriority(request));
+                        }
+
+                        return next.onNext(request);
+                    }
+                });
+
+        client.getSyncContext().initialize(store, new SimpleSyncHandler()).get();
+
+        MobileServiceSyncTable<StringIdType> table = client.getSyncTable(StringIdType.class);
+
+        StringIdType item = new StringIdType();
+
+        item.Id = "an id";
+        item.String = "what?";
+
+        table.insert(item).get();
+
+        client.getSyncContext().push().get();
+        table.pull(null).get();
+
+        assertTrue(priorities.size() >= 2);
+
+        for (RequestPriority priority : priorities) {
+            assertEquals(RequestPriority.Background, priority);
+        }
+
+        priorities.clear();
+
+        client.getTable(StringIdType.class).lookUp("an id").get();
+
+        assertEquals(1, priorities.size());
+        assertEquals(RequestPriority.Interactive, priorities.get(0));
+    }
+
+    public void testPushSendsOnlyTheChangedFieldsOfAnUpdatedItem() throws Throwable {
+        MobileServiceLocalStoreMock store = new MobileServiceLocalStoreMock();
+        ServiceFilterContainer serviceFilterContainer = new ServiceFilterContainer();
+
+        MobileServiceClient client = new MobileServiceClient(appUrl, appKey, getInstrumentation().getTargetContext());
+
+        client = client.withFilter(getTestFilter(serviceFilterContainer, "{\"id\":\"abc\",\"string\":\"changed\",\"__version\":\"2\"}"));
+
+        client.getSyncContext().initialize(store, new SimpleSyncHandler()).get();
+
+        JsonObject serverItem = new JsonObject();
+        serverItem.addProperty("id", "abc");
+        serverItem.addProperty("string", "original");
+        serverItem.addProperty("other", "unchanged");
+        serverItem.addProperty("__version", "1");
+
+        store.upsert("sometable", serverItem, true);
+
+        MobileServiceJsonSyncTable table = client.getSyncTable("someTable");
+
+        JsonObject item = new JsonObject();
+        item.addProperty("id", "abc");
+        item.addProperty("string", "changed");
+        item.addProperty("other", "unchanged");
+        item.addProperty("__version", "1");
+
+        table.update(item).get();
+
+        client.getSyncContext().push().get();
+
+        assertEquals(1, serviceFilterContainer.Requests.size());
+        assertEquals("PATCH", serviceFilterContainer.Requests.get(0).Method);
+
+        JsonObject sentItem = new JsonParser().parse(serviceFilterContainer.Requests.get(0).Content).getAsJsonObject();
+
+        assertEquals("changed", sentItem.get("string").getAsString());
+        assertFalse(sentItem.has("other"));
+
+        JsonObject storedItem = store.lookup("sometable", "abc");
+
+        assertEquals("changed", storedItem.get("string").getAsString());
+        assertEquals("unchanged", storedItem.get("other").getAsString());
+        assertEquals("2", storedItem.get("__version").getAsString());
+
+        assertNull(store.lookup("__itemsnapshots", "sometable/abc"));
+    }
+
+    public void testLocalWritesProceedWhileAPushIsInFlight() throws Throwable {
+        MobileServiceLocalStoreMock store = new MobileServiceLocalStoreMock();
+        ServiceFilterContainer serviceFilterContainer = new ServiceFilterContainer();
+
+        final CountDownLatch requestStarted = new CountDownLatch(1);
+        final CountDownLatch releaseRequest = new CountDownLatch(1);
+
+        MobileServiceClient client = new MobileServiceClient(appUrl, appKey, getInstrumentation().getTargetContext());
+
+        client = client.withFilter(getTestFilter(serviceFilterContainer, "{\"id\":\"abc\",\"String\":\"Hey\"}")).withFilter(new ServiceFilter() {
+            @Override
+            public ListenableFuture<ServiceFilterResponse> handleRequest(ServiceFilterRequest request, NextServiceFilterCallback next) {
+                requestStarted.countDown();
+
+                try {
+                    releaseRequest.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+
+                return next.onNext(request);
+            }
+        });
+
+        client.getSyncContext().initialize(store, new SimpleSyncHandler()).get();
+
+        final MobileServiceSyncTable<StringIdType> table = client.getSyncTable(StringIdType.class);
+
+        StringIdType item = new StringIdType();
+        item.Id = "abc";
+        item.String = "what?";
+
+        table.insert(item).get();
+
+        ListenableFuture<Void> pushFuture = client.getSyncContext().push();
+
+        try {
+            assertTrue(requestStarted.await(5, TimeUnit.SECONDS));
+
+            // The push holds the lock of the item abc while its request is in
+            // flight; writes to other items of the table do not wait for it
+            final SettableFuture<Void> writesFuture = SettableFuture.create();
+
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        StringIdType otherItem = new StringIdType();
+                        otherItem.Id = "def";
+                        otherItem.String = "who?";
+
+                        table.insert(otherItem).get();
+
+                        otherItem.String = "how?";
+
+                        table.update(otherItem).get();
+
+                        writesFuture.set(null);
+                    } catch (Throwable throwable) {
+                        writesFuture.setException(throwable);
+                    }
+                }
+            }).start();
+
+            writesFuture.get(5, TimeUnit.SECONDS);
+
+            assertFalse(pushFuture.isDone());
+
+            // The operation being pushed was peeked, not removed: it stays in
+            // the queue until its push completes
+            assertEquals(2, client.getSyncContext().getPendingOperations());
+            assertEquals(Arrays.asList("abc", "def"), getQueuedItemIds(store));
+        } finally {
+            releaseRequest.countDown();
+        }
+
+        pushFuture.get();
+
+        // The operation enqueued during the push is left for the next push
+        assertEquals(1, client.getSyncContext().getPendingOperations());
+        assertEquals(Arrays.asList("def"), getQueuedItemIds(store));
+        assertEquals(1, serviceFilterContainer.Requests.size());
+    }
+
+    public void testLocalWritesProceedWhileAPushWaitsForAPull() throws Throwable {
+        MobileServiceLocalStoreMock store = new MobileServiceLocalStoreMock();
+        ServiceFilterContainer serviceFilterContainer = new ServiceFilterContainer();
+
+        final CountDownLatch pullStarted = new CountDownLatch(1);
+        final CountDownLatch releasePull = new CountDownLatch(1);
+
+        MobileServiceClient client = new MobileServiceClient(appUrl, appKey, getInstrumentation().getTargetContext());
+
+        client = client.withFilter(getTestFilter(serviceFilterContainer, false, "{\"id\":\"abc\",\"String\":\"Hey\"}")).withFilter(new ServiceFilter() {
+            @Override
+            public ListenableFuture<ServiceFilterResponse> handleRequest(ServiceFilterRequest request, NextServiceFilterCallback next) {
+                if (request.getMethod().equals("GET")) {
+                    pullStarted.countDown();
+
+                    try {
+                        releasePull.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+
+                return next.onNext(request);
+            }
+        });
+
+        client.getSyncContext().initialize(store, new SimpleSyncHandler()).get();
+
+        MobileServiceSyncTable<StringIdType> table = client.getSyncTable(StringIdType.class);
+        MobileServiceJsonSyncTable otherTable = client.getSyncTable("othertable");
+        MobileServiceJsonSyncTable thirdTable = client.getSyncTable("thirdtable");
+
+        JsonObject item = new JsonObject();
+        item.addProperty("id", "abc");
+        item.addProperty("String", "what?");
+
+        otherTable.insert(item).get();
+
+        // The pull holds the op lock, shared, while its request is in flight
+        ListenableFuture<Void> pullFuture = table.pull(null);
+
+        try {
+            assertTrue(pullStarted.await(5, TimeUnit.SECONDS));
+
+            // Pushing the other table does not wait for the pull, nor for the
+            // exclusive op lock, which would also hold back local writes
+            client.getSyncContext().push().get(5, TimeUnit.SECONDS);
+
+            JsonObject otherItem = new JsonObject();
+            otherItem.addProperty("id", "def");
+            otherItem.addProperty("String", "who?");
+
+            thirdTable.insert(otherItem).get(5, TimeUnit.SECONDS);
+
+            assertFalse(pullFuture.isDone());
+            assertEquals(Arrays.asList("def"), getQueuedItemIds(store));
+        } finally {
+            releasePull.countDown();
+        }
+
+        pullFuture.get();
+    }
+
+    public void testBulkOperationsWriteItemsAndOperationsInOneTransaction() throws Throwable {
+        TransactionalLocalStoreMock store = new TransactionalLocalStoreMock();
+        ServiceFilterContainer serviceFilterContainer = new ServiceFilterContainer();
+
+        MobileServiceClient client = new MobileServiceClient(appUrl, appKey, getInstrumentation().getTargetContext());
+
+        client = client.withFilter(getTestFilter(serviceFilterContainer, true, "{\"id\":\"abc\",\"String\":\"Hey\"}"));
+
+        client.getSyncContext().initialize(store, new SimpleSyncHandler()).get();
+
+        MobileServiceJsonSyncTable table = client.getSyncTable("someTable");
+
+        List<JsonObject> items = new ArrayList<JsonObject>();
+
+        for (String id : new String[]{"abc", "def", "ghi"}) {
+            JsonObject item = new JsonObject();
+            item.addProperty("id", id);
+            item.addProperty("String", "what?");
+            items.add(item);
+        }
+
+        JsonObject itemWithoutId = new JsonObject();
+        itemWithoutId.addProperty("String", "who?");
+        items.add(itemWithoutId);
+
+        List<JsonObject> insertedItems = table.insertAll(items).get();
+
+        assertEquals(4, insertedItems.size());
+        assertTrue(insertedItems.get(3).has("id"));
+        assertEquals(1, store.Transactions);
+        assertEquals(4, store.Tables.get("sometable").size());
+        assertEquals(4, client.getSyncContext().getPendingOperations());
+
+        // The update collapses with the pending insert
+        JsonObject updatedItem = new JsonObject();
+        updatedItem.addProperty("id", "abc");
+        updatedItem.addProperty("String", "how?");
+
+        List<JsonObject> updatedItems = new ArrayList<JsonObject>();
+        updatedItems.add(updatedItem);
+
+        table.updateAll(updatedItems).get();
+
+        assertEquals(2, store.Transactions);
+        assertEquals("how?", store.lookup("sometable", "abc").get("String").getAsString());
+        assertEquals(4, client.getSyncContext().getPendingOperations());
+
+        // The delete cancels the pending insert
+        List<JsonObject> deletedItems = new ArrayList<JsonObject>();
+        deletedItems.add(items.get(1));
+
+        table.deleteAll(deletedItems).get();
+
+        assertEquals(3, store.Transactions);
+        assertNull(store.lookup("sometable", "def"));
+        assertEquals(3, client.getSyncContext().getPendingOperations());
+
+        client.getSyncContext().push().get();
+
+        assertEquals(3, serviceFilterContainer.Requests.size());
+
+        for (ServiceFilterRequestData request : serviceFilterContainer.Requests) {
+            assertEquals("POST", request.Method);
+        }
+    }
+
+    public void testBulkOperationsWriteItemsOneByOneWithoutTransactions() throws Throwable {
+        MobileServiceLocalStoreMock store = new MobileServiceLocalStoreMock();
+        ServiceFilterContainer serviceFilterContainer = new ServiceFilterContainer();
+
+        MobileServiceClient client = new MobileServiceClient(appUrl, appKey, getInstrumentation().getTargetContext());
+
+        client = client.withFilter(getTestFilter(serviceFilterContainer, true, "{\"id\":\"abc\",\"String\":\"Hey\"}"));
+
+        client.getSyncContext().initialize(store, new SimpleSyncHandler()).get();
+
+        MobileServiceJsonSyncTable table = client.getSyncTable("someTable");
+
+        List<JsonObject> items = new ArrayList<JsonObject>();
+
+        for (String id : new String[]{"abc", "def", "ghi"}) {
+            JsonObject item = new JsonObject();
+            item.addProperty("id", id);
+            item.addProperty("String", "what?");
+            items.add(item);
+        }
+
+        table.insertAll(items).get();
+
+        assertEquals(3, store.Tables.get("sometable").size());
+        assertEquals(3, client.getSyncContext().getPendingOperations());
+        assertEquals(Arrays.asList("abc", "def", "ghi"), getQueuedItemIds(store));
+
+        List<JsonObject> deletedItems = new ArrayList<JsonObject>();
+        deletedItems.add(items.get(1));
+
+        table.deleteAll(deletedItems).get();
+
+        assertNull(store.lookup("sometable", "def"));
+        assertEquals(Arrays.asList("abc", "ghi"), getQueuedItemIds(store));
+    }
+
+    public void testBulkInsertRollsBackTheItemsWhenAnItemFails() throws Throwable {
+        // the third item fails after the first two are written
+        testBulkInsertRollsBack("sometable", 3);
+    }
+
+    public void testBulkInsertRollsBackTheItemsWhenTheOperationsFail() throws Throwable {
+        testBulkInsertRollsBack(OperationQueue, 1);
+    }
+
+    private void testBulkInsertRollsBack(String failingTable, int failingItem) throws Throwable {
+        Context context = getInstrumentation().getTargetContext();
+        context.deleteDatabase(BulkTestDbName);
+
+        FailingSQLiteLocalStore store = new FailingSQLiteLocalStore(context, BulkTestDbName);
+
+        Map<String, ColumnDataType> tableDefinition = new HashMap<String, ColumnDataType>();
+        tableDefinition.put("id", ColumnDataType.String);
+        tableDefinition.put("String", ColumnDataType.String);
+
+        store.defineTable("sometable", tableDefinition);
+
+        MobileServiceClient client = new MobileServiceClient(appUrl, appKey, context);
+
+        client.getSyncContext().initialize(store, new SimpleSyncHandler()).get();
+
+        MobileServiceJsonSyncTable table = client.getSyncTable("someTable");
+
+        List<JsonObject> items = new ArrayList<JsonObject>();
+
+        for (String id : new String[]{"abc", "def", "ghi", "jkl"}) {
+            JsonObject item = new JsonObject();
+            item.addProperty("id", id);
+            item.addProperty("String", "what?");
+            items.add(item);
+        }
+
+        store.fail(failingTable, failingItem);
+
+        try {
+            table.insertAll(items).get();
+            fail("Expected Exception");
+        } catch (ExecutionException ex) {
+            assertTrue(ex.getCause() instanceof MobileServiceLocalStoreException);
+        }
+
+        assertEquals(0L, SQLiteStoreTestsUtilities.countRows(context, BulkTestDbName, "sometable"));
+        assertEquals(0L, SQLiteStoreTestsUtilities.countRows(context, BulkTestDbName, OperationQueue));
+        assertEquals(0, client.getSyncContext().getPendingOperations());
+
+        // the store and the queue are usable after the rollback
+        store.fail(null, 0);
+
+        table.insertAll(items).get();
+
+        assertEquals(4L, SQLiteStoreTestsUtilities.countRows(context, BulkTestDbName, "sometable"));
+        assertEquals(4, client.getSyncContext().getPendingOperations());
+    }
+
+    /**
+     * MobileServiceLocalStoreMock whose tables can be written by concurrent
+     * pulls
+     */
+    private static class SynchronizedLocalStoreMock extends MobileServiceLocalStoreMock {
+        @Override
+        public synchronized JsonElement read(Query query) throws MobileServiceLocalStoreException {
+            return super.read(query);
+        }
+
+        @Override
+        public synchronized JsonObject lookup(String tableName, String itemId) throws MobileServiceLocalStoreException {
+            return super.lookup(tableName, itemId);
+        }
+
+        @Override
+        public synchronized void upsert(String tableName, JsonObject item, boolean fromServer) throws MobileServiceLocalStoreException {
+            super.upsert(tableName, item, fromServer);
+        }
+
+        @Override
+        public synchronized void upsert(String tableName, JsonObject[] items, boolean fromServer) throws MobileServiceLocalStoreException {
+            super.upsert(tableName, items, fromServer);
+        }
+
+        @Override
+        public synchronized void delete(String tableName, String itemId) throws MobileServiceLocalStoreException {
+            super.delete(tableName, itemId);
+        }
+
+        @Override
+        public synchronized void delete(String tableName, String[] itemsIds) throws MobileServiceLocalStoreException {
+            super.delete(tableName, itemsIds);
+        }
+
+        @Override
+        public synchronized void delete(Query query) throws MobileServiceLocalStoreException {
+            super.delete(query);
+        }
+    }
+
+    /**
+     * SQLiteLocalStore that writes the items of a table before the failing
+     * one, then throws
+     */
+    private static class FailingSQLiteLocalStore extends SQLiteLocalStore {
+        private String mFailingTable;
+        private int mFailingItem;
+
+        public FailingSQLiteLocalStore(Context context, String name) {
+            super(context, name, null, 1);
+        }
+
+        public void fail(String tableName, int item) {
+            this.mFailingTable = tableName;
+            this.mFailingItem = item;
+        }
+
+        @Override
+        public void upsert(String tableName, JsonObject[] items, boolean fromServer) throws MobileServiceLocalStoreException {
+            if (tableName.equalsIgnoreCase(this.mFailingTable) && items.length >= this.mFailingItem) {
+                JsonObject[] writtenItems = new JsonObject[this.mFailingItem - 1];
+                System.arraycopy(items, 0, writtenItems, 0, writtenItems.length);
+
+                if (writtenItems.length > 0) {
+                    super.upsert(tableName, writtenItems, fromServer);
+                }
+
+                throw new MobileServiceLocalStoreException("Item " + this.mFailingItem + " failed");
+            }
+
+            super.upsert(tableName, items, fromServer);
+        }
+    }
+
+    public void testPushIsAbortedOnNetworkError() throws Throwable {
+        this.TestPushAbort(new IOException(), MobileServicePushStatus.CancelledByNetworkError);
+    }
+
+    public void testPushIsAbortedOnAuthenticationError() throws Throwable {
+        // Create a mock response simulating an error
         ServiceFilterResponseMock response = new ServiceFilterResponseMock();
         response.setStatus(new StatusLineMock(401));
 
@@ -3305,6 +4403,16 @@ public class MobileServiceSyncTableTests extends InstrumentationTestCase {
     }
 
     // Test Filter
+    private List<String> getQueuedItemIds(MobileServiceLocalStoreMock store) {
+        List<String> itemIds = new ArrayList<String>();
+
+        for (JsonObject operation : store.Tables.get(OperationQueue).values()) {
+            itemIds.add(operation.get("itemid").getAsString());
+        }
+
+        return itemIds;
+    }
+
     private ServiceFilter getTestFilter(String... content) {
         return getTestFilter(new ServiceFilterContainer(), 200, content);
     }
@@ -3320,6 +4428,55 @@ public class MobileServiceSyncTableTests extends InstrumentationTestCase {
     }
 
     // Test Filter
+    private JsonObject getWatermark(String id, String maxUpdatedDate, String maxUpdatedId) {
+        JsonObject watermark = new JsonObject();
+
+        watermark.addProperty("id", id);
+        watermark.addProperty("maxupdateddate", maxUpdatedDate);
+        watermark.addProperty("maxupdatedid", maxUpdatedId);
+
+        return watermark;
+    }
+
+    /**
+     * Answers the reads of the incremental pull watermarks from the tables of
+     * the store, as the watermarks are read by id
+     */
+    private Function<Query, JsonElement> readWatermarks(final MobileServiceLocalStoreMock store) {
+        return new Function<Query, JsonElement>() {
+            @Override
+            public JsonElement apply(Query query) {
+                if (!"__incrementalPullData".equals(query.getTableName())) {
+                    return null;
+                }
+
+                String filter;
+
+                try {
+                    filter = URLDecoder.decode(QueryODataWriter.getRowFilter(query), "UTF-8");
+                } catch (UnsupportedEncodingException e) {
+                    throw new RuntimeException(e);
+                }
+
+                JsonArray results = new JsonArray();
+
+                synchronized (store) {
+                    LinkedHashMap<String, JsonObject> watermarks = store.Tables.get("__incrementalPullData");
+
+                    if (watermarks != null) {
+                        for (JsonObject watermark : watermarks.values()) {
+                            if (filter.contains("'" + watermark.get("id").getAsString() + "'")) {
+                                results.add(watermark);
+                            }
+                        }
+                    }
+                }
+
+                return results;
+            }
+        };
+    }
+
     private ServiceFilter getTestFilter(ServiceFilterContainer serviceFilterContainer, final boolean getLastContentAsDefault, String... content) {
         return getTestFilter(serviceFilterContainer, 200, null, getLastContentAsDefault, content);
     }
@@ -29,7 +29,9 @@ import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
 import com.microsoft.windowsazure.mobileservices.MobileServiceClient;
 import com.microsoft.windowsazure.mobileservices.MobileServiceException;
+import com.microsoft.windowsazure.mobileservices.MobileServiceFutures;
 import com.microsoft.windowsazure.mobileservices.MobileServiceList;
+import com.microsoft.windowsazure.mobileservices.http.AbortableServiceFilterRequest;
 import com.microsoft.windowsazure.mobileservices.http.NextServiceFilterCallback;
 import com.microsoft.windowsazure.mobileservices.http.ServiceFilter;
 import com.microsoft.windowsazure.mobileservices.http.ServiceFilterRequest;
@@ -45,6 +47,7 @@ import com.microsoft.windowsazure.mobileservices.sdk.testapp.test.types.PersonTe
 import com.microsoft.windowsazure.mobileservices.sdk.testapp.test.types.PersonTestObjectWithStringId;
 import com.microsoft.windowsazure.mobileservices.sdk.testapp.test.types.PersonTestObjectWithoutId;
 import com.microsoft.windowsazure.mobileservices.sdk.testapp.test.types.ResultsContainer;
+import com.microsoft.windowsazure.mobileservices.table.BulkOperationResult;
 import com.microsoft.windowsazure.mobileservices.table.MobileServiceJsonTable;
 import com.microsoft.windowsazure.mobileservices.table.MobileServiceTable;
 import com.microsoft.windowsazure.mobileservices.table.TableDeleteCallback;
@@ -64,10 +67,16 @@ import org.apache.http.StatusLine;
 import org.apache.http.message.BasicHeader;
 
 import java.net.MalformedURLException;
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class MobileServiceTableTests extends InstrumentationTestCase {
     String appUrl = "";
@@ -619,6 +628,79 @@ public class MobileServiceTableTests extends InstrumentationTestCase {
         Assert.assertEquals(29, originalPerson.getAge());
     }
 
+    public void testInsertAllReturnsResultsInInputOrderAndStopsOnAuthenticationError() throws Throwable {
+
+        final AtomicInteger requestCount = new AtomicInteger();
+
+        List<PersonTestObject> persons = new ArrayList<PersonTestObject>();
+        persons.add(new PersonTestObject("John", "Doe", 29));
+        persons.add(new PersonTestObject("Jane", "Doe", 27));
+        persons.add(new PersonTestObject("Jim", "Unauthorized", 31));
+        persons.add(new PersonTestObject("Joe", "Doe", 33));
+        persons.add(new PersonTestObject("Jill", "Doe", 35));
+
+        String tableName = "MyTableName";
+        MobileServiceClient client = null;
+
+        try {
+            client = new MobileServiceClient(appUrl, appKey, getInstrumentation().getTargetContext());
+        } catch (MalformedURLException e) {
+            e.printStackTrace();
+        }
+
+        client = client.withFilter(new ServiceFilter() {
+
+            @Override
+            public ListenableFuture<ServiceFilterResponse> handleRequest(ServiceFilterRequest request, NextServiceFilterCallback nextServiceFilterCallback) {
+
+                int id = requestCount.incrementAndGet();
+
+                JsonObject person = new JsonParser().parse(request.getContent()).getAsJsonObject();
+
+                ServiceFilterResponseMock response = new ServiceFilterResponseMock();
+
+                if (person.get("lastName").getAsString().equals("Unauthorized")) {
+                    response.setStatus(new StatusLineMock(401));
+                    response.setContent("{\"error\":401,\"message\":\"unauthorized\"}");
+
+                    return nextServiceFilterCallback.onNext(new ServiceFilterRequestMock(response));
+                }
+
+                person.addProperty("id", id);
+                response.setContent(person.toString());
+
+                final SettableFuture<ServiceFilterResponse> resultFuture = SettableFuture.create();
+
+                resultFuture.set(response);
+
+                return resultFuture;
+            }
+        });
+
+        MobileServiceTable<PersonTestObject> msTable = client.getTable(tableName, PersonTestObject.class);
+
+        // One request at a time, so that no request is in flight when the
+        // authentication error is received
+        List<BulkOperationResult<PersonTestObject>> results = msTable.insertAll(persons, 1).get();
+
+        Assert.assertEquals(5, results.size());
+        Assert.assertEquals(3, requestCount.get());
+
+        Assert.assertTrue(results.get(0).isSuccessful());
+        Assert.assertEquals(1, results.get(0).getItem().getId());
+        Assert.assertEquals("John", results.get(0).getItem().getFirstName());
+
+        Assert.assertTrue(results.get(1).isSuccessful());
+        Assert.assertEquals(2, results.get(1).getItem().getId());
+        Assert.assertEquals("Jane", results.get(1).getItem().getFirstName());
+
+        Assert.assertFalse(results.get(2).isSuccessful());
+        Assert.assertTrue(results.get(2).getError() instanceof MobileServiceException);
+
+        Assert.assertTrue(results.get(3).getError() instanceof CancellationException);
+        Assert.assertTrue(results.get(4).getError() instanceof CancellationException);
+    }
+
     public void testInsertShouldReturnJSONWithId() throws Throwable {
 
         // Object to insert
@@ -2922,4 +3004,232 @@ public class MobileServiceTableTests extends InstrumentationTestCase {
 
         Assert.assertEquals(results.getAsJsonObject().get("nextLink").getAsString(), nextLink);
     }
+
+    public void testMobileServiceTableIterateFollowsNextLinks() throws Throwable {
+        final String nextLink = appUrl + "tables/PersonTestObject?$top=2&$skip=2";
+        final List<String> requestUrls = new ArrayList<String>();
+
+        MobileServiceClient client = new MobileServiceClient(appUrl, appKey, getInstrumentation().getTargetContext());
+
+        client = client.withFilter(new ServiceFilter() {
+
+            @Override
+            public ListenableFuture<ServiceFilterResponse> handleRequest(ServiceFilterRequest request, NextServiceFilterCallback nextServiceFilterCallback) {
+                requestUrls.add(request.getUrl());
+
+                ServiceFilterResponseMock responseMock = new ServiceFilterResponseMock();
+
+                if (request.getUrl().equals(nextLink)) {
+                    responseMock.setContent("[{\"id\":3,\"firstName\":\"Jane\",\"lastName\":\"Doe\",\"age\":28}]");
+                } else {
+                    responseMock.setContent("[{\"id\":1,\"firstName\":\"John\",\"lastName\":\"Doe\",\"age\":29},"
+                            + "{\"id\":2,\"firstName\":\"Jim\",\"lastName\":\"Doe\",\"age\":30}]");
+                    responseMock.setHeaders(new Header[]{new BasicHeader("Link", nextLink + "; rel=next")});
+                }
+
+                SettableFuture<ServiceFilterResponse> resultFuture = SettableFuture.create();
+                resultFuture.set(responseMock);
+
+                return resultFuture;
+            }
+        });
+
+        MobileServiceTable<PersonTestObject> msTable = client.getTable(PersonTestObject.class);
+
+        Iterator<PersonTestObject> iterator = msTable.iterate(msTable.where(), 2, 1);
+
+        List<String> firstNames = new ArrayList<String>();
+
+        while (iterator.hasNext()) {
+            firstNames.add(iterator.next().getFirstName());
+        }
+
+        assertEquals(3, firstNames.size());
+        assertEquals("John", firstNames.get(0));
+        assertEquals("Jane", firstNames.get(2));
+        assertEquals(2, requestUrls.size());
+        assertEquals(nextLink, requestUrls.get(1));
+    }
+
+    public void testMobileServiceJsonTableIterateUsesTopAndSkipWithoutNextLinks() throws Throwable {
+        final List<String> requestUrls = new ArrayList<String>();
+
+        MobileServiceClient client = new MobileServiceClient(appUrl, appKey, getInstrumentation().getTargetContext());
+
+        client = client.withFilter(new ServiceFilter() {
+
+            @Override
+            public ListenableFuture<ServiceFilterResponse> handleRequest(ServiceFilterRequest request, NextServiceFilterCallback nextServiceFilterCallback) {
+                synchronized (requestUrls) {
+                    requestUrls.add(request.getUrl());
+                }
+
+                ServiceFilterResponseMock responseMock = new ServiceFilterResponseMock();
+
+                if (request.getUrl().contains("$skip=0")) {
+                    responseMock.setContent("[{\"id\":\"a\"},{\"id\":\"b\"}]");
+                } else if (request.getUrl().contains("$skip=2")) {
+                    responseMock.setContent("[{\"id\":\"c\"}]");
+                } else {
+                    responseMock.setContent("[]");
+                }
+
+                SettableFuture<ServiceFilterResponse> resultFuture = SettableFuture.create();
+                resultFuture.set(responseMock);
+
+                return resultFuture;
+            }
+        });
+
+        MobileServiceJsonTable msTable = client.getTable("MyTableName");
+
+        Iterator<JsonObject> iterator = msTable.iterate(QueryOperations.field("age").gt(20), 2, 2);
+
+        List<String> ids = new ArrayList<String>();
+
+        while (iterator.hasNext()) {
+            ids.add(iterator.next().get("id").getAsString());
+        }
+
+        assertEquals(3, ids.size());
+        assertEquals("a", ids.get(0));
+        assertEquals("c", ids.get(2));
+
+        synchronized (requestUrls) {
+            assertTrue(requestUrls.get(0).contains("$top=2"));
+            assertTrue(requestUrls.get(0).contains("$skip=0"));
+        }
+    }
+
+    public void testCancellingExecuteShouldAbortTheRequest() throws Throwable {
+        SettableFuture<ServiceFilterRequest> started = SettableFuture.create();
+        SettableFuture<Boolean> aborted = SettableFuture.create();
+
+        MobileServiceClient client = new MobileServiceClient(appUrl, appKey, getInstrumentation().getTargetContext());
+        client = client.withFilter(createWaitForAbortFilter(started, aborted));
+
+        MobileServiceJsonTable msTable = client.getTable("MyTableName");
+
+        ListenableFuture<JsonElement> future = msTable.execute(QueryOperations.field("age").gt(20));
+
+        started.get(5, TimeUnit.SECONDS);
+        future.cancel(true);
+
+        assertTrue(future.isCancelled());
+        assertTrue(aborted.get(5, TimeUnit.SECONDS));
+    }
+
+    public void testExecuteWithDeadlineShouldFailAndAbortTheRequest() throws Throwable {
+        SettableFuture<ServiceFilterRequest> started = SettableFuture.create();
+        SettableFuture<Boolean> aborted = SettableFuture.create();
+
+        MobileServiceClient client = new MobileServiceClient(appUrl, appKey, getInstrumentation().getTargetContext());
+        client = client.withFilter(createWaitForAbortFilter(started, aborted));
+
+        MobileServiceTable<PersonTestObject> msTable = client.getTable(PersonTestObject.class);
+
+        ListenableFuture<MobileServiceList<PersonTestObject>> future = MobileServiceFutures.withDeadline(msTable.execute(msTable.where()), 200,
+                TimeUnit.MILLISECONDS);
+
+        try {
+            future.get();
+            fail("Expected Exception TimeoutException");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof TimeoutException);
+        }
+
+        assertTrue(aborted.get(5, TimeUnit.SECONDS));
+    }
+
+    /**
+     * Creates a filter that blocks until its request is aborted, or for 5
+     * seconds at most
+     */
+    private ServiceFilter createWaitForAbortFilter(final SettableFuture<ServiceFilterRequest> started, final SettableFuture<Boolean> aborted) {
+        return new ServiceFilter() {
+
+            @Override
+            public ListenableFuture<ServiceFilterResponse> handleRequest(ServiceFilterRequest serviceFilterRequest, NextServiceFilterCallback nextServiceFilterCallback) {
+                started.set(serviceFilterRequest);
+
+                AbortableServiceFilterRequest request = (AbortableServiceFilterRequest) serviceFilterRequest;
+
+                long end = System.currentTimeMillis() + 5000;
+
+                while (!request.isAborted() && System.currentTimeMillis() < end) {
+                    try {
+                        Thread.sleep(10);
+                    } catch (InterruptedException e) {
+                        // Aborting the request interrupts the task
+                    }
+                }
+
+                aborted.set(request.isAborted());
+
+                ServiceFilterResponseMock responseMock = new ServiceFilterResponseMock();
+                responseMock.setContent("[]");
+
+                SettableFuture<ServiceFilterResponse> resultFuture = SettableFuture.create();
+                resultFuture.set(responseMock);
+
+                return resultFuture;
+            }
+        };
+    }
+
+    public void testIdenticalLookUpsInFlightShareOneRequest() throws Throwable {
+        final CountDownLatch latch = new CountDownLatch(1);
+        final AtomicInteger requestCount = new AtomicInteger();
+
+        final String personJsonString = "{\"id\":4,\"firstName\":\"John\",\"lastName\":\"Doe\",\"age\":29}";
+
+        MobileServiceClient client = null;
+
+        try {
+            client = new MobileServiceClient(appUrl, appKey, getInstrumentation().getTargetContext());
+        } catch (MalformedURLException e) {
+            e.printStackTrace();
+        }
+
+        client = client.withFilter(new ServiceFilter() {
+
+            @Override
+            public ListenableFuture<ServiceFilterResponse> handleRequest(ServiceFilterRequest request, NextServiceFilterCallback nextServiceFilterCallback) {
+                requestCount.incrementAndGet();
+
+                // Hold the request until every lookUp has been started
+                try {
+                    latch.await();
+                } catch (InterruptedException e) {
+                }
+
+                ServiceFilterResponseMock response = new ServiceFilterResponseMock();
+                response.setContent(personJsonString);
+
+                final SettableFuture<ServiceFilterResponse> resultFuture = SettableFuture.create();
+
+                resultFuture.set(response);
+
+                return resultFuture;
+            }
+        });
+
+        MobileServiceJsonTable table = client.getTable("MyTableName");
+
+        ListenableFuture<JsonObject> first = table.lookUp(4);
+        ListenableFuture<JsonObject> second = table.lookUp(4);
+        ListenableFuture<JsonObject> other = table.lookUp(5);
+
+        latch.countDown();
+
+        // Each caller gets its own copy of the results
+        JsonObject firstEntity = first.get();
+        firstEntity.addProperty("firstName", "Jane");
+
+        assertEquals(personJsonString, second.get().toString());
+        other.get();
+
+        assertEquals(2, requestCount.get());
+        assertEquals(0, client.getRequestCoalescer().getInFlightCount());
+    }
 }
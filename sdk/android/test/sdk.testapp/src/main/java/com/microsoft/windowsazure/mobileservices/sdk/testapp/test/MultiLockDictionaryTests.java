@@ -0,0 +1,200 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+package com.microsoft.windowsazure.mobileservices.sdk.testapp.test;
+
+import android.test.InstrumentationTestCase;
+
+import com.microsoft.windowsazure.mobileservices.threading.MultiLockDictionary;
+import com.microsoft.windowsazure.mobileservices.threading.MultiLockDictionary.MultiLock;
+import com.microsoft.windowsazure.mobileservices.threading.MultiReadWriteLockDictionary;
+import com.microsoft.windowsazure.mobileservices.threading.MultiReadWriteLockDictionary.MultiReadWriteLock;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class MultiLockDictionaryTests extends InstrumentationTestCase {
+    private static final int THREAD_COUNT = 8;
+    private static final int ITERATIONS = 2000;
+
+    public void testSameKeyReturnsTheSameLock() {
+        MultiLockDictionary<String> dictionary = new MultiLockDictionary<String>();
+
+        MultiLock<String> first = dictionary.lock("key");
+        MultiLock<String> second = dictionary.lock(new String("key"));
+        MultiLock<String> other = dictionary.lock("other key");
+
+        assertSame(first, second);
+        assertNotSame(first, other);
+        assertEquals(2, dictionary.size());
+
+        dictionary.unLock(other);
+        assertEquals(1, dictionary.size());
+
+        // The entry stays until the last holder releases it
+        dictionary.unLock(second);
+        assertEquals(1, dictionary.size());
+
+        dictionary.unLock(first);
+        assertEquals(0, dictionary.size());
+
+        // A released key gets a new lock
+        MultiLock<String> third = dictionary.lock("key");
+        assertNotSame(first, third);
+        dictionary.unLock(third);
+        assertEquals(0, dictionary.size());
+    }
+
+    public void testSameKeyReturnsTheSameReadWriteLock() {
+        MultiReadWriteLockDictionary<String> dictionary = new MultiReadWriteLockDictionary<String>();
+
+        MultiReadWriteLock<String> first = dictionary.lockRead("key");
+        MultiReadWriteLock<String> second = dictionary.lockRead(new String("key"));
+        MultiReadWriteLock<String> other = dictionary.lockWrite("other key");
+
+        assertSame(first, second);
+        assertNotSame(first, other);
+        assertEquals(2, dictionary.size());
+
+        dictionary.unLockWrite(other);
+        dictionary.unLockRead(second);
+        assertEquals(1, dictionary.size());
+
+        dictionary.unLockRead(first);
+        assertEquals(0, dictionary.size());
+    }
+
+    public void testHoldersOfTheSameKeyNeverOverlap() throws Throwable {
+        final MultiLockDictionary<String> dictionary = new MultiLockDictionary<String>(false);
+        final AtomicInteger holders = new AtomicInteger();
+        final AtomicInteger overlaps = new AtomicInteger();
+
+        runConcurrently(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < ITERATIONS; i++) {
+                    MultiLock<String> lock = dictionary.lock(new String("key"));
+
+                    try {
+                        if (holders.incrementAndGet() != 1) {
+                            overlaps.incrementAndGet();
+                        }
+
+                        Thread.yield();
+
+                        holders.decrementAndGet();
+                    } finally {
+                        dictionary.unLock(lock);
+                    }
+                }
+            }
+        });
+
+        assertEquals(0, overlaps.get());
+        assertEquals(0, dictionary.size());
+        assertEquals(THREAD_COUNT * ITERATIONS, dictionary.getLockCount());
+    }
+
+    public void testWritersOfTheSameKeyNeverOverlap() throws Throwable {
+        final MultiReadWriteLockDictionary<String> dictionary = new MultiReadWriteLockDictionary<String>(false);
+        final AtomicInteger readers = new AtomicInteger();
+        final AtomicInteger writers = new AtomicInteger();
+        final AtomicInteger overlaps = new AtomicInteger();
+
+        runConcurrently(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < ITERATIONS; i++) {
+                    if (i % 4 == 0) {
+                        MultiReadWriteLock<String> lock = dictionary.lockWrite(new String("key"));
+
+                        try {
+                            if (writers.incrementAndGet() != 1 || readers.get() != 0) {
+                                overlaps.incrementAndGet();
+                            }
+
+                            Thread.yield();
+
+                            writers.decrementAndGet();
+                        } finally {
+                            dictionary.unLockWrite(lock);
+                        }
+                    } else {
+                        MultiReadWriteLock<String> lock = dictionary.lockRead(new String("key"));
+
+                        try {
+                            readers.incrementAndGet();
+
+                            if (writers.get() != 0) {
+                                overlaps.incrementAndGet();
+                            }
+
+                            Thread.yield();
+
+                            readers.decrementAndGet();
+                        } finally {
+                            dictionary.unLockRead(lock);
+                        }
+                    }
+                }
+            }
+        });
+
+        assertEquals(0, overlaps.get());
+        assertEquals(0, dictionary.size());
+        assertEquals(THREAD_COUNT * ITERATIONS, dictionary.getLockCount());
+    }
+
+    private static void runConcurrently(final Runnable runnable) throws Throwable {
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Throwable> errors = new ArrayList<Throwable>();
+        List<Thread> threads = new ArrayList<Thread>();
+
+        for (int i = 0; i < THREAD_COUNT; i++) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        runnable.run();
+                    } catch (Throwable e) {
+                        synchronized (errors) {
+                            errors.add(e);
+                        }
+                    }
+                }
+            });
+
+            thread.start();
+            threads.add(thread);
+        }
+
+        start.countDown();
+
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        if (!errors.isEmpty()) {
+            throw errors.get(0);
+        }
+    }
+}
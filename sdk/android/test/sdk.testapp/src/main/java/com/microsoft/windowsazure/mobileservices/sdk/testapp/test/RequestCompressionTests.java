@@ -0,0 +1,210 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+package com.microsoft.windowsazure.mobileservices.sdk.testapp.test;
+
+import android.test.InstrumentationTestCase;
+
+import com.microsoft.windowsazure.mobileservices.http.HttpPatch;
+import com.microsoft.windowsazure.mobileservices.http.HttpTransport;
+import com.microsoft.windowsazure.mobileservices.http.RequestCompressionPolicy;
+import com.microsoft.windowsazure.mobileservices.http.ServiceFilterRequestImpl;
+import com.microsoft.windowsazure.mobileservices.http.ServiceFilterResponse;
+import com.microsoft.windowsazure.mobileservices.sdk.testapp.framework.filters.ServiceFilterResponseMock;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.client.methods.HttpEntityEnclosingRequestBase;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.util.EntityUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+
+public class RequestCompressionTests extends InstrumentationTestCase {
+    String appUrl = "";
+
+    protected void setUp() throws Exception {
+        appUrl = "http://myapp.com/";
+        super.setUp();
+    }
+
+    protected void tearDown() throws Exception {
+        super.tearDown();
+    }
+
+    public void testBodyBelowTheMinimumSizeIsSentUncompressed() throws Exception {
+        RequestCompressionPolicy policy = new RequestCompressionPolicy(1024);
+        policy.setAllTablesEnabled(true);
+
+        byte[] content = createContent(1023);
+
+        SentRequest sent = send(new HttpPost(appUrl + "tables/todoitem"), content, "application/json", policy);
+
+        assertNull(sent.mRequest.getFirstHeader("Content-Encoding"));
+        assertTrue(Arrays.equals(content, sent.mContent));
+    }
+
+    public void testBodyAboveTheMinimumSizeIsGzipped() throws Exception {
+        RequestCompressionPolicy policy = new RequestCompressionPolicy(1024);
+        policy.setAllTablesEnabled(true);
+
+        byte[] content = createContent(4096);
+
+        SentRequest sent = send(new HttpPatch(appUrl + "tables/todoitem/1"), content, "application/json", policy);
+
+        Header contentEncoding = sent.mRequest.getFirstHeader("Content-Encoding");
+
+        assertNotNull(contentEncoding);
+        assertEquals("gzip", contentEncoding.getValue());
+        assertTrue(sent.mContent.length < content.length);
+    }
+
+    public void testGzippedBodyDecompressesToTheOriginal() throws Exception {
+        RequestCompressionPolicy policy = new RequestCompressionPolicy(0);
+        policy.setAllApisEnabled(true);
+
+        byte[] content = createContent(10000);
+
+        SentRequest sent = send(new HttpPost(appUrl + "api/myapi"), content, "application/json", policy);
+
+        assertEquals("gzip", sent.mRequest.getFirstHeader("Content-Encoding").getValue());
+        assertTrue(Arrays.equals(content, gunzip(sent.mContent)));
+    }
+
+    public void testExcludedContentTypesAreNotCompressed() throws Exception {
+        RequestCompressionPolicy policy = new RequestCompressionPolicy(0);
+        policy.setAllApisEnabled(true);
+
+        byte[] content = createContent(4096);
+
+        // Images are excluded by default
+        SentRequest sent = send(new HttpPost(appUrl + "api/upload"), content, "image/png", policy);
+
+        assertNull(sent.mRequest.getFirstHeader("Content-Encoding"));
+        assertTrue(Arrays.equals(content, sent.mContent));
+
+        policy.setContentTypeExcluded("text/csv", true);
+
+        sent = send(new HttpPost(appUrl + "api/upload"), content, "text/csv; charset=utf-8", policy);
+
+        assertNull(sent.mRequest.getFirstHeader("Content-Encoding"));
+
+        policy.setContentTypeExcluded("image/*", false);
+
+        sent = send(new HttpPost(appUrl + "api/upload"), content, "image/png", policy);
+
+        assertEquals("gzip", sent.mRequest.getFirstHeader("Content-Encoding").getValue());
+    }
+
+    public void testBodiesOfOtherMethodsAreNotCompressed() throws Exception {
+        RequestCompressionPolicy policy = new RequestCompressionPolicy(0);
+        policy.setAllApisEnabled(true);
+
+        byte[] content = createContent(4096);
+
+        HttpEntityEnclosingRequestBase delete = new HttpEntityEnclosingRequestBase() {
+            @Override
+            public String getMethod() {
+                return "DELETE";
+            }
+        };
+        delete.setURI(new URI(appUrl + "api/myapi"));
+
+        SentRequest sent = send(delete, content, "application/json", policy);
+
+        assertNull(sent.mRequest.getFirstHeader("Content-Encoding"));
+        assertTrue(Arrays.equals(content, sent.mContent));
+    }
+
+    public void testTablesWithoutCompressionAreNotCompressed() throws Exception {
+        RequestCompressionPolicy policy = new RequestCompressionPolicy(0);
+        policy.setAllTablesEnabled(true);
+        policy.setTableEnabled("TodoItem", false);
+
+        byte[] content = createContent(4096);
+
+        SentRequest sent = send(new HttpPost(appUrl + "tables/todoitem"), content, "application/json", policy);
+
+        assertNull(sent.mRequest.getFirstHeader("Content-Encoding"));
+
+        sent = send(new HttpPost(appUrl + "tables/other"), content, "application/json", policy);
+
+        assertEquals("gzip", sent.mRequest.getFirstHeader("Content-Encoding").getValue());
+    }
+
+    private SentRequest send(HttpRequestBase request, byte[] content, String contentType, RequestCompressionPolicy policy) throws Exception {
+        final SentRequest sent = new SentRequest();
+
+        HttpTransport transport = new HttpTransport() {
+            @Override
+            public ServiceFilterResponse execute(HttpRequestBase request) throws Exception {
+                sent.mRequest = request;
+                sent.mContent = EntityUtils.toByteArray(((HttpEntityEnclosingRequest) request).getEntity());
+
+                return new ServiceFilterResponseMock();
+            }
+        };
+
+        ServiceFilterRequestImpl filterRequest = new ServiceFilterRequestImpl(request, transport, policy);
+        filterRequest.addHeader("Content-Type", contentType);
+        filterRequest.setContent(content);
+        filterRequest.execute();
+
+        return sent;
+    }
+
+    private static byte[] createContent(int length) {
+        StringBuilder json = new StringBuilder("[");
+
+        while (json.length() < length - 1) {
+            json.append("{\"text\":\"item\"},");
+        }
+
+        json.setLength(length - 1);
+        json.append(']');
+
+        return json.toString().getBytes();
+    }
+
+    private static byte[] gunzip(byte[] content) throws Exception {
+        InputStream in = new GZIPInputStream(new ByteArrayInputStream(content));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        int length;
+
+        while ((length = in.read(buffer)) != -1) {
+            out.write(buffer, 0, length);
+        }
+
+        in.close();
+
+        return out.toByteArray();
+    }
+
+    private static class SentRequest {
+        private HttpRequestBase mRequest;
+        private byte[] mContent;
+    }
+}
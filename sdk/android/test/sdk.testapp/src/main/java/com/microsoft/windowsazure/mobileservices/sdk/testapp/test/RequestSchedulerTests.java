@@ -0,0 +1,235 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+package com.microsoft.windowsazure.mobileservices.sdk.testapp.test;
+
+import android.test.InstrumentationTestCase;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.microsoft.windowsazure.mobileservices.MobileServiceClient;
+import com.microsoft.windowsazure.mobileservices.http.NextServiceFilterCallback;
+import com.microsoft.windowsazure.mobileservices.http.RequestAsyncTask;
+import com.microsoft.windowsazure.mobileservices.http.RequestPriority;
+import com.microsoft.windowsazure.mobileservices.http.RequestScheduler;
+import com.microsoft.windowsazure.mobileservices.http.ServiceFilter;
+import com.microsoft.windowsazure.mobileservices.http.ServiceFilterRequest;
+import com.microsoft.windowsazure.mobileservices.http.ServiceFilterRequestImpl;
+import com.microsoft.windowsazure.mobileservices.http.ServiceFilterResponse;
+import com.microsoft.windowsazure.mobileservices.sdk.testapp.framework.filters.ServiceFilterRequestMock;
+import com.microsoft.windowsazure.mobileservices.sdk.testapp.framework.filters.ServiceFilterResponseMock;
+import com.microsoft.windowsazure.mobileservices.sdk.testapp.framework.filters.StatusLineMock;
+
+import org.apache.http.client.methods.HttpGet;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class RequestSchedulerTests extends InstrumentationTestCase {
+    String appUrl = "";
+    String appKey = "";
+
+    @Override
+    protected void setUp() throws Exception {
+        appUrl = "http://myapp.com/";
+        appKey = "qwerty";
+        super.setUp();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        super.tearDown();
+    }
+
+    public void testClientHasNoSchedulerByDefault() throws Throwable {
+        MobileServiceClient client = new MobileServiceClient(appUrl, appKey, getInstrumentation().getTargetContext());
+
+        assertNull(client.getRequestScheduler());
+    }
+
+    public void testPriorityOfRequests() throws Throwable {
+        MobileServiceClient client = new MobileServiceClient(appUrl, appKey, getInstrumentation().getTargetContext());
+
+        ServiceFilterRequestImpl request = new ServiceFilterRequestImpl(new HttpGet(appUrl), client.getHttpTransport());
+
+        assertEquals(RequestPriority.Interactive, RequestScheduler.getPriority(request));
+
+        request.setPriority(RequestPriority.Background);
+
+        assertEquals(RequestPriority.Background, RequestScheduler.getPriority(request));
+
+        // Requests without a priority are interactive
+        assertEquals(RequestPriority.Interactive, RequestScheduler.getPriority(new ServiceFilterRequestMock(new ServiceFilterResponseMock())));
+    }
+
+    public void testOnlyTheMaximumNumberOfRequestsAreInFlight() throws Throwable {
+        RequestScheduler scheduler = new RequestScheduler(3, 1);
+        BlockingFilter filter = new BlockingFilter();
+
+        MobileServiceClient client = new MobileServiceClient(appUrl, appKey, getInstrumentation().getTargetContext());
+        client = client.withFilter(filter);
+        client.setRequestScheduler(scheduler);
+
+        List<ListenableFuture<ServiceFilterResponse>> futures = new ArrayList<ListenableFuture<ServiceFilterResponse>>();
+
+        futures.add(send(client, "b1", RequestPriority.Background));
+        filter.waitForStarted(1);
+
+        // Background requests cannot take more than one slot
+        futures.add(send(client, "b2", RequestPriority.Background));
+        futures.add(send(client, "b3", RequestPriority.Background));
+        futures.add(send(client, "i1", RequestPriority.Interactive));
+        futures.add(send(client, "i2", RequestPriority.Interactive));
+        filter.waitForStarted(3);
+
+        // The client is full
+        futures.add(send(client, "i3", RequestPriority.Interactive));
+
+        Thread.sleep(500);
+
+        assertEquals(3, filter.getStarted().size());
+        assertEquals(3, scheduler.getInFlightCount());
+        assertEquals(3, scheduler.getQueueLength());
+
+        // The queued interactive request goes before the queued background
+        // ones
+        filter.complete("i1");
+        filter.waitForStarted(4);
+        assertEquals("i3", filter.getStarted().get(3));
+
+        filter.complete("b1");
+        filter.waitForStarted(5);
+        assertEquals("b2", filter.getStarted().get(4));
+
+        filter.complete("b2");
+        filter.waitForStarted(6);
+        assertEquals("b3", filter.getStarted().get(5));
+
+        filter.complete("i2");
+        filter.complete("i3");
+        filter.complete("b3");
+
+        for (ListenableFuture<ServiceFilterResponse> future : futures) {
+            assertEquals(200, future.get(10, TimeUnit.SECONDS).getStatus().getStatusCode());
+        }
+
+        assertEquals(3, filter.getMaxInFlight());
+        assertEquals(0, scheduler.getInFlightCount());
+        assertEquals(0, scheduler.getQueueLength());
+    }
+
+    private ListenableFuture<ServiceFilterResponse> send(MobileServiceClient client, String name, RequestPriority priority) {
+        ServiceFilterRequestImpl request = new ServiceFilterRequestImpl(new HttpGet(appUrl + name), client.getHttpTransport());
+        request.setPriority(priority);
+
+        final SettableFuture<ServiceFilterResponse> future = SettableFuture.create();
+
+        new RequestAsyncTask(request, client.createConnection()) {
+            @Override
+            protected void onPostExecute(ServiceFilterResponse response) {
+                if (mTaskException != null) {
+                    future.setException(mTaskException);
+                } else {
+                    future.set(response);
+                }
+            }
+        }.executeTask();
+
+        return future;
+    }
+
+    /**
+     * Filter holding each request until the test completes it
+     */
+    private class BlockingFilter implements ServiceFilter {
+        private List<String> mStarted = new ArrayList<String>();
+        private Map<String, CountDownLatch> mGates = new HashMap<String, CountDownLatch>();
+        private int mInFlight;
+        private int mMaxInFlight;
+
+        @Override
+        public ListenableFuture<ServiceFilterResponse> handleRequest(ServiceFilterRequest request, NextServiceFilterCallback nextServiceFilterCallback) {
+            String name = request.getUrl().substring(appUrl.length());
+            CountDownLatch gate;
+
+            synchronized (this) {
+                mStarted.add(name);
+                mInFlight++;
+                mMaxInFlight = Math.max(mMaxInFlight, mInFlight);
+                gate = getGate(name);
+                notifyAll();
+            }
+
+            try {
+                gate.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+
+            synchronized (this) {
+                mInFlight--;
+            }
+
+            ServiceFilterResponseMock response = new ServiceFilterResponseMock();
+            response.setStatus(new StatusLineMock(200));
+
+            SettableFuture<ServiceFilterResponse> future = SettableFuture.create();
+            future.set(response);
+
+            return future;
+        }
+
+        synchronized void complete(String name) {
+            getGate(name).countDown();
+        }
+
+        synchronized void waitForStarted(int count) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + 10000;
+
+            while (mStarted.size() < count) {
+                long timeout = deadline - System.currentTimeMillis();
+                assertTrue("Timed out waiting for " + count + " requests", timeout > 0);
+                wait(timeout);
+            }
+        }
+
+        synchronized List<String> getStarted() {
+            return new ArrayList<String>(mStarted);
+        }
+
+        synchronized int getMaxInFlight() {
+            return mMaxInFlight;
+        }
+
+        private CountDownLatch getGate(String name) {
+            CountDownLatch gate = mGates.get(name);
+
+            if (gate == null) {
+                gate = new CountDownLatch(1);
+                mGates.put(name, gate);
+            }
+
+            return gate;
+        }
+    }
+}
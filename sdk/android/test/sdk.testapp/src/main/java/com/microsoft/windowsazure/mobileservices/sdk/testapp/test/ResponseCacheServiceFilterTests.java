@@ -0,0 +1,132 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+package com.microsoft.windowsazure.mobileservices.sdk.testapp.test;
+
+import android.test.InstrumentationTestCase;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.gson.JsonObject;
+import com.microsoft.windowsazure.mobileservices.MobileServiceClient;
+import com.microsoft.windowsazure.mobileservices.MobileServiceException;
+import com.microsoft.windowsazure.mobileservices.http.NextServiceFilterCallback;
+import com.microsoft.windowsazure.mobileservices.http.ResponseCacheServiceFilter;
+import com.microsoft.windowsazure.mobileservices.http.ServiceFilter;
+import com.microsoft.windowsazure.mobileservices.http.ServiceFilterRequest;
+import com.microsoft.windowsazure.mobileservices.http.ServiceFilterResponse;
+import com.microsoft.windowsazure.mobileservices.sdk.testapp.framework.filters.ServiceFilterResponseMock;
+import com.microsoft.windowsazure.mobileservices.sdk.testapp.framework.filters.StatusLineMock;
+
+import org.apache.http.Header;
+import org.apache.http.message.BasicHeader;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class ResponseCacheServiceFilterTests extends InstrumentationTestCase {
+    String appUrl = "";
+    String appKey = "";
+
+    @Override
+    protected void setUp() throws Exception {
+        appUrl = "http://myapp.com/";
+        appKey = "qwerty";
+        super.setUp();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        super.tearDown();
+    }
+
+    public void testNotModifiedResponseIsServedFromCache() throws Throwable {
+        List<String> ifNoneMatchValues = new ArrayList<String>();
+        ResponseCacheServiceFilter cache = new ResponseCacheServiceFilter(1024 * 1024);
+
+        MobileServiceClient client = new MobileServiceClient(appUrl, appKey, getInstrumentation().getTargetContext());
+        client = client.withFilter(getETagFilter(ifNoneMatchValues)).withFilter(cache);
+
+        JsonObject first = client.getTable("People").lookUp("1").get();
+        JsonObject second = client.getTable("People").lookUp("1").get();
+
+        assertEquals(2, ifNoneMatchValues.size());
+        assertNull(ifNoneMatchValues.get(0));
+        assertEquals("\"v1\"", ifNoneMatchValues.get(1));
+
+        assertEquals("John", first.get("name").getAsString());
+        assertEquals("John", second.get("name").getAsString());
+        assertEquals(1, cache.getHitCount());
+    }
+
+    public void testChangesToTheTableInvalidateTheCache() throws Throwable {
+        List<String> ifNoneMatchValues = new ArrayList<String>();
+        ResponseCacheServiceFilter cache = new ResponseCacheServiceFilter(1024 * 1024);
+
+        MobileServiceClient client = new MobileServiceClient(appUrl, appKey, getInstrumentation().getTargetContext());
+        client = client.withFilter(getETagFilter(ifNoneMatchValues)).withFilter(cache);
+
+        JsonObject item = client.getTable("People").lookUp("1").get();
+
+        client.getTable("Orders").lookUp("1").get();
+        client.getTable("People").delete(item).get();
+
+        client.getTable("People").lookUp("1").get();
+        client.getTable("Orders").lookUp("1").get();
+
+        assertEquals(5, ifNoneMatchValues.size());
+        assertNull(ifNoneMatchValues.get(3));
+        assertEquals("\"v1\"", ifNoneMatchValues.get(4));
+        assertEquals(1, cache.getHitCount());
+    }
+
+    private ServiceFilter getETagFilter(final List<String> ifNoneMatchValues) {
+        return new ServiceFilter() {
+            @Override
+            public ListenableFuture<ServiceFilterResponse> handleRequest(ServiceFilterRequest request, NextServiceFilterCallback nextServiceFilterCallback) {
+                String ifNoneMatch = null;
+
+                for (Header header : request.getHeaders()) {
+                    if (header.getName().equals("If-None-Match")) {
+                        ifNoneMatch = header.getValue();
+                    }
+                }
+
+                ifNoneMatchValues.add(ifNoneMatch);
+
+                ServiceFilterResponseMock response = new ServiceFilterResponseMock();
+                response.setHeaders(new Header[]{new BasicHeader("ETag", "\"v1\"")});
+
+                SettableFuture<ServiceFilterResponse> resultFuture = SettableFuture.create();
+
+                if (request.getMethod().equals("GET") && "\"v1\"".equals(ifNoneMatch)) {
+                    response.setStatus(new StatusLineMock(304));
+                    response.setContent((String) null);
+                    resultFuture.setException(new MobileServiceException("{'code': 304}", response));
+                } else {
+                    response.setStatus(new StatusLineMock(200));
+                    response.setContent("{\"id\":\"1\",\"name\":\"John\"}");
+                    resultFuture.set(response);
+                }
+
+                return resultFuture;
+            }
+        };
+    }
+}
@@ -85,6 +85,49 @@ public class SQLiteStoreQueryTests extends InstrumentationTestCase {
         testQuery(query, 6);
     }
 
+    public void testQueryOnDatesStoredAsEpochMillis() throws MobileServiceException, MobileServiceLocalStoreException {
+        String epochMillisTestTable = "epochmillistodo";
+
+        SQLiteStoreTestsUtilities.dropTestTable(this.getContext(), TestDbName, epochMillisTestTable);
+
+        SQLiteLocalStore store = new SQLiteLocalStore(this.getContext(), TestDbName, null, 1);
+        store.setDatesStoredAsEpochMillis(true);
+
+        Map<String, ColumnDataType> tableDefinition = new HashMap<String, ColumnDataType>();
+        tableDefinition.put("col4", ColumnDataType.Date);
+        tableDefinition.put("col6", ColumnDataType.DateTimeOffset);
+
+        store.defineTable(epochMillisTestTable, tableDefinition);
+
+        store.initialize();
+
+        JsonObject[] testData = getTestData();
+
+        for (JsonObject item : testData) {
+            item.remove("col1");
+            item.remove("col2");
+            item.remove("col3");
+            item.remove("col5");
+        }
+
+        insertAll(store, epochMillisTestTable, testData);
+
+        JsonArray results = runQuery(store, QueryOperations.tableName(epochMillisTestTable).field("col4").gt(epoch)
+                .orderBy("col6", QueryOrder.Ascending));
+
+        assertEquals(6, results.size());
+
+        // Dates are read back as ISO 8601 strings
+        JsonObject first = store.lookup(epochMillisTestTable, "1");
+
+        assertEquals(testData[0].get("col4").getAsString(), first.get("col4").getAsString());
+        assertEquals(testData[0].get("col6").getAsString(), first.get("col6").getAsString());
+
+        JsonArray yearResults = runQuery(store, QueryOperations.tableName(epochMillisTestTable).year("col4").eq(1970));
+
+        assertEquals(6, yearResults.size());
+    }
+
     public void testQueryWithTop() throws MobileServiceLocalStoreException {
         Query query = QueryOperations.tableName(TestTable).top(5);
         testQuery(query, 5);
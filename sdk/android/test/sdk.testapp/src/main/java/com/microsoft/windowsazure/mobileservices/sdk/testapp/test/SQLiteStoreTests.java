@@ -24,13 +24,16 @@ import android.test.InstrumentationTestCase;
 
 import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
 import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
 import com.microsoft.windowsazure.mobileservices.MobileServiceException;
 import com.microsoft.windowsazure.mobileservices.sdk.testapp.test.helpers.SQLiteStoreTestsUtilities;
 import com.microsoft.windowsazure.mobileservices.sdk.testapp.test.types.CustomFunctionOneParameter;
 import com.microsoft.windowsazure.mobileservices.table.query.Query;
 import com.microsoft.windowsazure.mobileservices.table.query.QueryOperations;
 import com.microsoft.windowsazure.mobileservices.table.query.QueryOrder;
+import com.microsoft.windowsazure.mobileservices.table.sync.localstore.CborColumnCodec;
 import com.microsoft.windowsazure.mobileservices.table.sync.localstore.ColumnDataType;
 import com.microsoft.windowsazure.mobileservices.table.sync.localstore.MobileServiceLocalStoreException;
 import com.microsoft.windowsazure.mobileservices.table.sync.localstore.SQLiteLocalStore;
@@ -45,6 +48,8 @@ public class SQLiteStoreTests extends InstrumentationTestCase {
 
     private String TestDbName = "queryTest.db";
     private String TestTable = "todo";
+    private String IntrospectionsTable = "introspections";
+    private String IntrospectionsTrigger = "countIntrospections";
     private Date epoch;
 
     protected void setUp() throws Exception {
@@ -72,6 +77,81 @@ public class SQLiteStoreTests extends InstrumentationTestCase {
         store.initialize();
     }
 
+    public void testInitializeAltersTheTableWhenItsDefinitionChanges() throws MobileServiceLocalStoreException {
+        SQLiteStoreTestsUtilities.dropTestTable(this.getContext(), TestDbName, TestTable);
+
+        Map<String, ColumnDataType> tableDefinition = new HashMap<String, ColumnDataType>();
+        tableDefinition.put("id", ColumnDataType.String);
+        tableDefinition.put("name", ColumnDataType.String);
+
+        SQLiteLocalStore store = new SQLiteLocalStore(this.getContext(), TestDbName, null, 1);
+        store.defineTable(TestTable, tableDefinition);
+        store.initialize();
+
+        // every table introspected by initialize gets its fingerprint
+        // written, so a trigger on the fingerprints counts the introspections
+        SQLiteStoreTestsUtilities.dropTestTable(this.getContext(), TestDbName, IntrospectionsTable);
+        SQLiteStoreTestsUtilities.executeNonQuery(this.getContext(), TestDbName, "CREATE TABLE " + IntrospectionsTable + " (name TEXT)");
+        SQLiteStoreTestsUtilities.executeNonQuery(this.getContext(), TestDbName, "DROP TRIGGER IF EXISTS " + IntrospectionsTrigger);
+        SQLiteStoreTestsUtilities.executeNonQuery(this.getContext(), TestDbName, "CREATE TRIGGER " + IntrospectionsTrigger
+                + " AFTER INSERT ON __schemafingerprints BEGIN INSERT INTO " + IntrospectionsTable + " VALUES (new.id); END");
+
+        // the unchanged definition is skipped
+        store = new SQLiteLocalStore(this.getContext(), TestDbName, null, 1);
+        store.defineTable(TestTable, tableDefinition);
+        store.initialize();
+
+        assertEquals(0L, SQLiteStoreTestsUtilities.countRows(this.getContext(), TestDbName, IntrospectionsTable));
+
+        // a column added outside of the store leaves the definition unchanged,
+        // but the schema differs from the fingerprinted one
+        SQLiteStoreTestsUtilities.executeNonQuery(this.getContext(), TestDbName, "ALTER TABLE " + TestTable + " ADD COLUMN \"extra\" TEXT");
+
+        store = new SQLiteLocalStore(this.getContext(), TestDbName, null, 1);
+        store.defineTable(TestTable, tableDefinition);
+        store.initialize();
+
+        assertEquals(1L, SQLiteStoreTestsUtilities.countRows(this.getContext(), TestDbName, IntrospectionsTable));
+
+        tableDefinition.put("age", ColumnDataType.Integer);
+
+        store = new SQLiteLocalStore(this.getContext(), TestDbName, null, 1);
+        store.defineTable(TestTable, tableDefinition);
+        store.initialize();
+
+        // the changed definition is introspected again, once
+        assertEquals(2L, SQLiteStoreTestsUtilities.countRows(this.getContext(), TestDbName, IntrospectionsTable));
+
+        store = new SQLiteLocalStore(this.getContext(), TestDbName, null, 1);
+        store.defineTable(TestTable, tableDefinition);
+        store.initialize();
+
+        assertEquals(2L, SQLiteStoreTestsUtilities.countRows(this.getContext(), TestDbName, IntrospectionsTable));
+
+        JsonObject inserted = new JsonObject();
+        inserted.addProperty("id", "abc");
+        inserted.addProperty("name", "def");
+        inserted.addProperty("age", 42);
+
+        store.upsert(TestTable, inserted, false);
+
+        JsonObject read = store.lookup(TestTable, "abc");
+
+        assertNotNull(read);
+        assertEquals(42, read.get("age").getAsInt());
+
+        // a table dropped outside of the store is created again
+        SQLiteStoreTestsUtilities.dropTestTable(this.getContext(), TestDbName, TestTable);
+
+        store = new SQLiteLocalStore(this.getContext(), TestDbName, null, 1);
+        store.defineTable(TestTable, tableDefinition);
+        store.initialize();
+
+        store.upsert(TestTable, inserted, false);
+
+        assertEquals(1L, SQLiteStoreTestsUtilities.countRows(this.getContext(), TestDbName, TestTable));
+    }
+
     private Context getContext() {
         // TODO Auto-generated method stub
         return getInstrumentation().getTargetContext();
@@ -594,6 +674,53 @@ public class SQLiteStoreTests extends InstrumentationTestCase {
         assertNull(lastItem);
     }
 
+    public void testUpsertThenLookupWithOtherColumnCodec() throws MobileServiceLocalStoreException {
+        SQLiteStoreTestsUtilities.dropTestTable(this.getContext(), TestDbName, TestTable);
+
+        SQLiteLocalStore store = new SQLiteLocalStore(this.getContext(), TestDbName, null, 1);
+        store.setOtherColumnCodec(new CborColumnCodec());
+
+        Map<String, ColumnDataType> tableDefinition = new HashMap<String, ColumnDataType>();
+        tableDefinition.put("id", ColumnDataType.String);
+        tableDefinition.put("options", ColumnDataType.Other);
+        tableDefinition.put("friends", ColumnDataType.Other);
+
+        store.defineTable(TestTable, tableDefinition);
+        store.initialize();
+
+        JsonObject options = new JsonObject();
+        options.addProperty("name", "abc");
+        options.addProperty("count", -42);
+        options.addProperty("ratio", 0.5d);
+        options.addProperty("enabled", true);
+        options.add("missing", JsonNull.INSTANCE);
+
+        JsonArray friends = new JsonArray();
+        friends.add(new JsonPrimitive("def"));
+        friends.add(options);
+
+        JsonObject inserted = new JsonObject();
+        inserted.addProperty("id", "abc");
+        inserted.add("options", options);
+        inserted.add("friends", friends);
+
+        store.upsert(TestTable, inserted, false);
+
+        JsonObject read = store.lookup(TestTable, "abc");
+
+        assertNotNull(read);
+        assertEquals(options, read.get("options"));
+        assertEquals(friends, read.get("friends"));
+
+        inserted.add("friends", JsonNull.INSTANCE);
+
+        store.upsert(TestTable, inserted, false);
+
+        read = store.lookup(TestTable, "abc");
+
+        assertTrue(read.get("friends").isJsonNull());
+    }
+
     private void prepareTodoTable() throws MobileServiceLocalStoreException {
         SQLiteStoreTestsUtilities.dropTestTable(this.getContext(), TestDbName, TestTable);
 